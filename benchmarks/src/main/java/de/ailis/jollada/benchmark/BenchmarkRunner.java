@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, so the allocation rate
+ * and the number of collections are reported for every benchmark. Accepts
+ * the same command line options as the JMH main class, for example a
+ * benchmark name pattern or <code>-p shape=GEOMETRY</code>.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public final class BenchmarkRunner
+{
+    /**
+     * Private constructor to prevent instantiation.
+     */
+
+    private BenchmarkRunner()
+    {
+        // Empty
+    }
+
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args
+     *            The JMH command line options.
+     * @throws Exception
+     *             When benchmarks could not be run.
+     */
+
+    public static void main(final String[] args) throws Exception
+    {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp())
+        {
+            commandLine.showHelp();
+            return;
+        }
+        if (commandLine.shouldList())
+        {
+            new Runner(commandLine).list();
+            return;
+        }
+        final Options options = new OptionsBuilder().parent(commandLine)
+            .addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
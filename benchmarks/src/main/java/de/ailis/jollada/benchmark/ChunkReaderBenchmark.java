@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.ailis.jollada.reader.ChunkFloatReader;
+import de.ailis.jollada.reader.ChunkIntReader;
+
+
+/**
+ * Measures the number parsing of {@link ChunkFloatReader} and
+ * {@link ChunkIntReader}. The text is fed in chunks of 4096 characters like
+ * a SAX parser does. Results are reported in nanoseconds per value.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkReaderBenchmark
+{
+    /** The number of values per invocation. */
+    private static final int VALUES = 100000;
+
+    /** The size of the chunks passed to the readers. */
+    private static final int CHUNK_SIZE = 4096;
+
+    /** The float values as text. */
+    private char[] floats;
+
+    /** The int values as text. */
+    private char[] ints;
+
+
+    /**
+     * Generates the texts.
+     */
+
+    @Setup
+    public void setup()
+    {
+        final StringBuilder floats = new StringBuilder();
+        final StringBuilder ints = new StringBuilder();
+        for (int i = 0; i < VALUES; i++)
+        {
+            floats.append((i * 7919 % 2000000 - 1000000) / 10000.0);
+            floats.append(' ');
+            ints.append(i * 31 % 65536).append(' ');
+        }
+        this.floats = floats.toString().toCharArray();
+        this.ints = ints.toString().toCharArray();
+    }
+
+
+    /**
+     * Parses float values.
+     *
+     * @param blackhole
+     *            Consumes the parsed values.
+     */
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void parseFloats(final Blackhole blackhole)
+    {
+        final ChunkFloatReader reader = new ChunkFloatReader()
+        {
+            @Override
+            protected void valueFound(final double value)
+            {
+                blackhole.consume(value);
+            }
+        };
+        final char[] text = this.floats;
+        for (int start = 0; start < text.length; start += CHUNK_SIZE)
+            reader.addChunk(text, start, Math.min(CHUNK_SIZE, text.length
+                - start));
+        reader.finish();
+    }
+
+
+    /**
+     * Parses int values.
+     *
+     * @param blackhole
+     *            Consumes the parsed values.
+     */
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void parseInts(final Blackhole blackhole)
+    {
+        final ChunkIntReader reader = new ChunkIntReader()
+        {
+            @Override
+            protected void valueFound(final int value)
+            {
+                blackhole.consume(value);
+            }
+        };
+        final char[] text = this.ints;
+        for (int start = 0; start < text.length; start += CHUNK_SIZE)
+            reader.addChunk(text, start, Math.min(CHUNK_SIZE, text.length
+                - start));
+        reader.finish();
+    }
+}
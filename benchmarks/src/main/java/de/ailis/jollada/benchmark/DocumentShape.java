@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import de.ailis.jollada.writer.DocumentGenerator;
+
+
+/**
+ * The shapes of the generated benchmark documents. Each shape stresses a
+ * different part of the reader. The size of a document grows linearly with
+ * its scale.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public enum DocumentShape
+{
+    /** A single mesh with many vertices and a mix of all primitives. */
+    GEOMETRY
+    {
+        @Override
+        void configure(final DocumentGenerator generator, final int scale)
+        {
+            generator.setVertices(scale * 10000);
+            generator.setPrimitiveMix(2, 1, 1);
+        }
+    },
+
+    /** A visual scene with many small nodes. */
+    NODES
+    {
+        @Override
+        void configure(final DocumentGenerator generator, final int scale)
+        {
+            generator.setVertices(3);
+            generator.setNodeDepth(2);
+            generator.setNodeFanOut((int) Math.sqrt(scale * 1000));
+        }
+    },
+
+    /** Many effects and materials. */
+    MATERIALS
+    {
+        @Override
+        void configure(final DocumentGenerator generator, final int scale)
+        {
+            generator.setVertices(3);
+            generator.setMaterials(scale * 500);
+        }
+    },
+
+    /** Many animations with small key frame sources. */
+    ANIMATIONS
+    {
+        @Override
+        void configure(final DocumentGenerator generator, final int scale)
+        {
+            generator.setVertices(3);
+            generator.setAnimationChannels(scale * 200);
+            generator.setKeyFrames(30);
+        }
+    };
+
+
+    /**
+     * Configures the document generator for this shape.
+     *
+     * @param generator
+     *            The generator to configure.
+     * @param scale
+     *            The scale of the document.
+     */
+
+    abstract void configure(DocumentGenerator generator, int scale);
+
+
+    /**
+     * Generates a document of this shape.
+     *
+     * @param scale
+     *            The scale of the document. Must be larger than 0.
+     * @return The UTF-8 encoded document.
+     */
+
+    public byte[] generate(final int scale)
+    {
+        final DocumentGenerator generator = new DocumentGenerator();
+        configure(generator, scale);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try
+        {
+            generator.generate(bytes);
+        }
+        catch (final IOException e)
+        {
+            throw new RuntimeException(e.toString(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * Counts the elements of the specified document.
+     *
+     * @param document
+     *            The UTF-8 encoded document.
+     * @return The number of elements.
+     */
+
+    public static int countElements(final byte[] document)
+    {
+        int count = 0;
+        for (int i = 0, max = document.length - 1; i < max; i++)
+        {
+            if (document[i] != '<') continue;
+            final byte next = document[i + 1];
+            if (next != '/' && next != '?' && next != '!') count++;
+        }
+        return count;
+    }
+}
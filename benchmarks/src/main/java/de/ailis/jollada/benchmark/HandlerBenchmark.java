@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.reader.ColladaHandler;
+
+
+/**
+ * Measures the {@link ColladaHandler} without the XML parser. The SAX
+ * events of a generated document are recorded once and then replayed into
+ * a new handler per invocation, so the result shows the cost of the element
+ * dispatch and the model building alone.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerBenchmark
+{
+    /** Event type for element start. */
+    private static final int START = 0;
+
+    /** Event type for element end. */
+    private static final int END = 1;
+
+    /** Event type for characters. */
+    private static final int CHARACTERS = 2;
+
+    /** The shape of the replayed document. */
+    @Param({ "NODES", "MATERIALS", "ANIMATIONS" })
+    public DocumentShape shape;
+
+    /** The recorded event types. */
+    private int[] types;
+
+    /** The recorded element names. */
+    private String[] names;
+
+    /** The recorded attributes. */
+    private Attributes[] attributes;
+
+    /** The recorded characters. */
+    private char[][] texts;
+
+
+    /**
+     * Records the SAX events of the generated document.
+     *
+     * @throws Exception
+     *             When document could not be parsed.
+     */
+
+    @Setup
+    public void setup() throws Exception
+    {
+        final List<Integer> types = new ArrayList<Integer>();
+        final List<String> names = new ArrayList<String>();
+        final List<Attributes> attributes = new ArrayList<Attributes>();
+        final List<char[]> texts = new ArrayList<char[]>();
+        final XMLReader reader = XMLReaderFactory.createXMLReader();
+        reader.setFeature("http://xml.org/sax/features/namespaces", true);
+        reader.setContentHandler(new DefaultHandler()
+        {
+            @Override
+            public void startElement(final String uri, final String localName,
+                final String qName, final Attributes atts)
+            {
+                types.add(START);
+                names.add(localName);
+                attributes.add(new AttributesImpl(atts));
+                texts.add(null);
+            }
+
+            @Override
+            public void endElement(final String uri, final String localName,
+                final String qName)
+            {
+                types.add(END);
+                names.add(localName);
+                attributes.add(null);
+                texts.add(null);
+            }
+
+            @Override
+            public void characters(final char[] ch, final int start,
+                final int length)
+            {
+                final char[] text = new char[length];
+                System.arraycopy(ch, start, text, 0, length);
+                types.add(CHARACTERS);
+                names.add(null);
+                attributes.add(null);
+                texts.add(text);
+            }
+        });
+        reader.parse(new InputSource(new ByteArrayInputStream(this.shape
+            .generate(1))));
+        this.types = new int[types.size()];
+        for (int i = 0; i < this.types.length; i++)
+            this.types[i] = types.get(i);
+        this.names = names.toArray(new String[names.size()]);
+        this.attributes = attributes.toArray(new Attributes[attributes
+            .size()]);
+        this.texts = texts.toArray(new char[texts.size()][]);
+    }
+
+
+    /**
+     * Replays the recorded events into a new handler.
+     *
+     * @return The built document.
+     * @throws SAXException
+     *             When handler reports an error.
+     */
+
+    @Benchmark
+    public Document replay() throws SAXException
+    {
+        final ColladaHandler handler = new ColladaHandler();
+        final int[] types = this.types;
+        final String[] names = this.names;
+        for (int i = 0, max = types.length; i < max; i++)
+        {
+            switch (types[i])
+            {
+                case START:
+                    handler.startElement("", names[i], names[i],
+                        this.attributes[i]);
+                    break;
+
+                case END:
+                    handler.endElement("", names[i], names[i]);
+                    break;
+
+                default:
+                    final char[] text = this.texts[i];
+                    handler.characters(text, 0, text.length);
+            }
+        }
+        return handler.getDocument();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.reader.ColladaReader;
+
+
+/**
+ * Measures the throughput of {@link ColladaReader#read(java.io.InputStream)}
+ * on generated documents of different shapes. Besides the number of reads
+ * per second the benchmark reports the read megabytes and elements per
+ * second.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderBenchmark
+{
+    /** The shape of the read document. */
+    @Param({ "GEOMETRY", "NODES", "MATERIALS", "ANIMATIONS" })
+    public DocumentShape shape;
+
+    /** The scale of the read document. */
+    @Param({ "1", "10" })
+    public int scale;
+
+    /** The generated document. */
+    private byte[] document;
+
+    /** The number of elements in the generated document. */
+    private int elements;
+
+    /** The reader. */
+    private ColladaReader reader;
+
+
+    /**
+     * The bytes and elements read per second.
+     */
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput
+    {
+        /** The number of read bytes. */
+        private long bytes;
+
+        /** The number of read elements. */
+        public long elements;
+
+
+        /**
+         * Resets the counters.
+         */
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            this.bytes = 0;
+            this.elements = 0;
+        }
+
+
+        /**
+         * Returns the number of read megabytes.
+         *
+         * @return The number of read megabytes.
+         */
+
+        public double megabytes()
+        {
+            return this.bytes / 1000000.0;
+        }
+    }
+
+
+    /**
+     * Generates the document.
+     */
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        this.document = this.shape.generate(this.scale);
+        this.elements = DocumentShape.countElements(this.document);
+        this.reader = new ColladaReader();
+    }
+
+
+    /**
+     * Reads the document.
+     *
+     * @param throughput
+     *            The throughput counters.
+     * @return The read document.
+     */
+
+    @Benchmark
+    public Document read(final Throughput throughput)
+    {
+        final Document result = this.reader.read(new ByteArrayInputStream(
+            this.document));
+        throughput.bytes += this.document.length;
+        throughput.elements += this.elements;
+        return result;
+    }
+}
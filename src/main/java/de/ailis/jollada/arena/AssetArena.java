@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.arena;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.List;
+
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.model.ExternalArrayInputStream;
+import de.ailis.jollada.model.ExternalArrayOutputStream;
+
+
+/**
+ * Stores documents in asset arena files. An arena file contains the values
+ * of all float arrays and int lists of a document in native byte order
+ * followed by the serialized rest of the document. When an arena is read
+ * then the values are not copied into the heap. Instead the arrays and lists
+ * are backed by a read-only memory mapping of the arena file so all
+ * processes reading the same arena share one copy of the values in the page
+ * cache of the operating system. An array or list which is modified copies
+ * its values first, the arena file is never modified.
+ *
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes in big endian
+ * order: The magic number, the format version, the byte order of the values
+ * (0 = big endian, 1 = little endian), the number of entries, the offset of
+ * the entry table, the offset of the serialized document and its size. The
+ * entry table contains {@value #ENTRY_SIZE} bytes per entry: The type of the
+ * values (0 = double, 1 = float, 2 = int), the number of values and the
+ * offset of the values which is always aligned to 8 bytes.
+ * </p>
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public final class AssetArena
+{
+    /** The magic number of arena files ("JCAR"). */
+    private static final int MAGIC = 0x4A434152;
+
+    /** The format version. */
+    private static final int VERSION = 1;
+
+    /** The size of the header. */
+    static final int HEADER_SIZE = 64;
+
+    /** The size of an entry in the entry table. */
+    static final int ENTRY_SIZE = 16;
+
+    /** The alignment of the values. */
+    private static final int ALIGNMENT = 8;
+
+    /** The size of the buffer used to write the values. */
+    private static final int WRITE_BUFFER_SIZE = 65536;
+
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+
+    private AssetArena()
+    {
+        // Empty
+    }
+
+
+    /**
+     * Writes the specified document to the specified arena file. Lazily
+     * loaded arrays are loaded while they are written. An existing arena
+     * file is replaced and not overwritten, so documents which were read
+     * from it before stay valid.
+     *
+     * @param document
+     *            The document to write.
+     * @param file
+     *            The arena file to write.
+     * @throws IOException
+     *             When the arena could not be written.
+     */
+
+    public static void write(final Document document, final File file)
+        throws IOException
+    {
+        final ByteArrayOutputStream structure = new ByteArrayOutputStream();
+        final ExternalArrayOutputStream stream =
+            new ExternalArrayOutputStream(structure);
+        try
+        {
+            stream.writeObject(document);
+        }
+        finally
+        {
+            stream.close();
+        }
+        final List<Buffer> entries = stream.getArrays();
+
+        final ByteBuffer table = ByteBuffer.allocate(entries.size()
+            * ENTRY_SIZE);
+        long offset = align(HEADER_SIZE + table.capacity());
+        for (final Buffer entry : entries)
+        {
+            table.putInt(ExternalArrayOutputStream.getType(entry));
+            table.putInt(entry.remaining());
+            table.putLong(offset);
+            offset = align(offset + (long) entry.remaining()
+                * ExternalArrayOutputStream.getValueSize(entry));
+        }
+        table.flip();
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 0
+            : 1);
+        header.putInt(entries.size());
+        header.putLong(HEADER_SIZE);
+        header.putLong(offset);
+        header.putLong(structure.size());
+        header.clear();
+
+        // Write to a temporary file which replaces the arena file when
+        // complete. The arena file itself is never truncated because other
+        // processes may still have it mapped.
+        final File tmpFile = File.createTempFile(file.getName(), ".tmp",
+            file.getAbsoluteFile().getParentFile());
+        boolean written = false;
+        try
+        {
+            final RandomAccessFile out = new RandomAccessFile(tmpFile, "rw");
+            try
+            {
+                final FileChannel channel = out.getChannel();
+                writeFully(channel, header, 0);
+                writeFully(channel, table, HEADER_SIZE);
+                final ByteBuffer buffer = ByteBuffer.allocateDirect(
+                    WRITE_BUFFER_SIZE).order(ByteOrder.nativeOrder());
+                table.rewind();
+                for (final Buffer entry : entries)
+                {
+                    table.getLong();
+                    channel.position(table.getLong());
+                    ExternalArrayOutputStream.writeValues(channel, buffer,
+                        entry);
+                }
+                writeFully(channel, ByteBuffer.wrap(structure.toByteArray()),
+                    offset);
+            }
+            finally
+            {
+                out.close();
+            }
+            if (!tmpFile.renameTo(file))
+            {
+                file.delete();
+                if (!tmpFile.renameTo(file))
+                    throw new IOException("Unable to write arena file: "
+                        + file);
+            }
+            written = true;
+        }
+        finally
+        {
+            if (!written) tmpFile.delete();
+        }
+    }
+
+
+    /**
+     * Reads a document from the specified arena file. The float arrays and
+     * int lists of the document are backed by a read-only memory mapping of
+     * the file which stays valid until the arrays are garbage collected.
+     *
+     * @param file
+     *            The arena file to read.
+     * @return The document.
+     * @throws IOException
+     *             When the arena could not be read.
+     */
+
+    public static Document read(final File file) throws IOException
+    {
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        try
+        {
+            final FileChannel channel = in.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            if (header.getInt() != MAGIC)
+                throw new IOException("Not an asset arena: " + file);
+            final int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported asset arena version "
+                    + version + ": " + file);
+            final ByteOrder order = header.getInt() == 0
+                ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            final int count = header.getInt();
+            final long tableOffset = header.getLong();
+            final long structureOffset = header.getLong();
+            final long structureSize = header.getLong();
+            if (count < 0 || count > Integer.MAX_VALUE / ENTRY_SIZE
+                || structureSize < 0
+                || structureSize > Integer.MAX_VALUE
+                || structureOffset + structureSize > channel.size())
+                throw new IOException("Corrupt asset arena: " + file);
+
+            final ByteBuffer table = ByteBuffer.allocate(count * ENTRY_SIZE);
+            readFully(channel, table, tableOffset);
+            final Buffer[] entries = mapEntries(channel, table,
+                structureOffset, order);
+
+            final ByteBuffer structure = ByteBuffer
+                .allocate((int) structureSize);
+            readFully(channel, structure, structureOffset);
+            final ExternalArrayInputStream stream =
+                new ExternalArrayInputStream(new ByteArrayInputStream(
+                    structure.array()), entries);
+            try
+            {
+                return (Document) stream.readObject();
+            }
+            catch (final ClassNotFoundException e)
+            {
+                throw new IOException(e.toString(), e);
+            }
+            catch (final ClassCastException e)
+            {
+                throw new IOException("Corrupt asset arena: " + file, e);
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Maps the entries of an arena. Consecutive entries are mapped together
+     * as long as a mapping does not exceed the maximum size of a byte
+     * buffer.
+     *
+     * @param channel
+     *            The channel of the arena file.
+     * @param table
+     *            The entry table.
+     * @param end
+     *            The offset behind the last entry.
+     * @param order
+     *            The byte order of the values.
+     * @return The mapped entries.
+     * @throws IOException
+     *             When the entries could not be mapped.
+     */
+
+    private static Buffer[] mapEntries(final FileChannel channel,
+        final ByteBuffer table, final long end, final ByteOrder order)
+        throws IOException
+    {
+        final int count = table.capacity() / ENTRY_SIZE;
+        final int[] types = new int[count];
+        final long[] sizes = new long[count];
+        final long[] offsets = new long[count + 1];
+        for (int i = 0; i < count; i++)
+        {
+            types[i] = table.getInt();
+            final int values = table.getInt();
+            offsets[i] = table.getLong();
+            if (types[i] < ExternalArrayOutputStream.TYPE_DOUBLE
+                || types[i] > ExternalArrayOutputStream.TYPE_INT
+                || values < 0 || offsets[i] < HEADER_SIZE)
+                throw new IOException("Corrupt asset arena entry " + i);
+            sizes[i] = (long) values
+                * ExternalArrayOutputStream.getValueSize(types[i]);
+            if (sizes[i] > Integer.MAX_VALUE)
+                throw new IOException("Corrupt asset arena entry " + i);
+        }
+        offsets[count] = end;
+
+        final Buffer[] entries = new Buffer[count];
+        int first = 0;
+        while (first < count)
+        {
+            int last = first;
+            while (last + 1 < count
+                && offsets[last + 1] + sizes[last + 1] - offsets[first]
+                    <= Integer.MAX_VALUE)
+                last++;
+            final long start = offsets[first];
+            final long size = offsets[last] + sizes[last] - start;
+            if (start + size > end)
+                throw new IOException("Corrupt asset arena entry " + last);
+            final MappedByteBuffer mapping = channel.map(MapMode.READ_ONLY,
+                start, size);
+            for (int i = first; i <= last; i++)
+            {
+                mapping.limit((int) (offsets[i] - start + sizes[i]));
+                mapping.position((int) (offsets[i] - start));
+                final ByteBuffer bytes = mapping.slice().order(order);
+                switch (types[i])
+                {
+                    case ExternalArrayOutputStream.TYPE_DOUBLE:
+                        entries[i] = bytes.asDoubleBuffer();
+                        break;
+
+                    case ExternalArrayOutputStream.TYPE_FLOAT:
+                        entries[i] = bytes.asFloatBuffer();
+                        break;
+
+                    default:
+                        entries[i] = bytes.asIntBuffer();
+                }
+            }
+            first = last + 1;
+        }
+        return entries;
+    }
+
+
+    /**
+     * Writes the remaining bytes of the specified buffer at the specified
+     * position.
+     *
+     * @param channel
+     *            The channel to write to.
+     * @param buffer
+     *            The bytes to write.
+     * @param position
+     *            The position in the file.
+     * @throws IOException
+     *             When the bytes could not be written.
+     */
+
+    private static void writeFully(final FileChannel channel,
+        final ByteBuffer buffer, final long position) throws IOException
+    {
+        long current = position;
+        while (buffer.hasRemaining())
+            current += channel.write(buffer, current);
+    }
+
+
+    /**
+     * Reads bytes at the specified position until the specified buffer is
+     * full. The buffer is flipped afterwards.
+     *
+     * @param channel
+     *            The channel to read from.
+     * @param buffer
+     *            The buffer to fill.
+     * @param position
+     *            The position in the file.
+     * @throws IOException
+     *             When the bytes could not be read.
+     */
+
+    private static void readFully(final FileChannel channel,
+        final ByteBuffer buffer, final long position) throws IOException
+    {
+        long current = position;
+        while (buffer.hasRemaining())
+        {
+            final int read = channel.read(buffer, current);
+            if (read < 0) throw new EOFException("Truncated asset arena");
+            current += read;
+        }
+        buffer.flip();
+    }
+
+
+    /**
+     * Aligns the specified offset.
+     *
+     * @param offset
+     *            The offset.
+     * @return The aligned offset.
+     */
+
+    private static long align(final long offset)
+    {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.model.ExternalArrayInputStream;
+import de.ailis.jollada.model.ExternalArrayOutputStream;
+import de.ailis.jollada.model.FloatArray;
+import de.ailis.jollada.model.IntList;
+
+
+/**
+ * Writes and reads documents in a compact binary format which can be loaded
+ * much faster than the XML document it was created from.
+ *
+ * <p>
+ * The format starts with the magic number and the format version. Then
+ * follows the string table with all distinct strings of the document (IDs,
+ * SIDs, URIs, names and so on). Then follow the values of all float arrays
+ * and int lists as raw little endian blocks and finally the element tree
+ * which references the strings and blocks by index. The values of bool
+ * arrays and name arrays are part of the element tree as raw byte arrays
+ * and string table references.
+ * </p>
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public final class BinaryDocument
+{
+    /** The magic number of binary documents ("JCBD"). */
+    private static final int MAGIC = 0x4A434244;
+
+    /** The format version. */
+    private static final int VERSION = 1;
+
+    /** The block flag for values stored in a direct buffer. */
+    private static final int FLAG_DIRECT = 0x10;
+
+    /** The size of the buffer used to convert the blocks. */
+    private static final int BLOCK_BUFFER_SIZE = 65536;
+
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+
+    private BinaryDocument()
+    {
+        // Empty
+    }
+
+
+    /**
+     * Writes the specified document to the specified stream. Lazily loaded
+     * arrays are loaded while they are written. The stream is not closed.
+     *
+     * @param document
+     *            The document to write.
+     * @param stream
+     *            The stream to write to.
+     * @throws IOException
+     *             When the document could not be written.
+     */
+
+    public static void write(final Document document,
+        final OutputStream stream) throws IOException
+    {
+        final ByteArrayOutputStream tree = new ByteArrayOutputStream();
+        final TreeOutputStream treeStream = new TreeOutputStream(tree);
+        try
+        {
+            treeStream.writeObject(document);
+        }
+        finally
+        {
+            treeStream.close();
+        }
+
+        final DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        final List<String> strings = treeStream.getStrings();
+        out.writeInt(strings.size());
+        for (final String string : strings)
+        {
+            final byte[] bytes = string.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        final List<Buffer> blocks = treeStream.getArrays();
+        out.writeInt(blocks.size());
+        final WritableByteChannel channel = Channels.newChannel(out);
+        final ByteBuffer buffer = ByteBuffer.allocate(BLOCK_BUFFER_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        for (final Buffer block : blocks)
+        {
+            out.writeByte(ExternalArrayOutputStream.getType(block)
+                | (block.isDirect() ? FLAG_DIRECT : 0));
+            out.writeInt(block.remaining());
+            ExternalArrayOutputStream.writeValues(channel, buffer, block);
+        }
+
+        out.writeInt(tree.size());
+        tree.writeTo(out);
+        out.flush();
+    }
+
+
+    /**
+     * Reads a document from the specified stream. The stream is not closed.
+     * Sizes read from the stream are not bounded so only trusted streams
+     * should be read with this method.
+     *
+     * @param stream
+     *            The stream to read from.
+     * @return The document.
+     * @throws IOException
+     *             When the document could not be read.
+     * @see #read(InputStream, long)
+     */
+
+    public static Document read(final InputStream stream) throws IOException
+    {
+        return read(stream, Long.MAX_VALUE);
+    }
+
+
+    /**
+     * Reads a document of the specified maximum length from the specified
+     * stream. The stream is not closed. Every size read from the stream is
+     * checked against the number of bytes left so a corrupt document can't
+     * allocate more memory than its length.
+     *
+     * @param stream
+     *            The stream to read from.
+     * @param length
+     *            The maximum number of bytes the document can have. The
+     *            length of the file for example.
+     * @return The document.
+     * @throws IOException
+     *             When the document could not be read.
+     */
+
+    public static Document read(final InputStream stream, final long length)
+        throws IOException
+    {
+        final DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a binary COLLADA document");
+        final int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported binary COLLADA document "
+                + "version: " + version);
+        long remaining = length - 12;
+
+        // Each string has at least its length
+        final String[] strings = new String[checkSize(in.readInt(), 4,
+            remaining)];
+        for (int i = 0; i < strings.length; i++)
+        {
+            final byte[] bytes = new byte[checkSize(in.readInt(), 1,
+                remaining - 4)];
+            in.readFully(bytes);
+            strings[i] = new String(bytes, "UTF-8");
+            remaining -= 4 + bytes.length;
+        }
+
+        // Each block has at least its type and its size
+        final Buffer[] blocks = new Buffer[checkSize(in.readInt(), 5,
+            remaining - 4)];
+        remaining -= 4;
+        final byte[] buffer = new byte[BLOCK_BUFFER_SIZE];
+        for (int i = 0; i < blocks.length; i++)
+        {
+            blocks[i] = readBlock(in, buffer, remaining);
+            remaining -= 5 + (long) blocks[i].capacity()
+                * ExternalArrayOutputStream.getValueSize(blocks[i]);
+        }
+
+        final byte[] tree = new byte[checkSize(in.readInt(), 1,
+            remaining - 4)];
+        in.readFully(tree);
+        final TreeInputStream treeStream = new TreeInputStream(
+            new ByteArrayInputStream(tree), strings, blocks);
+        try
+        {
+            return (Document) treeStream.readObject();
+        }
+        catch (final ClassNotFoundException e)
+        {
+            throw new IOException(e.toString(), e);
+        }
+        catch (final ClassCastException e)
+        {
+            throw new IOException("Invalid binary COLLADA document", e);
+        }
+        finally
+        {
+            treeStream.close();
+        }
+    }
+
+
+    /**
+     * Checks a size read from a binary document.
+     *
+     * @param size
+     *            The size to check.
+     * @param unitSize
+     *            The minimum number of bytes per unit of the size.
+     * @param remaining
+     *            The number of bytes left in the document.
+     * @return The size.
+     * @throws IOException
+     *             When size is negative or larger than the rest of the
+     *             document.
+     */
+
+    private static int checkSize(final int size, final int unitSize,
+        final long remaining) throws IOException
+    {
+        if (size < 0 || (long) size * unitSize > remaining)
+            throw new IOException("Invalid binary COLLADA document");
+        return size;
+    }
+
+
+    /**
+     * Reads a block of values.
+     *
+     * @param in
+     *            The stream to read from.
+     * @param buffer
+     *            The buffer used to convert the values.
+     * @param remaining
+     *            The number of bytes left in the document.
+     * @return The values.
+     * @throws IOException
+     *             When the block could not be read.
+     */
+
+    private static Buffer readBlock(final DataInputStream in,
+        final byte[] buffer, final long remaining) throws IOException
+    {
+        final int flags = in.readUnsignedByte();
+        final int type = flags & ~FLAG_DIRECT;
+        final boolean direct = (flags & FLAG_DIRECT) != 0;
+        if (type > ExternalArrayOutputStream.TYPE_INT)
+            throw new IOException("Invalid binary COLLADA document");
+        final int valueSize = ExternalArrayOutputStream.getValueSize(type);
+        final int size = checkSize(in.readInt(), valueSize, remaining - 5);
+        if (direct && (long) size * valueSize > Integer.MAX_VALUE)
+            throw new IOException("Block too large for direct buffer");
+
+        final Buffer block;
+        if (type == ExternalArrayOutputStream.TYPE_DOUBLE)
+            block = direct ? allocateDirect(size * valueSize)
+                .asDoubleBuffer() : DoubleBuffer.allocate(size);
+        else if (type == ExternalArrayOutputStream.TYPE_FLOAT)
+            block = direct ? allocateDirect(size * valueSize)
+                .asFloatBuffer() : FloatBuffer.allocate(size);
+        else
+            block = direct ? allocateDirect(size * valueSize).asIntBuffer()
+                : IntBuffer.allocate(size);
+
+        final int chunkSize = buffer.length / valueSize;
+        for (int start = 0; start < size; start += chunkSize)
+        {
+            final int length = Math.min(size - start, chunkSize);
+            in.readFully(buffer, 0, length * valueSize);
+            final ByteBuffer bytes = ByteBuffer.wrap(buffer, 0,
+                length * valueSize).order(ByteOrder.LITTLE_ENDIAN);
+            if (type == ExternalArrayOutputStream.TYPE_DOUBLE)
+                ((DoubleBuffer) block).put(bytes.asDoubleBuffer());
+            else if (type == ExternalArrayOutputStream.TYPE_FLOAT)
+                ((FloatBuffer) block).put(bytes.asFloatBuffer());
+            else
+                ((IntBuffer) block).put(bytes.asIntBuffer());
+        }
+        block.clear();
+        return block;
+    }
+
+
+    /**
+     * Allocates a direct byte buffer with native byte order.
+     *
+     * @param size
+     *            The size in bytes.
+     * @return The buffer.
+     */
+
+    private static ByteBuffer allocateDirect(final int size)
+    {
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+
+
+    /**
+     * Reference to an entry of the string table.
+     */
+
+    private static final class StringRef implements Serializable
+    {
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /** The index in the string table. */
+        final int index;
+
+
+        /**
+         * Constructor.
+         *
+         * @param index
+         *            The index in the string table.
+         */
+
+        StringRef(final int index)
+        {
+            this.index = index;
+        }
+    }
+
+
+    /**
+     * Object output stream writing the element tree. Strings are replaced
+     * with string table references and the values of {@link FloatArray} and
+     * {@link IntList} objects are collected as blocks.
+     */
+
+    private static final class TreeOutputStream extends
+        ExternalArrayOutputStream
+    {
+        /** The string table. */
+        private final List<String> strings = new ArrayList<String>();
+
+        /** The string table references. */
+        private final Map<String, StringRef> stringRefs =
+            new HashMap<String, StringRef>();
+
+
+        /**
+         * Constructor.
+         *
+         * @param stream
+         *            The stream to write the element tree to.
+         * @throws IOException
+         *             When stream header could not be written.
+         */
+
+        TreeOutputStream(final OutputStream stream) throws IOException
+        {
+            super(stream);
+            enableReplaceObject(true);
+        }
+
+
+        /**
+         * @see ObjectOutputStream#replaceObject(Object)
+         */
+
+        @Override
+        protected Object replaceObject(final Object object)
+        {
+            if (!(object instanceof String)) return object;
+            final String string = (String) object;
+            StringRef ref = this.stringRefs.get(string);
+            if (ref == null)
+            {
+                ref = new StringRef(this.strings.size());
+                this.strings.add(string);
+                this.stringRefs.put(string, ref);
+            }
+            return ref;
+        }
+
+
+        /**
+         * Returns the string table.
+         *
+         * @return The string table.
+         */
+
+        List<String> getStrings()
+        {
+            return this.strings;
+        }
+    }
+
+
+    /**
+     * Object input stream reading the element tree. String table references
+     * are resolved and {@link FloatArray} and {@link IntList} objects are
+     * backed by the blocks.
+     */
+
+    private static final class TreeInputStream extends
+        ExternalArrayInputStream
+    {
+        /** The string table. */
+        private final String[] strings;
+
+
+        /**
+         * Constructor.
+         *
+         * @param stream
+         *            The stream to read the element tree from.
+         * @param strings
+         *            The string table.
+         * @param blocks
+         *            The blocks.
+         * @throws IOException
+         *             When stream header could not be read.
+         */
+
+        TreeInputStream(final InputStream stream, final String[] strings,
+            final Buffer[] blocks) throws IOException
+        {
+            super(stream, blocks);
+            this.strings = strings;
+            enableResolveObject(true);
+        }
+
+
+        /**
+         * @see ExternalArrayInputStream#isAllowedClass(String)
+         */
+
+        @Override
+        protected boolean isAllowedClass(final String name)
+        {
+            return name.equals(StringRef.class.getName())
+                || super.isAllowedClass(name);
+        }
+
+
+        /**
+         * @see ObjectInputStream#resolveObject(Object)
+         */
+
+        @Override
+        protected Object resolveObject(final Object object)
+            throws IOException
+        {
+            if (!(object instanceof StringRef)) return object;
+            final int index = ((StringRef) object).index;
+            if (index < 0 || index >= this.strings.length)
+                throw new InvalidObjectException("Invalid string reference: "
+                    + index);
+            return this.strings[index];
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import de.ailis.jollada.exceptions.ParserException;
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.reader.ColladaReader;
+
+
+/**
+ * Cache for parsed COLLADA documents. The cache stores a
+ * {@link BinaryDocument} for each read source file in the cache directory.
+ * The cached form is keyed by the canonical path, the size and the last
+ * modification time of the source file and is used as long as all three
+ * still match. Otherwise the source file is parsed again and the cached form
+ * is replaced.
+ *
+ * <p>
+ * Cache files are written to a temporary file first and then renamed so
+ * processes sharing a cache directory never see partially written cache
+ * files.
+ * </p>
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public final class DocumentCache
+{
+    /** The magic number of cache files ("JCDC"). */
+    private static final int MAGIC = 0x4A434443;
+
+    /** The suffix of cache files. */
+    private static final String SUFFIX = ".jcache";
+
+    /** The buffer size used to read and write cache files. */
+    private static final int BUFFER_SIZE = 65536;
+
+    /** The cache directory. */
+    private final File directory;
+
+    /** The reader used to parse source files. */
+    private final ColladaReader reader;
+
+
+    /**
+     * Constructs a cache which parses source files with a default reader.
+     *
+     * @param directory
+     *            The cache directory. Created when needed.
+     */
+
+    public DocumentCache(final File directory)
+    {
+        this(directory, new ColladaReader());
+    }
+
+
+    /**
+     * Constructs a cache which parses source files with the specified
+     * reader. Documents read from the cache keep the precision and storage
+     * of the arrays of the parsed document. Use separate cache directories
+     * for readers with different options.
+     *
+     * @param directory
+     *            The cache directory. Created when needed.
+     * @param reader
+     *            The reader used to parse source files.
+     */
+
+    public DocumentCache(final File directory, final ColladaReader reader)
+    {
+        if (directory == null)
+            throw new IllegalArgumentException("directory must not be null");
+        if (reader == null)
+            throw new IllegalArgumentException("reader must not be null");
+        this.directory = directory;
+        this.reader = reader;
+    }
+
+
+    /**
+     * Returns the cache directory.
+     *
+     * @return The cache directory. Never null.
+     */
+
+    public File getDirectory()
+    {
+        return this.directory;
+    }
+
+
+    /**
+     * Reads the specified COLLADA file. The document is loaded from the
+     * cache if the cache contains a valid binary form of the file. Otherwise
+     * the file is parsed and the binary form is written to the cache. The
+     * cache is only a best effort: When the binary form can't be written
+     * (Like when the cache directory is read-only or full) then the parsed
+     * document is returned anyway.
+     *
+     * @param source
+     *            The COLLADA file to read.
+     * @return The document.
+     * @throws ParserException
+     *             When COLLADA file could not be parsed.
+     * @throws IOException
+     *             When the canonical path of the file could not be
+     *             determined.
+     */
+
+    public Document read(final File source) throws IOException
+    {
+        final File canonical = source.getCanonicalFile();
+        final File cacheFile = getCacheFile(canonical);
+        final Document cached = readCached(canonical, cacheFile);
+        if (cached != null) return cached;
+
+        // Take the key before parsing so a source modified while it is
+        // parsed is parsed again next time.
+        final long size = canonical.length();
+        final long lastModified = canonical.lastModified();
+        final Document document = this.reader.read(canonical);
+        try
+        {
+            writeCached(canonical, size, lastModified, document, cacheFile);
+        }
+        catch (final IOException e)
+        {
+            // Ignored, the document is simply parsed again next time
+        }
+        return document;
+    }
+
+
+    /**
+     * Checks if the cache contains a valid binary form of the specified
+     * COLLADA file.
+     *
+     * @param source
+     *            The COLLADA file.
+     * @return True if cached form is valid, false if not.
+     * @throws IOException
+     *             When the canonical path of the file could not be
+     *             determined.
+     */
+
+    public boolean isCached(final File source) throws IOException
+    {
+        final File canonical = source.getCanonicalFile();
+        final File cacheFile = getCacheFile(canonical);
+        if (!cacheFile.exists()) return false;
+        final DataInputStream stream = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(cacheFile)));
+        try
+        {
+            return readKey(stream, canonical);
+        }
+        catch (final IOException e)
+        {
+            return false;
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+
+    /**
+     * Removes the cached form of the specified COLLADA file.
+     *
+     * @param source
+     *            The COLLADA file.
+     * @throws IOException
+     *             When the canonical path of the file could not be
+     *             determined.
+     */
+
+    public void invalidate(final File source) throws IOException
+    {
+        getCacheFile(source.getCanonicalFile()).delete();
+    }
+
+
+    /**
+     * Returns the cache file for the specified source file.
+     *
+     * @param source
+     *            The canonical source file.
+     * @return The cache file.
+     */
+
+    private File getCacheFile(final File source)
+    {
+        final byte[] hash;
+        try
+        {
+            hash = MessageDigest.getInstance("SHA-1").digest(
+                source.getPath().getBytes("UTF-8"));
+        }
+        catch (final NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException(e.toString(), e);
+        }
+        catch (final IOException e)
+        {
+            throw new RuntimeException(e.toString(), e);
+        }
+        final StringBuilder name = new StringBuilder(hash.length * 2
+            + SUFFIX.length());
+        for (final byte b : hash)
+        {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16));
+            name.append(Character.forDigit(b & 0xf, 16));
+        }
+        name.append(SUFFIX);
+        return new File(this.directory, name.toString());
+    }
+
+
+    /**
+     * Reads the cache key from the specified stream and checks it against
+     * the source file.
+     *
+     * @param stream
+     *            The stream of the cache file.
+     * @param source
+     *            The canonical source file.
+     * @return True if key matches the source file, false if not.
+     * @throws IOException
+     *             When key could not be read.
+     */
+
+    private static boolean readKey(final DataInputStream stream,
+        final File source) throws IOException
+    {
+        return stream.readInt() == MAGIC
+            && stream.readUTF().equals(source.getPath())
+            && stream.readLong() == source.length()
+            && stream.readLong() == source.lastModified();
+    }
+
+
+    /**
+     * Reads the cached document.
+     *
+     * @param source
+     *            The canonical source file.
+     * @param cacheFile
+     *            The cache file.
+     * @return The cached document or null if cache file is missing, stale
+     *         or unreadable.
+     */
+
+    private static Document readCached(final File source,
+        final File cacheFile)
+    {
+        if (!cacheFile.exists()) return null;
+        try
+        {
+            final InputStream file = new FileInputStream(cacheFile);
+            try
+            {
+                final DataInputStream stream = new DataInputStream(
+                    new BufferedInputStream(file, BUFFER_SIZE));
+                if (!readKey(stream, source)) return null;
+                return BinaryDocument.read(stream, cacheFile.length());
+            }
+            finally
+            {
+                file.close();
+            }
+        }
+        catch (final IOException e)
+        {
+            // Unreadable cache files are replaced like stale ones
+            return null;
+        }
+        catch (final RuntimeException e)
+        {
+            // Corrupt cache files are replaced like stale ones
+            return null;
+        }
+    }
+
+
+    /**
+     * Writes the cached document.
+     *
+     * @param source
+     *            The canonical source file.
+     * @param size
+     *            The size of the source file.
+     * @param lastModified
+     *            The last modification time of the source file.
+     * @param document
+     *            The document to cache.
+     * @param cacheFile
+     *            The cache file.
+     * @throws IOException
+     *             When cache file could not be written.
+     */
+
+    private void writeCached(final File source, final long size,
+        final long lastModified, final Document document,
+        final File cacheFile) throws IOException
+    {
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()
+            && !this.directory.isDirectory())
+            throw new IOException("Unable to create cache directory: "
+                + this.directory);
+        final File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp",
+            this.directory);
+        boolean written = false;
+        try
+        {
+            final DataOutputStream stream = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile),
+                    BUFFER_SIZE));
+            try
+            {
+                stream.writeInt(MAGIC);
+                stream.writeUTF(source.getPath());
+                stream.writeLong(size);
+                stream.writeLong(lastModified);
+                BinaryDocument.write(document, stream);
+            }
+            finally
+            {
+                stream.close();
+            }
+            if (!tmpFile.renameTo(cacheFile))
+            {
+                cacheFile.delete();
+                if (!tmpFile.renameTo(cacheFile))
+                    throw new IOException("Unable to write cache file: "
+                        + cacheFile);
+            }
+            written = true;
+        }
+        finally
+        {
+            if (!written) tmpFile.delete();
+        }
+    }
+}
@@ -25,6 +25,9 @@ public final class AnimationChannel extends Element
     /** The animation target. */
     private String target;
 
+    /** The compiled animation target. Null if not compiled yet. */
+    private transient SidRef targetRef;
+
 
     /**
      * Constructor.
@@ -93,5 +96,22 @@ public final class AnimationChannel extends Element
         if (target == null)
             throw new IllegalArgumentException("target must not be null");
         this.target = target;
+        this.targetRef = null;
+    }
+
+
+    /**
+     * Returns the compiled SIDREF of the animation target. Resolve it with
+     * this channel as context to get the animated element.
+     *
+     * @return The compiled animation target. Never null.
+     * @throws IllegalArgumentException
+     *             When the target is not a valid SIDREF.
+     */
+
+    public SidRef getTargetRef()
+    {
+        if (this.targetRef == null) this.targetRef = new SidRef(this.target);
+        return this.targetRef;
     }
 }
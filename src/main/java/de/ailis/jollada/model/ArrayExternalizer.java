@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.model;
+
+import java.io.IOException;
+import java.nio.Buffer;
+
+
+/**
+ * Implemented by object output streams which store the values of float
+ * arrays and int lists outside of the serialized object graph. When a
+ * {@link FloatArray} or an {@link IntList} is written to such a stream then
+ * only the reference returned by {@link #externalize(Buffer)} is written
+ * instead of the values.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ * @see ArrayInternalizer
+ */
+
+public interface ArrayExternalizer
+{
+    /**
+     * Stores the specified values outside of the object graph and returns a
+     * reference to them.
+     *
+     * @param values
+     *            The values. A DoubleBuffer, FloatBuffer or IntBuffer with
+     *            position 0 and the values between position and limit. Must
+     *            not be modified.
+     * @return The serializable reference to the values.
+     * @throws IOException
+     *             When values could not be stored.
+     */
+
+    Object externalize(Buffer values) throws IOException;
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.model;
+
+import java.io.IOException;
+import java.nio.Buffer;
+
+
+/**
+ * Implemented by object input streams which read the values of float arrays
+ * and int lists from outside of the serialized object graph. When a
+ * {@link FloatArray} or an {@link IntList} is read from such a stream then
+ * the buffer returned by {@link #internalize(Object)} is used as its
+ * storage.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ * @see ArrayExternalizer
+ */
+
+public interface ArrayInternalizer
+{
+    /**
+     * Returns the values referenced by the specified reference.
+     *
+     * @param reference
+     *            The reference returned by
+     *            {@link ArrayExternalizer#externalize(Buffer)}.
+     * @return The values. A buffer of the same type as the externalized
+     *         buffer with position 0 and capacity equal to the number of
+     *         values. May be read-only, in which case the values are copied
+     *         before they are modified.
+     * @throws IOException
+     *             When values could not be read.
+     */
+
+    Buffer internalize(Object reference) throws IOException;
+}
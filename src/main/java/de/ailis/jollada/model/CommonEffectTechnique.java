@@ -98,6 +98,7 @@ public final class CommonEffectTechnique extends Element implements
         if (sid == null)
             throw new IllegalArgumentException("sid must not be null");
         this.sid = sid;
+        sidChanged();
     }
 
 
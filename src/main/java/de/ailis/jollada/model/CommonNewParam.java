@@ -113,6 +113,7 @@ public final class CommonNewParam extends Element implements ScopeIdentifiable
         if (sid == null)
             throw new IllegalArgumentException("sid must not be null");
         this.sid = sid;
+        sidChanged();
     }
 
 
@@ -67,6 +67,7 @@ public final class DataFlowParam extends Element implements ScopeIdentifiable
     public void setSid(final String sid)
     {
         this.sid = sid;
+        sidChanged();
     }
 
 
@@ -0,0 +1,27 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.model;
+
+
+/**
+ * Loads the data of a lazily loaded array.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ * @param <T>
+ *            The type of the loaded data.
+ */
+
+public interface DataLoader<T>
+{
+    /**
+     * Loads the data. This is called on the first access of the data and
+     * again when released data is accessed.
+     *
+     * @return The loaded data. Never null.
+     */
+
+    T load();
+}
@@ -5,9 +5,22 @@
 
 package de.ailis.jollada.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.lang.reflect.Modifier;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import de.ailis.jollada.exceptions.DocumentException;
 
@@ -21,7 +34,7 @@ import de.ailis.jollada.exceptions.DocumentException;
 public final class Document extends Element implements AssetElement
 {
     /** Serial version UID. */
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
     /** The COLLADA document version. */
     private final Version version;
@@ -63,8 +76,36 @@ public final class Document extends Element implements AssetElement
     private final VisualSceneLibraries visualSceneLibraries =
             new VisualSceneLibraries(this);
 
-    /** The ID-to-Element mapping. */
-    private final Map<String, Element> idMap = new HashMap<String, Element>();
+    /**
+     * The ID-to-Element mapping. Not serialized, the elements are registered
+     * again when the document has been read.
+     */
+    private transient Map<String, Element> idMap =
+        new HashMap<String, Element>();
+
+    /**
+     * The references resolved so far, mapped by ID. Only contains IDs of
+     * registered elements, the reference is dropped together with all URIs
+     * pointing to it when the element is unregistered. Not serialized,
+     * references are resolved again when needed.
+     */
+    private transient Map<String, Reference> references =
+        new HashMap<String, Reference>();
+
+    /**
+     * The resolved references mapped by the URI they were resolved from.
+     * URIs which could not be resolved are not cached.
+     */
+    private transient Map<URI, Reference> uriReferences =
+        new HashMap<URI, Reference>();
+
+    /**
+     * The registered elements mapped by their class. Not serialized, the
+     * elements are registered again when the document has been read. Sets
+     * are never removed so the number of entries only grows.
+     */
+    private transient Map<Class<?>, Set<Element>> typeMap =
+        new HashMap<Class<?>, Set<Element>>();
 
     /** The scene. */
     private Scene scene;
@@ -96,6 +137,28 @@ public final class Document extends Element implements AssetElement
     }
 
 
+    /**
+     * Reads the document.
+     *
+     * @param stream
+     *            The stream to read from.
+     * @throws IOException
+     *             When document could not be read.
+     * @throws ClassNotFoundException
+     *             When a class of the document could not be found.
+     */
+
+    private void readObject(final ObjectInputStream stream)
+        throws IOException, ClassNotFoundException
+    {
+        stream.defaultReadObject();
+        this.idMap = new HashMap<String, Element>();
+        this.references = new HashMap<String, Reference>();
+        this.uriReferences = new HashMap<URI, Reference>();
+        this.typeMap = new HashMap<Class<?>, Set<Element>>();
+    }
+
+
     /**
      * Registers an element.
      *
@@ -108,11 +171,15 @@ public final class Document extends Element implements AssetElement
         if (element == null)
             throw new IllegalArgumentException("element must not be null");
 
-
-        final String id = element.id;
-        if (id != null && this.idMap.put(id, element) != null)
-            throw new DocumentException(
-                "Element with id '" + id + "' already registered");
+        registerId(element);
+        final Class<?> type = element.getClass();
+        Set<Element> elements = this.typeMap.get(type);
+        if (elements == null)
+        {
+            elements = new LinkedHashSet<Element>();
+            this.typeMap.put(type, elements);
+        }
+        elements.add(element);
     }
 
 
@@ -128,10 +195,47 @@ public final class Document extends Element implements AssetElement
         if (element == null)
             throw new IllegalArgumentException("element must not be null");
 
+        unregisterId(element);
+        final Set<Element> elements = this.typeMap.get(element.getClass());
+        if (elements != null) elements.remove(element);
+    }
+
+
+    /**
+     * Registers the ID of an element.
+     *
+     * @param element
+     *            The element to register
+     */
+
+    void registerId(final Element element)
+    {
+        final String id = element.id;
+        if (id == null) return;
+        if (this.idMap.put(id, element) != null)
+            throw new DocumentException(
+                "Element with id '" + id + "' already registered");
+    }
+
+
+    /**
+     * Unregisters the ID of an element.
+     *
+     * @param element
+     *            The element to unregister
+     */
+
+    void unregisterId(final Element element)
+    {
         final String id = element.id;
-        if (id != null && this.idMap.remove(id) == null)
+        if (id == null) return;
+        if (this.idMap.remove(id) == null)
             throw new DocumentException(
                 "Element with id '" + id + "' not registered");
+        final Reference reference = this.references.remove(id);
+        if (reference != null)
+            for (final URI uri : reference.uris)
+                this.uriReferences.remove(uri);
     }
 
 
@@ -169,6 +273,10 @@ public final class Document extends Element implements AssetElement
     public void setBase(final URI base)
     {
         this.base = base;
+
+        // Absolute URIs may now point to a different document
+        this.uriReferences.clear();
+        this.references.clear();
     }
 
 
@@ -293,6 +401,162 @@ public final class Document extends Element implements AssetElement
     }
 
 
+    /**
+     * Returns all elements of this document which are instances of the
+     * specified type. The returned collection is an unmodifiable live view
+     * which reflects all later changes of the document. Iterating it visits
+     * the elements in the order in which they were inserted into the
+     * document, grouped by their class.
+     *
+     * @param <T>
+     *            The element type.
+     * @param type
+     *            The element type. Must not be null. May be an abstract
+     *            class like Transform or Instance.
+     * @return The elements. Never null. May be empty.
+     */
+
+    public <T extends Element> Collection<T> getElements(final Class<T> type)
+    {
+        if (type == null)
+            throw new IllegalArgumentException("type must not be null");
+        return new TypeView<T>(type);
+    }
+
+
+    /**
+     * Returns the number of elements of this document which are instances
+     * of the specified type.
+     *
+     * @param type
+     *            The element type. Must not be null.
+     * @return The number of elements.
+     */
+
+    public int getElementCount(final Class<? extends Element> type)
+    {
+        if (type == null)
+            throw new IllegalArgumentException("type must not be null");
+        final Set<Element> elements = this.typeMap.get(type);
+        if (elements != null && Modifier.isFinal(type.getModifiers()))
+            return elements.size();
+        int count = 0;
+        for (final Map.Entry<Class<?>, Set<Element>> entry : this.typeMap
+            .entrySet())
+            if (type.isAssignableFrom(entry.getKey()))
+                count += entry.getValue().size();
+        return count;
+    }
+
+
+    /**
+     * Resolves the specified URI to an element of this document. The URI
+     * must be a fragment-only URI like "#id" or an URI pointing to the base
+     * URI of this document with a fragment. Successful resolutions are
+     * cached so following the same URI again only needs a single hash
+     * lookup. URIs which can't be resolved are not cached so resolving
+     * foreign or dangling URIs doesn't grow the cache. Cached URIs are
+     * dropped when the referenced element is removed from the document or
+     * when its ID changes.
+     *
+     * @param uri
+     *            The URI to resolve. Must not be null.
+     * @return The referenced element. Null when URI doesn't point into this
+     *         document or no element with the referenced ID exists.
+     */
+
+    public Element resolve(final URI uri)
+    {
+        if (uri == null)
+            throw new IllegalArgumentException("uri must not be null");
+        Reference reference = this.uriReferences.get(uri);
+        if (reference == null)
+        {
+            final String id = getLocalId(uri);
+            if (id == null) return null;
+            reference = this.references.get(id);
+            if (reference == null)
+            {
+                final Element element = this.idMap.get(id);
+                if (element == null) return null;
+                reference = new Reference(element);
+                this.references.put(id, reference);
+            }
+            reference.uris.add(uri);
+            this.uriReferences.put(uri, reference);
+        }
+        return reference.element;
+    }
+
+
+    /**
+     * Returns the number of URIs currently cached by {@link #resolve(URI)}.
+     *
+     * @return The number of cached URIs.
+     */
+
+    int getResolvedUriCount()
+    {
+        return this.uriReferences.size();
+    }
+
+
+    /**
+     * Resolves the specified URI to an element of the specified type.
+     *
+     * @param <T>
+     *            The element type.
+     * @param uri
+     *            The URI to resolve. Must not be null.
+     * @param type
+     *            The expected element type. Must not be null.
+     * @return The referenced element. Null when not found or when the
+     *         referenced element is not of the specified type.
+     * @see #resolve(URI)
+     */
+
+    public <T extends Element> T resolve(final URI uri, final Class<T> type)
+    {
+        if (type == null)
+            throw new IllegalArgumentException("type must not be null");
+        final Element element = resolve(uri);
+        return type.isInstance(element) ? type.cast(element) : null;
+    }
+
+
+    /**
+     * Returns the ID referenced by the specified URI if it points into this
+     * document.
+     *
+     * @param uri
+     *            The URI.
+     * @return The referenced ID or null if URI doesn't point into this
+     *         document.
+     */
+
+    private String getLocalId(final URI uri)
+    {
+        final String fragment = uri.getFragment();
+        if (fragment == null || uri.isOpaque()) return null;
+        if (uri.getScheme() == null && uri.getAuthority() == null
+            && uri.getQuery() == null && uri.getPath().length() == 0)
+            return fragment;
+        if (this.base == null || this.base.isOpaque()) return null;
+        try
+        {
+            final URI documentUri = new URI(uri.getScheme(),
+                uri.getSchemeSpecificPart(), null);
+            final URI baseUri = new URI(this.base.getScheme(),
+                this.base.getSchemeSpecificPart(), null);
+            return documentUri.equals(baseUri) ? fragment : null;
+        }
+        catch (final URISyntaxException e)
+        {
+            return null;
+        }
+    }
+
+
     /**
      * Returns the scene.
      *
@@ -332,4 +596,151 @@ public final class Document extends Element implements AssetElement
             this.scene = scene;
         }
     }
+
+
+    /**
+     * Live view on the registered elements of a specific type.
+     *
+     * @param <T>
+     *            The element type.
+     */
+
+    private final class TypeView<T extends Element> extends
+        AbstractCollection<T>
+    {
+        /** The element type. */
+        private final Class<T> type;
+
+        /** The element sets of the matching classes. */
+        private final List<Set<Element>> sets = new ArrayList<Set<Element>>();
+
+        /** The number of classes in the type map when sets were collected. */
+        private int classes = -1;
+
+
+        /**
+         * Constructor.
+         *
+         * @param type
+         *            The element type.
+         */
+
+        TypeView(final Class<T> type)
+        {
+            this.type = type;
+        }
+
+
+        /**
+         * Returns the element sets of the matching classes.
+         *
+         * @return The element sets.
+         */
+
+        private List<Set<Element>> getSets()
+        {
+            final Map<Class<?>, Set<Element>> typeMap = Document.this.typeMap;
+            if (this.classes != typeMap.size())
+            {
+                this.sets.clear();
+                for (final Map.Entry<Class<?>, Set<Element>> entry : typeMap
+                    .entrySet())
+                    if (this.type.isAssignableFrom(entry.getKey()))
+                        this.sets.add(entry.getValue());
+                this.classes = typeMap.size();
+            }
+            return this.sets;
+        }
+
+
+        /**
+         * @see java.util.AbstractCollection#size()
+         */
+
+        @Override
+        public int size()
+        {
+            int size = 0;
+            for (final Set<Element> set : getSets())
+                size += set.size();
+            return size;
+        }
+
+
+        /**
+         * @see java.util.AbstractCollection#contains(java.lang.Object)
+         */
+
+        @Override
+        public boolean contains(final Object o)
+        {
+            if (!this.type.isInstance(o)) return false;
+            final Set<Element> set = Document.this.typeMap.get(o.getClass());
+            return set != null && set.contains(o);
+        }
+
+
+        /**
+         * @see java.util.AbstractCollection#iterator()
+         */
+
+        @Override
+        public Iterator<T> iterator()
+        {
+            final Iterator<Set<Element>> setIterator = getSets().iterator();
+            return new Iterator<T>()
+            {
+                private Iterator<Element> current = Collections
+                    .<Element>emptySet().iterator();
+
+                @Override
+                public boolean hasNext()
+                {
+                    while (!this.current.hasNext() && setIterator.hasNext())
+                        this.current = setIterator.next().iterator();
+                    return this.current.hasNext();
+                }
+
+                @Override
+                public T next()
+                {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    return TypeView.this.type.cast(this.current.next());
+                }
+
+                @Override
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+
+    /**
+     * A resolved reference to a registered element ID.
+     */
+
+    private static final class Reference
+    {
+        /** The referenced element. */
+        final Element element;
+
+        /** The URIs resolved to this reference. */
+        final List<URI> uris = new ArrayList<URI>(1);
+
+
+        /**
+         * Constructor.
+         *
+         * @param element
+         *            The referenced element. Must not be null.
+         */
+
+        Reference(final Element element)
+        {
+            this.element = element;
+        }
+    }
 }
@@ -79,6 +79,7 @@ public final class EffectInstance extends Element implements ScopeIdentifiable
     public void setSid(final String sid)
     {
         this.sid = sid;
+        sidChanged();
     }
 
 
@@ -5,9 +5,19 @@
 
 package de.ailis.jollada.model;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectInputValidation;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import de.ailis.jollada.events.ElementListener;
 
@@ -15,28 +25,61 @@ import de.ailis.jollada.events.ElementListener;
 /**
  * Abstract base class for all COLLADA elements.
  *
+ * <p>
+ * When an element is serialized then the parent, document and listener
+ * references are not written. Instead the element writes all elements of
+ * its subtree one after the other with the children before their parents,
+ * followed by the parent index of each element. So no element references an
+ * element which has not been written yet and the serialization doesn't
+ * recurse into the tree no matter how deep it is. The links, the ID
+ * registrations of the document and the listeners of element lists are
+ * restored when the whole object graph has been read.
+ * </p>
+ *
  * @author Klaus Reimer (k@ailis.de)
  */
 
 public abstract class Element implements Serializable
 {
     /** Serial version UID. */
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * Set while a subtree is written by the current thread. Elements written
+     * while set are part of this subtree and don't write a subtree on their
+     * own.
+     */
+    private static final ThreadLocal<Boolean> WRITING_TREE =
+        new ThreadLocal<Boolean>();
 
     /** The document this element is connected to. */
-    private Document document;
+    private transient Document document;
 
     /** The parent element. */
-    private Element parent;
+    private transient Element parent;
 
     /** The child elements. */
-    private final List<Element> children = new ArrayList<Element>();
+    private transient List<Element> children = new ArrayList<Element>();
 
     /** The element id (Only used by identifiables). */
     protected String id;
 
     /** The list of element listeners. */
-    private List<ElementListener> elementListeners;
+    private transient List<ElementListener> elementListeners;
+
+    /**
+     * The descendants of this element mapped by scope ID. Built on the
+     * first SID lookup and dropped when the subtree changes. Null if not
+     * built.
+     */
+    private transient Map<String, Element> sidIndex;
+
+    /**
+     * Set when this element or one of its ancestors may have a SID index.
+     * When not set then changes in the subtree of this element don't need
+     * to invalidate anything.
+     */
+    private transient boolean sidIndexed;
 
 
     /**
@@ -78,13 +121,19 @@ public abstract class Element implements Serializable
                 "Element is already a child of this element");
 
         // Remove the element from its current parent
-        if (element.parent != null) element.parent.children.remove(element);
+        final Element oldParent = element.parent;
+        if (oldParent != null)
+        {
+            oldParent.removeFromChildren(element);
+            oldParent.invalidateSidIndex();
+        }
 
         // Set the elements parent
         element.setParent(this);
 
         // Add element to child list
         this.children.add(element);
+        invalidateSidIndex();
     }
 
 
@@ -102,13 +151,150 @@ public abstract class Element implements Serializable
                 "Element is not a child of this element");
 
         // Remove element from child list
-        this.children.remove(element);
+        removeFromChildren(element);
+        invalidateSidIndex();
 
         // Unset the parent
         element.setParent(null);
     }
 
 
+    /**
+     * Adds the specified elements to the child list of this element. The
+     * elements are removed from their current parents with a single pass
+     * over the child list of each parent.
+     *
+     * @param elements
+     *            The elements to add. Must not contain duplicates or
+     *            children of this element.
+     */
+
+    final void addChildren(final List<? extends Element> elements)
+    {
+        // Remove the elements from their current parents
+        final Map<Element, Set<Element>> oldParents =
+            new IdentityHashMap<Element, Set<Element>>();
+        for (final Element element : elements)
+        {
+            final Element oldParent = element.parent;
+            if (oldParent == null) continue;
+            Set<Element> oldChildren = oldParents.get(oldParent);
+            if (oldChildren == null)
+            {
+                oldChildren = newIdentitySet();
+                oldParents.put(oldParent, oldChildren);
+            }
+            oldChildren.add(element);
+        }
+        for (final Map.Entry<Element, Set<Element>> entry : oldParents
+            .entrySet())
+        {
+            final Element oldParent = entry.getKey();
+            oldParent.removeFromChildren(entry.getValue());
+            oldParent.invalidateSidIndex();
+        }
+
+        // Set the parent of the elements and add them to the child list
+        for (final Element element : elements)
+            element.setParent(this);
+        this.children.addAll(elements);
+        invalidateSidIndex();
+    }
+
+
+    /**
+     * Removes the specified elements from the child list of this element
+     * with a single pass over the child list.
+     *
+     * @param elements
+     *            The elements to remove. Must all be children of this
+     *            element.
+     */
+
+    final void removeChildren(final List<? extends Element> elements)
+    {
+        final Set<Element> removed = newIdentitySet();
+        for (final Element element : elements)
+        {
+            if (element.parent != this)
+                throw new IllegalStateException(
+                    "Element is not a child of this element");
+            removed.add(element);
+        }
+
+        // Remove elements from child list
+        removeFromChildren(removed);
+        invalidateSidIndex();
+
+        // Unset the parents
+        for (final Element element : elements)
+            element.setParent(null);
+    }
+
+
+    /**
+     * Removes the specified element from the child list. The first child is
+     * checked first and then the list is searched backwards by identity so
+     * removing the first or last child (Like when moving all children to
+     * another element) doesn't need to scan the whole list.
+     *
+     * @param element
+     *            The element to remove.
+     */
+
+    private void removeFromChildren(final Element element)
+    {
+        if (!this.children.isEmpty() && this.children.get(0) == element)
+        {
+            this.children.remove(0);
+            return;
+        }
+        for (int i = this.children.size() - 1; i > 0; i--)
+        {
+            if (this.children.get(i) == element)
+            {
+                this.children.remove(i);
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Removes the specified elements from the child list with a single pass
+     * over the list.
+     *
+     * @param elements
+     *            The elements to remove.
+     */
+
+    private void removeFromChildren(final Set<Element> elements)
+    {
+        final List<Element> children = this.children;
+        final int size = children.size();
+        int kept = 0;
+        for (int i = 0; i < size; i++)
+        {
+            final Element child = children.get(i);
+            if (!elements.contains(child)) children.set(kept++, child);
+        }
+        children.subList(kept, size).clear();
+    }
+
+
+    /**
+     * Creates a new set which compares elements by identity.
+     *
+     * @return The new set.
+     */
+
+    static Set<Element> newIdentitySet()
+    {
+        return Collections.newSetFromMap(
+            new IdentityHashMap<Element, Boolean>());
+    }
+
+
     /**
      * Sets the parent element and updates the document reference.
      *
@@ -193,15 +379,44 @@ public abstract class Element implements Serializable
         // Do nothing if id is not changed
         if (newId != null && newId.equals(this.id)) return;
 
-        if (this.document != null) this.document.unregister(this);
+        if (this.document != null) this.document.unregisterId(this);
         this.id = newId;
-        if (this.document != null) this.document.register(this);
+        if (this.document != null) this.document.registerId(this);
+    }
+
+
+    /**
+     * Must be called from the setSid methods of scope identifiable model
+     * classes after the scope ID has been changed.
+     */
+
+    protected final void sidChanged()
+    {
+        invalidateSidIndex();
+    }
+
+
+    /**
+     * Drops the SID indices of this element and all its ancestors.
+     */
+
+    private void invalidateSidIndex()
+    {
+        Element element = this;
+        while (element != null && element.sidIndexed)
+        {
+            element.sidIndex = null;
+            element.sidIndexed = false;
+            element = element.parent;
+        }
     }
 
 
     /**
      * Searches for the element with the specified scope ID in this scope and
-     * returns it.
+     * returns it. This element itself is checked first, then its
+     * descendants level by level. The descendants are indexed on the first
+     * call so following lookups are cheap until the subtree changes.
      *
      * @param sid
      *            The scope ID of the element to search.
@@ -210,24 +425,47 @@ public abstract class Element implements Serializable
 
     public final Element getBySid(final String sid)
     {
-        final List<Element> search = new ArrayList<Element>();
-        search.add(this);
-        while (search.size() > 0)
+        if (this instanceof ScopeIdentifiable
+            && sid.equals(((ScopeIdentifiable) this).getSid())) return this;
+        return getDescendantBySid(sid);
+    }
+
+
+    /**
+     * Searches for the descendant with the specified scope ID. When
+     * multiple descendants have this scope ID then the one nearest to this
+     * element is returned and from these the first one in document order.
+     *
+     * @param sid
+     *            The scope ID of the descendant to search.
+     * @return The found element. Null if not found.
+     */
+
+    final Element getDescendantBySid(final String sid)
+    {
+        Map<String, Element> index = this.sidIndex;
+        if (index == null)
         {
-            final Element[] elements = search
-                    .toArray(new Element[search.size()]);
-            search.clear();
-            for (final Element element : elements)
+            index = new HashMap<String, Element>();
+            this.sidIndexed = true;
+            final List<Element> elements = new ArrayList<Element>(
+                this.children);
+            for (int i = 0; i < elements.size(); i++)
             {
-                if (element instanceof ScopeIdentifiable
-                        && sid.equals(((ScopeIdentifiable) element).getSid()))
-                    return element;
-
-                for (final Element child : element.children)
-                    search.add(child);
+                final Element element = elements.get(i);
+                element.sidIndexed = true;
+                if (element instanceof ScopeIdentifiable)
+                {
+                    final String elementSid =
+                        ((ScopeIdentifiable) element).getSid();
+                    if (elementSid != null && !index.containsKey(elementSid))
+                        index.put(elementSid, element);
+                }
+                elements.addAll(element.children);
             }
+            this.sidIndex = index;
         }
-        return null;
+        return index.get(sid);
     }
 
 
@@ -264,6 +502,18 @@ public abstract class Element implements Serializable
     }
 
 
+    /**
+     * Returns the element listeners.
+     *
+     * @return The element listeners. Null if no listener was ever added.
+     */
+
+    final List<ElementListener> getElementListeners()
+    {
+        return this.elementListeners;
+    }
+
+
     /**
      * Fires the elementInserted event.
      */
@@ -313,4 +563,138 @@ public abstract class Element implements Serializable
                 .toArray(new ElementListener[this.elementListeners.size()]))
             listener.elementInsertedIntoDocument(this);
     }
+
+
+    /**
+     * Writes the element. If this element is not written as part of the
+     * subtree of another element then the subtree of this element is
+     * written first.
+     *
+     * @param stream
+     *            The stream to write to.
+     * @throws IOException
+     *             When element could not be written.
+     */
+
+    private void writeObject(final ObjectOutputStream stream)
+        throws IOException
+    {
+        stream.defaultWriteObject();
+        if (WRITING_TREE.get() != null)
+        {
+            stream.writeBoolean(false);
+            return;
+        }
+        stream.writeBoolean(true);
+        WRITING_TREE.set(Boolean.TRUE);
+        try
+        {
+            // Collect the subtree in pre-order with the index of the parent
+            // of each element. The root element itself is element 0.
+            final List<Element> elements = new ArrayList<Element>();
+            final List<Integer> parents = new ArrayList<Integer>();
+            elements.add(this);
+            parents.add(Integer.valueOf(-1));
+            for (int i = 0; i < elements.size(); i++)
+            {
+                final Integer parent = Integer.valueOf(i);
+                for (final Element child : elements.get(i).children)
+                {
+                    elements.add(child);
+                    parents.add(parent);
+                }
+            }
+
+            // Write the elements in reverse order so children are written
+            // before their parents
+            final int size = elements.size();
+            final int[] parentIndices = new int[size];
+            stream.writeInt(size - 1);
+            for (int i = size - 1; i > 0; i--)
+            {
+                stream.writeObject(elements.get(i));
+                parentIndices[i] = parents.get(i).intValue();
+            }
+            stream.writeObject(parentIndices);
+        }
+        finally
+        {
+            WRITING_TREE.remove();
+        }
+    }
+
+
+    /**
+     * Reads the element. If the element was written with its subtree then
+     * the subtree is read and linked when the whole object graph has been
+     * read.
+     *
+     * @param stream
+     *            The stream to read from.
+     * @throws IOException
+     *             When element could not be read.
+     * @throws ClassNotFoundException
+     *             When a class of the element could not be found.
+     */
+
+    private void readObject(final ObjectInputStream stream)
+        throws IOException, ClassNotFoundException
+    {
+        stream.defaultReadObject();
+        this.children = new ArrayList<Element>();
+        if (!stream.readBoolean()) return;
+
+        final int size = stream.readInt() + 1;
+        if (size < 1) throw new InvalidObjectException("Invalid subtree");
+        final Element[] elements = new Element[size];
+        elements[0] = this;
+        for (int i = size - 1; i > 0; i--)
+            elements[i] = (Element) stream.readObject();
+        final int[] parents = (int[]) stream.readObject();
+        if (parents.length != size)
+            throw new InvalidObjectException("Invalid subtree");
+        for (int i = 1; i < size; i++)
+            if (parents[i] < 0 || parents[i] >= i)
+                throw new InvalidObjectException("Invalid subtree");
+        stream.registerValidation(new ObjectInputValidation()
+        {
+            @Override
+            public void validateObject()
+            {
+                linkTree(elements, parents);
+            }
+        }, 1);
+    }
+
+
+    /**
+     * Links a deserialized subtree and registers its elements in the
+     * document of the subtree if the root element is a document.
+     *
+     * @param elements
+     *            The elements of the subtree in pre-order. The first
+     *            element is the root element.
+     * @param parents
+     *            The index of the parent of each element.
+     */
+
+    private static void linkTree(final Element[] elements,
+        final int[] parents)
+    {
+        final Element root = elements[0];
+        final Document document = root instanceof Document ? (Document) root
+            : null;
+        for (int i = 0; i < elements.length; i++)
+        {
+            final Element element = elements[i];
+            if (i > 0)
+            {
+                final Element parent = elements[parents[i]];
+                element.parent = parent;
+                parent.children.add(element);
+            }
+            element.document = document;
+            if (document != null) document.register(element);
+        }
+    }
 }
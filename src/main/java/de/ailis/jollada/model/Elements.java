@@ -5,9 +5,15 @@
 
 package de.ailis.jollada.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import de.ailis.jollada.events.ElementAdapter;
 import de.ailis.jollada.events.ElementListener;
@@ -31,18 +37,11 @@ public abstract class Elements<T extends Element> extends ArrayList<T>
 
     /**
      * This element listener removes elements from the elements list when it was
-     * removed from its parent.
+     * removed from its parent. Not serialized, it is created again when the
+     * list is read.
      */
-    private final ElementListener elementListener = new ElementAdapter()
-    {
-        private static final long serialVersionUID = 1L;
-
-        @Override
-        public void elementRemoved(final Element element)
-        {
-            removeOnly(element);
-        }
-    };
+    private transient ElementListener elementListener =
+        createElementListener();
 
 
     /**
@@ -62,6 +61,61 @@ public abstract class Elements<T extends Element> extends ArrayList<T>
     }
 
 
+    /**
+     * Creates the element listener which removes elements from this list
+     * when they are removed from their parent.
+     *
+     * @return The element listener.
+     */
+
+    private ElementListener createElementListener()
+    {
+        return new OwnerListener();
+    }
+
+
+    /**
+     * Returns the elements list containing the specified element.
+     *
+     * @param element
+     *            The element.
+     * @return The elements list. Null if element is not in an elements
+     *         list.
+     */
+
+    private static Elements<?> getOwner(final Element element)
+    {
+        final List<ElementListener> listeners = element.getElementListeners();
+        if (listeners == null) return null;
+        for (final ElementListener listener : listeners)
+            if (listener instanceof Elements.OwnerListener)
+                return ((Elements<?>.OwnerListener) listener).getOwner();
+        return null;
+    }
+
+
+    /**
+     * Reads the list. The element listener is installed on the elements
+     * again because element listeners are not serialized.
+     *
+     * @param stream
+     *            The stream to read from.
+     * @throws IOException
+     *             When list could not be read.
+     * @throws ClassNotFoundException
+     *             When a class of the list could not be found.
+     */
+
+    private void readObject(final ObjectInputStream stream)
+        throws IOException, ClassNotFoundException
+    {
+        stream.defaultReadObject();
+        this.elementListener = createElementListener();
+        for (final T element : this)
+            element.addElementListener(this.elementListener);
+    }
+
+
     /**
      * @see java.util.ArrayList#set(int, java.lang.Object)
      */
@@ -131,11 +185,143 @@ public abstract class Elements<T extends Element> extends ArrayList<T>
 
     final void removeOnly(final Element element)
     {
-        super.remove(element);
+        if (!isEmpty() && get(0) == element)
+            super.remove(0);
+        else
+        {
+            for (int i = size() - 1; i > 0; i--)
+            {
+                if (get(i) == element)
+                {
+                    super.remove(i);
+                    break;
+                }
+            }
+        }
         element.removeElementListener(this.elementListener);
     }
 
 
+    /**
+     * Removes the specified elements only from this elements list (Not from
+     * their parent) with a single pass over the list. This is used
+     * internally before the elements are moved to a different list.
+     *
+     * @param elements
+     *            The elements to remove.
+     */
+
+    private void removeAllOnly(final List<Element> elements)
+    {
+        final Set<Element> removed = Element.newIdentitySet();
+        removed.addAll(elements);
+        final int size = size();
+        int kept = 0;
+        for (int i = 0; i < size; i++)
+        {
+            final T element = get(i);
+            if (!removed.contains(element)) super.set(kept++, element);
+        }
+        removeRange(kept, size);
+        for (final Element element : elements)
+            element.removeElementListener(this.elementListener);
+    }
+
+
+    /**
+     * Removes the specified elements from the elements lists they are
+     * currently in. Each list is compacted with a single pass.
+     *
+     * @param elements
+     *            The elements to detach.
+     */
+
+    private static void detach(final List<? extends Element> elements)
+    {
+        final Map<Elements<?>, List<Element>> owners =
+            new IdentityHashMap<Elements<?>, List<Element>>();
+        for (final Element element : elements)
+        {
+            final Elements<?> owner = getOwner(element);
+            if (owner == null) continue;
+            List<Element> owned = owners.get(owner);
+            if (owned == null)
+            {
+                owned = new ArrayList<Element>();
+                owners.put(owner, owned);
+            }
+            owned.add(element);
+        }
+        for (final Map.Entry<Elements<?>, List<Element>> entry : owners
+            .entrySet())
+            entry.getKey().removeAllOnly(entry.getValue());
+    }
+
+
+    /**
+     * Prepares the specified elements for being added to this list. Checks
+     * that none of the elements is already a child of the parent and that
+     * no element is added twice. Then removes the elements from the
+     * elements lists they are currently in.
+     *
+     * @param elements
+     *            The elements to add.
+     * @return The elements to add as a list.
+     */
+
+    private List<T> prepareAdd(final Collection<? extends T> elements)
+    {
+        final List<T> added = new ArrayList<T>(elements);
+        final Set<Element> seen = Element.newIdentitySet();
+        for (final T element : added)
+            if (element.getParent() == this.parent || !seen.add(element))
+                throw new IllegalStateException(
+                    "Element is already a child of this element");
+        detach(added);
+        return added;
+    }
+
+
+    /**
+     * Removes all elements which are (or are not) contained in the specified
+     * collection with a single pass over the list and a single pass over
+     * the child list of the parent.
+     *
+     * @param elements
+     *            The collection to look up the elements in.
+     * @param contained
+     *            True to remove the contained elements, false to remove the
+     *            not contained elements.
+     * @return True if this list was modified, false if not.
+     */
+
+    private boolean removeMatching(final Collection<?> elements,
+        final boolean contained)
+    {
+        // Use hash lookup when specified collection is not a set already
+        final Collection<?> lookup = elements instanceof Set ? elements
+            : new HashSet<Object>(elements);
+
+        final List<T> removed = new ArrayList<T>();
+        final int size = size();
+        int kept = 0;
+        for (int i = 0; i < size; i++)
+        {
+            final T element = get(i);
+            if (lookup.contains(element) == contained)
+                removed.add(element);
+            else
+                super.set(kept++, element);
+        }
+        if (removed.isEmpty()) return false;
+        removeRange(kept, size);
+        for (final T element : removed)
+            element.removeElementListener(this.elementListener);
+        this.parent.removeChildren(removed);
+        return true;
+    }
+
+
     /**
      * @see java.util.ArrayList#remove(java.lang.Object)
      */
@@ -161,12 +347,12 @@ public abstract class Elements<T extends Element> extends ArrayList<T>
     @Override
     public final void clear()
     {
-        for (final T element : this)
-        {
-            element.removeElementListener(this.elementListener);
-            this.parent.removeChild(element);
-        }
+        if (isEmpty()) return;
+        final List<T> removed = new ArrayList<T>(this);
         super.clear();
+        for (final T element : removed)
+            element.removeElementListener(this.elementListener);
+        this.parent.removeChildren(removed);
     }
 
 
@@ -177,13 +363,11 @@ public abstract class Elements<T extends Element> extends ArrayList<T>
     @Override
     public final boolean addAll(final Collection<? extends T> elements)
     {
-        for (final Element element : elements.toArray(new Element[elements
-            .size()]))
-        {
-            this.parent.addChild(element);
+        final List<T> added = prepareAdd(elements);
+        this.parent.addChildren(added);
+        for (final T element : added)
             element.addElementListener(this.elementListener);
-        }
-        return super.addAll(elements);
+        return super.addAll(added);
     }
 
 
@@ -195,13 +379,14 @@ public abstract class Elements<T extends Element> extends ArrayList<T>
     public final boolean addAll(final int index,
         final Collection<? extends T> elements)
     {
-        for (final Element element : elements.toArray(new Element[elements
-                                                                  .size()]))
-        {
-            this.parent.addChild(element);
+        if (index < 0 || index > size())
+            throw new IndexOutOfBoundsException("Index: " + index
+                + ", Size: " + size());
+        final List<T> added = prepareAdd(elements);
+        this.parent.addChildren(added);
+        for (final T element : added)
             element.addElementListener(this.elementListener);
-        }
-        return super.addAll(index, elements);
+        return super.addAll(index, added);
     }
 
 
@@ -212,17 +397,7 @@ public abstract class Elements<T extends Element> extends ArrayList<T>
     @Override
     public final boolean removeAll(final Collection<?> elements)
     {
-        boolean modified = false;
-        final Iterator<?> e = iterator();
-        while (e.hasNext())
-        {
-            if (elements.contains(e.next()))
-            {
-                e.remove();
-                modified = true;
-            }
-        }
-        return modified;
+        return removeMatching(elements, true);
     }
 
 
@@ -233,16 +408,42 @@ public abstract class Elements<T extends Element> extends ArrayList<T>
     @Override
     public final boolean retainAll(final Collection<?> elements)
     {
-        boolean modified = false;
-        final Iterator<?> e = iterator();
-        while (e.hasNext())
+        return removeMatching(elements, false);
+    }
+
+
+    /**
+     * The element listener which removes elements from this list when they
+     * are removed from their parent. Also identifies the list an element
+     * is in.
+     */
+
+    private final class OwnerListener extends ElementAdapter
+    {
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+
+        /**
+         * Returns the elements list this listener belongs to.
+         *
+         * @return The elements list.
+         */
+
+        Elements<T> getOwner()
         {
-            if (!elements.contains(e.next()))
-            {
-                e.remove();
-                modified = true;
-            }
+            return Elements.this;
+        }
+
+
+        /**
+         * @see ElementListener#elementRemoved(Element)
+         */
+
+        @Override
+        public void elementRemoved(final Element element)
+        {
+            removeOnly(element);
         }
-        return modified;
     }
 }
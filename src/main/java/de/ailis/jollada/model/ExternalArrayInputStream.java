@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.nio.Buffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * Object input stream which backs {@link FloatArray} and {@link IntList}
+ * objects with arrays read separately from the serialized object graph.
+ *
+ * Only the classes of the document model and the JDK classes it uses can
+ * be read from the stream. Other classes and proxies are rejected so a
+ * manipulated file can't instantiate arbitrary serializable classes.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ * @see ExternalArrayOutputStream
+ */
+
+public class ExternalArrayInputStream extends ObjectInputStream implements
+    ArrayInternalizer
+{
+    /** The names of the JDK classes used by the document model. */
+    private static final Set<String> ALLOWED_CLASSES = new HashSet<String>(
+        Arrays.asList("java.lang.Boolean", "java.lang.Byte",
+            "java.lang.Character", "java.lang.Double", "java.lang.Enum",
+            "java.lang.Float", "java.lang.Integer", "java.lang.Long",
+            "java.lang.Number", "java.lang.Short", "java.lang.String",
+            "java.net.URI", "java.util.ArrayList"));
+
+    /** The packages whose classes are used by the document model. */
+    private static final String[] ALLOWED_PACKAGES = {
+        "de.ailis.jollada.model.", "de.ailis.gramath." };
+
+    /** The arrays in the order of their references. */
+    private final Buffer[] arrays;
+
+
+    /**
+     * Constructor.
+     *
+     * @param stream
+     *            The stream to read the serialized object graph from.
+     * @param arrays
+     *            The arrays in the order of their references.
+     * @throws IOException
+     *             When stream header could not be read.
+     */
+
+    public ExternalArrayInputStream(final InputStream stream,
+        final Buffer[] arrays) throws IOException
+    {
+        super(stream);
+        this.arrays = arrays;
+    }
+
+
+    /**
+     * @see ArrayInternalizer#internalize(Object)
+     */
+
+    @Override
+    public final Buffer internalize(final Object reference)
+        throws IOException
+    {
+        if (!(reference instanceof Integer))
+            throw new InvalidObjectException("Invalid array reference: "
+                + reference);
+        final int index = ((Integer) reference).intValue();
+        if (index < 0 || index >= this.arrays.length)
+            throw new InvalidObjectException("Invalid array reference: "
+                + reference);
+        return this.arrays[index];
+    }
+
+
+    /**
+     * Checks if the class with the specified name may be read from the
+     * stream. Arrays are allowed if their component type is allowed.
+     *
+     * @param name
+     *            The class name as returned by {@link Class#getName()}.
+     * @return True if class is allowed, false if not.
+     */
+
+    protected boolean isAllowedClass(final String name)
+    {
+        if (name.startsWith("["))
+        {
+            final String component = name.substring(name.lastIndexOf('[')
+                + 1);
+            if (component.length() == 1) return true;
+            return component.startsWith("L") && component.endsWith(";")
+                && isAllowedClass(component.substring(1,
+                    component.length() - 1));
+        }
+        if (ALLOWED_CLASSES.contains(name)) return true;
+        for (final String allowedPackage : ALLOWED_PACKAGES)
+            if (name.startsWith(allowedPackage)) return true;
+        return false;
+    }
+
+
+    /**
+     * @see ObjectInputStream#resolveClass(ObjectStreamClass)
+     */
+
+    @Override
+    protected Class<?> resolveClass(final ObjectStreamClass desc)
+        throws IOException, ClassNotFoundException
+    {
+        if (!isAllowedClass(desc.getName()))
+            throw new InvalidClassException(desc.getName(),
+                "Class not allowed in serialized document");
+        return super.resolveClass(desc);
+    }
+
+
+    /**
+     * @see ObjectInputStream#resolveProxyClass(String[])
+     */
+
+    @Override
+    protected Class<?> resolveProxyClass(final String[] interfaces)
+        throws InvalidClassException
+    {
+        throw new InvalidClassException(Arrays.toString(interfaces),
+            "Proxy classes not allowed in serialized document");
+    }
+}
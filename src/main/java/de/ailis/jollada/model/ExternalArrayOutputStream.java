@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.model;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Object output stream which collects the values of {@link FloatArray} and
+ * {@link IntList} objects instead of writing them. The values are
+ * referenced by their index in the list of collected arrays. The owner of
+ * the stream writes the collected arrays in its own format, usually with
+ * {@link #writeValues(WritableByteChannel, ByteBuffer, Buffer)}.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ * @see ExternalArrayInputStream
+ */
+
+public class ExternalArrayOutputStream extends ObjectOutputStream implements
+    ArrayExternalizer
+{
+    /** The array type of double values. */
+    public static final int TYPE_DOUBLE = 0;
+
+    /** The array type of float values. */
+    public static final int TYPE_FLOAT = 1;
+
+    /** The array type of int values. */
+    public static final int TYPE_INT = 2;
+
+    /** The collected arrays. */
+    private final List<Buffer> arrays = new ArrayList<Buffer>();
+
+
+    /**
+     * Constructor.
+     *
+     * @param stream
+     *            The stream to write the serialized object graph to.
+     * @throws IOException
+     *             When stream header could not be written.
+     */
+
+    public ExternalArrayOutputStream(final OutputStream stream)
+        throws IOException
+    {
+        super(stream);
+    }
+
+
+    /**
+     * @see ArrayExternalizer#externalize(Buffer)
+     */
+
+    @Override
+    public final Object externalize(final Buffer values)
+    {
+        getType(values);
+        this.arrays.add(values);
+        return Integer.valueOf(this.arrays.size() - 1);
+    }
+
+
+    /**
+     * Returns the collected arrays.
+     *
+     * @return The collected arrays in the order of their references.
+     */
+
+    public final List<Buffer> getArrays()
+    {
+        return this.arrays;
+    }
+
+
+    /**
+     * Returns the array type of the specified values.
+     *
+     * @param values
+     *            The values.
+     * @return The array type.
+     * @throws IllegalArgumentException
+     *             When values are no double, float or int buffer.
+     */
+
+    public static int getType(final Buffer values)
+    {
+        if (values instanceof DoubleBuffer) return TYPE_DOUBLE;
+        if (values instanceof FloatBuffer) return TYPE_FLOAT;
+        if (values instanceof IntBuffer) return TYPE_INT;
+        throw new IllegalArgumentException("Unsupported buffer type: "
+            + values.getClass());
+    }
+
+
+    /**
+     * Returns the size of a single value of the specified array type in
+     * bytes.
+     *
+     * @param type
+     *            The array type.
+     * @return The size of a single value.
+     */
+
+    public static int getValueSize(final int type)
+    {
+        return type == TYPE_DOUBLE ? 8 : 4;
+    }
+
+
+    /**
+     * Returns the size of a single value of the specified values in bytes.
+     *
+     * @param values
+     *            The values.
+     * @return The size of a single value.
+     */
+
+    public static int getValueSize(final Buffer values)
+    {
+        return getValueSize(getType(values));
+    }
+
+
+    /**
+     * Writes the raw values of an array to the specified channel.
+     *
+     * @param channel
+     *            The channel to write to.
+     * @param buffer
+     *            The buffer used to convert the values. Its byte order is
+     *            the byte order of the written values.
+     * @param values
+     *            The values to write. Not modified.
+     * @throws IOException
+     *             When the values could not be written.
+     */
+
+    public static void writeValues(final WritableByteChannel channel,
+        final ByteBuffer buffer, final Buffer values) throws IOException
+    {
+        final int type = getType(values);
+        final int valueSize = getValueSize(type);
+        final int chunkSize = buffer.capacity() / valueSize;
+        final int size = values.remaining();
+        final int position = values.position();
+        for (int start = 0; start < size; start += chunkSize)
+        {
+            final int end = Math.min(size, start + chunkSize);
+            buffer.clear();
+            if (type == TYPE_DOUBLE)
+            {
+                final DoubleBuffer chunk = ((DoubleBuffer) values)
+                    .duplicate();
+                chunk.limit(position + end).position(position + start);
+                buffer.asDoubleBuffer().put(chunk);
+            }
+            else if (type == TYPE_FLOAT)
+            {
+                final FloatBuffer chunk = ((FloatBuffer) values).duplicate();
+                chunk.limit(position + end).position(position + start);
+                buffer.asFloatBuffer().put(chunk);
+            }
+            else
+            {
+                final IntBuffer chunk = ((IntBuffer) values).duplicate();
+                chunk.limit(position + end).position(position + start);
+                buffer.asIntBuffer().put(chunk);
+            }
+            buffer.limit((end - start) * valueSize);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+}
@@ -5,9 +5,29 @@
 
 package de.ailis.jollada.model;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
 
 /**
- * Array with double-precision floating point elements.
+ * Array with floating point elements. The elements are stored as doubles or
+ * as floats depending on the {@link Precision} of the array. In both cases
+ * the elements can be accessed as doubles and as floats.
+ *
+ * The elements are stored in a NIO buffer which is either backed by a Java
+ * array or allocated directly outside of the Java heap. Read-only views of
+ * this buffer can be obtained with {@link #getDoubleBuffer()} and
+ * {@link #getFloatBuffer()} so the elements can be passed to native code
+ * without copying them.
  *
  * @author Klaus Reimer (k@ailis.de)
  */
@@ -21,10 +41,40 @@ public final class FloatArray extends Array
     public static final int DEFAULT_MAGNITUDE = 38;
 
     /** Serial version UID. */
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
+
+    /** The precision in which the values are stored. */
+    private Precision precision = Precision.DOUBLE;
+
+    /** The storage of the values. */
+    private Storage storage = Storage.HEAP;
+
+    /** The number of values. */
+    private int count;
+
+    /**
+     * The data with double precision. Null while the data is loaded lazily
+     * or if values are stored with single precision.
+     */
+    private transient DoubleBuffer data;
+
+    /**
+     * The data with single precision. Null while the data is loaded lazily
+     * or if values are stored with double precision.
+     */
+    private transient FloatBuffer floatData;
+
+    /** The loader of lazily loaded data. Null if data is not lazy. */
+    private transient DataLoader<double[]> loader;
 
-    /** The data. */
-    private double[] data;
+    /** If lazily loaded data may be released by the garbage collector. */
+    private transient boolean releasable;
+
+    /**
+     * The released data (A double or float buffer depending on the
+     * precision). Only used for releasable lazily loaded data.
+     */
+    private transient Reference<Buffer> loadedData;
 
     /**
      * The number of significant decimal digits of the float values that can be
@@ -47,10 +97,508 @@ public final class FloatArray extends Array
      */
 
     public FloatArray(final int count)
+    {
+        this(count, Precision.DOUBLE);
+    }
+
+
+    /**
+     * Constructs a new float array with the specified precision.
+     *
+     * @param count
+     *            The data size.
+     * @param precision
+     *            The precision in which the values are stored. Must not be
+     *            null.
+     */
+
+    public FloatArray(final int count, final Precision precision)
+    {
+        this(count, precision, Storage.HEAP);
+    }
+
+
+    /**
+     * Constructs a new float array with the specified precision and storage.
+     *
+     * @param count
+     *            The data size.
+     * @param precision
+     *            The precision in which the values are stored. Must not be
+     *            null.
+     * @param storage
+     *            The storage of the values. Must not be null.
+     */
+
+    public FloatArray(final int count, final Precision precision,
+        final Storage storage)
     {
         if (count < 0)
             throw new IllegalArgumentException("count must be >= 0");
-        this.data = new double[count];
+        if (precision == null)
+            throw new IllegalArgumentException("precision must not be null");
+        if (storage == null)
+            throw new IllegalArgumentException("storage must not be null");
+        this.precision = precision;
+        this.storage = storage;
+        this.count = count;
+        if (precision == Precision.SINGLE)
+            this.floatData = allocateFloats(count, storage);
+        else
+            this.data = allocateDoubles(count, storage);
+    }
+
+
+    /**
+     * Constructs a new float array with lazily loaded values. The values are
+     * loaded with the specified loader on first access. Releasable values are
+     * only softly referenced so the garbage collector may release them when
+     * memory runs low. They are loaded again on next access then. Values are
+     * never released again after the array has been modified.
+     *
+     * @param count
+     *            The number of values. The loader must return exactly this
+     *            number of values.
+     * @param loader
+     *            The loader of the values. Must not be null.
+     * @param releasable
+     *            If loaded values may be released.
+     */
+
+    public FloatArray(final int count, final DataLoader<double[]> loader,
+        final boolean releasable)
+    {
+        this(count, loader, releasable, Precision.DOUBLE);
+    }
+
+
+    /**
+     * Constructs a new float array with lazily loaded values and the
+     * specified precision. Values loaded for an array with single precision
+     * are converted to floats after loading.
+     *
+     * @param count
+     *            The number of values. The loader must return exactly this
+     *            number of values.
+     * @param loader
+     *            The loader of the values. Must not be null.
+     * @param releasable
+     *            If loaded values may be released.
+     * @param precision
+     *            The precision in which the values are stored. Must not be
+     *            null.
+     */
+
+    public FloatArray(final int count, final DataLoader<double[]> loader,
+        final boolean releasable, final Precision precision)
+    {
+        this(count, loader, releasable, precision, Storage.HEAP);
+    }
+
+
+    /**
+     * Constructs a new float array with lazily loaded values and the
+     * specified precision and storage. Values loaded for an array with
+     * single precision are converted to floats after loading. Values loaded
+     * for an array with direct storage are copied into a direct buffer.
+     *
+     * @param count
+     *            The number of values. The loader must return exactly this
+     *            number of values.
+     * @param loader
+     *            The loader of the values. Must not be null.
+     * @param releasable
+     *            If loaded values may be released.
+     * @param precision
+     *            The precision in which the values are stored. Must not be
+     *            null.
+     * @param storage
+     *            The storage of the values. Must not be null.
+     */
+
+    public FloatArray(final int count, final DataLoader<double[]> loader,
+        final boolean releasable, final Precision precision,
+        final Storage storage)
+    {
+        if (count < 0)
+            throw new IllegalArgumentException("count must be >= 0");
+        if (loader == null)
+            throw new IllegalArgumentException("loader must not be null");
+        if (precision == null)
+            throw new IllegalArgumentException("precision must not be null");
+        if (storage == null)
+            throw new IllegalArgumentException("storage must not be null");
+        this.precision = precision;
+        this.storage = storage;
+        this.count = count;
+        this.loader = loader;
+        this.releasable = releasable;
+    }
+
+
+    /**
+     * Allocates a buffer for double values.
+     *
+     * @param count
+     *            The number of values.
+     * @param storage
+     *            The storage of the buffer.
+     * @return The buffer.
+     */
+
+    private static DoubleBuffer allocateDoubles(final int count,
+        final Storage storage)
+    {
+        if (storage == Storage.HEAP) return DoubleBuffer.allocate(count);
+        if (count > Integer.MAX_VALUE / 8)
+            throw new IllegalArgumentException(
+                "Too many values for a direct buffer: " + count);
+        return ByteBuffer.allocateDirect(count * 8)
+            .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+
+    /**
+     * Allocates a buffer for float values.
+     *
+     * @param count
+     *            The number of values.
+     * @param storage
+     *            The storage of the buffer.
+     * @return The buffer.
+     */
+
+    private static FloatBuffer allocateFloats(final int count,
+        final Storage storage)
+    {
+        if (storage == Storage.HEAP) return FloatBuffer.allocate(count);
+        if (count > Integer.MAX_VALUE / 4)
+            throw new IllegalArgumentException(
+                "Too many values for a direct buffer: " + count);
+        return ByteBuffer.allocateDirect(count * 4)
+            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+
+    /**
+     * Checks if the values are currently loaded. This is always the case for
+     * arrays which are not loaded lazily.
+     *
+     * @return True if values are loaded, false if not.
+     */
+
+    public boolean isLoaded()
+    {
+        return this.data != null || this.floatData != null
+            || (this.loadedData != null && this.loadedData.get() != null);
+    }
+
+
+    /**
+     * Returns the storage of the values.
+     *
+     * @return The storage. Never null.
+     */
+
+    public Storage getStorage()
+    {
+        return this.storage;
+    }
+
+
+    /**
+     * Returns the precision in which the values are stored.
+     *
+     * @return The precision. Never null.
+     */
+
+    public Precision getPrecision()
+    {
+        return this.precision;
+    }
+
+
+    /**
+     * Sets the precision in which the values are stored. The values are
+     * converted if the precision changes. Converting to single precision
+     * rounds the values to the nearest float. Buffers previously returned by
+     * {@link #getDoubleBuffer()} or {@link #getFloatBuffer()} no longer
+     * reflect the values of the array after the precision has changed.
+     *
+     * @param precision
+     *            The precision to set. Must not be null.
+     */
+
+    public void setPrecision(final Precision precision)
+    {
+        if (precision == null)
+            throw new IllegalArgumentException("precision must not be null");
+        if (precision == this.precision) return;
+        makeWritable();
+        if (precision == Precision.SINGLE)
+        {
+            final DoubleBuffer oldData = getData();
+            this.floatData = allocateFloats(this.count, this.storage);
+            for (int i = 0; i < this.count; i++)
+                this.floatData.put(i, (float) oldData.get(i));
+            this.data = null;
+        }
+        else
+        {
+            final FloatBuffer oldData = getFloatData();
+            this.data = allocateDoubles(this.count, this.storage);
+            for (int i = 0; i < this.count; i++)
+                this.data.put(i, oldData.get(i));
+            this.floatData = null;
+        }
+        this.precision = precision;
+    }
+
+
+    /**
+     * Returns the double precision data for reading. Lazily loaded data is
+     * loaded if needed. Must only be called for arrays with double
+     * precision.
+     *
+     * @return The data.
+     */
+
+    private DoubleBuffer getData()
+    {
+        final DoubleBuffer data = this.data;
+        if (data != null) return data;
+        return (DoubleBuffer) load();
+    }
+
+
+    /**
+     * Returns the single precision data for reading. Lazily loaded data is
+     * loaded if needed. Must only be called for arrays with single
+     * precision.
+     *
+     * @return The data.
+     */
+
+    private FloatBuffer getFloatData()
+    {
+        final FloatBuffer data = this.floatData;
+        if (data != null) return data;
+        return (FloatBuffer) load();
+    }
+
+
+    /**
+     * Returns the double precision data for writing. Lazily loaded data is
+     * loaded if needed and can no longer be released. Read-only data (Shared
+     * with other processes for example) is copied. Must only be called for
+     * arrays with double precision.
+     *
+     * @return The data.
+     */
+
+    private DoubleBuffer getWritableData()
+    {
+        if (this.data == null) makeWritable();
+        if (this.data.isReadOnly())
+        {
+            final DoubleBuffer data = allocateDoubles(this.count,
+                this.storage);
+            data.put(this.data.duplicate());
+            data.clear();
+            this.data = data;
+        }
+        return this.data;
+    }
+
+
+    /**
+     * Returns the single precision data for writing. Lazily loaded data is
+     * loaded if needed and can no longer be released. Read-only data (Shared
+     * with other processes for example) is copied. Must only be called for
+     * arrays with single precision.
+     *
+     * @return The data.
+     */
+
+    private FloatBuffer getWritableFloatData()
+    {
+        if (this.floatData == null) makeWritable();
+        if (this.floatData.isReadOnly())
+        {
+            final FloatBuffer data = allocateFloats(this.count, this.storage);
+            data.put(this.floatData.duplicate());
+            data.clear();
+            this.floatData = data;
+        }
+        return this.floatData;
+    }
+
+
+    /**
+     * Loads lazily loaded data so it can no longer be released.
+     */
+
+    private void makeWritable()
+    {
+        if (this.loader == null) return;
+        final Buffer data = load();
+        if (this.precision == Precision.SINGLE)
+            this.floatData = (FloatBuffer) data;
+        else
+            this.data = (DoubleBuffer) data;
+        this.loader = null;
+        this.loadedData = null;
+    }
+
+
+    /**
+     * Loads the lazily loaded data.
+     *
+     * @return The loaded data. A double buffer or a float buffer depending
+     *         on the precision.
+     */
+
+    private Buffer load()
+    {
+        Buffer data = this.loadedData == null ? null : this.loadedData.get();
+        if (data == null)
+        {
+            data = createData(this.loader.load());
+            if (this.releasable)
+            {
+                this.loadedData = new SoftReference<Buffer>(data);
+            }
+            else
+            {
+                if (this.precision == Precision.SINGLE)
+                    this.floatData = (FloatBuffer) data;
+                else
+                    this.data = (DoubleBuffer) data;
+                this.loader = null;
+            }
+        }
+        return data;
+    }
+
+
+    /**
+     * Creates the data buffer for the specified values according to the
+     * precision and storage of this array.
+     *
+     * @param values
+     *            The values.
+     * @return The data buffer. A double buffer or a float buffer depending
+     *         on the precision.
+     */
+
+    private Buffer createData(final double[] values)
+    {
+        if (this.precision == Precision.SINGLE)
+        {
+            final FloatBuffer data = allocateFloats(values.length,
+                this.storage);
+            for (int i = 0; i < values.length; i++)
+                data.put(i, (float) values[i]);
+            return data;
+        }
+        if (this.storage == Storage.HEAP) return DoubleBuffer.wrap(values);
+        final DoubleBuffer data = allocateDoubles(values.length,
+            Storage.DIRECT);
+        data.put(values);
+        data.clear();
+        return data;
+    }
+
+
+    /**
+     * Checks if the specified range lies within an array.
+     *
+     * @param offset
+     *            The start of the range.
+     * @param length
+     *            The length of the range.
+     * @param size
+     *            The array length.
+     */
+
+    private static void checkRange(final int offset, final int length,
+        final int size)
+    {
+        if (offset < 0 || length < 0 || offset + length > size)
+            throw new IndexOutOfBoundsException("Range " + offset + "+"
+                + length + " outside of array with length " + size);
+    }
+
+
+    /**
+     * Writes the array. Lazily loaded data is loaded first.
+     *
+     * @param stream
+     *            The stream to write to.
+     * @throws IOException
+     *             When array could not be written.
+     */
+
+    private void writeObject(final ObjectOutputStream stream)
+        throws IOException
+    {
+        makeWritable();
+        stream.defaultWriteObject();
+        if (stream instanceof ArrayExternalizer)
+            stream.writeObject(((ArrayExternalizer) stream).externalize(this
+                .precision == Precision.SINGLE ? this.floatData : this.data));
+        else if (this.precision == Precision.SINGLE)
+            stream.writeObject(getFloatValues());
+        else
+            stream.writeObject(getValues());
+    }
+
+
+    /**
+     * Reads the array. The storage of externalized values is the storage of
+     * the buffer returned by the stream.
+     *
+     * @param stream
+     *            The stream to read from.
+     * @throws IOException
+     *             When array could not be read.
+     * @throws ClassNotFoundException
+     *             When a class of the array could not be found.
+     */
+
+    private void readObject(final ObjectInputStream stream)
+        throws IOException, ClassNotFoundException
+    {
+        stream.defaultReadObject();
+        if (stream instanceof ArrayInternalizer)
+        {
+            final Buffer values = ((ArrayInternalizer) stream)
+                .internalize(stream.readObject());
+            if (values.capacity() != this.count
+                || !(this.precision == Precision.SINGLE
+                    ? values instanceof FloatBuffer
+                    : values instanceof DoubleBuffer))
+                throw new InvalidObjectException("Invalid external values");
+            this.storage = values.isDirect() ? Storage.DIRECT : Storage.HEAP;
+            if (this.precision == Precision.SINGLE)
+                this.floatData = (FloatBuffer) values;
+            else
+                this.data = (DoubleBuffer) values;
+        }
+        else if (this.precision == Precision.SINGLE)
+        {
+            final float[] values = (float[]) stream.readObject();
+            this.floatData = allocateFloats(values.length, this.storage);
+            this.floatData.put(values);
+            this.floatData.clear();
+        }
+        else
+        {
+            final double[] values = (double[]) stream.readObject();
+            this.data = allocateDoubles(values.length, this.storage);
+            this.data.put(values);
+            this.data.clear();
+        }
     }
 
 
@@ -61,7 +609,7 @@ public final class FloatArray extends Array
     @Override
     public int getCount()
     {
-        return this.data.length;
+        return this.count;
     }
 
 
@@ -72,10 +620,27 @@ public final class FloatArray extends Array
     @Override
     public void setCount(final int count)
     {
-        final double[] oldData = this.data;
-        this.data = new double[count];
-        System.arraycopy(oldData, 0, this.data, 0, Math
-                .min(count, oldData.length));
+        if (count < 0)
+            throw new IllegalArgumentException("count must be >= 0");
+        final int copy = Math.min(count, this.count);
+        makeWritable();
+        if (this.precision == Precision.SINGLE)
+        {
+            final FloatBuffer oldData = getFloatData().duplicate();
+            this.floatData = allocateFloats(count, this.storage);
+            oldData.limit(copy);
+            this.floatData.put(oldData);
+            this.floatData.clear();
+        }
+        else
+        {
+            final DoubleBuffer oldData = getData().duplicate();
+            this.data = allocateDoubles(count, this.storage);
+            oldData.limit(copy);
+            this.data.put(oldData);
+            this.data.clear();
+        }
+        this.count = count;
     }
 
 
@@ -139,6 +704,52 @@ public final class FloatArray extends Array
     }
 
 
+    /**
+     * Returns a read-only view of the values of an array with double
+     * precision. The view shares the storage of the array so no values are
+     * copied and modifications of the array are visible in the view. A view
+     * of a direct array is a direct buffer in native byte order. The view
+     * no longer reflects the array after its count or precision has been
+     * changed.
+     *
+     * @return The read-only double buffer. Its position is 0 and its limit
+     *         is the number of values.
+     * @throws IllegalStateException
+     *             When the array has single precision.
+     */
+
+    public DoubleBuffer getDoubleBuffer()
+    {
+        if (this.precision != Precision.DOUBLE)
+            throw new IllegalStateException(
+                "Array has " + this.precision + " precision");
+        return getData().asReadOnlyBuffer();
+    }
+
+
+    /**
+     * Returns a read-only view of the values of an array with single
+     * precision. The view shares the storage of the array so no values are
+     * copied and modifications of the array are visible in the view. A view
+     * of a direct array is a direct buffer in native byte order. The view
+     * no longer reflects the array after its count or precision has been
+     * changed.
+     *
+     * @return The read-only float buffer. Its position is 0 and its limit is
+     *         the number of values.
+     * @throws IllegalStateException
+     *             When the array has double precision.
+     */
+
+    public FloatBuffer getFloatBuffer()
+    {
+        if (this.precision != Precision.SINGLE)
+            throw new IllegalStateException(
+                "Array has " + this.precision + " precision");
+        return getFloatData().asReadOnlyBuffer();
+    }
+
+
     /**
      * Copies a subset of the values to the specified destination array.
      *
@@ -156,7 +767,20 @@ public final class FloatArray extends Array
         final double[] values,
         final int dstOffset)
     {
-        System.arraycopy(this.data, srcOffset, values, dstOffset, length);
+        checkRange(srcOffset, length, this.count);
+        checkRange(dstOffset, length, values.length);
+        if (this.precision == Precision.SINGLE)
+        {
+            final FloatBuffer data = getFloatData();
+            for (int i = 0; i < length; i++)
+                values[dstOffset + i] = data.get(srcOffset + i);
+        }
+        else
+        {
+            final DoubleBuffer data = getData().duplicate();
+            data.position(srcOffset);
+            data.get(values, dstOffset, length);
+        }
     }
 
 
@@ -187,7 +811,7 @@ public final class FloatArray extends Array
 
     public void getValues(final double[] dest)
     {
-        getValues(0, Math.min(this.data.length, dest.length), dest);
+        getValues(0, Math.min(getCount(), dest.length), dest);
     }
 
 
@@ -201,7 +825,9 @@ public final class FloatArray extends Array
 
     public double getValue(final int index)
     {
-        return this.data[index];
+        if (this.precision == Precision.SINGLE)
+            return getFloatData().get(index);
+        return getData().get(index);
     }
 
 
@@ -213,7 +839,75 @@ public final class FloatArray extends Array
 
     public double[] getValues()
     {
-        return this.data.clone();
+        final double[] values = new double[this.count];
+        getValues(0, this.count, values, 0);
+        return values;
+    }
+
+
+    /**
+     * Copies a subset of the values to the specified float array. Values
+     * stored with double precision are rounded to the nearest float.
+     *
+     * @param srcOffset
+     *            The starting index in the source data.
+     * @param length
+     *            The number of values to copy.
+     * @param values
+     *            The destination array to write the values to.
+     * @param dstOffset
+     *            The starting index in the destination array.
+     */
+
+    public void getValues(final int srcOffset, final int length,
+        final float[] values, final int dstOffset)
+    {
+        checkRange(srcOffset, length, this.count);
+        checkRange(dstOffset, length, values.length);
+        if (this.precision == Precision.SINGLE)
+        {
+            final FloatBuffer data = getFloatData().duplicate();
+            data.position(srcOffset);
+            data.get(values, dstOffset, length);
+        }
+        else
+        {
+            final DoubleBuffer data = getData();
+            for (int i = 0; i < length; i++)
+                values[dstOffset + i] = (float) data.get(srcOffset + i);
+        }
+    }
+
+
+    /**
+     * Returns the value at the specified index as a float. Values stored
+     * with double precision are rounded to the nearest float.
+     *
+     * @param index
+     *            The index.
+     * @return The value.
+     */
+
+    public float getFloatValue(final int index)
+    {
+        if (this.precision == Precision.SINGLE)
+            return getFloatData().get(index);
+        return (float) getData().get(index);
+    }
+
+
+    /**
+     * Returns a copy of the array values as floats. Values stored with
+     * double precision are rounded to the nearest float.
+     *
+     * @return The copy of the array values.
+     */
+
+    public float[] getFloatValues()
+    {
+        final float[] values = new float[this.count];
+        getValues(0, this.count, values, 0);
+        return values;
     }
 
 
@@ -233,7 +927,20 @@ public final class FloatArray extends Array
     public void setValues(final int offset, final int length,
         final double[] values, final int srcOffset)
     {
-        System.arraycopy(values, srcOffset, this.data, offset, length);
+        checkRange(offset, length, this.count);
+        checkRange(srcOffset, length, values.length);
+        if (this.precision == Precision.SINGLE)
+        {
+            final FloatBuffer data = getWritableFloatData();
+            for (int i = 0; i < length; i++)
+                data.put(offset + i, (float) values[srcOffset + i]);
+        }
+        else
+        {
+            final DoubleBuffer data = getWritableData().duplicate();
+            data.position(offset);
+            data.put(values, srcOffset, length);
+        }
     }
 
 
@@ -265,7 +972,54 @@ public final class FloatArray extends Array
 
     public void setValues(final double[] values)
     {
-        setValues(0, Math.min(values.length, this.data.length), values);
+        setValues(0, Math.min(values.length, getCount()), values);
+    }
+
+
+    /**
+     * Sets a subset of values from a float array.
+     *
+     * @param offset
+     *            The starting offset.
+     * @param length
+     *            The number of values to copy.
+     * @param values
+     *            The source array with the values to set.
+     * @param srcOffset
+     *            The starting offset in the values array.
+     */
+
+    public void setValues(final int offset, final int length,
+        final float[] values, final int srcOffset)
+    {
+        checkRange(offset, length, this.count);
+        checkRange(srcOffset, length, values.length);
+        if (this.precision == Precision.SINGLE)
+        {
+            final FloatBuffer data = getWritableFloatData().duplicate();
+            data.position(offset);
+            data.put(values, srcOffset, length);
+        }
+        else
+        {
+            final DoubleBuffer data = getWritableData();
+            for (int i = 0; i < length; i++)
+                data.put(offset + i, values[srcOffset + i]);
+        }
+    }
+
+
+    /**
+     * Sets the values from a float array. The whole specified source array
+     * is copied into the data array beginning at index 0.
+     *
+     * @param values
+     *            The values to set
+     */
+
+    public void setValues(final float[] values)
+    {
+        setValues(0, Math.min(values.length, getCount()), values, 0);
     }
 
 
@@ -280,6 +1034,9 @@ public final class FloatArray extends Array
 
     public void setValue(final int index, final double value)
     {
-        this.data[index] = value;
+        if (this.precision == Precision.SINGLE)
+            getWritableFloatData().put(index, (float) value);
+        else
+            getWritableData().put(index, value);
     }
 }
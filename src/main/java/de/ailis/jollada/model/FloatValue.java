@@ -75,6 +75,7 @@ public final class FloatValue extends Element implements ScopeIdentifiable
     public void setSid(final String sid)
     {
         this.sid = sid;
+        sidChanged();
     }
 
 
@@ -120,6 +120,7 @@ public final class Image extends Element implements Identifiable,
     public void setSid(final String sid)
     {
         this.sid = sid;
+        sidChanged();
     }
 
 
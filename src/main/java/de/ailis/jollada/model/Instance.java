@@ -66,6 +66,7 @@ public abstract class Instance extends Element implements ScopeIdentifiable
     public final void setSid(final String sid)
     {
         this.sid = sid;
+        sidChanged();
     }
 
 
@@ -5,19 +5,56 @@
 
 package de.ailis.jollada.model;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.Collection;
 
 
 /**
  * The data defining a primitive.
  *
+ * The values are stored in a NIO buffer which is either backed by a Java
+ * array or allocated directly outside of the Java heap. A read-only view of
+ * this buffer can be obtained with {@link #getIntBuffer()} so the values can
+ * be passed to native code without copying them.
+ *
  * @author Klaus Reimer (k@ailis.de)
  */
 
-public final class IntList
+public final class IntList implements Serializable
 {
-    /** The data. */
-    private int[] data;
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The data. Null while the data is loaded lazily. */
+    private transient IntBuffer data;
+
+    /** The storage of the values. */
+    private Storage storage;
+
+    /** The loader of lazily loaded data. Null if data is not lazy. */
+    private transient DataLoader<int[]> loader;
+
+    /** If lazily loaded data may be released by the garbage collector. */
+    private transient boolean releasable;
+
+    /** The released data. Only used for releasable lazily loaded data. */
+    private transient Reference<IntBuffer> loadedData;
+
+    /**
+     * The number of values of lazily loaded data. -1 if not known before the
+     * data is loaded.
+     */
+    private transient int lazySize = -1;
 
 
     /**
@@ -28,22 +65,348 @@ public final class IntList
      */
 
     public IntList(final int size)
+    {
+        this(size, Storage.HEAP);
+    }
+
+
+    /**
+     * Constructs a new int list with the specified storage.
+     *
+     * @param size
+     *            The data size.
+     * @param storage
+     *            The storage of the values. Must not be null.
+     */
+
+    public IntList(final int size, final Storage storage)
     {
         if (size < 0)
             throw new IllegalArgumentException("size must be >= 0");
-        this.data = new int[size];
+        if (storage == null)
+            throw new IllegalArgumentException("storage must not be null");
+        this.storage = storage;
+        this.data = allocate(size, storage);
+    }
+
+
+    /**
+     * Constructs a new int list which uses the specified array as its data.
+     * The array is not copied so it must not be modified by the caller
+     * afterwards.
+     *
+     * @param values
+     *            The data array. Must not be null.
+     */
+
+    public IntList(final int[] values)
+    {
+        if (values == null)
+            throw new IllegalArgumentException("values must not be null");
+        this.storage = Storage.HEAP;
+        this.data = IntBuffer.wrap(values);
+    }
+
+
+    /**
+     * Constructs a new int list with lazily loaded values. The values are
+     * loaded with the specified loader on first access (This includes
+     * querying the size because it is unknown). Releasable values are only
+     * softly referenced so the garbage collector may release them when
+     * memory runs low. They are loaded again on next access then. Values are
+     * never released again after the list has been modified.
+     *
+     * @param loader
+     *            The loader of the values. Must not be null.
+     * @param releasable
+     *            If loaded values may be released.
+     */
+
+    public IntList(final DataLoader<int[]> loader, final boolean releasable)
+    {
+        this(loader, releasable, Storage.HEAP);
+    }
+
+
+    /**
+     * Constructs a new int list with lazily loaded values and the specified
+     * storage. Loaded values of a list with direct storage are copied into a
+     * direct buffer.
+     *
+     * @param loader
+     *            The loader of the values. Must not be null.
+     * @param releasable
+     *            If loaded values may be released.
+     * @param storage
+     *            The storage of the values. Must not be null.
+     * @see #IntList(DataLoader, boolean)
+     */
+
+    public IntList(final DataLoader<int[]> loader, final boolean releasable,
+        final Storage storage)
+    {
+        if (loader == null)
+            throw new IllegalArgumentException("loader must not be null");
+        if (storage == null)
+            throw new IllegalArgumentException("storage must not be null");
+        this.loader = loader;
+        this.releasable = releasable;
+        this.storage = storage;
+    }
+
+
+    /**
+     * Constructs a new int list with lazily loaded values of a known size
+     * and the specified storage. The size is returned by {@link #getSize()}
+     * without loading the values. It is replaced by the number of loaded
+     * values when the values are loaded.
+     *
+     * @param size
+     *            The number of values. Must not be negative.
+     * @param loader
+     *            The loader of the values. Must not be null.
+     * @param releasable
+     *            If loaded values may be released.
+     * @param storage
+     *            The storage of the values. Must not be null.
+     * @see #IntList(DataLoader, boolean, Storage)
+     */
+
+    public IntList(final int size, final DataLoader<int[]> loader,
+        final boolean releasable, final Storage storage)
+    {
+        this(loader, releasable, storage);
+        if (size < 0)
+            throw new IllegalArgumentException("size must be >= 0");
+        this.lazySize = size;
+    }
+
+
+    /**
+     * Allocates a buffer.
+     *
+     * @param size
+     *            The number of values.
+     * @param storage
+     *            The storage of the buffer.
+     * @return The buffer.
+     */
+
+    private static IntBuffer allocate(final int size, final Storage storage)
+    {
+        if (storage == Storage.HEAP) return IntBuffer.allocate(size);
+        if (size > Integer.MAX_VALUE / 4)
+            throw new IllegalArgumentException(
+                "Too many values for a direct buffer: " + size);
+        return ByteBuffer.allocateDirect(size * 4)
+            .order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+
+    /**
+     * Checks if the values are currently loaded. This is always the case for
+     * lists which are not loaded lazily.
+     *
+     * @return True if values are loaded, false if not.
+     */
+
+    public boolean isLoaded()
+    {
+        return this.data != null
+            || (this.loadedData != null && this.loadedData.get() != null);
+    }
+
+
+    /**
+     * Returns the storage of the values.
+     *
+     * @return The storage. Never null.
+     */
+
+    public Storage getStorage()
+    {
+        return this.storage;
+    }
+
+
+    /**
+     * Returns the data for reading. Lazily loaded data is loaded if needed.
+     *
+     * @return The data.
+     */
+
+    private IntBuffer getData()
+    {
+        final IntBuffer data = this.data;
+        if (data != null) return data;
+        return load();
+    }
+
+
+    /**
+     * Returns the data for writing. Lazily loaded data is loaded if needed
+     * and can no longer be released. Read-only data (Shared with other
+     * processes for example) is copied.
+     *
+     * @return The data.
+     */
+
+    private IntBuffer getWritableData()
+    {
+        makeWritable();
+        if (this.data.isReadOnly())
+        {
+            final IntBuffer data = allocate(this.data.capacity(),
+                this.storage);
+            data.put(this.data.duplicate());
+            data.clear();
+            this.data = data;
+        }
+        return this.data;
+    }
+
+
+    /**
+     * Loads lazily loaded data so it can no longer be released.
+     */
+
+    private void makeWritable()
+    {
+        if (this.data == null)
+        {
+            this.data = load();
+            this.loader = null;
+            this.loadedData = null;
+        }
+    }
+
+
+    /**
+     * Loads the lazily loaded data.
+     *
+     * @return The loaded data.
+     */
+
+    private IntBuffer load()
+    {
+        IntBuffer data = this.loadedData == null ? null
+            : this.loadedData.get();
+        if (data == null)
+        {
+            final int[] values = this.loader.load();
+            this.lazySize = values.length;
+            if (this.storage == Storage.DIRECT)
+            {
+                data = allocate(values.length, Storage.DIRECT);
+                data.put(values);
+                data.clear();
+            }
+            else
+            {
+                data = IntBuffer.wrap(values);
+            }
+            if (this.releasable)
+            {
+                this.loadedData = new SoftReference<IntBuffer>(data);
+            }
+            else
+            {
+                this.data = data;
+                this.loader = null;
+            }
+        }
+        return data;
     }
 
 
     /**
-     * Returns the size of the data.
+     * Checks if the specified range lies within an array.
+     *
+     * @param offset
+     *            The start of the range.
+     * @param length
+     *            The length of the range.
+     * @param size
+     *            The array length.
+     */
+
+    private static void checkRange(final int offset, final int length,
+        final int size)
+    {
+        if (offset < 0 || length < 0 || offset + length > size)
+            throw new IndexOutOfBoundsException("Range " + offset + "+"
+                + length + " outside of array with length " + size);
+    }
+
+
+    /**
+     * Writes the list. Lazily loaded data is loaded first.
+     *
+     * @param stream
+     *            The stream to write to.
+     * @throws IOException
+     *             When list could not be written.
+     */
+
+    private void writeObject(final ObjectOutputStream stream)
+        throws IOException
+    {
+        makeWritable();
+        stream.defaultWriteObject();
+        if (stream instanceof ArrayExternalizer)
+            stream.writeObject(((ArrayExternalizer) stream)
+                .externalize(this.data));
+        else
+            stream.writeObject(getValues());
+    }
+
+
+    /**
+     * Reads the list. The storage of externalized values is the storage of
+     * the buffer returned by the stream.
+     *
+     * @param stream
+     *            The stream to read from.
+     * @throws IOException
+     *             When list could not be read.
+     * @throws ClassNotFoundException
+     *             When a class of the list could not be found.
+     */
+
+    private void readObject(final ObjectInputStream stream)
+        throws IOException, ClassNotFoundException
+    {
+        stream.defaultReadObject();
+        if (stream instanceof ArrayInternalizer)
+        {
+            final Buffer values = ((ArrayInternalizer) stream)
+                .internalize(stream.readObject());
+            if (!(values instanceof IntBuffer))
+                throw new InvalidObjectException("Invalid external values");
+            this.storage = values.isDirect() ? Storage.DIRECT : Storage.HEAP;
+            this.data = (IntBuffer) values;
+        }
+        else
+        {
+            final int[] values = (int[]) stream.readObject();
+            this.data = allocate(values.length, this.storage);
+            this.data.put(values);
+            this.data.clear();
+        }
+    }
+
+
+    /**
+     * Returns the size of the data. The size of lazily loaded data is
+     * returned without loading the data when it is known.
      *
      * @return The data size.
      */
 
     public int getSize()
     {
-        return this.data.length;
+        if (this.data == null && this.lazySize >= 0) return this.lazySize;
+        return getData().capacity();
     }
 
 
@@ -56,10 +419,31 @@ public final class IntList
 
     public void setSize(final int size)
     {
-        final int[] oldData = this.data;
-        this.data = new int[size];
-        System.arraycopy(oldData, 0, this.data, 0, Math
-                .min(size, oldData.length));
+        if (size < 0)
+            throw new IllegalArgumentException("size must be >= 0");
+        makeWritable();
+        final IntBuffer oldData = this.data.duplicate();
+        this.data = allocate(size, this.storage);
+        oldData.limit(Math.min(size, oldData.capacity()));
+        this.data.put(oldData);
+        this.data.clear();
+    }
+
+
+    /**
+     * Returns a read-only view of the values. The view shares the storage of
+     * the list so no values are copied and modifications of the list are
+     * visible in the view. A view of a direct list is a direct buffer in
+     * native byte order. The view no longer reflects the list after its size
+     * has been changed.
+     *
+     * @return The read-only int buffer. Its position is 0 and its limit is
+     *         the number of values.
+     */
+
+    public IntBuffer getIntBuffer()
+    {
+        return getData().asReadOnlyBuffer();
     }
 
 
@@ -80,7 +464,11 @@ public final class IntList
         final int[] values,
         final int dstOffset)
     {
-        System.arraycopy(this.data, srcOffset, values, dstOffset, length);
+        final IntBuffer data = getData().duplicate();
+        checkRange(srcOffset, length, data.capacity());
+        checkRange(dstOffset, length, values.length);
+        data.position(srcOffset);
+        data.get(values, dstOffset, length);
     }
 
 
@@ -111,7 +499,7 @@ public final class IntList
 
     public void getValues(final int[] dest)
     {
-        getValues(0, Math.min(this.data.length, dest.length), dest);
+        getValues(0, Math.min(getSize(), dest.length), dest);
     }
 
 
@@ -125,7 +513,7 @@ public final class IntList
 
     public int getValue(final int index)
     {
-        return this.data[index];
+        return getData().get(index);
     }
 
 
@@ -137,7 +525,9 @@ public final class IntList
 
     public int[] getValues()
     {
-        return this.data.clone();
+        final int[] values = new int[getSize()];
+        getValues(0, values.length, values, 0);
+        return values;
     }
 
 
@@ -157,7 +547,11 @@ public final class IntList
     public void setValues(final int offset, final int length,
         final int[] values, final int srcOffset)
     {
-        System.arraycopy(values, srcOffset, this.data, offset, length);
+        final IntBuffer data = getWritableData().duplicate();
+        checkRange(offset, length, data.capacity());
+        checkRange(srcOffset, length, values.length);
+        data.position(offset);
+        data.put(values, srcOffset, length);
     }
 
 
@@ -189,7 +583,7 @@ public final class IntList
 
     public void setValues(final int[] values)
     {
-        setValues(0, Math.min(values.length, this.data.length), values);
+        setValues(0, Math.min(values.length, getSize()), values);
     }
 
 
@@ -203,12 +597,13 @@ public final class IntList
 
     public void setValues(final Collection<? extends Number> values)
     {
+        final IntBuffer data = getWritableData();
         int i = 0;
-        final int max = this.data.length;
+        final int max = data.capacity();
         for (final Number value: values)
         {
             if (i >= max) break;
-            this.data[i++] = value.intValue();
+            data.put(i++, value.intValue());
         }
     }
 
@@ -224,6 +619,6 @@ public final class IntList
 
     public void setValue(final int index, final int value)
     {
-        this.data[index] = value;
+        getWritableData().put(index, value);
     }
 }
@@ -128,6 +128,7 @@ public final class MaterialInstance extends Element implements
     public void setSid(final String sid)
     {
         this.sid = sid;
+        sidChanged();
     }
 
 
@@ -77,6 +77,7 @@ public final class Node extends Element implements ScopeIdentifiable,
     public void setSid(final String sid)
     {
         this.sid = sid;
+        sidChanged();
     }
 
 
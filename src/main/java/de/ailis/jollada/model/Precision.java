@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.model;
+
+
+/**
+ * The precision in which the values of a {@link FloatArray} are stored.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public enum Precision
+{
+    /** Values are stored as doubles. */
+    DOUBLE,
+
+    /**
+     * Values are stored as floats. This halves the memory usage. Values
+     * are still set and returned as doubles but they are rounded to the
+     * nearest float when set.
+     */
+    SINGLE
+}
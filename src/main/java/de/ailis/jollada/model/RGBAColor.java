@@ -81,6 +81,7 @@ public final class RGBAColor extends Element implements ScopeIdentifiable
     public void setSid(final String sid)
     {
         this.sid = sid;
+        sidChanged();
     }
 
 
@@ -41,6 +41,7 @@ public final class RGBColor extends Element implements ScopeIdentifiable
     public void setSid(final String sid)
     {
         this.sid = sid;
+        sidChanged();
     }
 
 
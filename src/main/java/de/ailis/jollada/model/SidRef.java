@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A compiled SIDREF path like "nodeId/rotateX.ANGLE" or
+ * "./light/color(2)". The path is parsed once when the SIDREF is created
+ * so it can be resolved again and again without string handling.
+ *
+ * <p>
+ * The first part of the path is the ID of the element where the search
+ * begins or a dot for the element holding the reference. Each following
+ * part is the scope ID of an element in the scope of the previous element.
+ * The last part may be followed by a member selector like ".ANGLE" or by
+ * one or two array indices like "(3)" or "(0)(1)". The selector is not
+ * applied when the path is resolved. It is left to the caller because it
+ * addresses a value of the element and not an element.
+ * </p>
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public final class SidRef
+{
+    /** The SIDREF path. */
+    private final String path;
+
+    /** The ID of the first element. Null for the referencing element. */
+    private final String id;
+
+    /** The scope IDs of the path. */
+    private final String[] sids;
+
+    /** The selected member. Null if none. */
+    private final String member;
+
+    /** The selected array indices. Empty if none. */
+    private final int[] indices;
+
+
+    /**
+     * Constructor.
+     *
+     * @param path
+     *            The SIDREF path. Must not be null.
+     * @throws IllegalArgumentException
+     *             When path is not a valid SIDREF.
+     */
+
+    public SidRef(final String path)
+    {
+        if (path == null)
+            throw new IllegalArgumentException("path must not be null");
+        this.path = path;
+
+        // Split the selector from the last part of the path
+        final int lastSlash = path.lastIndexOf('/');
+        int end = path.length();
+        final List<Integer> indices = new ArrayList<Integer>();
+        while (end > lastSlash + 1 && path.charAt(end - 1) == ')')
+        {
+            final int open = path.lastIndexOf('(', end - 1);
+            if (open <= lastSlash) throw invalid(path);
+            indices.add(0, Integer.valueOf(parseIndex(path, open + 1,
+                end - 1)));
+            end = open;
+        }
+        if (indices.size() > 2) throw invalid(path);
+        String member = null;
+        if (indices.isEmpty())
+        {
+            final int dot = path.indexOf('.', lastSlash + 2);
+            if (dot >= 0 && dot < end)
+            {
+                member = path.substring(dot + 1, end);
+                if (member.length() == 0) throw invalid(path);
+                end = dot;
+            }
+        }
+        this.member = member;
+        this.indices = new int[indices.size()];
+        for (int i = 0; i < this.indices.length; i++)
+            this.indices[i] = indices.get(i).intValue();
+
+        // Split the element path
+        final String[] parts = path.substring(0, end).split("/", -1);
+        for (final String part : parts)
+            if (part.length() == 0) throw invalid(path);
+        this.id = ".".equals(parts[0]) ? null : parts[0];
+        this.sids = Arrays.copyOfRange(parts, 1, parts.length);
+    }
+
+
+    /**
+     * Creates the exception thrown for an invalid SIDREF.
+     *
+     * @param path
+     *            The invalid SIDREF path.
+     * @return The exception.
+     */
+
+    private static IllegalArgumentException invalid(final String path)
+    {
+        return new IllegalArgumentException("Invalid SIDREF: " + path);
+    }
+
+
+    /**
+     * Parses an array index of the selector.
+     *
+     * @param path
+     *            The SIDREF path.
+     * @param start
+     *            The index of the first digit.
+     * @param end
+     *            The index behind the last digit.
+     * @return The parsed array index.
+     */
+
+    private static int parseIndex(final String path, final int start,
+        final int end)
+    {
+        if (start == end || end - start > 9) throw invalid(path);
+        int index = 0;
+        for (int i = start; i < end; i++)
+        {
+            final char c = path.charAt(i);
+            if (c < '0' || c > '9') throw invalid(path);
+            index = index * 10 + c - '0';
+        }
+        return index;
+    }
+
+
+    /**
+     * Returns the ID of the element where the search begins.
+     *
+     * @return The ID. Null if the search begins at the referencing element.
+     */
+
+    public String getId()
+    {
+        return this.id;
+    }
+
+
+    /**
+     * Returns the scope IDs of the path.
+     *
+     * @return The scope IDs. Never null. May be empty.
+     */
+
+    public List<String> getSids()
+    {
+        return Collections.unmodifiableList(Arrays.asList(this.sids));
+    }
+
+
+    /**
+     * Returns the selected member.
+     *
+     * @return The selected member like "ANGLE" or "X". Null if none.
+     */
+
+    public String getMember()
+    {
+        return this.member;
+    }
+
+
+    /**
+     * Returns the selected array indices.
+     *
+     * @return The selected array indices. Never null. Empty if none.
+     */
+
+    public int[] getIndices()
+    {
+        return this.indices.clone();
+    }
+
+
+    /**
+     * Resolves this SIDREF to the addressed element.
+     *
+     * @param context
+     *            The element holding the reference. Used as the start
+     *            element of relative paths and to look up the start element
+     *            by ID in its document. Must not be null.
+     * @return The addressed element. Null if not found.
+     */
+
+    public Element resolve(final Element context)
+    {
+        if (context == null)
+            throw new IllegalArgumentException("context must not be null");
+        Element element;
+        if (this.id == null)
+            element = context;
+        else
+        {
+            final Document document = context.getDocument();
+            if (document == null) return null;
+            element = document.getById(this.id);
+        }
+        for (int i = 0; i < this.sids.length && element != null; i++)
+            element = element.getDescendantBySid(this.sids[i]);
+        return element;
+    }
+
+
+    /**
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if (obj == this) return true;
+        if (!(obj instanceof SidRef)) return false;
+        return this.path.equals(((SidRef) obj).path);
+    }
+
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+
+    @Override
+    public int hashCode()
+    {
+        return this.path.hashCode();
+    }
+
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+
+    @Override
+    public String toString()
+    {
+        return this.path;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.model;
+
+
+/**
+ * The storage of the values of a {@link FloatArray} or an {@link IntList}.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public enum Storage
+{
+    /** Values are stored in a Java array on the heap. */
+    HEAP,
+
+    /**
+     * Values are stored in a direct buffer in native byte order outside of
+     * the Java heap. Such values can be passed to native code without
+     * copying them.
+     */
+    DIRECT
+}
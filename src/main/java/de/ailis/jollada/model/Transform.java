@@ -48,6 +48,7 @@ public abstract class Transform extends Element implements
     public final void setSid(final String sid)
     {
         this.sid = sid;
+        sidChanged();
     }
 
 
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+
+/**
+ * The ways the {@link ColladaReader} can load the values of float arrays and
+ * primitive index lists.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public enum ArrayLoading
+{
+    /** Values are parsed while reading the document. */
+    EAGER,
+
+    /**
+     * Values are parsed on first access and then kept in memory. Only the
+     * position of the values in the file is recorded while reading the
+     * document. This is only supported by the {@link ParserBackend#MAPPED}
+     * backend. Other backends load the values eagerly. The file must not be
+     * modified while the document is in use.
+     */
+    LAZY,
+
+    /**
+     * Like {@link #LAZY} but the parsed values are only softly referenced so
+     * the garbage collector may release them again when memory runs low.
+     * Released values are parsed again on next access. Modified values are
+     * never released.
+     */
+    RELEASABLE
+}
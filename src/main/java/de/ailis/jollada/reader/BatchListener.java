@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import de.ailis.jollada.exceptions.ParserException;
+import de.ailis.jollada.model.Document;
+
+
+/**
+ * Receives the results of a {@link ColladaBatchReader}. Exactly one of the
+ * methods is called for each submitted document as soon as it has been
+ * read. The methods are called from the threads of the executor used by
+ * the batch reader, so implementations must be thread-safe. They should
+ * return quickly because a slot for the next document is only freed after
+ * the method returns.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public interface BatchListener
+{
+    /**
+     * Called when a document has been read successfully.
+     *
+     * @param source
+     *            The file name or the name of the stream the document was
+     *            read from.
+     * @param document
+     *            The read document.
+     */
+
+    void documentRead(String source, Document document);
+
+
+    /**
+     * Called when a document could not be read.
+     *
+     * @param source
+     *            The file name or the name of the stream the document was
+     *            read from.
+     * @param e
+     *            The exception describing the error.
+     */
+
+    void documentFailed(String source, ParserException e);
+}
@@ -10,13 +10,32 @@ package de.ailis.jollada.reader;
  * This class parses double values from a number of character array chunks
  * as returned by the SAX parser for example.
  *
+ * The characters of the current value are collected in a reusable buffer so
+ * values spanning multiple chunks are handled correctly. Values with up to 15
+ * significant digits and a small decimal exponent (Which covers nearly all
+ * values found in COLLADA files) are converted directly from this buffer
+ * without creating any objects. All other values are converted with
+ * {@link Double#parseDouble(String)}. In both cases the result is the
+ * correctly rounded double value.
+ *
  * @author Klaus Reimer (k@ailis.de)
  */
 
 public abstract class ChunkFloatReader
 {
-    /** The string builder used for building the double strings */
-    private final StringBuilder builder = new StringBuilder();
+    /** The largest mantissa which can be represented exactly as a double. */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /** The powers of ten which can be represented exactly as a double. */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+        1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+        1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    /** The buffer with the characters of the current value. */
+    private char[] buffer = new char[32];
+
+    /** The number of characters in the buffer. */
+    private int length;
 
 
     /**
@@ -35,16 +54,57 @@ public abstract class ChunkFloatReader
     public void addChunk(final char[] ch, final int start, final int length)
     {
         for (int i = start, max = start + length; i < max; i++)
+            add(ch[i]);
+    }
+
+
+    /**
+     * Adds a chunk of ASCII encoded XML text. For each detected (and
+     * complete) double in the chunk it calls the valueFound method. Processing
+     * stops at the first '&lt;', '&amp;' or ']' byte because these bytes may
+     * start markup, an entity reference or the end of a CDATA section which
+     * must be handled by the caller. You have to call the finish method after
+     * adding all chunks to make sure that the last double is correctly found.
+     *
+     * @param bytes
+     *            The byte array.
+     * @param start
+     *            The index of the first byte to process.
+     * @param end
+     *            The index behind the last byte to process.
+     * @return The index of the byte which stopped the processing or the end
+     *         index if all bytes have been processed.
+     */
+
+    public int addText(final byte[] bytes, final int start, final int end)
+    {
+        for (int i = start; i < end; i++)
         {
-            final char c = ch[i];
-            if (c == ' ' || c == '\n' || c == '\t' || c == '\r')
-            {
-                finish();
-            }
-            else
-            {
-                this.builder.append(c);
-            }
+            final byte b = bytes[i];
+            if (b == '<' || b == '&' || b == ']') return i;
+            add((char) (b & 0xff));
+        }
+        return end;
+    }
+
+
+    /**
+     * Adds a single character.
+     *
+     * @param c
+     *            The character to add.
+     */
+
+    private void add(final char c)
+    {
+        if (c == ' ' || c == '\n' || c == '\t' || c == '\r')
+        {
+            finish();
+        }
+        else
+        {
+            if (this.length == this.buffer.length) growBuffer();
+            this.buffer[this.length++] = c;
         }
     }
 
@@ -71,14 +131,142 @@ public abstract class ChunkFloatReader
 
     public void finish()
     {
-        if (this.builder.length() > 0)
+        if (this.length > 0)
         {
-            valueFound(Float.parseFloat(this.builder.toString()));
-            this.builder.setLength(0);
+            final double value = parseDouble(this.buffer, this.length);
+            this.length = 0;
+            valueFound(value);
         }
     }
 
 
+    /**
+     * Doubles the size of the character buffer.
+     */
+
+    private void growBuffer()
+    {
+        final char[] newBuffer = new char[this.buffer.length * 2];
+        System.arraycopy(this.buffer, 0, newBuffer, 0, this.length);
+        this.buffer = newBuffer;
+    }
+
+
+    /**
+     * Parses a double value from the specified characters.
+     *
+     * @param chars
+     *            The characters to parse.
+     * @param length
+     *            The number of characters to parse.
+     * @return The parsed double value.
+     * @throws NumberFormatException
+     *             When the characters do not form a valid number.
+     */
+
+    static double parseDouble(final char[] chars, final int length)
+    {
+        int i = 0;
+        char c = chars[0];
+        final boolean negative = c == '-';
+        if (negative || c == '+') i++;
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+        boolean valid = false;
+
+        // Integer part
+        while (i < length && (c = chars[i]) >= '0' && c <= '9')
+        {
+            valid = true;
+            if (mantissa != 0 || c != '0')
+            {
+                if (++digits > 18)
+                    exact = false;
+                else
+                    mantissa = mantissa * 10 + c - '0';
+            }
+            i++;
+        }
+
+        // Fraction part
+        if (i < length && chars[i] == '.')
+        {
+            i++;
+            while (i < length && (c = chars[i]) >= '0' && c <= '9')
+            {
+                valid = true;
+                if (mantissa != 0 || c != '0')
+                {
+                    if (++digits > 18)
+                        exact = false;
+                    else
+                        mantissa = mantissa * 10 + c - '0';
+                }
+                if (exact) exponent--;
+                i++;
+            }
+        }
+
+        // Exponent part
+        if (valid && i < length && ((c = chars[i]) == 'e' || c == 'E'))
+        {
+            i++;
+            boolean negativeExponent = false;
+            if (i < length && ((c = chars[i]) == '-' || c == '+'))
+            {
+                negativeExponent = c == '-';
+                i++;
+            }
+            int value = 0;
+            valid = false;
+            while (i < length && (c = chars[i]) >= '0' && c <= '9')
+            {
+                valid = true;
+                if (value < 10000) value = value * 10 + c - '0';
+                i++;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (valid && i == length && exact)
+        {
+            if (mantissa == 0) return negative ? -0.0 : 0.0;
+            if (mantissa <= MAX_EXACT_MANTISSA && exponent >= -22
+                && exponent <= 22)
+            {
+                final double value = exponent < 0 ? mantissa
+                    / POWERS_OF_TEN[-exponent] : mantissa
+                    * POWERS_OF_TEN[exponent];
+                return negative ? -value : value;
+            }
+        }
+        return parseSpecialDouble(new String(chars, 0, length));
+    }
+
+
+    /**
+     * Parses a double value which can't be converted by the fast path. This
+     * also handles the special values INF, -INF and NaN defined by XML schema.
+     *
+     * @param text
+     *            The text to parse.
+     * @return The parsed double value.
+     * @throws NumberFormatException
+     *             When the text is not a valid number.
+     */
+
+    private static double parseSpecialDouble(final String text)
+    {
+        if (text.equals("INF") || text.equals("+INF"))
+            return Double.POSITIVE_INFINITY;
+        if (text.equals("-INF")) return Double.NEGATIVE_INFINITY;
+        return Double.parseDouble(text);
+    }
+
+
     /**
      * Called when a double value has been found.
      *
@@ -8,15 +8,25 @@ package de.ailis.jollada.reader;
 
 /**
  * This class parses int values from a number of character array chunks
- * as returned by the SAX parser for example.
+ * as returned by the SAX parser for example. The digits are accumulated
+ * directly so no objects are created while parsing.
  *
  * @author Klaus Reimer (k@ailis.de)
  */
 
 public abstract class ChunkIntReader
 {
-    /** The string builder used for building the int strings */
-    private final StringBuilder builder = new StringBuilder();
+    /** The absolute value of the current int. */
+    private long value;
+
+    /** If current int is negative. */
+    private boolean negative;
+
+    /** If a sign of the current int has been read. */
+    private boolean signRead;
+
+    /** If digits of the current int have been read. */
+    private boolean digitsRead;
 
 
     /**
@@ -35,16 +45,70 @@ public abstract class ChunkIntReader
     public void addChunk(final char[] ch, final int start, final int length)
     {
         for (int i = start, max = start + length; i < max; i++)
+            add(ch[i]);
+    }
+
+
+    /**
+     * Adds a chunk of ASCII encoded XML text. For each detected (and
+     * complete) int in the chunk it calls the valueFound method. Processing
+     * stops at the first '&lt;', '&amp;' or ']' byte because these bytes may
+     * start markup, an entity reference or the end of a CDATA section which
+     * must be handled by the caller. You have to call the finish method after
+     * adding all chunks to make sure that the last int is correctly found.
+     *
+     * @param bytes
+     *            The byte array.
+     * @param start
+     *            The index of the first byte to process.
+     * @param end
+     *            The index behind the last byte to process.
+     * @return The index of the byte which stopped the processing or the end
+     *         index if all bytes have been processed.
+     */
+
+    public int addText(final byte[] bytes, final int start, final int end)
+    {
+        for (int i = start; i < end; i++)
         {
-            final char c = ch[i];
-            if (c == ' ' || c == '\n' || c == '\t' || c == '\r')
-            {
-                finish();
-            }
-            else
-            {
-                this.builder.append(c);
-            }
+            final byte b = bytes[i];
+            if (b == '<' || b == '&' || b == ']') return i;
+            add((char) (b & 0xff));
+        }
+        return end;
+    }
+
+
+    /**
+     * Adds a single character.
+     *
+     * @param c
+     *            The character to add.
+     */
+
+    private void add(final char c)
+    {
+        if (c >= '0' && c <= '9')
+        {
+            this.value = this.value * 10 + c - '0';
+            if (this.value > 0x80000000L)
+                throw new NumberFormatException("Integer value too large");
+            this.digitsRead = true;
+        }
+        else if (c == ' ' || c == '\n' || c == '\t' || c == '\r')
+        {
+            finish();
+        }
+        else if ((c == '-' || c == '+') && !this.signRead
+            && !this.digitsRead)
+        {
+            this.negative = c == '-';
+            this.signRead = true;
+        }
+        else
+        {
+            throw new NumberFormatException("Invalid character '" + c
+                + "' in integer value");
         }
     }
 
@@ -71,10 +135,20 @@ public abstract class ChunkIntReader
 
     public void finish()
     {
-        if (this.builder.length() > 0)
+        if (this.digitsRead)
+        {
+            final long value = this.negative ? -this.value : this.value;
+            if (value > Integer.MAX_VALUE)
+                throw new NumberFormatException("Integer value too large");
+            this.value = 0;
+            this.negative = false;
+            this.signRead = false;
+            this.digitsRead = false;
+            valueFound((int) value);
+        }
+        else if (this.signRead)
         {
-            valueFound(Integer.parseInt(this.builder.toString()));
-            this.builder.setLength(0);
+            throw new NumberFormatException("Integer value without digits");
         }
     }
 
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import de.ailis.jollada.exceptions.ParserException;
+import de.ailis.jollada.model.Document;
+
+
+/**
+ * Reads many COLLADA documents concurrently on an executor. The number of
+ * documents which are submitted but not yet read is bounded. When the
+ * limit is reached then submitting another document blocks until a
+ * document has been read, so a producer walking through a whole directory
+ * can't queue more documents than the executor can handle. The results are
+ * passed to a {@link BatchListener} as soon as each document has been read.
+ *
+ * The documents are read with {@link ColladaReader}s pooled by the batch
+ * reader. The pool never holds more readers than documents can be pending,
+ * and it goes away together with the batch reader, so no reader is left
+ * behind in the executor threads. The options of the pooled readers are
+ * copied from the reader returned by {@link #getOptions()} before each
+ * document is read.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public final class ColladaBatchReader
+{
+    /** The executor reading the documents. */
+    private final Executor executor;
+
+    /** The maximum number of documents which are submitted but not read. */
+    private final int maxPending;
+
+    /** The permits for submitting documents. */
+    private final Semaphore permits;
+
+    /** The listener receiving the results. */
+    private final BatchListener listener;
+
+    /** The reader holding the options used for reading the documents. */
+    private final ColladaReader options = new ColladaReader();
+
+    /** The idle readers which can be reused for the next document. */
+    private final BlockingQueue<ColladaReader> readers;
+
+
+    /**
+     * Constructor.
+     *
+     * @param executor
+     *            The executor reading the documents. Must not be null.
+     * @param maxPending
+     *            The maximum number of documents which are submitted but
+     *            not yet read. Must be at least 1. Should be larger than the
+     *            number of executor threads so threads don't run idle.
+     * @param listener
+     *            The listener receiving the results. Must not be null.
+     */
+
+    public ColladaBatchReader(final Executor executor, final int maxPending,
+        final BatchListener listener)
+    {
+        if (executor == null)
+            throw new IllegalArgumentException("executor must not be null");
+        if (maxPending < 1)
+            throw new IllegalArgumentException("maxPending must be >= 1");
+        if (listener == null)
+            throw new IllegalArgumentException("listener must not be null");
+        this.executor = executor;
+        this.maxPending = maxPending;
+        this.permits = new Semaphore(maxPending);
+        this.readers = new ArrayBlockingQueue<ColladaReader>(maxPending);
+        this.listener = listener;
+    }
+
+
+    /**
+     * Returns the reader holding the options used for reading the
+     * documents. Options set on this reader are used for all documents
+     * submitted afterwards. The options must not be changed while documents
+     * are pending. The returned reader itself is never used for reading.
+     *
+     * @return The reader holding the options. Never null.
+     */
+
+    public ColladaReader getOptions()
+    {
+        return this.options;
+    }
+
+
+    /**
+     * Returns the maximum number of documents which are submitted but not
+     * yet read.
+     *
+     * @return The maximum number of pending documents.
+     */
+
+    public int getMaxPending()
+    {
+        return this.maxPending;
+    }
+
+
+    /**
+     * Submits a COLLADA file for reading. Blocks while the maximum number of
+     * documents is pending.
+     *
+     * @param file
+     *            The file to read. Must not be null.
+     * @throws InterruptedException
+     *             When interrupted while waiting for a free slot.
+     */
+
+    public void submit(final File file) throws InterruptedException
+    {
+        if (file == null)
+            throw new IllegalArgumentException("file must not be null");
+        submit(file.getPath(), null, file);
+    }
+
+
+    /**
+     * Submits a COLLADA stream for reading. Blocks while the maximum number
+     * of documents is pending. The stream is closed after it has been read.
+     *
+     * @param name
+     *            The name of the stream passed to the listener.
+     * @param stream
+     *            The stream to read. Must not be null.
+     * @throws InterruptedException
+     *             When interrupted while waiting for a free slot.
+     */
+
+    public void submit(final String name, final InputStream stream)
+        throws InterruptedException
+    {
+        if (stream == null)
+            throw new IllegalArgumentException("stream must not be null");
+        submit(name, stream, null);
+    }
+
+
+    /**
+     * Submits all files of the specified collection for reading. Blocks
+     * while the maximum number of documents is pending.
+     *
+     * @param files
+     *            The files to read. Must not be null.
+     * @throws InterruptedException
+     *             When interrupted while waiting for a free slot.
+     */
+
+    public void submitAll(final Iterable<File> files)
+        throws InterruptedException
+    {
+        for (final File file: files)
+            submit(file);
+    }
+
+
+    /**
+     * Submits a stream or a file for reading.
+     *
+     * @param source
+     *            The name of the source passed to the listener.
+     * @param stream
+     *            The stream to read. Null to read the file.
+     * @param file
+     *            The file to read. Null to read the stream.
+     * @throws InterruptedException
+     *             When interrupted while waiting for a free slot.
+     */
+
+    private void submit(final String source, final InputStream stream,
+        final File file) throws InterruptedException
+    {
+        this.permits.acquire();
+        try
+        {
+            this.executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        read(source, stream, file);
+                    }
+                    finally
+                    {
+                        ColladaBatchReader.this.permits.release();
+                    }
+                }
+            });
+        }
+        catch (final RejectedExecutionException e)
+        {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Reads a stream or a file with a pooled reader and passes the result
+     * to the listener.
+     *
+     * @param source
+     *            The name of the source passed to the listener.
+     * @param stream
+     *            The stream to read. Null to read the file.
+     * @param file
+     *            The file to read. Null to read the stream.
+     */
+
+    private void read(final String source, final InputStream stream,
+        final File file)
+    {
+        ColladaReader reader = this.readers.poll();
+        if (reader == null) reader = new ColladaReader();
+        final Document document;
+        try
+        {
+            reader.setOptions(this.options);
+            document = stream == null ? reader.read(file) : reader
+                .read(stream);
+        }
+        catch (final ParserException e)
+        {
+            this.listener.documentFailed(source, e);
+            return;
+        }
+        catch (final RuntimeException e)
+        {
+            this.listener.documentFailed(source, new ParserException(
+                "Unable to read collada document: " + e, e));
+            return;
+        }
+        finally
+        {
+            this.readers.offer(reader);
+            if (stream != null) closeQuietly(stream);
+        }
+        this.listener.documentRead(source, document);
+    }
+
+
+    /**
+     * Closes the specified stream and ignores errors.
+     *
+     * @param stream
+     *            The stream to close.
+     */
+
+    private static void closeQuietly(final InputStream stream)
+    {
+        try
+        {
+            stream.close();
+        }
+        catch (final IOException e)
+        {
+            // Ignored, the document has already been read or failed
+        }
+    }
+
+
+    /**
+     * Waits until all submitted documents have been read and passed to the
+     * listener.
+     *
+     * @throws InterruptedException
+     *             When interrupted while waiting.
+     */
+
+    public void await() throws InterruptedException
+    {
+        this.permits.acquire(this.maxPending);
+        this.permits.release(this.maxPending);
+    }
+}
@@ -7,9 +7,11 @@ package de.ailis.jollada.reader;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -52,6 +54,7 @@ import de.ailis.jollada.model.ConstantShader;
 import de.ailis.jollada.model.DataFlowParam;
 import de.ailis.jollada.model.DataFlowParams;
 import de.ailis.jollada.model.DataFlowSource;
+import de.ailis.jollada.model.DataLoader;
 import de.ailis.jollada.model.DiffuseShader;
 import de.ailis.jollada.model.Document;
 import de.ailis.jollada.model.Effect;
@@ -80,6 +83,7 @@ import de.ailis.jollada.model.Node;
 import de.ailis.jollada.model.NodeType;
 import de.ailis.jollada.model.Param;
 import de.ailis.jollada.model.PhongShader;
+import de.ailis.jollada.model.Precision;
 import de.ailis.jollada.model.RGBAColor;
 import de.ailis.jollada.model.RGBColor;
 import de.ailis.jollada.model.RotateTransform;
@@ -87,6 +91,7 @@ import de.ailis.jollada.model.Sampler2DParam;
 import de.ailis.jollada.model.ScaleTransform;
 import de.ailis.jollada.model.Scene;
 import de.ailis.jollada.model.Shader;
+import de.ailis.jollada.model.Storage;
 import de.ailis.jollada.model.SharedInput;
 import de.ailis.jollada.model.SkewTransform;
 import de.ailis.jollada.model.Texture;
@@ -110,14 +115,42 @@ public class ColladaHandler extends DefaultHandler
     /** The current parser mode */
     private ParserMode mode = ParserMode.ROOT;
 
-    /** The parser mode stack */
-    private final Stack<ParserMode> modeStack = new Stack<ParserMode>();
+    /**
+     * The maximum capacity of the text buffer which is kept when the handler
+     * is reset.
+     */
+    private static final int MAX_TEXT_BUFFER_SIZE = 8192;
+
+    /** The parser modes indexed by their ordinal numbers */
+    private static final ParserMode[] MODES = ParserMode.values();
+
+    /** The parser mode stack containing the ordinal numbers of the modes */
+    private int[] modeStack = new int[32];
+
+    /** The number of parser modes on the stack */
+    private int modeStackSize;
+
+    /**
+     * The nesting depth within an ignored element. 0 if no element is
+     * currently ignored.
+     */
+    private int skipDepth;
+
+    /** The parser modes of the libraries which are skipped */
+    private final Set<ParserMode> skippedLibraries = EnumSet
+        .noneOf(ParserMode.class);
 
     /** String Builder for building a string from element content */
     private StringBuilder stringBuilder;
 
+    /**
+     * The reusable buffer for element content. Used as string builder for
+     * all elements with text content.
+     */
+    private StringBuilder textBuffer = new StringBuilder();
+
     /** The asset */
-    private final Document document;
+    private Document document;
 
     /** The current image */
     private Image image;
@@ -143,8 +176,11 @@ public class ColladaHandler extends DefaultHandler
     /** The current vertices */
     private Vertices vertices;
 
-    /** The int array builder */
-    private List<Integer> intArrayBuilder;
+    /** The int list builder */
+    private IntListBuilder intListBuilder;
+
+    /** The loader of the current lazily loaded int list. */
+    private MappedIntListLoader intListLoader;
 
     /** The current accessor */
     private Accessor accessor;
@@ -191,9 +227,47 @@ public class ColladaHandler extends DefaultHandler
     /** The current mesh builder. */
     private MeshBuilder meshBuilder;
 
+    /**
+     * The sink receiving the parsed geometries. Null if geometries are
+     * added to the document.
+     */
+    private GeometrySink geometrySink;
+
     /** The current float array. */
     private FloatArray floatArray;
 
+    /**
+     * The parsed values of the float arrays of the current geometry when a
+     * geometry sink is used. The sink receives these arrays directly so the
+     * values are not copied out of the model arrays.
+     */
+    private final Map<FloatArray, double[]> sinkValues =
+        new IdentityHashMap<FloatArray, double[]>();
+
+    /** How float arrays and primitive index lists are loaded. */
+    private ArrayLoading arrayLoading = ArrayLoading.EAGER;
+
+    /** The precision in which float arrays are stored. */
+    private Precision precision = Precision.DOUBLE;
+
+    /** The storage of float arrays and int lists. */
+    private Storage storage = Storage.HEAP;
+
+    /**
+     * The mapped file containing the content of the current element if it
+     * can be loaded lazily. Null if not.
+     */
+    private MappedFile lazyFile;
+
+    /** The file position of the lazily loadable content. */
+    private long lazyStart;
+
+    /** The file position behind the lazily loadable content. */
+    private long lazyEnd;
+
+    /** If the lazily loadable content of the current element is used. */
+    private boolean lazyContentUsed;
+
     /** The current name array. */
     private NameArray nameArray;
 
@@ -280,6 +354,95 @@ public class ColladaHandler extends DefaultHandler
     }
 
 
+    /**
+     * Resets the handler so it can parse another document. The parse state
+     * and all references to the previously parsed document are discarded
+     * while the configuration (Array loading, load options and geometry sink)
+     * and the scratch buffers are kept. Must be called before reusing a
+     * handler, also after a parse error.
+     */
+
+    void reset()
+    {
+        this.document = new Document();
+        this.mode = ParserMode.ROOT;
+        this.modeStackSize = 0;
+        this.skipDepth = 0;
+        this.stringBuilder = null;
+        if (this.textBuffer.capacity() > MAX_TEXT_BUFFER_SIZE)
+            this.textBuffer = new StringBuilder();
+        this.image = null;
+        this.effect = null;
+        this.shader = null;
+        this.colorOrTexture = null;
+        this.chunkFloatReader = null;
+        this.chunkStringReader = null;
+        this.chunkIntReader = null;
+        this.vertices = null;
+        this.intListBuilder = null;
+        this.intListLoader = null;
+        this.accessor = null;
+        this.profileParam = null;
+        this.imageLibrary = null;
+        this.materialLibrary = null;
+        this.materialBuilder = null;
+        this.effectInstanceBuilder = null;
+        this.commonEffectProfileBuilder = null;
+        this.commonNewParamBuilder = null;
+        this.rgbaColor = null;
+        this.floatValue = null;
+        this.floatAttrib = null;
+        this.effectLibrary = null;
+        this.geometryLibrary = null;
+        this.geometryBuilder = null;
+        this.meshBuilder = null;
+        this.floatArray = null;
+        this.sinkValues.clear();
+        this.lazyFile = null;
+        this.nameArray = null;
+        this.trianglesBuilder = null;
+        this.dataSource = null;
+        this.imageSourceBuilder = null;
+        this.commonEffectTechniqueBuilder = null;
+        this.cameraBuilder = null;
+        this.perspectiveBuilder = null;
+        this.projectionBuilder = null;
+        this.cameraLibrary = null;
+        this.orthographicBuilder = null;
+        this.lightLibrary = null;
+        this.lightBuilder = null;
+        this.lightSourceBuilder = null;
+        this.rgbColor = null;
+        this.visualSceneLibrary = null;
+        this.visualScene = null;
+        this.node = null;
+        this.geometryInstance = null;
+        this.materialInstance = null;
+        this.polyListBuilder = null;
+        this.primitivesBuilder = null;
+        this.polygonsBuilder = null;
+        this.animationLibrary = null;
+        this.animation = null;
+        this.sampler = null;
+        this.lazyStart = 0;
+        this.lazyEnd = 0;
+        this.lazyContentUsed = false;
+    }
+
+
+    /**
+     * Clears the reusable text buffer and returns it.
+     *
+     * @return The cleared text buffer.
+     */
+
+    private StringBuilder clearTextBuffer()
+    {
+        this.textBuffer.setLength(0);
+        return this.textBuffer;
+    }
+
+
     /**
      * @see DefaultHandler#startElement(String, String, String, Attributes)
      */
@@ -289,407 +452,352 @@ public class ColladaHandler extends DefaultHandler
             final String qName, final Attributes attributes)
             throws SAXException
     {
-        try
+        // Ignore the content of unsupported elements completely
+        if (this.skipDepth > 0)
         {
-            if (localName.equals("extra"))
-            {
-                enterElement(ParserMode.EXTRA);
-                return;
-            }
+            this.skipDepth++;
+            return;
+        }
 
-            switch (this.mode)
-            {
-                case ROOT:
-                    if (localName.equals("COLLADA"))
-                        enterCOLLADA(attributes);
-                    break;
+        final ParserMode newMode = this.mode.getChildMode(localName);
+        if (newMode == null || (this.mode == ParserMode.COLLADA
+            && this.skippedLibraries.contains(newMode)))
+        {
+            this.skipDepth = 1;
+            return;
+        }
 
+        try
+        {
+            switch (newMode)
+            {
                 case COLLADA:
-                    if (localName.equals("library_images"))
-                        enterLibraryImages(attributes);
-                    else if (localName.equals("library_materials"))
-                        enterLibraryMaterials(attributes);
-                    else if (localName.equals("library_effects"))
-                        enterLibraryEffects(attributes);
-                    else if (localName.equals("library_geometries"))
-                        enterLibraryGeometries(attributes);
-                    else if (localName.equals("library_cameras"))
-                        enterLibraryCameras(attributes);
-                    else if (localName.equals("library_lights"))
-                        enterLibraryLights(attributes);
-                    else if (localName.equals("library_visual_scenes"))
-                        enterLibraryVisualScenes(attributes);
-                    else if (localName.equals("library_animations"))
-                        enterLibraryAnimations(attributes);
-                    else if (localName.equals("scene")) enterScene();
+                    enterCOLLADA(attributes);
                     break;
 
                 case LIBRARY_IMAGES:
-                    if (localName.equals("image")) enterImage(attributes);
+                    enterLibraryImages(attributes);
                     break;
 
                 case IMAGE:
-                    if (localName.equals("init_from"))
-                        enterImageInitFrom(attributes);
+                    enterImage(attributes);
                     break;
 
                 case IMAGE_INIT_FROM:
-                    if (localName.equals("ref"))
-                        enterImageInitFromRef();
+                    enterImageInitFrom(attributes);
+                    break;
+
+                case IMAGE_INIT_FROM_REF:
+                    enterImageInitFromRef();
                     break;
 
                 case LIBRARY_MATERIALS:
-                    if (localName.equals("material"))
-                        enterMaterial(attributes);
+                    enterLibraryMaterials(attributes);
                     break;
 
                 case MATERIAL:
-                    if (localName.equals("instance_effect"))
-                        enterInstanceEffect(attributes);
+                    enterMaterial(attributes);
+                    break;
+
+                case INSTANCE_EFFECT:
+                    enterInstanceEffect(attributes);
                     break;
 
                 case LIBRARY_EFFECTS:
-                    if (localName.equals("effect")) enterEffect(attributes);
+                    enterLibraryEffects(attributes);
                     break;
 
                 case EFFECT:
-                    if (localName.equals("profile_COMMON"))
-                        enterProfileCommon(attributes);
+                    enterEffect(attributes);
                     break;
 
                 case PROFILE_COMMON:
-                    if (localName.equals("technique"))
-                        enterTechniqueCommon(attributes);
-                    else if (localName.equals("newparam"))
-                        enterCommonNewParam(attributes);
+                    enterProfileCommon(attributes);
+                    break;
+
+                case TECHNIQUE_COMMON:
+                    enterTechniqueCommon(attributes);
                     break;
 
                 case NEWPARAM:
-                    if (localName.equals("sampler2D"))
-                        enterSampler2DParam();
-                    else if (localName.equals("float"))
-                        enterFloatParam();
-                    else if (localName.equals("semantic"))
-                        enterParamSemantic();
+                    enterCommonNewParam(attributes);
                     break;
 
                 case SAMPLER2D:
-                    if (localName.equals("minfilter"))
-                        enterSampler2DMinFilter();
-                    else if (localName.equals("magfilter"))
-                        enterSampler2DMagFilter();
-                    else if (localName.equals("wrap_s"))
-                        enterSampler2DWrapS();
-                    else if (localName.equals("wrap_t"))
-                        enterSampler2DWrapT();
-                    else if (localName.equals("instance_image"))
-                        enterInstanceImage(attributes);
+                    enterSampler2DParam();
                     break;
 
-                case TECHNIQUE_COMMON:
-                    if (localName.equals("phong"))
-                        enterPhong();
-                    else if (localName.equals("blinn"))
-                        enterBlinn();
-                    else if (localName.equals("constant"))
-                        enterConstant();
-                    else if (localName.equals("lambert"))
-                        enterLambert();
+                case FLOAT_PARAM:
+                    enterFloatParam();
+                    break;
+
+                case PARAM_SEMANTIC:
+                    enterParamSemantic();
+                    break;
+
+                case SAMPLER2D_MINFILTER:
+                    enterSampler2DMinFilter();
+                    break;
+
+                case SAMPLER2D_MAGFILTER:
+                    enterSampler2DMagFilter();
+                    break;
+
+                case SAMPLER2D_WRAP_S:
+                    enterSampler2DWrapS();
+                    break;
+
+                case SAMPLER2D_WRAP_T:
+                    enterSampler2DWrapT();
+                    break;
+
+                case INSTANCE_IMAGE:
+                    enterInstanceImage(attributes);
                     break;
 
                 case PHONG:
+                    enterPhong();
+                    break;
+
                 case BLINN:
+                    enterBlinn();
+                    break;
+
                 case CONSTANT:
+                    enterConstant();
+                    break;
+
                 case LAMBERT:
-                    if (localName.equals("emission"))
-                        enterElement(ParserMode.EMISSION);
-                    else if (localName.equals("ambient"))
-                        enterElement(ParserMode.AMBIENT);
-                    else if (localName.equals("diffuse"))
-                        enterElement(ParserMode.DIFFUSE);
-                    else if (localName.equals("specular"))
-                        enterElement(ParserMode.SPECULAR);
-                    else if (localName.equals("reflective"))
-                        enterElement(ParserMode.REFLECTIVE);
-                    else if (localName.equals("transparent"))
-                        enterElement(ParserMode.TRANSPARENT);
-                    else if (localName.equals("reflectivity"))
-                        enterElement(ParserMode.REFLECTIVITY);
-                    else if (localName.equals("shininess"))
-                        enterElement(ParserMode.SHININESS);
-                    else if (localName.equals("transparency"))
-                        enterElement(ParserMode.TRANSPARENCY);
-                    else if (localName.equals("index_of_refraction"))
-                        enterElement(ParserMode.INDEX_OF_REFRACTION);
-                    break;
-
-                case REFLECTIVITY:
-                case TRANSPARENCY:
-                case SHININESS:
-                case INDEX_OF_REFRACTION:
-                    if (localName.equals("float")) enterFloat(attributes);
-                    break;
-
-                case EMISSION:
-                case AMBIENT:
-                case DIFFUSE:
-                case SPECULAR:
-                case REFLECTIVE:
-                case TRANSPARENT:
-                    if (localName.equals("color"))
-                        enterShadingColor(attributes);
-                    else if (localName.equals("texture"))
-                        enterTexture(attributes);
+                    enterLambert();
+                    break;
+
+                case FLOAT:
+                    enterFloat(attributes);
+                    break;
+
+                case SHADING_COLOR:
+                    enterShadingColor(attributes);
+                    break;
+
+                case TEXTURE:
+                    enterTexture(attributes);
                     break;
 
                 case LIBRARY_GEOMETRIES:
-                    if (localName.equals("geometry"))
-                        enterGeometry(attributes);
+                    enterLibraryGeometries(attributes);
                     break;
 
                 case GEOMETRY:
-                    if (localName.equals("mesh")) enterMesh();
+                    enterGeometry(attributes);
                     break;
 
                 case MESH:
-                    if (localName.equals("source"))
-                        enterMeshDataSource(attributes);
-                    else if (localName.equals("vertices"))
-                        enterVertices(attributes);
-                    else if (localName.equals("triangles"))
-                        enterTriangles(attributes);
-                    else if (localName.equals("polylist"))
-                        enterPolyList(attributes);
-                    else if (localName.equals("polygons"))
-                        enterPolygons(attributes);
+                    enterMesh();
                     break;
 
                 case MESH_DATA_SOURCE:
-                case ANIMATION_DATA_SOURCE:
-                    if (localName.equals("float_array"))
-                        enterFloatArray(attributes);
-                    else if (localName.equals("Name_array"))
-                        enterNameArray(attributes);
-                    if (localName.equals("technique_common"))
-                        enterElement(ParserMode.SOURCE_TECHNIQUE_COMMON);
+                    enterMeshDataSource(attributes);
+                    break;
+
+                case FLOAT_ARRAY:
+                    enterFloatArray(attributes);
                     break;
 
-                case SOURCE_TECHNIQUE_COMMON:
-                    if (localName.equals("accessor"))
-                        enterAccessor(attributes);
+                case NAME_ARRAY:
+                    enterNameArray(attributes);
                     break;
 
                 case ACCESSOR:
-                    if (localName.equals("param"))
-                        enterParam(attributes);
+                    enterAccessor(attributes);
+                    break;
+
+                case PARAM:
+                    enterParam(attributes);
                     break;
 
                 case VERTICES:
-                    if (localName.equals("input"))
-                        enterVerticesInput(attributes);
+                    enterVertices(attributes);
                     break;
 
-                case POLYGONS:
-                    if (localName.equals("input"))
-                        enterPrimitivesInput(attributes);
-                    else if (localName.equals("p"))
-                        enterPolygonsP();
+                case VERTICES_INPUT:
+                    enterVerticesInput(attributes);
                     break;
 
-                case POLYLIST:
-                    if (localName.equals("input"))
-                        enterPrimitivesInput(attributes);
-                    else if (localName.equals("vcount"))
-                        enterPolyListVcount();
-                    else if (localName.equals("p"))
-                        enterPolyListP();
+                case PRIMITIVES_INPUT:
+                    enterPrimitivesInput(attributes);
                     break;
 
                 case TRIANGLES:
-                    if (localName.equals("input"))
-                        enterPrimitivesInput(attributes);
-                    else if (localName.equals("p"))
-                        enterTrianglesP();
+                    enterTriangles(attributes);
                     break;
 
-                case LIBRARY_ANIMATIONS:
-                    if (localName.equals("animation"))
-                        enterAnimation(attributes);
+                case TRIANGLES_P:
+                    enterTrianglesP();
+                    break;
+
+                case POLYLIST:
+                    enterPolyList(attributes);
+                    break;
+
+                case POLYLIST_VCOUNT:
+                    enterPolyListVcount();
                     break;
 
+                case POLYLIST_P:
+                    enterPolyListP();
+                    break;
+
+                case POLYGONS:
+                    enterPolygons(attributes);
+                    break;
+
+                case POLYGONS_P:
+                    enterPolygonsP();
+                    break;
+
+                case LIBRARY_ANIMATIONS:
+                    enterLibraryAnimations(attributes);
+                    break;
 
                 case ANIMATION:
-                    if (localName.equals("animation"))
-                        enterAnimation(attributes);
-                    else if (localName.equals("source"))
-                        enterAnimationDataSource(attributes);
-                    else if (localName.equals("sampler"))
-                        enterSampler(attributes);
-                    else if (localName.equals("channel"))
-                        enterChannel(attributes);
+                    enterAnimation(attributes);
+                    break;
+
+                case ANIMATION_DATA_SOURCE:
+                    enterAnimationDataSource(attributes);
                     break;
 
                 case SAMPLER:
-                    if (localName.equals("input"))
-                        enterSamplerInput(attributes);
+                    enterSampler(attributes);
                     break;
 
-                case LIBRARY_LIGHTS:
-                    if (localName.equals("light")) enterLight(attributes);
+                case SAMPLER_INPUT:
+                    enterSamplerInput(attributes);
                     break;
 
-                case LIGHT:
-                    if (localName.equals("technique_common"))
-                        enterElement(ParserMode.LIGHT_TECHNIQUE_COMMON);
+                case CHANNEL:
+                    enterChannel(attributes);
                     break;
 
-                case LIGHT_TECHNIQUE_COMMON:
-                    if (localName.equals("directional"))
-                        enterLightSource(ParserMode.LIGHT_DIRECTIONAL);
-                    else if (localName.equals("point"))
-                        enterLightSource(ParserMode.LIGHT_POINT);
-                    else if (localName.equals("ambient"))
-                        enterLightSource(ParserMode.LIGHT_AMBIENT);
-                    else if (localName.equals("spot"))
-                        enterLightSource(ParserMode.LIGHT_SPOT);
+                case LIBRARY_LIGHTS:
+                    enterLibraryLights(attributes);
                     break;
 
-                case LIGHT_AMBIENT:
-                case LIGHT_DIRECTIONAL:
-                    if (localName.equals("color")) enterLightColor(attributes);
+                case LIGHT:
+                    enterLight(attributes);
                     break;
 
+                case LIGHT_DIRECTIONAL:
                 case LIGHT_POINT:
-                    if (localName.equals("color"))
-                        enterLightColor(attributes);
-                    else if (localName.equals("constant_attenuation"))
-                        enterLightFloatValue(attributes,
-                            ParserMode.CONSTANT_ATTENUATION);
-                    else if (localName.equals("linear_attenuation"))
-                        enterLightFloatValue(attributes,
-                            ParserMode.LINEAR_ATTENUATION);
-                    else if (localName.equals("quadratic_attenuation"))
-                        enterLightFloatValue(attributes,
-                            ParserMode.QUADRATIC_ATTENUATION);
+                case LIGHT_AMBIENT:
+                case LIGHT_SPOT:
+                    enterLightSource(newMode);
                     break;
 
-                case LIGHT_SPOT:
-                    if (localName.equals("color"))
-                        enterLightColor(attributes);
-                    else if (localName.equals("falloff_angle"))
-                        enterLightFloatValue(attributes,
-                            ParserMode.FALLOFF_ANGLE);
-                    else if (localName.equals("falloff_exponent"))
-                        enterLightFloatValue(attributes,
-                            ParserMode.FALLOFF_EXPONENT);
-                    else if (localName.equals("constant_attenuation"))
-                        enterLightFloatValue(attributes,
-                            ParserMode.CONSTANT_ATTENUATION);
-                    else if (localName.equals("linear_attenuation"))
-                        enterLightFloatValue(attributes,
-                            ParserMode.LINEAR_ATTENUATION);
-                    else if (localName.equals("quadratic_attenuation"))
-                        enterLightFloatValue(attributes,
-                            ParserMode.QUADRATIC_ATTENUATION);
+                case LIGHT_COLOR:
+                    enterLightColor(attributes);
+                    break;
+
+                case FALLOFF_ANGLE:
+                case FALLOFF_EXPONENT:
+                case CONSTANT_ATTENUATION:
+                case LINEAR_ATTENUATION:
+                case QUADRATIC_ATTENUATION:
+                    enterLightFloatValue(attributes, newMode);
                     break;
 
                 case LIBRARY_CAMERAS:
-                    if (localName.equals("camera")) enterCamera(attributes);
+                    enterLibraryCameras(attributes);
                     break;
 
                 case CAMERA:
-                    if (localName.equals("optics"))
-                        enterElement(ParserMode.OPTICS);
+                    enterCamera(attributes);
                     break;
 
-                case OPTICS:
-                    if (localName.equals("technique_common"))
-                        enterElement(ParserMode.OPTICS_TECHNIQUE_COMMON);
+                case PERSPECTIVE:
+                    enterPerspective();
                     break;
 
-                case OPTICS_TECHNIQUE_COMMON:
-                    if (localName.equals("perspective"))
-                        enterPerspective();
-                    else if (localName.equals("orthographic"))
-                        enterOrthographic();
+                case ORTHOGRAPHIC:
+                    enterOrthographic();
                     break;
 
-                case PERSPECTIVE:
-                case ORTHOGRAPHIC:
-                    if (localName.equals("xfov"))
-                        enterProjectionValue(ParserMode.XFOV, attributes);
-                    else if (localName.equals("yfov"))
-                        enterProjectionValue(ParserMode.YFOV, attributes);
-                    else if (localName.equals("xmag"))
-                        enterProjectionValue(ParserMode.XMAG, attributes);
-                    else if (localName.equals("ymag"))
-                        enterProjectionValue(ParserMode.YMAG, attributes);
-                    else if (localName.equals("aspect_ratio"))
-                        enterProjectionValue(ParserMode.ASPECT_RATIO,
-                            attributes);
-                    else if (localName.equals("znear"))
-                        enterProjectionValue(ParserMode.ZNEAR, attributes);
-                    else if (localName.equals("zfar"))
-                        enterProjectionValue(ParserMode.ZFAR, attributes);
+                case XFOV:
+                case YFOV:
+                case XMAG:
+                case YMAG:
+                case ASPECT_RATIO:
+                case ZNEAR:
+                case ZFAR:
+                    enterProjectionValue(newMode, attributes);
                     break;
 
                 case LIBRARY_VISUAL_SCENES:
-                    if (localName.equals("visual_scene"))
-                        enterVisualScene(attributes);
+                    enterLibraryVisualScenes(attributes);
                     break;
 
                 case VISUAL_SCENE:
-                    if (localName.equals("node"))
-                        enterNode(attributes);
+                    enterVisualScene(attributes);
                     break;
 
                 case NODE:
-                    if (localName.equals("lookat"))
-                        enterLookAt(attributes);
-                    else if (localName.equals("matrix"))
-                        enterMatrix(attributes);
-                    else if (localName.equals("rotate"))
-                        enterRotate(attributes);
-                    else if (localName.equals("scale"))
-                        enterScale(attributes);
-                    else if (localName.equals("skew"))
-                        enterSkew(attributes);
-                    else if (localName.equals("translate"))
-                        enterTranslate(attributes);
-                    else if (localName.equals("node"))
-                        enterNode(attributes);
-                    else if (localName.equals("instance_geometry"))
-                        enterInstanceGeometry(attributes);
-                    else if (localName.equals("instance_light"))
-                        enterInstanceLight(attributes);
-                    else if (localName.equals("instance_camera"))
-                        enterInstanceCamera(attributes);
+                    enterNode(attributes);
+                    break;
+
+                case LOOKAT:
+                    enterLookAt(attributes);
+                    break;
+
+                case MATRIX:
+                    enterMatrix(attributes);
+                    break;
+
+                case ROTATE:
+                    enterRotate(attributes);
+                    break;
+
+                case SCALE:
+                    enterScale(attributes);
+                    break;
+
+                case SKEW:
+                    enterSkew(attributes);
+                    break;
+
+                case TRANSLATE:
+                    enterTranslate(attributes);
                     break;
 
                 case INSTANCE_GEOMETRY:
-                    if (localName.equals("bind_material"))
-                        enterElement(ParserMode.BIND_MATERIAL);
+                    enterInstanceGeometry(attributes);
+                    break;
+
+                case BIND_MATERIAL_PARAM:
+                    enterMaterialBindParam(attributes);
+                    break;
+
+                case INSTANCE_MATERIAL:
+                    enterInstanceMaterial(attributes);
                     break;
 
-                case BIND_MATERIAL:
-                    if (localName.equals("param"))
-                        enterMaterialBindParam(attributes);
-                    else if (localName.equals("technique_common"))
-                        enterElement(ParserMode.BIND_MATERIAL_TECHNIQUE_COMMON);
+                case INSTANCE_LIGHT:
+                    enterInstanceLight(attributes);
                     break;
 
-                case BIND_MATERIAL_TECHNIQUE_COMMON:
-                    if (localName.equals("instance_material"))
-                        enterInstanceMaterial(attributes);
+                case INSTANCE_CAMERA:
+                    enterInstanceCamera(attributes);
                     break;
 
                 case SCENE:
-                    if (localName.equals("instance_visual_scene"))
-                        enterInstanceVisualScene(attributes);
+                    enterScene();
+                    break;
+
+                case INSTANCE_VISUAL_SCENE:
+                    enterInstanceVisualScene(attributes);
                     break;
 
                 default:
-                    // Ignored
+                    enterElement(newMode);
             }
         }
         catch (final URISyntaxException e)
@@ -707,8 +815,12 @@ public class ColladaHandler extends DefaultHandler
     public void endElement(final String uri, final String localName,
             final String qName) throws SAXException
     {
-        // Ignore element when it is not the one we are currently watching
-        if (!localName.equals(this.mode.getTagName())) return;
+        // Leave ignored elements without changing the parser mode
+        if (this.skipDepth > 0)
+        {
+            this.skipDepth--;
+            return;
+        }
 
         switch (this.mode)
         {
@@ -1024,6 +1136,8 @@ public class ColladaHandler extends DefaultHandler
     public void characters(final char[] ch, final int start, final int length)
             throws SAXException
     {
+        if (this.skipDepth > 0) return;
+
         switch (this.mode)
         {
             case XFOV:
@@ -1090,7 +1204,10 @@ public class ColladaHandler extends DefaultHandler
 
     private void enterElement(final ParserMode newParserMode)
     {
-        this.modeStack.push(this.mode);
+        if (this.modeStackSize == this.modeStack.length)
+            this.modeStack = Arrays.copyOf(this.modeStack,
+                this.modeStackSize * 2);
+        this.modeStack[this.modeStackSize++] = this.mode.ordinal();
         this.mode = newParserMode;
     }
 
@@ -1102,7 +1219,253 @@ public class ColladaHandler extends DefaultHandler
 
     private void leaveElement()
     {
-        this.mode = this.modeStack.pop();
+        this.mode = MODES[this.modeStack[--this.modeStackSize]];
+    }
+
+
+    /**
+     * Checks if the handler ignores the current element. This is the case
+     * when the element is not supported in the current parser mode. All
+     * content of an ignored element is ignored, too.
+     *
+     * @return True if the current element is ignored, false if not.
+     */
+
+    boolean isSkipping()
+    {
+        return this.skipDepth > 0;
+    }
+
+
+    /**
+     * Checks if the text content of the current element is a list of numbers.
+     * The content of such an element can be passed as raw ASCII bytes to
+     * {@link #readNumbers(byte[], int, int)}.
+     *
+     * @return True if the current element contains numbers, false if not.
+     */
+
+    boolean isReadingNumbers()
+    {
+        if (this.skipDepth > 0) return false;
+        switch (this.mode)
+        {
+            case FLOAT_ARRAY:
+            case MATRIX:
+            case TRANSLATE:
+            case LOOKAT:
+            case SCALE:
+            case ROTATE:
+            case SKEW:
+            case POLYGONS_P:
+            case POLYLIST_P:
+            case TRIANGLES_P:
+            case POLYLIST_VCOUNT:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+
+    /**
+     * Sets the load options. Libraries which are not loaded are skipped like
+     * unsupported elements.
+     *
+     * @param loadOptions
+     *            The load options to set. Must not be null.
+     */
+
+    void setLoadOptions(final LoadOptions loadOptions)
+    {
+        this.skippedLibraries.clear();
+        for (final ColladaLibrary library: ColladaLibrary.values())
+            if (!loadOptions.isLoading(library))
+                this.skippedLibraries.add(library.getParserMode());
+    }
+
+
+    /**
+     * Sets the sink receiving the parsed geometries. When a sink is set then
+     * geometries are passed to it as soon as they are parsed and are not
+     * added to the document.
+     *
+     * @param geometrySink
+     *            The geometry sink to set. Null to add geometries to the
+     *            document.
+     */
+
+    void setGeometrySink(final GeometrySink geometrySink)
+    {
+        this.geometrySink = geometrySink;
+    }
+
+
+    /**
+     * Checks if the element with the specified name is a library which is
+     * loaded and can be parsed separately from the rest of the document. This
+     * is the case for loaded libraries within the COLLADA element as long as
+     * no geometry sink is used (The sink expects the geometries in document
+     * order from a single thread).
+     *
+     * @param localName
+     *            The local name of the element.
+     * @return True if element is a separable library, false if not.
+     */
+
+    boolean isSeparableLibrary(final String localName)
+    {
+        if (this.mode != ParserMode.COLLADA || this.skipDepth > 0
+            || this.geometrySink != null) return false;
+        final ParserMode newMode = this.mode.getChildMode(localName);
+        for (final ColladaLibrary library: ColladaLibrary.values())
+            if (library.getParserMode() == newMode)
+                return !this.skippedLibraries.contains(newMode);
+        return false;
+    }
+
+
+    /**
+     * Creates a new handler with the same array loading, precision, storage
+     * and skipped libraries as this handler. Used for parsing libraries separately.
+     *
+     * @return The new handler.
+     */
+
+    ColladaHandler createFragmentHandler()
+    {
+        final ColladaHandler handler = new ColladaHandler();
+        handler.arrayLoading = this.arrayLoading;
+        handler.precision = this.precision;
+        handler.storage = this.storage;
+        handler.skippedLibraries.addAll(this.skippedLibraries);
+        return handler;
+    }
+
+
+    /**
+     * Returns how float arrays and primitive index lists are loaded.
+     *
+     * @return The array loading. Never null.
+     */
+
+    ArrayLoading getArrayLoading()
+    {
+        return this.arrayLoading;
+    }
+
+
+    /**
+     * Sets how float arrays and primitive index lists are loaded. Lazy
+     * loading is only possible for content passed to
+     * {@link #setLazyContent(MappedFile, long, long)}.
+     *
+     * @param arrayLoading
+     *            The array loading to set. Must not be null.
+     */
+
+    void setArrayLoading(final ArrayLoading arrayLoading)
+    {
+        this.arrayLoading = arrayLoading;
+    }
+
+
+    /**
+     * Sets the precision in which float arrays are stored.
+     *
+     * @param precision
+     *            The precision to set. Must not be null.
+     */
+
+    void setPrecision(final Precision precision)
+    {
+        this.precision = precision;
+    }
+
+
+    /**
+     * Sets the storage of float arrays and int lists.
+     *
+     * @param storage
+     *            The storage to set. Must not be null.
+     */
+
+    void setStorage(final Storage storage)
+    {
+        this.storage = storage;
+    }
+
+
+    /**
+     * Sets the location of the content of the next started element. This
+     * must be called before the element is started and the content must be
+     * plain text without markup or entity references. When lazy loading is
+     * enabled and the element is a float array or a primitive index list then
+     * the handler uses this location to load the content later. Pass a null
+     * file after starting the element to reset the location.
+     *
+     * @param file
+     *            The mapped file containing the content. Null to reset.
+     * @param start
+     *            The file position of the content.
+     * @param end
+     *            The file position behind the content.
+     */
+
+    void setLazyContent(final MappedFile file, final long start,
+        final long end)
+    {
+        this.lazyFile = this.arrayLoading == ArrayLoading.EAGER ? null : file;
+        this.lazyStart = start;
+        this.lazyEnd = end;
+        this.lazyContentUsed = false;
+    }
+
+
+    /**
+     * Checks if the handler uses the lazily loadable content of the element
+     * which was started last. In this case the content must not be passed to
+     * the handler.
+     *
+     * @return True if content is loaded lazily, false if not.
+     */
+
+    boolean isLazyContentUsed()
+    {
+        return this.lazyContentUsed;
+    }
+
+
+    /**
+     * Processes ASCII encoded text content of the current element. Must only
+     * be called when {@link #isReadingNumbers()} returns true. Processing
+     * stops at the first byte which may start markup or an entity reference.
+     *
+     * @param bytes
+     *            The byte array.
+     * @param start
+     *            The index of the first byte to process.
+     * @param end
+     *            The index behind the last byte to process.
+     * @return The index of the byte which stopped the processing or the end
+     *         index if all bytes have been processed.
+     * @see ChunkFloatReader#addText(byte[], int, int)
+     */
+
+    int readNumbers(final byte[] bytes, final int start, final int end)
+    {
+        switch (this.mode)
+        {
+            case POLYGONS_P:
+            case POLYLIST_P:
+            case TRIANGLES_P:
+            case POLYLIST_VCOUNT:
+                return this.chunkIntReader.addText(bytes, start, end);
+
+            default:
+                return this.chunkFloatReader.addText(bytes, start, end);
+        }
     }
 
 
@@ -1184,7 +1547,7 @@ public class ColladaHandler extends DefaultHandler
         final String tmp = attributes.getValue("mips_generate");
         if (tmp != null)
             this.imageSourceBuilder.setGenerateMips(Boolean.valueOf(tmp));
-        this.stringBuilder = new StringBuilder();
+        this.stringBuilder = clearTextBuffer();
         enterElement(ParserMode.IMAGE_INIT_FROM);
     }
 
@@ -1195,7 +1558,7 @@ public class ColladaHandler extends DefaultHandler
 
     private void enterImageInitFromRef()
     {
-        this.stringBuilder = new StringBuilder();
+        this.stringBuilder = clearTextBuffer();
         enterElement(ParserMode.IMAGE_INIT_FROM_REF);
     }
 
@@ -1430,7 +1793,7 @@ public class ColladaHandler extends DefaultHandler
 
     private void enterFloatParam()
     {
-        this.stringBuilder = new StringBuilder();
+        this.stringBuilder = clearTextBuffer();
         enterElement(ParserMode.FLOAT_PARAM);
     }
 
@@ -1466,7 +1829,7 @@ public class ColladaHandler extends DefaultHandler
 
     private void enterSampler2DWrapS()
     {
-        this.stringBuilder = new StringBuilder();
+        this.stringBuilder = clearTextBuffer();
         enterElement(ParserMode.SAMPLER2D_WRAP_S);
     }
 
@@ -1490,7 +1853,7 @@ public class ColladaHandler extends DefaultHandler
 
     private void enterSampler2DWrapT()
     {
-        this.stringBuilder = new StringBuilder();
+        this.stringBuilder = clearTextBuffer();
         enterElement(ParserMode.SAMPLER2D_WRAP_T);
     }
 
@@ -1542,7 +1905,7 @@ public class ColladaHandler extends DefaultHandler
 
     private void enterSampler2DMinFilter()
     {
-        this.stringBuilder = new StringBuilder();
+        this.stringBuilder = clearTextBuffer();
         enterElement(ParserMode.SAMPLER2D_MINFILTER);
     }
 
@@ -1566,7 +1929,7 @@ public class ColladaHandler extends DefaultHandler
 
     private void enterSampler2DMagFilter()
     {
-        this.stringBuilder = new StringBuilder();
+        this.stringBuilder = clearTextBuffer();
         enterElement(ParserMode.SAMPLER2D_MAGFILTER);
     }
 
@@ -1590,7 +1953,7 @@ public class ColladaHandler extends DefaultHandler
 
     private void enterParamSemantic()
     {
-        this.stringBuilder = new StringBuilder();
+        this.stringBuilder = clearTextBuffer();
         enterElement(ParserMode.PARAM_SEMANTIC);
     }
 
@@ -1693,7 +2056,7 @@ public class ColladaHandler extends DefaultHandler
     {
         this.rgbaColor = new RGBAColor();
         this.rgbaColor.setSid(attributes.getValue("sid"));
-        this.stringBuilder = new StringBuilder();
+        this.stringBuilder = clearTextBuffer();
         enterElement(ParserMode.SHADING_COLOR);
     }
 
@@ -1787,7 +2150,7 @@ public class ColladaHandler extends DefaultHandler
     {
         this.floatValue = new FloatValue(0);
         this.floatValue.setSid(attributes.getValue("sid"));
-        this.stringBuilder = new StringBuilder();
+        this.stringBuilder = clearTextBuffer();
         enterElement(ParserMode.FLOAT);
     }
 
@@ -1970,7 +2333,52 @@ public class ColladaHandler extends DefaultHandler
     private void enterFloatArray(final Attributes attributes)
     {
         final int count = Integer.parseInt(attributes.getValue("count"));
-        final FloatArray array = this.floatArray = new FloatArray(count);
+        if (this.lazyFile != null)
+        {
+            this.floatArray = new FloatArray(count, new MappedFloatArrayLoader(
+                this.lazyFile, this.lazyStart, this.lazyEnd, count),
+                this.arrayLoading == ArrayLoading.RELEASABLE, this.precision,
+                this.storage);
+            this.lazyContentUsed = true;
+        }
+        else if (this.geometrySink != null)
+        {
+            final double[] values = new double[count];
+            this.floatArray = new FloatArray(count, new DataLoader<double[]>()
+            {
+                @Override
+                public double[] load()
+                {
+                    return values;
+                }
+            }, false, this.precision, this.storage);
+            this.sinkValues.put(this.floatArray, values);
+            this.chunkFloatReader = new ChunkFloatReader()
+            {
+                private int index = 0;
+
+                @Override
+                protected void valueFound(final double value)
+                {
+                    values[this.index++] = value;
+                }
+            };
+        }
+        else
+        {
+            final FloatArray array = this.floatArray = new FloatArray(count,
+                this.precision, this.storage);
+            this.chunkFloatReader = new ChunkFloatReader()
+            {
+                private int index = 0;
+
+                @Override
+                protected void valueFound(final double value)
+                {
+                    array.setValue(this.index++, value);
+                }
+            };
+        }
         final String digits = attributes.getValue("digits");
         final String magnitude = attributes.getValue("magnitude");
         if (digits != null)
@@ -1979,17 +2387,6 @@ public class ColladaHandler extends DefaultHandler
             this.floatArray.setMagnitude(Integer.parseInt(magnitude));
         this.floatArray.setId(attributes.getValue("id"));
         this.floatArray.setName(attributes.getValue("name"));
-        this.chunkFloatReader = new ChunkFloatReader()
-        {
-            private int index = 0;
-
-            @Override
-            protected void valueFound(final double value)
-            {
-                array.setValue(this.index++, value);
-            }
-        };
-
         enterElement(ParserMode.FLOAT_ARRAY);
     }
 
@@ -2000,8 +2397,11 @@ public class ColladaHandler extends DefaultHandler
 
     private void leaveFloatArray()
     {
-        this.chunkFloatReader.finish();
-        this.chunkFloatReader = null;
+        if (this.chunkFloatReader != null)
+        {
+            this.chunkFloatReader.finish();
+            this.chunkFloatReader = null;
+        }
         this.dataSource.setArray(this.floatArray);
         this.floatArray = null;
         leaveElement();
@@ -2095,6 +2495,7 @@ public class ColladaHandler extends DefaultHandler
         param.setSemantic(attributes.getValue("semantic"));
         param.setSid(attributes.getValue("sid"));
         this.accessor.getParams().add(param);
+        enterElement(ParserMode.PARAM);
     }
 
 
@@ -2202,7 +2603,49 @@ public class ColladaHandler extends DefaultHandler
 
     private void enterTrianglesP()
     {
-        final List<Integer> builder = this.intArrayBuilder = new ArrayList<Integer>();
+        enterPrimitiveData((long) this.trianglesBuilder.getCount() * 3
+            * getPrimitivesStride());
+        enterElement(ParserMode.TRIANGLES_P);
+    }
+
+
+    /**
+     * Prepares reading the index list of a primitive element. The list is
+     * loaded lazily if possible. The size of a lazily loaded list is counted
+     * from the content because the count attributes can't be trusted.
+     *
+     * @param expectedSize
+     *            The expected number of values. 0 if unknown. Only used
+     *            when the list is read eagerly.
+     */
+
+    private void enterPrimitiveData(final long expectedSize)
+    {
+        if (this.lazyFile != null)
+        {
+            this.intListLoader = new MappedIntListLoader(this.lazyFile,
+                this.lazyStart, this.lazyEnd);
+            this.lazyContentUsed = true;
+        }
+        else
+        {
+            enterIntList(expectedSize);
+        }
+    }
+
+
+    /**
+     * Starts collecting the values of an int list element.
+     *
+     * @param expectedSize
+     *            The expected number of values. 0 if unknown.
+     */
+
+    private void enterIntList(final long expectedSize)
+    {
+        final IntListBuilder builder = this.intListBuilder =
+            expectedSize > 0 ? new IntListBuilder((int) Math.min(expectedSize,
+                IntListBuilder.MAX_INITIAL_CAPACITY)) : new IntListBuilder();
         this.chunkIntReader = new ChunkIntReader()
         {
             @Override
@@ -2211,7 +2654,47 @@ public class ColladaHandler extends DefaultHandler
                 builder.add(value);
             }
         };
-        enterElement(ParserMode.TRIANGLES_P);
+    }
+
+
+    /**
+     * Finishes collecting the values of an int list element and returns the
+     * int list.
+     *
+     * @return The int list. Never null.
+     */
+
+    private IntList leaveIntList()
+    {
+        if (this.intListLoader != null)
+        {
+            final IntList data = new IntList(this.intListLoader.getSize(),
+                this.intListLoader,
+                this.arrayLoading == ArrayLoading.RELEASABLE, this.storage);
+            this.intListLoader = null;
+            return data;
+        }
+        this.chunkIntReader.finish();
+        this.chunkIntReader = null;
+        final IntList data = this.intListBuilder.build(this.storage);
+        this.intListBuilder = null;
+        return data;
+    }
+
+
+    /**
+     * Returns the number of values per vertex in the p element of the
+     * current primitives. This is the largest input offset plus one.
+     *
+     * @return The number of values per vertex.
+     */
+
+    private int getPrimitivesStride()
+    {
+        int stride = 1;
+        for (final SharedInput input : this.primitivesBuilder.getInputs())
+            stride = Math.max(stride, input.getOffset() + 1);
+        return stride;
     }
 
 
@@ -2253,13 +2736,8 @@ public class ColladaHandler extends DefaultHandler
 
     private void leaveTrianglesP()
     {
-        this.chunkIntReader.finish();
-        this.chunkIntReader = null;
-        final int size = this.intArrayBuilder.size();
-        final IntList data = new IntList(size);
-        data.setValues(this.intArrayBuilder);
+        final IntList data = leaveIntList();
         this.trianglesBuilder.setData(data);
-        this.intArrayBuilder = null;
         leaveElement();
     }
 
@@ -2302,15 +2780,7 @@ public class ColladaHandler extends DefaultHandler
 
     private void enterPolyListVcount()
     {
-        final List<Integer> builder = this.intArrayBuilder = new ArrayList<Integer>();
-        this.chunkIntReader = new ChunkIntReader()
-        {
-            @Override
-            protected void valueFound(final int value)
-            {
-                builder.add(value);
-            }
-        };
+        enterIntList(this.polyListBuilder.getCount());
         enterElement(ParserMode.POLYLIST_VCOUNT);
     }
 
@@ -2321,13 +2791,8 @@ public class ColladaHandler extends DefaultHandler
 
     private void leavePolyListVcount()
     {
-        this.chunkIntReader.finish();
-        this.chunkIntReader = null;
-        final int size = this.intArrayBuilder.size();
-        final IntList data = new IntList(size);
-        data.setValues(this.intArrayBuilder);
+        final IntList data = leaveIntList();
         this.polyListBuilder.setVcount(data);
-        this.intArrayBuilder = null;
         leaveElement();
     }
 
@@ -2338,15 +2803,14 @@ public class ColladaHandler extends DefaultHandler
 
     private void enterPolyListP()
     {
-        final List<Integer> builder = this.intArrayBuilder = new ArrayList<Integer>();
-        this.chunkIntReader = new ChunkIntReader()
+        final IntList vcount = this.polyListBuilder.getVcount();
+        long size = 0;
+        if (vcount != null)
         {
-            @Override
-            protected void valueFound(final int value)
-            {
-                builder.add(value);
-            }
-        };
+            for (int i = 0, max = vcount.getSize(); i < max; i++)
+                size += vcount.getValue(i);
+        }
+        enterPrimitiveData(size * getPrimitivesStride());
         enterElement(ParserMode.POLYLIST_P);
     }
 
@@ -2357,13 +2821,8 @@ public class ColladaHandler extends DefaultHandler
 
     private void leavePolyListP()
     {
-        this.chunkIntReader.finish();
-        this.chunkIntReader = null;
-        final int size = this.intArrayBuilder.size();
-        final IntList data = new IntList(size);
-        data.setValues(this.intArrayBuilder);
+        final IntList data = leaveIntList();
         this.polyListBuilder.setData(data);
-        this.intArrayBuilder = null;
         leaveElement();
     }
 
@@ -2406,15 +2865,7 @@ public class ColladaHandler extends DefaultHandler
 
     private void enterPolygonsP()
     {
-        final List<Integer> builder = this.intArrayBuilder = new ArrayList<Integer>();
-        this.chunkIntReader = new ChunkIntReader()
-        {
-            @Override
-            protected void valueFound(final int value)
-            {
-                builder.add(value);
-            }
-        };
+        enterPrimitiveData(0);
         enterElement(ParserMode.POLYGONS_P);
     }
 
@@ -2425,13 +2876,8 @@ public class ColladaHandler extends DefaultHandler
 
     private void leavePolygonsP()
     {
-        this.chunkIntReader.finish();
-        this.chunkIntReader = null;
-        final int size = this.intArrayBuilder.size();
-        final IntList data = new IntList(size);
-        data.setValues(this.intArrayBuilder);
+        final IntList data = leaveIntList();
         this.polygonsBuilder.getData().add(data);
-        this.intArrayBuilder = null;
         leaveElement();
     }
 
@@ -2467,7 +2913,15 @@ public class ColladaHandler extends DefaultHandler
 
     private void leaveGeometry()
     {
-        this.geometryLibrary.getGeometries().add(this.geometryBuilder.build());
+        if (this.geometrySink != null)
+        {
+            GeometryEmitter.emit(this.geometryBuilder.build(),
+                this.geometrySink, this.sinkValues);
+            this.sinkValues.clear();
+        }
+        else
+            this.geometryLibrary.getGeometries().add(
+                this.geometryBuilder.build());
         this.geometryBuilder = null;
         leaveElement();
     }
@@ -2479,7 +2933,8 @@ public class ColladaHandler extends DefaultHandler
 
     private void leaveLibraryGeometries()
     {
-        this.document.getGeometryLibraries().add(this.geometryLibrary);
+        if (this.geometrySink == null)
+            this.document.getGeometryLibraries().add(this.geometryLibrary);
         this.geometryLibrary = null;
         leaveElement();
     }
@@ -2723,7 +3178,7 @@ public class ColladaHandler extends DefaultHandler
     {
         this.rgbColor = new RGBColor();
         this.rgbColor.setSid(attributes.getValue("sid"));
-        this.stringBuilder = new StringBuilder();
+        this.stringBuilder = clearTextBuffer();
         enterElement(ParserMode.LIGHT_COLOR);
     }
 
@@ -2760,7 +3215,7 @@ public class ColladaHandler extends DefaultHandler
     {
         this.floatValue = new FloatValue(0);
         this.floatValue.setSid(attributes.getValue("sid"));
-        this.stringBuilder = new StringBuilder();
+        this.stringBuilder = clearTextBuffer();
         enterElement(mode);
     }
 
@@ -2984,7 +3439,7 @@ public class ColladaHandler extends DefaultHandler
     {
         this.floatValue = new FloatValue(0);
         this.floatValue.setSid(attributes.getValue("sid"));
-        this.stringBuilder = new StringBuilder();
+        this.stringBuilder = clearTextBuffer();
         enterElement(mode);
     }
 
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+
+/**
+ * The COLLADA libraries which can be selected for loading with
+ * {@link LoadOptions}.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public enum ColladaLibrary
+{
+    /** The image libraries. */
+    IMAGES(ParserMode.LIBRARY_IMAGES),
+
+    /** The material libraries. */
+    MATERIALS(ParserMode.LIBRARY_MATERIALS),
+
+    /** The effect libraries. */
+    EFFECTS(ParserMode.LIBRARY_EFFECTS),
+
+    /** The geometry libraries. */
+    GEOMETRIES(ParserMode.LIBRARY_GEOMETRIES),
+
+    /** The camera libraries. */
+    CAMERAS(ParserMode.LIBRARY_CAMERAS),
+
+    /** The light libraries. */
+    LIGHTS(ParserMode.LIBRARY_LIGHTS),
+
+    /** The visual scene libraries. */
+    VISUAL_SCENES(ParserMode.LIBRARY_VISUAL_SCENES),
+
+    /** The animation libraries. */
+    ANIMATIONS(ParserMode.LIBRARY_ANIMATIONS);
+
+    /** The parser mode of the library element. */
+    private final ParserMode parserMode;
+
+
+    /**
+     * Constructs a new library.
+     *
+     * @param parserMode
+     *            The parser mode of the library element.
+     */
+
+    private ColladaLibrary(final ParserMode parserMode)
+    {
+        this.parserMode = parserMode;
+    }
+
+
+    /**
+     * Returns the tag name of the library element.
+     *
+     * @return The tag name.
+     */
+
+    public String getTagName()
+    {
+        return this.parserMode.getTagName();
+    }
+
+
+    /**
+     * Returns the parser mode of the library element.
+     *
+     * @return The parser mode.
+     */
+
+    ParserMode getParserMode()
+    {
+        return this.parserMode;
+    }
+}
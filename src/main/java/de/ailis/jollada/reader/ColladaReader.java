@@ -9,6 +9,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -17,16 +23,384 @@ import org.xml.sax.helpers.XMLReaderFactory;
 
 import de.ailis.jollada.exceptions.ParserException;
 import de.ailis.jollada.model.Document;
+import de.ailis.jollada.model.Precision;
+import de.ailis.jollada.model.Storage;
 
 
 /**
  * Reads a COLLADA file.
  *
+ * A reader reuses its parsers and its handler for all reads, so reading many
+ * documents with the same reader creates less garbage than creating a new
+ * reader for each document. Readers are not thread-safe. Use
+ * {@link #getThreadReader()} to get a reader for the current thread.
+ *
  * @author Klaus Reimer <k@ailis.de>
  */
 
 public class ColladaReader
 {
+    /** The readers owned by the threads. */
+    private static final ThreadLocal<ColladaReader> THREAD_READERS =
+        new ThreadLocal<ColladaReader>()
+        {
+            @Override
+            protected ColladaReader initialValue()
+            {
+                return new ColladaReader();
+            }
+        };
+
+    /** The XML parser backend. */
+    private ParserBackend backend = ParserBackend.SAX;
+
+    /** How float arrays and primitive index lists are loaded. */
+    private ArrayLoading arrayLoading = ArrayLoading.EAGER;
+
+    /** The precision in which float arrays are stored. */
+    private Precision precision = Precision.DOUBLE;
+
+    /** The storage of float arrays and primitive index lists. */
+    private Storage storage = Storage.HEAP;
+
+    /** The options controlling which parts of a document are loaded. */
+    private LoadOptions loadOptions = new LoadOptions();
+
+    /** The executor for parsing libraries in parallel. Null if not used. */
+    private Executor executor;
+
+    /** If compressed documents are decompressed in a background thread. */
+    private boolean backgroundDecompression;
+
+    /** The StAX parser. Created on first use. */
+    private StaxColladaParser staxParser;
+
+    /** The memory mapped file parser. Created on first use. */
+    private MappedColladaParser mappedParser;
+
+    /** The SAX parser. Created on first use. */
+    private XMLReader saxParser;
+
+    /** The reusable handler. Created on first use. */
+    private ColladaHandler handler;
+
+    /** If the reusable handler is currently used. */
+    private boolean handlerInUse;
+
+
+    /**
+     * Returns the reader owned by the current thread. The reader is created
+     * on first use and then reused for all reads of the thread, so the
+     * parsers, the handler and its buffers are only created once per thread.
+     * The options set on the reader are kept between reads, use
+     * {@link #reset()} to restore the defaults.
+     *
+     * @return The reader of the current thread. Never null.
+     */
+
+    public static ColladaReader getThreadReader()
+    {
+        return THREAD_READERS.get();
+    }
+
+
+    /**
+     * Restores the default options of this reader. The parsers and the
+     * handler are kept for reuse.
+     */
+
+    public void reset()
+    {
+        this.backend = ParserBackend.SAX;
+        this.arrayLoading = ArrayLoading.EAGER;
+        this.precision = Precision.DOUBLE;
+        this.storage = Storage.HEAP;
+        this.loadOptions = new LoadOptions();
+        this.backgroundDecompression = false;
+        setExecutor(null);
+    }
+
+
+    /**
+     * Copies the options of the specified reader into this reader.
+     *
+     * @param reader
+     *            The reader to copy the options from.
+     */
+
+    void setOptions(final ColladaReader reader)
+    {
+        this.backend = reader.backend;
+        this.arrayLoading = reader.arrayLoading;
+        this.precision = reader.precision;
+        this.storage = reader.storage;
+        this.loadOptions = reader.loadOptions;
+        this.backgroundDecompression = reader.backgroundDecompression;
+        if (this.executor != reader.executor) setExecutor(reader.executor);
+    }
+
+
+    /**
+     * Returns the XML parser backend used to read documents.
+     *
+     * @return The parser backend. Never null.
+     */
+
+    public ParserBackend getBackend()
+    {
+        return this.backend;
+    }
+
+
+    /**
+     * Sets the XML parser backend used to read documents. Default is
+     * {@link ParserBackend#SAX}.
+     *
+     * @param backend
+     *            The parser backend to set. Must not be null.
+     */
+
+    public void setBackend(final ParserBackend backend)
+    {
+        if (backend == null)
+            throw new IllegalArgumentException("backend must not be null");
+        this.backend = backend;
+    }
+
+
+    /**
+     * Returns how float arrays and primitive index lists are loaded.
+     *
+     * @return The array loading. Never null.
+     */
+
+    public ArrayLoading getArrayLoading()
+    {
+        return this.arrayLoading;
+    }
+
+
+    /**
+     * Sets how float arrays and primitive index lists are loaded. Default is
+     * {@link ArrayLoading#EAGER}. Lazy loading is only supported when
+     * reading files with the {@link ParserBackend#MAPPED} backend.
+     *
+     * @param arrayLoading
+     *            The array loading to set. Must not be null.
+     */
+
+    public void setArrayLoading(final ArrayLoading arrayLoading)
+    {
+        if (arrayLoading == null)
+            throw new IllegalArgumentException(
+                "arrayLoading must not be null");
+        this.arrayLoading = arrayLoading;
+    }
+
+
+    /**
+     * Returns the precision in which float arrays are stored.
+     *
+     * @return The precision. Never null.
+     */
+
+    public Precision getPrecision()
+    {
+        return this.precision;
+    }
+
+
+    /**
+     * Sets the precision in which float arrays are stored. Default is
+     * {@link Precision#DOUBLE}. {@link Precision#SINGLE} halves the memory
+     * used by float arrays and rounds the values to the nearest float.
+     *
+     * @param precision
+     *            The precision to set. Must not be null.
+     */
+
+    public void setPrecision(final Precision precision)
+    {
+        if (precision == null)
+            throw new IllegalArgumentException("precision must not be null");
+        this.precision = precision;
+    }
+
+
+    /**
+     * Returns the storage of float arrays and primitive index lists.
+     *
+     * @return The storage. Never null.
+     */
+
+    public Storage getStorage()
+    {
+        return this.storage;
+    }
+
+
+    /**
+     * Sets the storage of float arrays and primitive index lists. Default
+     * is {@link Storage#HEAP}. With {@link Storage#DIRECT} the values are
+     * stored in direct buffers outside of the Java heap which can be passed
+     * to native code without copying.
+     *
+     * @param storage
+     *            The storage to set. Must not be null.
+     * @see de.ailis.jollada.model.FloatArray#getDoubleBuffer()
+     * @see de.ailis.jollada.model.IntList#getIntBuffer()
+     */
+
+    public void setStorage(final Storage storage)
+    {
+        if (storage == null)
+            throw new IllegalArgumentException("storage must not be null");
+        this.storage = storage;
+    }
+
+
+    /**
+     * Returns the options controlling which parts of a document are loaded.
+     *
+     * @return The load options. Never null.
+     */
+
+    public LoadOptions getLoadOptions()
+    {
+        return this.loadOptions;
+    }
+
+
+    /**
+     * Sets the options controlling which parts of a document are loaded.
+     * Default are options which load everything.
+     *
+     * @param loadOptions
+     *            The load options to set. Must not be null.
+     */
+
+    public void setLoadOptions(final LoadOptions loadOptions)
+    {
+        if (loadOptions == null)
+            throw new IllegalArgumentException(
+                "loadOptions must not be null");
+        this.loadOptions = loadOptions;
+    }
+
+
+    /**
+     * Returns the executor used for parsing the libraries of a document in
+     * parallel.
+     *
+     * @return The executor. Null if documents are parsed sequentially.
+     */
+
+    public Executor getExecutor()
+    {
+        return this.executor;
+    }
+
+
+    /**
+     * Sets the executor used for parsing the libraries of a document in
+     * parallel. Parallel parsing is only supported when reading files with
+     * the {@link ParserBackend#MAPPED} backend. The library elements are
+     * split into fragments of about 1 MB at child element boundaries which
+     * are parsed on the executor and then merged into the document in
+     * document order. Geometries streamed with
+     * {@link #readGeometries(File, GeometrySink)} are always parsed
+     * sequentially. Default is null which parses documents sequentially.
+     *
+     * @param executor
+     *            The executor to set. Null to parse documents sequentially.
+     */
+
+    public void setExecutor(final Executor executor)
+    {
+        this.executor = executor;
+        this.mappedParser = null;
+    }
+
+
+    /**
+     * Checks if compressed documents are decompressed in a background
+     * thread.
+     *
+     * @return True if decompressed in background, false if not.
+     */
+
+    public boolean isBackgroundDecompression()
+    {
+        return this.backgroundDecompression;
+    }
+
+
+    /**
+     * Sets if compressed documents are decompressed in a background thread.
+     * The background thread decompresses ahead of the parser so
+     * decompression and parsing run in parallel. Default is false.
+     *
+     * @param backgroundDecompression
+     *            True to decompress in background, false to decompress in
+     *            the parsing thread.
+     */
+
+    public void setBackgroundDecompression(
+        final boolean backgroundDecompression)
+    {
+        this.backgroundDecompression = backgroundDecompression;
+    }
+
+
+    /**
+     * Returns a handler configured with the options of this reader. This is
+     * the reusable handler unless it is already in use (When a geometry sink
+     * reads another document with this reader for example). The returned
+     * handler must be passed to {@link #releaseHandler(ColladaHandler)} after
+     * reading.
+     *
+     * @return The handler.
+     */
+
+    private ColladaHandler acquireHandler()
+    {
+        final ColladaHandler handler;
+        if (this.handlerInUse)
+        {
+            handler = new ColladaHandler();
+        }
+        else
+        {
+            if (this.handler == null) this.handler = new ColladaHandler();
+            handler = this.handler;
+            this.handlerInUse = true;
+        }
+        handler.setArrayLoading(this.arrayLoading);
+        handler.setPrecision(this.precision);
+        handler.setStorage(this.storage);
+        handler.setLoadOptions(this.loadOptions);
+        handler.setGeometrySink(null);
+        return handler;
+    }
+
+
+    /**
+     * Releases a handler returned by {@link #acquireHandler()}. The reusable
+     * handler is reset so it no longer references the read document.
+     *
+     * @param handler
+     *            The handler to release.
+     */
+
+    private void releaseHandler(final ColladaHandler handler)
+    {
+        if (handler != this.handler) return;
+        handler.setGeometrySink(null);
+        handler.reset();
+        this.handlerInUse = false;
+    }
+
+
     /**
      * Reads a COLLADA document from the specified file and returns it.
      *
@@ -44,7 +418,13 @@ public class ColladaReader
 
 
     /**
-     * Reads a COLLADA document from the specified file and returns it.
+     * Reads a COLLADA document from the specified file and returns it. Gzip
+     * compressed documents (.dae.gz) and COLLADA archives (.zae) are
+     * detected by their content and decompressed while reading. The root
+     * document of an archive is the one named in its manifest.xml or the
+     * first .dae file if the archive has no manifest. Compressed documents
+     * are always read with a stream parser even when the
+     * {@link ParserBackend#MAPPED} backend is selected.
      *
      * @param file
      *            The file to read.
@@ -55,12 +435,165 @@ public class ColladaReader
 
     public Document read(final File file)
     {
+        final ColladaHandler handler = acquireHandler();
         try
         {
+            return read(file, handler);
+        }
+        finally
+        {
+            releaseHandler(handler);
+        }
+    }
+
+
+    /**
+     * Reads a COLLADA document from the specified input stream and returns
+     * it. Gzip compressed streams are detected by their content and
+     * decompressed while reading. COLLADA archives (.zae) can only be read
+     * from files.
+     *
+     * @param stream
+     *            The stream from which to read the COLLADA document
+     * @return The COLLADA document
+     * @throws ParserException
+     *             When COLLADA document could not be read
+     */
+
+    public Document read(final InputStream stream)
+    {
+        final ColladaHandler handler = acquireHandler();
+        try
+        {
+            return read(stream, handler);
+        }
+        finally
+        {
+            releaseHandler(handler);
+        }
+    }
+
+
+    /**
+     * Reads the geometries of a COLLADA document from the specified file and
+     * passes them to the specified sink. Each geometry is discarded after it
+     * has been passed to the sink and all other libraries are skipped, so no
+     * document is built. The load options of the reader are ignored.
+     *
+     * @param file
+     *            The file to read.
+     * @param sink
+     *            The sink receiving the geometries. Must not be null.
+     * @throws ParserException
+     *             When COLLADA document could not be read.
+     */
+
+    public void readGeometries(final File file, final GeometrySink sink)
+    {
+        final ColladaHandler handler = acquireGeometryHandler(sink);
+        try
+        {
+            read(file, handler);
+        }
+        finally
+        {
+            releaseHandler(handler);
+        }
+    }
+
+
+    /**
+     * Reads the geometries of a COLLADA document from the specified stream
+     * and passes them to the specified sink. Each geometry is discarded after
+     * it has been passed to the sink and all other libraries are skipped, so
+     * no document is built. The load options of the reader are ignored.
+     *
+     * @param stream
+     *            The stream from which to read the COLLADA document.
+     * @param sink
+     *            The sink receiving the geometries. Must not be null.
+     * @throws ParserException
+     *             When COLLADA document could not be read.
+     */
+
+    public void readGeometries(final InputStream stream,
+        final GeometrySink sink)
+    {
+        final ColladaHandler handler = acquireGeometryHandler(sink);
+        try
+        {
+            read(stream, handler);
+        }
+        finally
+        {
+            releaseHandler(handler);
+        }
+    }
+
+
+    /**
+     * Returns a handler which passes geometries to the specified sink and
+     * skips everything else. The returned handler must be passed to
+     * {@link #releaseHandler(ColladaHandler)} after reading.
+     *
+     * @param sink
+     *            The sink receiving the geometries. Must not be null.
+     * @return The handler.
+     */
+
+    private ColladaHandler acquireGeometryHandler(final GeometrySink sink)
+    {
+        if (sink == null)
+            throw new IllegalArgumentException("sink must not be null");
+        final ColladaHandler handler = acquireHandler();
+        handler.setLoadOptions(new LoadOptions(ColladaLibrary.GEOMETRIES));
+        handler.setGeometrySink(sink);
+        return handler;
+    }
+
+
+    /**
+     * Reads a COLLADA document from the specified file with the specified
+     * handler.
+     *
+     * @param file
+     *            The file to read.
+     * @param handler
+     *            The handler building the document.
+     * @return The COLLADA document.
+     * @throws ParserException
+     *             When COLLADA document could not be read.
+     */
+
+    private Document read(final File file, final ColladaHandler handler)
+    {
+        try
+        {
+            final int magic = CompressedInput.getMagic(file);
+            if (CompressedInput.isZip(magic)) return readArchive(file, handler);
+            if (CompressedInput.isGzip(magic))
+            {
+                final InputStream stream = new GZIPInputStream(
+                    new FileInputStream(file), CompressedInput.BUFFER_SIZE);
+                try
+                {
+                    return readDecompressed(stream, handler);
+                }
+                finally
+                {
+                    stream.close();
+                }
+            }
+            if (this.backend == ParserBackend.MAPPED)
+            {
+                final MappedFile mappedFile = new MappedFile(file);
+                if (MappedColladaParser.isSupported(mappedFile))
+                    return readMapped(mappedFile, handler);
+            }
             final InputStream stream = new FileInputStream(file);
             try
             {
-                return read(stream);
+                return parse(stream, handler);
             }
             finally
             {
@@ -76,22 +609,145 @@ public class ColladaReader
 
 
     /**
-     * Reads a COLLADA document from the specified input stream and returns
-     * it.
+     * Reads a COLLADA document from the specified input stream with the
+     * specified handler. Gzip compressed streams are decompressed.
      *
      * @param stream
      *            The stream from which to read the COLLADA document
+     * @param handler
+     *            The handler building the document.
      * @return The COLLADA document
      * @throws ParserException
      *             When COLLADA document could not be read
      */
 
-    public Document read(final InputStream stream)
+    private Document read(final InputStream stream,
+        final ColladaHandler handler)
+    {
+        try
+        {
+            final PushbackInputStream input = new PushbackInputStream(stream,
+                2);
+            if (!CompressedInput.isGzip(CompressedInput.getMagic(input)))
+                return parse(input, handler);
+            final InputStream decompressed = new GZIPInputStream(input,
+                CompressedInput.BUFFER_SIZE);
+            try
+            {
+                return readDecompressed(decompressed, handler);
+            }
+            finally
+            {
+                decompressed.close();
+            }
+        }
+        catch (final IOException e)
+        {
+            throw new ParserException("Unable to read collada document: " + e,
+                e);
+        }
+    }
+
+
+    /**
+     * Reads the root document of the specified COLLADA archive (.zae) with
+     * the specified handler.
+     *
+     * @param file
+     *            The COLLADA archive.
+     * @param handler
+     *            The handler building the document.
+     * @return The COLLADA document
+     * @throws IOException
+     *             When archive could not be read.
+     */
+
+    private Document readArchive(final File file,
+        final ColladaHandler handler) throws IOException
+    {
+        final ZipFile zip = new ZipFile(file);
+        try
+        {
+            final InputStream stream = zip.getInputStream(CompressedInput
+                .getRootEntry(zip));
+            try
+            {
+                return readDecompressed(stream, handler);
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+
+    /**
+     * Reads a COLLADA document from the specified decompressing stream with
+     * the specified handler. When background decompression is enabled then
+     * the stream is read ahead in a background thread.
+     *
+     * @param stream
+     *            The decompressing stream. It is not closed by this method.
+     * @param handler
+     *            The handler building the document.
+     * @return The COLLADA document
+     * @throws IOException
+     *             When stream could not be read.
+     */
+
+    private Document readDecompressed(final InputStream stream,
+        final ColladaHandler handler) throws IOException
     {
+        if (!this.backgroundDecompression) return parse(stream, handler);
+        final InputStream pipeline = new PipelinedInputStream(stream);
         try
         {
-            final ColladaHandler handler = new ColladaHandler();
-            final XMLReader reader = XMLReaderFactory.createXMLReader();
+            return parse(pipeline, handler);
+        }
+        finally
+        {
+            pipeline.close();
+        }
+    }
+
+
+    /**
+     * Parses a COLLADA document from the specified uncompressed input stream
+     * with the specified handler.
+     *
+     * @param stream
+     *            The stream from which to read the COLLADA document
+     * @param handler
+     *            The handler building the document.
+     * @return The COLLADA document
+     * @throws ParserException
+     *             When COLLADA document could not be read
+     */
+
+    private Document parse(final InputStream stream,
+        final ColladaHandler handler)
+    {
+        if (this.backend == ParserBackend.STAX)
+            return readStax(stream, handler);
+        try
+        {
+            final XMLReader reader;
+            if (handler == this.handler)
+            {
+                if (this.saxParser == null)
+                    this.saxParser = XMLReaderFactory.createXMLReader();
+                reader = this.saxParser;
+            }
+            else
+            {
+                // Nested read while the reusable parser is busy
+                reader = XMLReaderFactory.createXMLReader();
+            }
             reader.setContentHandler(handler);
             reader.parse(new InputSource(stream));
             return handler.getDocument();
@@ -107,4 +763,81 @@ public class ColladaReader
                     e);
         }
     }
+
+
+    /**
+     * Reads a COLLADA document from the specified input stream with the StAX
+     * parser and returns it.
+     *
+     * @param stream
+     *            The stream from which to read the COLLADA document
+     * @param handler
+     *            The handler building the document.
+     * @return The COLLADA document
+     * @throws ParserException
+     *             When COLLADA document could not be read
+     */
+
+    private Document readStax(final InputStream stream,
+        final ColladaHandler handler)
+    {
+        if (this.staxParser == null)
+            this.staxParser = new StaxColladaParser();
+        try
+        {
+            return this.staxParser.parse(stream, handler);
+        }
+        catch (final XMLStreamException e)
+        {
+            throw new ParserException("Unable to parse collada document: " + e,
+                    e);
+        }
+        catch (final SAXException e)
+        {
+            throw new ParserException("Unable to parse collada document: " + e,
+                    e);
+        }
+    }
+
+
+    /**
+     * Reads a COLLADA document from the specified memory mapped file and
+     * returns it.
+     *
+     * @param file
+     *            The mapped file from which to read the COLLADA document
+     * @param handler
+     *            The handler building the document.
+     * @return The COLLADA document
+     * @throws ParserException
+     *             When COLLADA document could not be read
+     */
+
+    private Document readMapped(final MappedFile file,
+        final ColladaHandler handler)
+    {
+        final MappedColladaParser parser;
+        if (handler == this.handler)
+        {
+            if (this.mappedParser == null)
+                this.mappedParser = new MappedColladaParser(this.executor,
+                    MappedColladaParser.DEFAULT_CHUNK_SIZE);
+            parser = this.mappedParser;
+        }
+        else
+        {
+            // Nested read while the reusable parser is busy
+            parser = new MappedColladaParser(this.executor,
+                MappedColladaParser.DEFAULT_CHUNK_SIZE);
+        }
+        try
+        {
+            return parser.parse(file, handler);
+        }
+        catch (final SAXException e)
+        {
+            throw new ParserException("Unable to parse collada document: " + e,
+                    e);
+        }
+    }
 }
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Enumeration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+
+/**
+ * Detects and opens compressed COLLADA documents. Supported are gzip
+ * compressed documents (.dae.gz) and COLLADA archives (.zae) which are zip
+ * files with a manifest.xml file naming the root document.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class CompressedInput
+{
+    /** The buffer size of the gzip decompressor. */
+    static final int BUFFER_SIZE = 65536;
+
+    /** The name of the manifest of a COLLADA archive. */
+    private static final String MANIFEST = "manifest.xml";
+
+    /** The pattern for the root document in the manifest. */
+    private static final Pattern DAE_ROOT = Pattern
+        .compile("<dae_root>\\s*([^<]*?)\\s*</dae_root>");
+
+    /** The maximum size of a manifest. */
+    private static final int MAX_MANIFEST_SIZE = 65536;
+
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+
+    private CompressedInput()
+    {
+        // Empty
+    }
+
+
+    /**
+     * Checks if the specified magic number is the one of a gzip stream.
+     *
+     * @param magic
+     *            The first two bytes of the data in big endian order.
+     * @return True if gzip stream, false if not.
+     */
+
+    static boolean isGzip(final int magic)
+    {
+        return magic == 0x1f8b;
+    }
+
+
+    /**
+     * Checks if the specified magic number is the one of a zip file.
+     *
+     * @param magic
+     *            The first two bytes of the data in big endian order.
+     * @return True if zip file, false if not.
+     */
+
+    static boolean isZip(final int magic)
+    {
+        return magic == 0x504b;
+    }
+
+
+    /**
+     * Returns the magic number of the specified file.
+     *
+     * @param file
+     *            The file.
+     * @return The first two bytes of the file in big endian order or -1 if
+     *         file is shorter.
+     * @throws IOException
+     *             When file could not be read.
+     */
+
+    static int getMagic(final File file) throws IOException
+    {
+        final InputStream stream = new FileInputStream(file);
+        try
+        {
+            final int b0 = stream.read();
+            final int b1 = stream.read();
+            return b1 < 0 ? -1 : (b0 << 8) | b1;
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+
+    /**
+     * Returns the magic number of the specified stream. The read bytes are
+     * pushed back into the stream.
+     *
+     * @param stream
+     *            The stream. Must be able to push back two bytes.
+     * @return The first two bytes of the stream in big endian order or -1 if
+     *         stream is shorter.
+     * @throws IOException
+     *             When stream could not be read.
+     */
+
+    static int getMagic(final PushbackInputStream stream) throws IOException
+    {
+        final int b0 = stream.read();
+        if (b0 < 0) return -1;
+        final int b1 = stream.read();
+        if (b1 < 0)
+        {
+            stream.unread(b0);
+            return -1;
+        }
+        stream.unread(b1);
+        stream.unread(b0);
+        return (b0 << 8) | b1;
+    }
+
+
+    /**
+     * Returns the entry of the root document in the specified COLLADA
+     * archive. This is the document named by the dae_root element of the
+     * manifest. When there is no manifest then the first .dae file in the
+     * archive is used.
+     *
+     * @param zip
+     *            The COLLADA archive.
+     * @return The entry of the root document.
+     * @throws IOException
+     *             When no root document was found.
+     */
+
+    static ZipEntry getRootEntry(final ZipFile zip) throws IOException
+    {
+        final ZipEntry manifest = zip.getEntry(MANIFEST);
+        if (manifest != null)
+        {
+            final String root = getRootName(readManifest(zip, manifest));
+            if (root == null)
+                throw new IOException("No dae_root found in " + MANIFEST);
+            final ZipEntry entry = zip.getEntry(root);
+            if (entry == null)
+                throw new IOException("Root document " + root
+                    + " not found in archive");
+            return entry;
+        }
+        final Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements())
+        {
+            final ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory()
+                && entry.getName().toLowerCase().endsWith(".dae"))
+                return entry;
+        }
+        throw new IOException("No COLLADA document found in archive");
+    }
+
+
+    /**
+     * Reads the manifest of a COLLADA archive.
+     *
+     * @param zip
+     *            The COLLADA archive.
+     * @param manifest
+     *            The manifest entry.
+     * @return The manifest content.
+     * @throws IOException
+     *             When manifest could not be read.
+     */
+
+    private static String readManifest(final ZipFile zip,
+        final ZipEntry manifest) throws IOException
+    {
+        final InputStream stream = zip.getInputStream(manifest);
+        try
+        {
+            final byte[] bytes = new byte[MAX_MANIFEST_SIZE];
+            int length = 0;
+            int read;
+            while (length < bytes.length
+                && (read = stream.read(bytes, length, bytes.length - length))
+                    >= 0)
+                length += read;
+            return new String(bytes, 0, length, "UTF-8");
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+
+    /**
+     * Returns the archive entry name of the root document from the specified
+     * manifest. The dae_root is a relative URI so it is decoded.
+     *
+     * @param manifest
+     *            The manifest content.
+     * @return The entry name or null if manifest has no dae_root.
+     */
+
+    static String getRootName(final String manifest)
+    {
+        final Matcher matcher = DAE_ROOT.matcher(manifest);
+        if (!matcher.find()) return null;
+        String root = matcher.group(1);
+        try
+        {
+            final String path = new URI(root).getPath();
+            if (path != null) root = path;
+        }
+        catch (final URISyntaxException e)
+        {
+            // Not encoded so use it as it is
+        }
+        while (root.startsWith("./"))
+            root = root.substring(2);
+        if (root.startsWith("/")) root = root.substring(1);
+        return root;
+    }
+}
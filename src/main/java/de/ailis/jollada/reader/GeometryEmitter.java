@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import java.util.List;
+import java.util.Map;
+
+import de.ailis.jollada.model.Accessor;
+import de.ailis.jollada.model.Array;
+import de.ailis.jollada.model.DataFlowSource;
+import de.ailis.jollada.model.FloatArray;
+import de.ailis.jollada.model.Geometric;
+import de.ailis.jollada.model.Geometry;
+import de.ailis.jollada.model.IntList;
+import de.ailis.jollada.model.Mesh;
+import de.ailis.jollada.model.PolyList;
+import de.ailis.jollada.model.Polygons;
+import de.ailis.jollada.model.Primitives;
+import de.ailis.jollada.model.SharedInput;
+import de.ailis.jollada.model.SharedInputs;
+import de.ailis.jollada.model.Triangles;
+import de.ailis.jollada.model.UnsharedInput;
+import de.ailis.jollada.model.UnsharedInputs;
+import de.ailis.jollada.model.Vertices;
+
+
+/**
+ * Reports parsed geometries to a {@link GeometrySink}.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class GeometryEmitter
+{
+    /**
+     * Private constructor to prevent instantiation.
+     */
+
+    private GeometryEmitter()
+    {
+        // Empty
+    }
+
+
+    /**
+     * Reports the specified geometry to the specified sink. The geometry is
+     * consumed: The arrays of its sources are removed from the sources as
+     * soon as they have been reported so they can be garbage collected while
+     * the next source is reported.
+     *
+     * @param geometry
+     *            The geometry to report.
+     * @param sink
+     *            The sink receiving the geometry.
+     * @param values
+     *            The parsed values of float arrays of the geometry. These
+     *            are reported directly instead of copies of the array
+     *            values.
+     */
+
+    static void emit(final Geometry geometry, final GeometrySink sink,
+        final Map<FloatArray, double[]> values)
+    {
+        sink.beginGeometry(geometry.getId(), geometry.getName());
+        final Geometric geometric = geometry.getGeometric();
+        if (geometric instanceof Mesh)
+        {
+            final Mesh mesh = (Mesh) geometric;
+            for (final DataFlowSource source: mesh.getSources())
+                emitSource(source, sink, values);
+            final Vertices vertices = mesh.getVertices();
+            if (vertices != null) emitVertices(vertices, sink);
+            for (final Primitives primitives: mesh.getPrimitives())
+                emitPrimitives(primitives, sink);
+        }
+        sink.endGeometry();
+    }
+
+
+    /**
+     * Reports the specified data source if it is a float source.
+     *
+     * @param source
+     *            The data source.
+     * @param sink
+     *            The sink receiving the source.
+     * @param values
+     *            The parsed values of float arrays.
+     */
+
+    private static void emitSource(final DataFlowSource source,
+        final GeometrySink sink, final Map<FloatArray, double[]> values)
+    {
+        final Array array = source.getArray();
+        if (!(array instanceof FloatArray)) return;
+        int stride = 1;
+        if (source.getCommonTechnique() != null)
+        {
+            final Accessor accessor = source.getCommonTechnique()
+                .getAccessor();
+            if (accessor != null) stride = accessor.getStride();
+        }
+        final FloatArray floatArray = (FloatArray) array;
+        final double[] parsed = values.get(floatArray);
+        source.setArray(null);
+        sink.source(source.getId(), parsed != null ? parsed : floatArray
+            .getValues(), stride);
+    }
+
+
+    /**
+     * Reports the specified vertices.
+     *
+     * @param vertices
+     *            The vertices.
+     * @param sink
+     *            The sink receiving the vertices.
+     */
+
+    private static void emitVertices(final Vertices vertices,
+        final GeometrySink sink)
+    {
+        final UnsharedInputs inputs = vertices.getInputs();
+        final int size = inputs.size();
+        final String[] semantics = new String[size];
+        final String[] sources = new String[size];
+        for (int i = 0; i < size; i++)
+        {
+            final UnsharedInput input = inputs.get(i);
+            semantics[i] = input.getSemantic();
+            sources[i] = input.getSource().toString();
+        }
+        sink.vertices(vertices.getId(), semantics, sources);
+    }
+
+
+    /**
+     * Reports the specified primitives.
+     *
+     * @param primitives
+     *            The primitives.
+     * @param sink
+     *            The sink receiving the primitives.
+     */
+
+    private static void emitPrimitives(final Primitives primitives,
+        final GeometrySink sink)
+    {
+        final SharedInputs inputs = primitives.getInputs();
+        final int size = inputs.size();
+        final String[] semantics = new String[size];
+        final String[] sources = new String[size];
+        final int[] offsets = new int[size];
+        final int[] sets = new int[size];
+        int stride = 1;
+        for (int i = 0; i < size; i++)
+        {
+            final SharedInput input = inputs.get(i);
+            semantics[i] = input.getSemantic();
+            sources[i] = input.getSource().toString();
+            offsets[i] = input.getOffset();
+            sets[i] = input.getSet() == null ? -1 : input.getSet();
+            stride = Math.max(stride, offsets[i] + 1);
+        }
+
+        final int[] vcount;
+        final int[] indices;
+        if (primitives instanceof Triangles)
+        {
+            vcount = null;
+            indices = getValues(((Triangles) primitives).getData());
+        }
+        else if (primitives instanceof PolyList)
+        {
+            final PolyList polyList = (PolyList) primitives;
+            vcount = getValues(polyList.getVcount());
+            indices = getValues(polyList.getData());
+        }
+        else if (primitives instanceof Polygons)
+        {
+            final List<IntList> data = ((Polygons) primitives).getData();
+            vcount = new int[data.size()];
+            int total = 0;
+            for (int i = 0; i < vcount.length; i++)
+            {
+                final int polygonSize = data.get(i).getSize();
+                vcount[i] = polygonSize / stride;
+                total += polygonSize;
+            }
+            indices = new int[total];
+            int offset = 0;
+            for (final IntList polygon: data)
+            {
+                final int polygonSize = polygon.getSize();
+                polygon.getValues(0, polygonSize, indices, offset);
+                offset += polygonSize;
+            }
+        }
+        else
+        {
+            return;
+        }
+        sink.primitives(primitives.getMaterial(), primitives.getCount(),
+            semantics, sources, offsets, sets, vcount, indices);
+    }
+
+
+    /**
+     * Returns the values of the specified int list.
+     *
+     * @param list
+     *            The int list. May be null.
+     * @return The values. Empty if list is null.
+     */
+
+    private static int[] getValues(final IntList list)
+    {
+        return list == null ? new int[0] : list.getValues();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+
+/**
+ * Receives the geometries of a COLLADA document streamed by
+ * {@link ColladaReader#readGeometries(java.io.File, GeometrySink)}. Each
+ * geometry is reported as soon as it is completely parsed and is discarded
+ * afterwards, so memory usage is bounded by the largest geometry instead of
+ * the whole document. The data is passed as plain arrays which are owned by
+ * the sink.
+ *
+ * For each mesh geometry the methods are called in this order:
+ * {@link #beginGeometry(String, String)}, {@link #source} for each float
+ * source, {@link #vertices} and {@link #primitives} for each primitive
+ * element and finally {@link #endGeometry()}.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public interface GeometrySink
+{
+    /**
+     * Begins a geometry.
+     *
+     * @param id
+     *            The geometry ID. May be null.
+     * @param name
+     *            The geometry name. May be null.
+     */
+
+    void beginGeometry(String id, String name);
+
+
+    /**
+     * Reports a float source of the current geometry. Sources with other
+     * array types are not reported.
+     *
+     * @param id
+     *            The source ID.
+     * @param values
+     *            The values of the float array.
+     * @param stride
+     *            The number of values per element as defined by the accessor
+     *            of the source. 1 if source has no accessor.
+     */
+
+    void source(String id, double[] values, int stride);
+
+
+    /**
+     * Reports the vertices of the current geometry.
+     *
+     * @param id
+     *            The vertices ID.
+     * @param semantics
+     *            The semantics of the vertices inputs.
+     * @param sources
+     *            The source URIs of the vertices inputs. Same length as
+     *            semantics.
+     */
+
+    void vertices(String id, String[] semantics, String[] sources);
+
+
+    /**
+     * Reports a primitive element (triangles, polylist or polygons) of the
+     * current geometry. Polygons are reported like a polylist.
+     *
+     * @param material
+     *            The material symbol. May be null.
+     * @param count
+     *            The number of primitives.
+     * @param semantics
+     *            The semantics of the inputs.
+     * @param sources
+     *            The source URIs of the inputs.
+     * @param offsets
+     *            The offsets of the inputs within the indices of a vertex.
+     * @param sets
+     *            The sets of the inputs. -1 for inputs without a set.
+     * @param vcount
+     *            The number of vertices of each primitive. Null for
+     *            triangles.
+     * @param indices
+     *            The indices of all vertices.
+     */
+
+    void primitives(String material, int count, String[] semantics,
+        String[] sources, int[] offsets, int[] sets, int[] vcount,
+        int[] indices);
+
+
+    /**
+     * Ends the current geometry.
+     */
+
+    void endGeometry();
+}
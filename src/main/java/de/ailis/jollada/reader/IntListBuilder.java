@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import java.util.Arrays;
+
+import de.ailis.jollada.model.IntList;
+import de.ailis.jollada.model.Storage;
+
+
+/**
+ * Growable buffer of primitive int values used for collecting the values of
+ * an int list while parsing. When the buffer was presized with the correct
+ * number of values then the buffer is passed to the built int list without
+ * copying it.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class IntListBuilder
+{
+    /** The default initial capacity. */
+    static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * The maximum initial capacity used for an expected number of values.
+     * The expected size is taken from the count attribute of the document so
+     * larger lists grow while they are read instead of trusting the
+     * attribute with the memory.
+     */
+    static final int MAX_INITIAL_CAPACITY = 1 << 20;
+
+    /** The collected values. */
+    private int[] values;
+
+    /** The number of collected values. */
+    private int size;
+
+
+    /**
+     * Constructs a new int list builder with the default initial capacity.
+     */
+
+    IntListBuilder()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * Constructs a new int list builder with the specified initial capacity.
+     * This should be the expected number of values if known.
+     *
+     * @param capacity
+     *            The initial capacity.
+     */
+
+    IntListBuilder(final int capacity)
+    {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must be >= 0");
+        this.values = new int[capacity];
+    }
+
+
+    /**
+     * Adds a value.
+     *
+     * @param value
+     *            The value to add.
+     */
+
+    void add(final int value)
+    {
+        if (this.size == this.values.length)
+            this.values = Arrays.copyOf(this.values,
+                Math.max(DEFAULT_CAPACITY, this.size * 2));
+        this.values[this.size++] = value;
+    }
+
+
+    /**
+     * Returns the number of collected values.
+     *
+     * @return The number of collected values.
+     */
+
+    int getSize()
+    {
+        return this.size;
+    }
+
+
+    /**
+     * Returns the collected value at the specified index.
+     *
+     * @param index
+     *            The index.
+     * @return The value.
+     */
+
+    int getValue(final int index)
+    {
+        if (index >= this.size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+                + this.size);
+        return this.values[index];
+    }
+
+
+    /**
+     * Builds the int list. The builder must not be used afterwards.
+     *
+     * @return The int list. Never null.
+     */
+
+    IntList build()
+    {
+        return new IntList(buildArray());
+    }
+
+
+    /**
+     * Builds the int list with the specified storage. The builder must not
+     * be used afterwards.
+     *
+     * @param storage
+     *            The storage of the values.
+     * @return The int list. Never null.
+     */
+
+    IntList build(final Storage storage)
+    {
+        if (storage == Storage.HEAP) return build();
+        final IntList list = new IntList(this.size, storage);
+        list.setValues(0, this.size, this.values, 0);
+        this.values = null;
+        return list;
+    }
+
+
+    /**
+     * Builds the array with the collected values. The builder must not be
+     * used afterwards.
+     *
+     * @return The array with the collected values. Never null.
+     */
+
+    int[] buildArray()
+    {
+        final int[] values = this.values;
+        this.values = null;
+        if (values.length == this.size) return values;
+        return Arrays.copyOf(values, this.size);
+    }
+}
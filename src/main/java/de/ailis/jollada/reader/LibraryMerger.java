@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.ailis.jollada.model.AnimationLibrary;
+import de.ailis.jollada.model.CameraLibrary;
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.model.EffectLibrary;
+import de.ailis.jollada.model.Element;
+import de.ailis.jollada.model.Elements;
+import de.ailis.jollada.model.GeometryLibrary;
+import de.ailis.jollada.model.ImageLibrary;
+import de.ailis.jollada.model.LightLibrary;
+import de.ailis.jollada.model.MaterialLibrary;
+import de.ailis.jollada.model.VisualSceneLibrary;
+
+
+/**
+ * Merges libraries which have been parsed separately into a document. Each
+ * separately parsed fragment is a document containing a single library
+ * with some of the elements of a library element. The fragments of a library
+ * element must be merged in document order.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class LibraryMerger
+{
+    /**
+     * Private constructor to prevent instantiation.
+     */
+
+    private LibraryMerger()
+    {
+        // Empty
+    }
+
+
+    /**
+     * Merges the library of the specified fragment into the specified
+     * document.
+     *
+     * @param fragment
+     *            The fragment document containing a single library.
+     * @param document
+     *            The document to merge the library into.
+     * @param first
+     *            True if fragment contains the first elements of a library
+     *            element. The library is then added to the document.
+     *            Otherwise the elements are appended to the last library of
+     *            the same type in the document.
+     */
+
+    static void merge(final Document fragment, final Document document,
+        final boolean first)
+    {
+        if (!fragment.getImageLibraries().isEmpty())
+        {
+            final ImageLibrary library = fragment.getImageLibraries().get(0);
+            if (first)
+                document.getImageLibraries().add(library);
+            else
+                moveAll(library.getImages(), last(
+                    document.getImageLibraries()).getImages());
+        }
+        if (!fragment.getMaterialLibraries().isEmpty())
+        {
+            final MaterialLibrary library = fragment.getMaterialLibraries()
+                .get(0);
+            if (first)
+                document.getMaterialLibraries().add(library);
+            else
+                moveAll(library.getMaterials(), last(
+                    document.getMaterialLibraries()).getMaterials());
+        }
+        if (!fragment.getEffectLibraries().isEmpty())
+        {
+            final EffectLibrary library = fragment.getEffectLibraries().get(0);
+            if (first)
+                document.getEffectLibraries().add(library);
+            else
+                moveAll(library.getEffects(), last(
+                    document.getEffectLibraries()).getEffects());
+        }
+        if (!fragment.getGeometryLibraries().isEmpty())
+        {
+            final GeometryLibrary library = fragment.getGeometryLibraries()
+                .get(0);
+            if (first)
+                document.getGeometryLibraries().add(library);
+            else
+                moveAll(library.getGeometries(), last(
+                    document.getGeometryLibraries()).getGeometries());
+        }
+        if (!fragment.getCameraLibraries().isEmpty())
+        {
+            final CameraLibrary library = fragment.getCameraLibraries().get(0);
+            if (first)
+                document.getCameraLibraries().add(library);
+            else
+                moveAll(library.getCameras(), last(
+                    document.getCameraLibraries()).getCameras());
+        }
+        if (!fragment.getLightLibraries().isEmpty())
+        {
+            final LightLibrary library = fragment.getLightLibraries().get(0);
+            if (first)
+                document.getLightLibraries().add(library);
+            else
+                moveAll(library.getLights(), last(
+                    document.getLightLibraries()).getLights());
+        }
+        if (!fragment.getVisualSceneLibraries().isEmpty())
+        {
+            final VisualSceneLibrary library = fragment
+                .getVisualSceneLibraries().get(0);
+            if (first)
+                document.getVisualSceneLibraries().add(library);
+            else
+                moveAll(library.getVisualScenes(), last(
+                    document.getVisualSceneLibraries()).getVisualScenes());
+        }
+        if (!fragment.getAnimationLibraries().isEmpty())
+        {
+            final AnimationLibrary library = fragment.getAnimationLibraries()
+                .get(0);
+            if (first)
+                document.getAnimationLibraries().add(library);
+            else
+                moveAll(library.getAnimations(), last(
+                    document.getAnimationLibraries()).getAnimations());
+        }
+    }
+
+
+    /**
+     * Returns the last element of the specified list.
+     *
+     * @param <T>
+     *            The element type.
+     * @param elements
+     *            The element list. Must not be empty.
+     * @return The last element.
+     */
+
+    private static <T extends Element> T last(final Elements<T> elements)
+    {
+        return elements.get(elements.size() - 1);
+    }
+
+
+    /**
+     * Moves all elements from one list to the end of another list. The
+     * elements are removed from the end of the source list because this is
+     * the cheap direction for the element lists.
+     *
+     * @param <T>
+     *            The element type.
+     * @param source
+     *            The list to move the elements from.
+     * @param target
+     *            The list to append the elements to.
+     */
+
+    private static <T extends Element> void moveAll(final Elements<T> source,
+        final Elements<T> target)
+    {
+        final List<T> elements = new ArrayList<T>(source.size());
+        for (int i = source.size() - 1; i >= 0; i--)
+            elements.add(source.remove(i));
+        Collections.reverse(elements);
+        target.addAll(elements);
+    }
+}
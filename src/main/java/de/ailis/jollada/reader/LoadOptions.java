@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+
+/**
+ * Options controlling which parts of a COLLADA document are loaded by the
+ * {@link ColladaReader}. By default all libraries are loaded. Libraries which
+ * are not loaded are skipped by the parser without creating any model
+ * objects for them, so the resulting document simply contains no libraries
+ * of this type. References into skipped libraries (Like the material of a
+ * geometry instance) are kept as they are but can't be resolved.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public final class LoadOptions
+{
+    /** The libraries to load. */
+    private final Set<ColladaLibrary> libraries = EnumSet
+        .allOf(ColladaLibrary.class);
+
+
+    /**
+     * Constructs new load options which load all libraries.
+     */
+
+    public LoadOptions()
+    {
+        // Empty
+    }
+
+
+    /**
+     * Constructs new load options which only load the specified libraries.
+     *
+     * @param libraries
+     *            The libraries to load.
+     */
+
+    public LoadOptions(final ColladaLibrary... libraries)
+    {
+        setLibraries(libraries);
+    }
+
+
+    /**
+     * Returns the libraries to load.
+     *
+     * @return The libraries to load. Never null. The returned set is
+     *         read-only.
+     */
+
+    public Set<ColladaLibrary> getLibraries()
+    {
+        return Collections.unmodifiableSet(this.libraries);
+    }
+
+
+    /**
+     * Sets the libraries to load. All other libraries are skipped.
+     *
+     * @param libraries
+     *            The libraries to load.
+     */
+
+    public void setLibraries(final ColladaLibrary... libraries)
+    {
+        this.libraries.clear();
+        for (final ColladaLibrary library: libraries)
+        {
+            if (library == null)
+                throw new IllegalArgumentException(
+                    "libraries must not contain null");
+            this.libraries.add(library);
+        }
+    }
+
+
+    /**
+     * Checks if the specified library is loaded.
+     *
+     * @param library
+     *            The library to check. Must not be null.
+     * @return True if library is loaded, false if it is skipped.
+     */
+
+    public boolean isLoading(final ColladaLibrary library)
+    {
+        if (library == null)
+            throw new IllegalArgumentException("library must not be null");
+        return this.libraries.contains(library);
+    }
+
+
+    /**
+     * Sets if the specified library is loaded.
+     *
+     * @param library
+     *            The library. Must not be null.
+     * @param loading
+     *            True to load the library, false to skip it.
+     */
+
+    public void setLoading(final ColladaLibrary library, final boolean loading)
+    {
+        if (library == null)
+            throw new IllegalArgumentException("library must not be null");
+        if (loading)
+            this.libraries.add(library);
+        else
+            this.libraries.remove(library);
+    }
+}
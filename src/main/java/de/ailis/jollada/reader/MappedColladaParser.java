@@ -0,0 +1,1476 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import de.ailis.jollada.model.Document;
+
+
+/**
+ * Drives a {@link ColladaHandler} directly from the bytes of a memory mapped
+ * UTF-8 or ASCII encoded file. The file is scanned through a small window
+ * which is bulk copied from the mapped segments. The text of number arrays
+ * is passed to the handler as raw bytes from this window so it is never
+ * decoded into characters. Elements which are ignored by the handler are skipped
+ * together with their content by just counting the nesting depth.
+ *
+ * When an executor is set then the libraries of the document are parsed
+ * separately on this executor. The content of each library element is split
+ * at child element boundaries into fragments of roughly the configured chunk
+ * size. Each fragment is parsed by its own parser and handler and the
+ * resulting libraries are merged into the document in document order after
+ * the rest of the document has been parsed.
+ *
+ * This is not a validating XML parser. It checks the nesting of elements
+ * but it does not support external entities or entities declared in a
+ * DOCTYPE. Namespace prefixes are stripped from the element and attribute
+ * names and the namespace URI reported to the handler is always empty.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class MappedColladaParser
+{
+    /** The number of cached names. Must be a power of two. */
+    private static final int NAME_CACHE_SIZE = 256;
+
+    /** The maximum number of decoded characters passed to the handler. */
+    private static final int TEXT_CHUNK_SIZE = 8192;
+
+    /** The size of the window into the mapped file. */
+    static final int WINDOW_SIZE = 65536;
+
+    /** The maximum number of bytes to check for the XML declaration. */
+    private static final int MAX_DECLARATION_SIZE = 1024;
+
+    /** The default minimum size of separately parsed library fragments. */
+    static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    /** Empty attributes used for the root element of fragments. */
+    private static final Attributes NO_ATTRIBUTES = new AttributesImpl();
+
+    /** The pattern for the encoding in the XML declaration. */
+    private static final Pattern ENCODING = Pattern
+        .compile("encoding\\s*=\\s*[\"']([^\"']*)[\"']");
+
+    /** The mapped file. */
+    private MappedFile file;
+
+    /** The file size. */
+    private long size;
+
+    /** The current file position. */
+    private long pos;
+
+    /** The handler. */
+    private ColladaHandler handler;
+
+    /** The bytes of the current window into the mapped file. */
+    private final byte[] window = new byte[WINDOW_SIZE];
+
+    /** The file position of the first byte in the window. */
+    private long windowStart;
+
+    /** The number of bytes in the window. */
+    private int windowLength;
+
+    /** The attributes of the current start tag. */
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    /** The buffer for decoded characters. */
+    private char[] chars = new char[256];
+
+    /** The number of decoded characters in the buffer. */
+    private int charCount;
+
+    /** The qualified names of the currently open elements. */
+    private final List<String> openElements = new ArrayList<String>();
+
+    /** The cached names. */
+    private final String[] nameCache = new String[NAME_CACHE_SIZE];
+
+    /** If the root element has been found. */
+    private boolean rootFound;
+
+    /** If arrays are loaded lazily. */
+    private boolean lazy;
+
+    /** The executor for parsing libraries separately. Null if not used. */
+    private final Executor executor;
+
+    /** The minimum size of separately parsed library fragments. */
+    private final int chunkSize;
+
+    /** The separately parsed library fragments in document order. */
+    private final List<Fragment> fragments = new ArrayList<Fragment>();
+
+    /** The maximum number of fragments submitted but not yet parsed. */
+    private final int maxPending;
+
+    /** The number of leading fragments which are known to be parsed. */
+    private int parsedFragments;
+
+
+    /**
+     * A library fragment which is parsed separately.
+     */
+
+    private static final class Fragment
+    {
+        /** The task parsing the fragment. */
+        final FutureTask<Document> task;
+
+        /** If fragment contains the first elements of a library element. */
+        final boolean first;
+
+
+        /**
+         * Constructor.
+         *
+         * @param task
+         *            The task parsing the fragment.
+         * @param first
+         *            If fragment contains the first elements of a library
+         *            element.
+         */
+
+        Fragment(final FutureTask<Document> task, final boolean first)
+        {
+            this.task = task;
+            this.first = first;
+        }
+    }
+
+
+    /**
+     * Constructs a parser which parses the whole document sequentially.
+     */
+
+    MappedColladaParser()
+    {
+        this(null, DEFAULT_CHUNK_SIZE);
+    }
+
+
+    /**
+     * Constructs a parser which parses libraries separately on the specified
+     * executor.
+     *
+     * @param executor
+     *            The executor for parsing libraries. Null to parse the whole
+     *            document sequentially.
+     * @param chunkSize
+     *            The minimum size of separately parsed library fragments in
+     *            bytes. Library content is only split at child element
+     *            boundaries so fragments may be larger.
+     */
+
+    MappedColladaParser(final Executor executor, final int chunkSize)
+    {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize must be > 0");
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.maxPending = Runtime.getRuntime().availableProcessors() * 2;
+    }
+
+
+    /**
+     * Checks if the specified file can be parsed by this parser. This is the
+     * case when the file is encoded in UTF-8 or ASCII.
+     *
+     * @param file
+     *            The mapped file.
+     * @return True if the file is supported, false if not.
+     */
+
+    static boolean isSupported(final MappedFile file)
+    {
+        final long size = file.getSize();
+
+        // UTF-16 and UTF-32 documents start with a zero byte or a BOM
+        if (size >= 2)
+        {
+            final int b0 = file.get(0) & 0xff;
+            final int b1 = file.get(1) & 0xff;
+            if (b0 == 0 || b1 == 0 || (b0 == 0xfe && b1 == 0xff)
+                || (b0 == 0xff && b1 == 0xfe)) return false;
+        }
+
+        // Check the encoding of the XML declaration
+        final StringBuilder declaration = new StringBuilder();
+        for (long p = hasByteOrderMark(file) ? 3 : 0, max = Math.min(size,
+            MAX_DECLARATION_SIZE); p < max; p++)
+        {
+            final char c = (char) (file.get(p) & 0xff);
+            declaration.append(c);
+            if (c == '>') break;
+        }
+        if (!declaration.toString().startsWith("<?xml")) return true;
+        final Matcher matcher = ENCODING.matcher(declaration);
+        if (!matcher.find()) return true;
+        final String encoding = matcher.group(1);
+        return encoding.equalsIgnoreCase("UTF-8")
+            || encoding.equalsIgnoreCase("US-ASCII")
+            || encoding.equalsIgnoreCase("ASCII");
+    }
+
+
+    /**
+     * Checks if the specified file starts with a UTF-8 byte order mark.
+     *
+     * @param file
+     *            The mapped file.
+     * @return True if file starts with a byte order mark, false if not.
+     */
+
+    private static boolean hasByteOrderMark(final MappedFile file)
+    {
+        return file.getSize() >= 3 && (file.get(0) & 0xff) == 0xef
+            && (file.get(1) & 0xff) == 0xbb && (file.get(2) & 0xff) == 0xbf;
+    }
+
+
+    /**
+     * Parses a COLLADA document from the specified mapped file.
+     *
+     * @param file
+     *            The mapped file. Must be supported by this parser.
+     * @param handler
+     *            The handler building the document. Its array loading
+     *            decides if float arrays and primitive index lists are
+     *            loaded lazily.
+     * @return The parsed document. Never null.
+     * @throws SAXException
+     *             When the document could not be parsed or the handler
+     *             reports an error.
+     */
+
+    Document parse(final MappedFile file, final ColladaHandler handler)
+        throws SAXException
+    {
+        init(file, handler, hasByteOrderMark(file) ? 3 : 0, file.getSize());
+        try
+        {
+            parseContent();
+            if (!this.openElements.isEmpty())
+                throw error("Unexpected end of document");
+            if (!this.rootFound) throw error("No root element found");
+            final Document document = this.handler.getDocument();
+            for (final Fragment fragment: this.fragments)
+                LibraryMerger.merge(getFragmentDocument(fragment), document,
+                    fragment.first);
+            return document;
+        }
+        finally
+        {
+            for (final Fragment fragment: this.fragments)
+                fragment.task.cancel(false);
+            this.fragments.clear();
+            this.parsedFragments = 0;
+            this.file = null;
+            this.handler = null;
+        }
+    }
+
+
+    /**
+     * Parses a fragment of a library element. The fragment must only contain
+     * complete child elements of the library element.
+     *
+     * @param file
+     *            The mapped file.
+     * @param start
+     *            The file position of the fragment.
+     * @param end
+     *            The file position behind the fragment.
+     * @param handler
+     *            The handler building the fragment document.
+     * @param libraryName
+     *            The qualified name of the library element.
+     * @param libraryAttributes
+     *            The attributes of the library element.
+     * @return The fragment document containing a single library.
+     * @throws SAXException
+     *             When the fragment could not be parsed or the handler
+     *             reports an error.
+     */
+
+    Document parseFragment(final MappedFile file, final long start,
+        final long end, final ColladaHandler handler,
+        final String libraryName, final Attributes libraryAttributes)
+        throws SAXException
+    {
+        init(file, handler, start, end);
+        try
+        {
+            this.rootFound = true;
+            this.handler.startElement("", "COLLADA", "COLLADA", NO_ATTRIBUTES);
+            this.handler.startElement("", getLocalName(libraryName),
+                libraryName, libraryAttributes);
+            this.openElements.add("COLLADA");
+            this.openElements.add(libraryName);
+            parseContent();
+            if (this.openElements.size() != 2)
+                throw error("Unexpected end of library fragment");
+            this.handler.endElement("", getLocalName(libraryName),
+                libraryName);
+            this.handler.endElement("", "COLLADA", "COLLADA");
+            return this.handler.getDocument();
+        }
+        finally
+        {
+            this.file = null;
+            this.handler = null;
+        }
+    }
+
+
+    /**
+     * Initializes the parser state.
+     *
+     * @param file
+     *            The mapped file.
+     * @param start
+     *            The file position where parsing starts.
+     * @param end
+     *            The file position where parsing ends.
+     * @param handler
+     *            The handler.
+     */
+
+    private void init(final MappedFile file, final ColladaHandler handler,
+        final long start, final long end)
+    {
+        this.lazy = handler.getArrayLoading() != ArrayLoading.EAGER;
+        this.file = file;
+        this.size = end;
+        this.pos = start;
+        this.windowStart = 0;
+        this.windowLength = 0;
+        this.handler = handler;
+        this.openElements.clear();
+        this.rootFound = false;
+    }
+
+
+    /**
+     * Parses the content up to the end position.
+     *
+     * @throws SAXException
+     *             When content could not be parsed or handler reports an
+     *             error.
+     */
+
+    private void parseContent() throws SAXException
+    {
+        while (this.pos < this.size)
+        {
+            if (byteAt(this.pos) == '<')
+                parseMarkup();
+            else
+                parseText();
+        }
+    }
+
+
+    /**
+     * Waits for the specified fragment to be parsed and returns the fragment
+     * document. When no thread of the executor has started parsing the
+     * fragment yet then it is parsed by the current thread. So parsing
+     * progresses even when all threads of the executor are busy or blocked
+     * (Like when the executor is shared with the threads reading documents).
+     *
+     * @param fragment
+     *            The fragment.
+     * @return The fragment document.
+     * @throws SAXException
+     *             When fragment could not be parsed.
+     */
+
+    private static Document getFragmentDocument(final Fragment fragment)
+        throws SAXException
+    {
+        fragment.task.run();
+        try
+        {
+            return fragment.task.get();
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SAXException("Interrupted while parsing libraries", e);
+        }
+        catch (final ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SAXException) throw (SAXException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new SAXException(e);
+        }
+    }
+
+
+    /**
+     * Parses the markup at the current position.
+     *
+     * @throws SAXException
+     *             When markup could not be parsed.
+     */
+
+    private void parseMarkup() throws SAXException
+    {
+        final byte next = read(this.pos + 1);
+        if (next == '/')
+        {
+            parseEndTag();
+        }
+        else if (next == '?')
+        {
+            skipPast("?>");
+        }
+        else if (next == '!')
+        {
+            if (startsWith(this.pos, "<!--"))
+            {
+                skipPast("-->");
+            }
+            else if (startsWith(this.pos, "<![CDATA["))
+            {
+                this.pos += 9;
+                if (this.handler.isReadingNumbers())
+                    this.pos = passNumbers(this.pos, true);
+                else
+                    this.pos = passText(this.pos, true);
+                this.pos += 3;
+            }
+            else if (startsWith(this.pos, "<!DOCTYPE"))
+            {
+                skipDoctype();
+            }
+            else
+            {
+                throw error("Invalid markup");
+            }
+        }
+        else
+        {
+            parseStartTag();
+        }
+    }
+
+
+    /**
+     * Parses the start tag at the current position.
+     *
+     * @throws SAXException
+     *             When start tag could not be parsed or handler reports an
+     *             error.
+     */
+
+    private void parseStartTag() throws SAXException
+    {
+        if (this.rootFound && this.openElements.isEmpty())
+            throw error("Content after root element");
+        this.rootFound = true;
+        this.pos++;
+        final String qName = readName();
+        final String localName = getLocalName(qName);
+        this.attributes.clear();
+        final boolean empty = readAttributes(true);
+        if (this.executor != null && this.openElements.size() == 1
+            && this.handler.isSeparableLibrary(localName))
+        {
+            separateLibrary(qName, empty);
+            return;
+        }
+        final long contentEnd = empty || !this.lazy ? -1
+            : findPlainContentEnd();
+        if (contentEnd >= 0)
+        {
+            this.handler.setLazyContent(this.file, this.pos, contentEnd);
+            this.handler.startElement("", localName, qName, this.attributes);
+            if (this.handler.isLazyContentUsed()) this.pos = contentEnd;
+            this.handler.setLazyContent(null, 0, 0);
+        }
+        else
+        {
+            this.handler.startElement("", localName, qName, this.attributes);
+        }
+        if (empty)
+        {
+            this.handler.endElement("", localName, qName);
+        }
+        else if (this.handler.isSkipping())
+        {
+            skipContent();
+            this.handler.endElement("", localName, qName);
+        }
+        else
+        {
+            this.openElements.add(qName);
+        }
+    }
+
+
+    /**
+     * Splits the content of the current library element into fragments and
+     * submits them to the executor. Empty library elements are submitted too
+     * so the libraries are merged into the document in document order. When
+     * this method returns then the current position is behind the end tag of
+     * the library element.
+     *
+     * @param qName
+     *            The qualified name of the library element.
+     * @param empty
+     *            If library element is an empty element tag.
+     * @throws SAXException
+     *             When content could not be parsed.
+     */
+
+    private void separateLibrary(final String qName, final boolean empty)
+        throws SAXException
+    {
+        final Attributes libraryAttributes = new AttributesImpl(
+            this.attributes);
+        if (empty)
+        {
+            submitFragment(this.pos, this.pos, qName, libraryAttributes, true);
+            return;
+        }
+        long fragmentStart = this.pos;
+        boolean first = true;
+        int depth = 0;
+        while (true)
+        {
+            this.pos = indexOf((byte) '<', this.pos);
+            final byte next = read(this.pos + 1);
+            if (next == '/')
+            {
+                if (depth == 0)
+                {
+                    final long end = this.pos;
+                    final String endName = readEndTag();
+                    if (!endName.equals(qName))
+                        throw error("Unexpected end tag </" + endName + ">");
+                    if (first || end > fragmentStart)
+                        submitFragment(fragmentStart, end, qName,
+                            libraryAttributes, first);
+                    return;
+                }
+                this.pos = indexOf((byte) '>', this.pos) + 1;
+                depth--;
+            }
+            else if (next == '?')
+            {
+                skipPast("?>");
+            }
+            else if (next == '!')
+            {
+                if (startsWith(this.pos, "<!--"))
+                    skipPast("-->");
+                else if (startsWith(this.pos, "<![CDATA["))
+                    skipPast("]]>");
+                else
+                    throw error("Invalid markup");
+            }
+            else
+            {
+                this.pos++;
+                skipName();
+                if (!readAttributes(false)) depth++;
+            }
+            if (depth == 0 && this.pos - fragmentStart >= this.chunkSize)
+            {
+                submitFragment(fragmentStart, this.pos, qName,
+                    libraryAttributes, first);
+                fragmentStart = this.pos;
+                first = false;
+            }
+        }
+    }
+
+
+    /**
+     * Submits a library fragment to the executor. When the maximum number of
+     * fragments are already submitted and not yet parsed then this method
+     * waits for the oldest one first (Parsing it in the current thread if
+     * no thread of the executor has started it yet). So the number of
+     * queued fragments doesn't depend on the document size.
+     *
+     * @param start
+     *            The file position of the fragment.
+     * @param end
+     *            The file position behind the fragment.
+     * @param libraryName
+     *            The qualified name of the library element.
+     * @param libraryAttributes
+     *            The attributes of the library element.
+     * @param first
+     *            If fragment contains the first elements of the library
+     *            element.
+     * @throws SAXException
+     *             When a previously submitted fragment could not be parsed.
+     */
+
+    private void submitFragment(final long start, final long end,
+        final String libraryName, final Attributes libraryAttributes,
+        final boolean first) throws SAXException
+    {
+        while (this.fragments.size() - this.parsedFragments
+            >= this.maxPending)
+        {
+            getFragmentDocument(this.fragments.get(this.parsedFragments));
+            this.parsedFragments++;
+        }
+        final MappedFile file = this.file;
+        final ColladaHandler handler = this.handler.createFragmentHandler();
+        final FutureTask<Document> task = new FutureTask<Document>(
+            new Callable<Document>()
+            {
+                @Override
+                public Document call() throws SAXException
+                {
+                    return new MappedColladaParser().parseFragment(file,
+                        start, end, handler, libraryName, libraryAttributes);
+                }
+            });
+        this.fragments.add(new Fragment(task, first));
+        this.executor.execute(task);
+    }
+
+
+    /**
+     * Searches the end of the content of the current element when the
+     * content is plain text which is directly followed by an end tag.
+     *
+     * @return The position of the end tag or -1 if content is not plain
+     *         text.
+     * @throws SAXException
+     *             When end of document is reached.
+     */
+
+    private long findPlainContentEnd() throws SAXException
+    {
+        long p = this.pos;
+        while (p < this.size)
+        {
+            final byte[] window = this.window;
+            final int limit = this.windowLength;
+            for (int i = fill(p); i < limit; i++)
+            {
+                final byte b = window[i];
+                if (b == '&') return -1;
+                if (b == '<')
+                {
+                    p = this.windowStart + i;
+                    return read(p + 1) == '/' ? p : -1;
+                }
+            }
+            p = this.windowStart + limit;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Parses the end tag at the current position.
+     *
+     * @throws SAXException
+     *             When end tag could not be parsed or handler reports an
+     *             error.
+     */
+
+    private void parseEndTag() throws SAXException
+    {
+        final String qName = readEndTag();
+        final int last = this.openElements.size() - 1;
+        if (last < 0 || !this.openElements.remove(last).equals(qName))
+            throw error("Unexpected end tag </" + qName + ">");
+        this.handler.endElement("", getLocalName(qName), qName);
+    }
+
+
+    /**
+     * Reads the end tag at the current position.
+     *
+     * @return The qualified name of the end tag.
+     * @throws SAXException
+     *             When end tag could not be parsed.
+     */
+
+    private String readEndTag() throws SAXException
+    {
+        this.pos += 2;
+        final String qName = readName();
+        skipWhitespace();
+        if (read(this.pos) != '>') throw error("Invalid end tag");
+        this.pos++;
+        return qName;
+    }
+
+
+    /**
+     * Reads the attributes of a start tag and the end of the tag.
+     *
+     * @param collect
+     *            If attributes should be collected. If false then the
+     *            attributes are just skipped.
+     * @return True if tag is an empty element tag, false if not.
+     * @throws SAXException
+     *             When attributes could not be parsed.
+     */
+
+    private boolean readAttributes(final boolean collect) throws SAXException
+    {
+        while (true)
+        {
+            skipWhitespace();
+            final byte b = read(this.pos);
+            if (b == '>')
+            {
+                this.pos++;
+                return false;
+            }
+            if (b == '/')
+            {
+                if (read(this.pos + 1) != '>') throw error("Invalid tag");
+                this.pos += 2;
+                return true;
+            }
+            final String qName = collect ? readName() : null;
+            if (!collect) skipName();
+            skipWhitespace();
+            if (read(this.pos) != '=') throw error("Invalid attribute");
+            this.pos++;
+            skipWhitespace();
+            final byte quote = read(this.pos);
+            if (quote != '"' && quote != '\'')
+                throw error("Invalid attribute value");
+            this.pos++;
+            if (collect)
+            {
+                final String value = readAttributeValue(quote);
+                if (!qName.equals("xmlns") && !qName.startsWith("xmlns:"))
+                    this.attributes.addAttribute("", getLocalName(qName),
+                        qName, "CDATA", value);
+            }
+            else
+            {
+                this.pos = indexOf(quote, this.pos) + 1;
+            }
+        }
+    }
+
+
+    /**
+     * Reads an attribute value up to the specified closing quote. Entities
+     * are resolved and white space is normalized.
+     *
+     * @param quote
+     *            The closing quote character.
+     * @return The attribute value.
+     * @throws SAXException
+     *             When attribute value could not be parsed.
+     */
+
+    private String readAttributeValue(final byte quote) throws SAXException
+    {
+        this.charCount = 0;
+        long p = this.pos;
+        while (true)
+        {
+            final byte b = read(p);
+            if (b == quote) break;
+            if (b == '<') throw error("Invalid attribute value");
+            if (b == '&')
+            {
+                p = readEntity(p);
+            }
+            else if (b == '\r')
+            {
+                appendChar(' ');
+                p++;
+                if (p < this.size && byteAt(p) == '\n') p++;
+            }
+            else if (b == '\n' || b == '\t')
+            {
+                appendChar(' ');
+                p++;
+            }
+            else if (b >= 0)
+            {
+                appendChar((char) b);
+                p++;
+            }
+            else
+            {
+                p = readMultiByteChar(p);
+            }
+        }
+        this.pos = p + 1;
+        return new String(this.chars, 0, this.charCount);
+    }
+
+
+    /**
+     * Reads a name at the current position.
+     *
+     * @return The name.
+     * @throws SAXException
+     *             When no valid name was found.
+     */
+
+    private String readName() throws SAXException
+    {
+        this.charCount = 0;
+        long p = this.pos;
+        while (p < this.size)
+        {
+            final byte b = byteAt(p);
+            if (isNameDelimiter(b)) break;
+            if (b >= 0)
+            {
+                appendChar((char) b);
+                p++;
+            }
+            else
+            {
+                p = readMultiByteChar(p);
+            }
+        }
+        if (this.charCount == 0) throw error("Name expected");
+        this.pos = p;
+        return getCachedName();
+    }
+
+
+    /**
+     * Skips a name at the current position.
+     *
+     * @throws SAXException
+     *             When no name was found.
+     */
+
+    private void skipName() throws SAXException
+    {
+        final long start = this.pos;
+        while (this.pos < this.size
+            && !isNameDelimiter(byteAt(this.pos)))
+            this.pos++;
+        if (this.pos == start) throw error("Name expected");
+    }
+
+
+    /**
+     * Checks if the specified byte ends a name.
+     *
+     * @param b
+     *            The byte to check.
+     * @return True if byte ends a name, false if not.
+     */
+
+    private static boolean isNameDelimiter(final byte b)
+    {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '>'
+            || b == '/' || b == '=';
+    }
+
+
+    /**
+     * Returns the name in the character buffer. Names are cached so the same
+     * string instance is returned for recurring names.
+     *
+     * @return The name.
+     */
+
+    private String getCachedName()
+    {
+        final char[] chars = this.chars;
+        final int length = this.charCount;
+        int hash = 0;
+        for (int i = 0; i < length; i++)
+            hash = 31 * hash + chars[i];
+        final int index = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+        final String cached = this.nameCache[index];
+        if (cached != null && cached.length() == length)
+        {
+            int i = 0;
+            while (i < length && cached.charAt(i) == chars[i])
+                i++;
+            if (i == length) return cached;
+        }
+        final String name = new String(chars, 0, length);
+        this.nameCache[index] = name;
+        return name;
+    }
+
+
+    /**
+     * Returns the local part of the specified qualified name.
+     *
+     * @param qName
+     *            The qualified name.
+     * @return The local name.
+     */
+
+    private static String getLocalName(final String qName)
+    {
+        final int colon = qName.indexOf(':');
+        return colon < 0 ? qName : qName.substring(colon + 1);
+    }
+
+
+    /**
+     * Parses the text at the current position.
+     *
+     * @throws SAXException
+     *             When text could not be parsed or handler reports an error.
+     */
+
+    private void parseText() throws SAXException
+    {
+        if (this.handler.isReadingNumbers())
+            this.pos = passNumbers(this.pos, false);
+        else
+            this.pos = passText(this.pos, false);
+    }
+
+
+    /**
+     * Passes the number text beginning at the specified position to the
+     * handler as raw bytes. Only entity references and the literal markup
+     * characters which stop the processing of raw bytes are passed as
+     * characters.
+     *
+     * @param start
+     *            The start position of the text.
+     * @param cdata
+     *            If text is the content of a CDATA section.
+     * @return The position of the end of the text. This is the start of the
+     *         next tag or the start of the CDATA section terminator.
+     * @throws SAXException
+     *             When text could not be parsed or handler reports an error.
+     */
+
+    private long passNumbers(final long start, final boolean cdata)
+        throws SAXException
+    {
+        long p = start;
+        while (p < this.size)
+        {
+            final int offset = fill(p);
+            final int i = this.handler.readNumbers(this.window, offset,
+                this.windowLength);
+            p = this.windowStart + i;
+            if (i == this.windowLength) continue;
+            final byte b = this.window[i];
+            this.charCount = 0;
+            if (cdata ? b == ']' && startsWith(p, "]]>") : b == '<')
+            {
+                return p;
+            }
+            else if (b == '&' && !cdata)
+            {
+                p = readEntity(p);
+            }
+            else
+            {
+                appendChar((char) b);
+                p++;
+            }
+            this.handler.characters(this.chars, 0, this.charCount);
+        }
+        if (cdata)
+        {
+            this.pos = p;
+            throw error("Unterminated CDATA section");
+        }
+        return p;
+    }
+
+
+    /**
+     * Decodes the text beginning at the specified position and passes it to
+     * the handler.
+     *
+     * @param start
+     *            The start position of the text.
+     * @param cdata
+     *            If text is the content of a CDATA section.
+     * @return The position of the end of the text. This is the start of the
+     *         next tag or the start of the CDATA section terminator.
+     * @throws SAXException
+     *             When text could not be parsed or handler reports an error.
+     */
+
+    private long passText(final long start, final boolean cdata)
+        throws SAXException
+    {
+        this.charCount = 0;
+        long p = start;
+        while (p < this.size)
+        {
+            final byte b = byteAt(p);
+            if (cdata)
+            {
+                if (b == ']' && startsWith(p, "]]>")) break;
+            }
+            else if (b == '<')
+            {
+                break;
+            }
+            else if (b == '&')
+            {
+                p = readEntity(p);
+                continue;
+            }
+            if (b == '\r')
+            {
+                appendChar('\n');
+                p++;
+                if (p < this.size && byteAt(p) == '\n') p++;
+            }
+            else if (b >= 0)
+            {
+                appendChar((char) b);
+                p++;
+            }
+            else
+            {
+                p = readMultiByteChar(p);
+            }
+            if (this.charCount >= TEXT_CHUNK_SIZE)
+            {
+                this.handler.characters(this.chars, 0, this.charCount);
+                this.charCount = 0;
+            }
+        }
+        if (cdata && p >= this.size)
+        {
+            this.pos = p;
+            throw error("Unterminated CDATA section");
+        }
+        if (this.charCount > 0)
+            this.handler.characters(this.chars, 0, this.charCount);
+        return p;
+    }
+
+
+    /**
+     * Skips the content of the current element. When this method returns then
+     * the current position is behind the end tag of the current element.
+     *
+     * @throws SAXException
+     *             When content could not be parsed.
+     */
+
+    private void skipContent() throws SAXException
+    {
+        int depth = 0;
+        while (true)
+        {
+            this.pos = indexOf((byte) '<', this.pos);
+            final byte next = read(this.pos + 1);
+            if (next == '/')
+            {
+                this.pos = indexOf((byte) '>', this.pos) + 1;
+                if (depth == 0) return;
+                depth--;
+            }
+            else if (next == '?')
+            {
+                skipPast("?>");
+            }
+            else if (next == '!')
+            {
+                if (startsWith(this.pos, "<!--"))
+                    skipPast("-->");
+                else if (startsWith(this.pos, "<![CDATA["))
+                    skipPast("]]>");
+                else
+                    throw error("Invalid markup");
+            }
+            else
+            {
+                this.pos++;
+                skipName();
+                if (!readAttributes(false)) depth++;
+            }
+        }
+    }
+
+
+    /**
+     * Skips the document type declaration at the current position including
+     * its internal subset.
+     *
+     * @throws SAXException
+     *             When end of document type declaration was not found.
+     */
+
+    private void skipDoctype() throws SAXException
+    {
+        long p = this.pos + 9;
+        int depth = 0;
+        byte quote = 0;
+        while (true)
+        {
+            final byte b = read(p++);
+            if (quote != 0)
+            {
+                if (b == quote) quote = 0;
+            }
+            else if (b == '"' || b == '\'')
+            {
+                quote = b;
+            }
+            else if (b == '[')
+            {
+                depth++;
+            }
+            else if (b == ']')
+            {
+                depth--;
+            }
+            else if (b == '>' && depth == 0)
+            {
+                this.pos = p;
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Reads the entity reference at the specified position and appends the
+     * referenced character to the character buffer.
+     *
+     * @param start
+     *            The position of the ampersand.
+     * @return The position behind the entity reference.
+     * @throws SAXException
+     *             When entity reference is invalid or not supported.
+     */
+
+    private long readEntity(final long start) throws SAXException
+    {
+        final StringBuilder name = new StringBuilder();
+        long p = start + 1;
+        byte b;
+        while ((b = read(p++)) != ';')
+        {
+            if (name.length() > 10 || b < 0)
+            {
+                this.pos = start;
+                throw error("Invalid entity reference");
+            }
+            name.append((char) b);
+        }
+        final String entity = name.toString();
+        if (entity.equals("lt"))
+            appendChar('<');
+        else if (entity.equals("gt"))
+            appendChar('>');
+        else if (entity.equals("amp"))
+            appendChar('&');
+        else if (entity.equals("quot"))
+            appendChar('"');
+        else if (entity.equals("apos"))
+            appendChar('\'');
+        else if (entity.startsWith("#"))
+        {
+            int codePoint;
+            try
+            {
+                if (entity.startsWith("#x"))
+                    codePoint = Integer.parseInt(entity.substring(2), 16);
+                else
+                    codePoint = Integer.parseInt(entity.substring(1));
+            }
+            catch (final NumberFormatException e)
+            {
+                codePoint = -1;
+            }
+            if (codePoint < 0 || !Character.isValidCodePoint(codePoint))
+            {
+                this.pos = start;
+                throw error("Invalid character reference &" + entity + ";");
+            }
+            appendCodePoint(codePoint);
+        }
+        else
+        {
+            this.pos = start;
+            throw error("Unsupported entity reference &" + entity + ";");
+        }
+        return p;
+    }
+
+
+    /**
+     * Decodes the UTF-8 multi-byte sequence at the specified position and
+     * appends the character to the character buffer.
+     *
+     * @param start
+     *            The position of the first byte of the sequence.
+     * @return The position behind the sequence.
+     * @throws SAXException
+     *             When sequence is not valid UTF-8.
+     */
+
+    private long readMultiByteChar(final long start) throws SAXException
+    {
+        final int first = read(start) & 0xff;
+        final int length;
+        int codePoint;
+        if ((first & 0xe0) == 0xc0)
+        {
+            length = 2;
+            codePoint = first & 0x1f;
+        }
+        else if ((first & 0xf0) == 0xe0)
+        {
+            length = 3;
+            codePoint = first & 0x0f;
+        }
+        else if ((first & 0xf8) == 0xf0)
+        {
+            length = 4;
+            codePoint = first & 0x07;
+        }
+        else
+        {
+            this.pos = start;
+            throw error("Invalid UTF-8 sequence");
+        }
+        for (int i = 1; i < length; i++)
+        {
+            final int b = read(start + i) & 0xff;
+            if ((b & 0xc0) != 0x80)
+            {
+                this.pos = start;
+                throw error("Invalid UTF-8 sequence");
+            }
+            codePoint = (codePoint << 6) | (b & 0x3f);
+        }
+        appendCodePoint(codePoint);
+        return start + length;
+    }
+
+
+    /**
+     * Appends the specified unicode code point to the character buffer.
+     *
+     * @param codePoint
+     *            The code point to append.
+     */
+
+    private void appendCodePoint(final int codePoint)
+    {
+        if (codePoint < 0x10000)
+        {
+            appendChar((char) codePoint);
+        }
+        else
+        {
+            final char[] pair = Character.toChars(codePoint);
+            appendChar(pair[0]);
+            appendChar(pair[1]);
+        }
+    }
+
+
+    /**
+     * Appends a character to the character buffer.
+     *
+     * @param c
+     *            The character to append.
+     */
+
+    private void appendChar(final char c)
+    {
+        if (this.charCount == this.chars.length)
+        {
+            final char[] newChars = new char[this.chars.length * 2];
+            System.arraycopy(this.chars, 0, newChars, 0, this.charCount);
+            this.chars = newChars;
+        }
+        this.chars[this.charCount++] = c;
+    }
+
+
+    /**
+     * Skips white space at the current position.
+     */
+
+    private void skipWhitespace()
+    {
+        while (this.pos < this.size)
+        {
+            final byte b = byteAt(this.pos);
+            if (b != ' ' && b != '\n' && b != '\t' && b != '\r') return;
+            this.pos++;
+        }
+    }
+
+
+    /**
+     * Sets the current position behind the next occurrence of the specified
+     * terminator.
+     *
+     * @param terminator
+     *            The terminator. Must only contain ASCII characters.
+     * @throws SAXException
+     *             When terminator was not found.
+     */
+
+    private void skipPast(final String terminator) throws SAXException
+    {
+        final byte first = (byte) terminator.charAt(0);
+        long p = this.pos + 1;
+        while (!startsWith(p = indexOf(first, p), terminator))
+            p++;
+        this.pos = p + terminator.length();
+    }
+
+
+    /**
+     * Returns the position of the next occurrence of the specified byte.
+     *
+     * @param b
+     *            The byte to search.
+     * @param start
+     *            The position where to start searching.
+     * @return The position of the byte.
+     * @throws SAXException
+     *             When byte was not found.
+     */
+
+    private long indexOf(final byte b, final long start) throws SAXException
+    {
+        long p = start;
+        while (p < this.size)
+        {
+            final byte[] window = this.window;
+            final int limit = this.windowLength;
+            for (int i = fill(p); i < limit; i++)
+                if (window[i] == b) return this.windowStart + i;
+            p = this.windowStart + limit;
+        }
+        this.pos = p;
+        throw error("Unexpected end of document");
+    }
+
+
+    /**
+     * Checks if the file contains the specified ASCII string at the specified
+     * position.
+     *
+     * @param start
+     *            The position to check.
+     * @param string
+     *            The string to compare. Must only contain ASCII characters.
+     * @return True if string was found at the position, false if not.
+     */
+
+    private boolean startsWith(final long start, final String string)
+    {
+        final int length = string.length();
+        if (start + length > this.size) return false;
+        for (int i = 0; i < length; i++)
+            if (byteAt(start + i) != string.charAt(i)) return false;
+        return true;
+    }
+
+
+    /**
+     * Returns the byte at the specified position. The position must be
+     * within the file.
+     *
+     * @param position
+     *            The position.
+     * @return The byte.
+     */
+
+    private byte byteAt(final long position)
+    {
+        final long index = position - this.windowStart;
+        if (index < 0 || index >= this.windowLength)
+            return this.window[fill(position)];
+        return this.window[(int) index];
+    }
+
+
+    /**
+     * Makes sure the window contains the byte at the specified position. The
+     * window is refilled when the position is outside of the current window.
+     * The position must be within the file.
+     *
+     * @param position
+     *            The position.
+     * @return The index of the byte in the window.
+     */
+
+    private int fill(final long position)
+    {
+        final long index = position - this.windowStart;
+        if (index >= 0 && index < this.windowLength) return (int) index;
+        this.windowStart = position;
+        this.windowLength = this.file.get(position, this.window, 0,
+            (int) Math.min(WINDOW_SIZE, this.size - position));
+        return 0;
+    }
+
+
+    /**
+     * Returns the byte at the specified position.
+     *
+     * @param position
+     *            The position.
+     * @return The byte.
+     * @throws SAXException
+     *             When position is behind the end of the document.
+     */
+
+    private byte read(final long position) throws SAXException
+    {
+        if (position >= this.size)
+        {
+            this.pos = position;
+            throw error("Unexpected end of document");
+        }
+        return byteAt(position);
+    }
+
+
+    /**
+     * Creates a parse error for the current position.
+     *
+     * @param message
+     *            The error message.
+     * @return The exception to throw.
+     */
+
+    private SAXException error(final String message)
+    {
+        return new SAXException(message + " at byte offset " + this.pos);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * A read-only memory mapped file. A single mapped buffer can only address
+ * 2 GB so the file is mapped in consecutive segments. Positions are always
+ * absolute file positions and reads transparently cross segment boundaries.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class MappedFile
+{
+    /** The default segment size as a power of two (1 GB). */
+    static final int DEFAULT_SEGMENT_SHIFT = 30;
+
+    /** The mapped segments. */
+    private final ByteBuffer[] segments;
+
+    /** The file size. */
+    private final long size;
+
+    /** The segment size as a power of two. */
+    private final int segmentShift;
+
+    /** The mask for converting a file position into a segment offset. */
+    private final long segmentMask;
+
+
+    /**
+     * Maps the specified file with the default segment size.
+     *
+     * @param file
+     *            The file to map.
+     * @throws IOException
+     *             When file could not be mapped.
+     */
+
+    MappedFile(final File file) throws IOException
+    {
+        this(file, DEFAULT_SEGMENT_SHIFT);
+    }
+
+
+    /**
+     * Maps the specified file with the specified segment size.
+     *
+     * @param file
+     *            The file to map.
+     * @param segmentShift
+     *            The segment size as a power of two. Must be between 0 and
+     *            30.
+     * @throws IOException
+     *             When file could not be mapped.
+     */
+
+    MappedFile(final File file, final int segmentShift) throws IOException
+    {
+        if (segmentShift < 0 || segmentShift > DEFAULT_SEGMENT_SHIFT)
+            throw new IllegalArgumentException(
+                "segmentShift must be between 0 and " + DEFAULT_SEGMENT_SHIFT);
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            final FileChannel channel = raf.getChannel();
+            this.size = channel.size();
+            final int count = (int) ((this.size + this.segmentMask)
+                >>> segmentShift);
+            this.segments = new ByteBuffer[count];
+            for (int i = 0; i < count; i++)
+            {
+                final long start = (long) i << segmentShift;
+                this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    start, Math.min(1L << segmentShift, this.size - start));
+            }
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+
+    /**
+     * Returns the file size.
+     *
+     * @return The file size in bytes.
+     */
+
+    long getSize()
+    {
+        return this.size;
+    }
+
+
+    /**
+     * Returns the byte at the specified file position.
+     *
+     * @param position
+     *            The file position.
+     * @return The byte.
+     */
+
+    byte get(final long position)
+    {
+        return this.segments[(int) (position >>> this.segmentShift)]
+            .get((int) (position & this.segmentMask));
+    }
+
+
+    /**
+     * Copies bytes beginning at the specified file position into the
+     * specified array.
+     *
+     * @param position
+     *            The file position of the first byte to copy.
+     * @param dest
+     *            The destination array.
+     * @param offset
+     *            The index in the destination array.
+     * @param length
+     *            The maximum number of bytes to copy.
+     * @return The number of copied bytes. This is smaller than the requested
+     *         length when the end of the file is reached.
+     */
+
+    int get(final long position, final byte[] dest, final int offset,
+        final int length)
+    {
+        final int count = (int) Math.max(0, Math.min(length, this.size
+            - position));
+        long p = position;
+        int copied = 0;
+        while (copied < count)
+        {
+            final ByteBuffer segment = this.segments[(int) (p
+                >>> this.segmentShift)].duplicate();
+            segment.position((int) (p & this.segmentMask));
+            final int chunk = Math.min(count - copied, segment.remaining());
+            segment.get(dest, offset + copied, chunk);
+            copied += chunk;
+            p += chunk;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import de.ailis.jollada.model.DataLoader;
+
+
+/**
+ * Loads the values of a float array from the content of a float_array
+ * element in a memory mapped file. The content must be plain text without
+ * markup or entity references.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class MappedFloatArrayLoader implements DataLoader<double[]>
+{
+    /** The mapped file. */
+    private final MappedFile file;
+
+    /** The file position of the content. */
+    private final long start;
+
+    /** The file position behind the content. */
+    private final long end;
+
+    /** The number of values. */
+    private final int count;
+
+
+    /**
+     * Constructor.
+     *
+     * @param file
+     *            The mapped file.
+     * @param start
+     *            The file position of the content.
+     * @param end
+     *            The file position behind the content.
+     * @param count
+     *            The number of values.
+     */
+
+    MappedFloatArrayLoader(final MappedFile file, final long start,
+        final long end, final int count)
+    {
+        this.file = file;
+        this.start = start;
+        this.end = end;
+        this.count = count;
+    }
+
+
+    /**
+     * @see de.ailis.jollada.model.DataLoader#load()
+     */
+
+    @Override
+    public double[] load()
+    {
+        final double[] values = new double[this.count];
+        final ChunkFloatReader reader = new ChunkFloatReader()
+        {
+            private int index = 0;
+
+            @Override
+            protected void valueFound(final double value)
+            {
+                values[this.index++] = value;
+            }
+        };
+        final byte[] bytes = new byte[(int) Math.min(
+            MappedColladaParser.WINDOW_SIZE, this.end - this.start)];
+        for (long p = this.start; p < this.end;)
+        {
+            final int length = this.file.get(p, bytes, 0, (int) Math.min(
+                bytes.length, this.end - p));
+            reader.addText(bytes, 0, length);
+            p += length;
+        }
+        reader.finish();
+        return values;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import de.ailis.jollada.exceptions.ParserException;
+import de.ailis.jollada.model.DataLoader;
+
+
+/**
+ * Loads the values of an int list from the content of a primitive element
+ * in a memory mapped file. The content must be plain text without markup or
+ * entity references.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class MappedIntListLoader implements DataLoader<int[]>
+{
+    /** The mapped file. */
+    private final MappedFile file;
+
+    /** The file position of the content. */
+    private final long start;
+
+    /** The file position behind the content. */
+    private final long end;
+
+    /** The number of values in the content. */
+    private final int size;
+
+
+    /**
+     * Constructor. The values in the content are counted so the size of the
+     * int list is known before the values are loaded.
+     *
+     * @param file
+     *            The mapped file.
+     * @param start
+     *            The file position of the content.
+     * @param end
+     *            The file position behind the content.
+     */
+
+    MappedIntListLoader(final MappedFile file, final long start,
+        final long end)
+    {
+        this.file = file;
+        this.start = start;
+        this.end = end;
+        this.size = countValues();
+    }
+
+
+    /**
+     * Counts the values in the content without parsing them.
+     *
+     * @return The number of values.
+     */
+
+    private int countValues()
+    {
+        final byte[] bytes = new byte[(int) Math.min(
+            MappedColladaParser.WINDOW_SIZE, this.end - this.start)];
+        long count = 0;
+        boolean inValue = false;
+        for (long p = this.start; p < this.end;)
+        {
+            final int length = this.file.get(p, bytes, 0, (int) Math.min(
+                bytes.length, this.end - p));
+            for (int i = 0; i < length; i++)
+            {
+                final byte b = bytes[i];
+                final boolean separator = b == ' ' || b == '\n'
+                    || b == '\t' || b == '\r';
+                if (!separator && !inValue) count++;
+                inValue = !separator;
+            }
+            p += length;
+        }
+        if (count > Integer.MAX_VALUE)
+            throw new ParserException("Too many values in int list: "
+                + count);
+        return (int) count;
+    }
+
+
+    /**
+     * Returns the number of values in the content.
+     *
+     * @return The number of values.
+     */
+
+    int getSize()
+    {
+        return this.size;
+    }
+
+
+    /**
+     * @see de.ailis.jollada.model.DataLoader#load()
+     */
+
+    @Override
+    public int[] load()
+    {
+        final IntListBuilder builder = new IntListBuilder(this.size);
+        final ChunkIntReader reader = new ChunkIntReader()
+        {
+            @Override
+            protected void valueFound(final int value)
+            {
+                builder.add(value);
+            }
+        };
+        final byte[] bytes = new byte[(int) Math.min(
+            MappedColladaParser.WINDOW_SIZE, this.end - this.start)];
+        for (long p = this.start; p < this.end;)
+        {
+            final int length = this.file.get(p, bytes, 0, (int) Math.min(
+                bytes.length, this.end - p));
+            reader.addText(bytes, 0, length);
+            p += length;
+        }
+        reader.finish();
+        return builder.buildArray();
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+
+/**
+ * The XML parser backends supported by the {@link ColladaReader}.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public enum ParserBackend
+{
+    /**
+     * SAX parser. Every element of the document is reported to the COLLADA
+     * handler, including the content of ignored elements.
+     */
+    SAX,
+
+    /**
+     * StAX pull parser. Elements which are ignored by the COLLADA handler
+     * (like extra elements and unsupported profiles) are skipped together
+     * with their content and the text of number arrays is passed to the
+     * handler directly from the parser buffer.
+     */
+    STAX,
+
+    /**
+     * Memory mapped byte parser. Only used for reading files which are
+     * encoded in UTF-8 or ASCII. The file is mapped into memory (In segments
+     * so it can be larger than 2 GB) and the text of number arrays is parsed
+     * directly from the mapped bytes without decoding it into characters.
+     * Elements ignored by the COLLADA handler are skipped like with the StAX
+     * parser. Streams and files with other encodings are read with the SAX
+     * parser.
+     */
+    MAPPED
+}
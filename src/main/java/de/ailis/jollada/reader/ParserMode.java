@@ -5,6 +5,9 @@
 
 package de.ailis.jollada.reader;
 
+import java.util.HashMap;
+import java.util.Map;
+
 
 /**
  * The parser mode.
@@ -343,9 +346,6 @@ enum ParserMode {
     /** Parser is in instance_visual_scene element. */
     INSTANCE_VISUAL_SCENE("instance_visual_scene"),
 
-    /** Parser is in EXTRA element. */
-    EXTRA("extra"),
-
     /** Parser is in a float param. */
     FLOAT_PARAM("float"),
 
@@ -353,9 +353,107 @@ enum ParserMode {
     PARAM_SEMANTIC("semantic");
 
 
+    static
+    {
+        ROOT.addChildModes(COLLADA);
+        COLLADA.addChildModes(LIBRARY_IMAGES, LIBRARY_MATERIALS,
+            LIBRARY_EFFECTS, LIBRARY_GEOMETRIES, LIBRARY_CAMERAS,
+            LIBRARY_LIGHTS, LIBRARY_VISUAL_SCENES, LIBRARY_ANIMATIONS, SCENE);
+
+        // Images
+        LIBRARY_IMAGES.addChildModes(IMAGE);
+        IMAGE.addChildModes(IMAGE_INIT_FROM);
+        IMAGE_INIT_FROM.addChildModes(IMAGE_INIT_FROM_REF);
+
+        // Materials
+        LIBRARY_MATERIALS.addChildModes(MATERIAL);
+        MATERIAL.addChildModes(INSTANCE_EFFECT);
+
+        // Effects
+        LIBRARY_EFFECTS.addChildModes(EFFECT);
+        EFFECT.addChildModes(PROFILE_COMMON);
+        PROFILE_COMMON.addChildModes(TECHNIQUE_COMMON, NEWPARAM);
+        NEWPARAM.addChildModes(SAMPLER2D, FLOAT_PARAM, PARAM_SEMANTIC);
+        SAMPLER2D.addChildModes(SAMPLER2D_MINFILTER, SAMPLER2D_MAGFILTER,
+            SAMPLER2D_WRAP_S, SAMPLER2D_WRAP_T, INSTANCE_IMAGE);
+        TECHNIQUE_COMMON.addChildModes(PHONG, BLINN, CONSTANT, LAMBERT);
+        for (final ParserMode shader : new ParserMode[] { PHONG, BLINN,
+            CONSTANT, LAMBERT })
+            shader.addChildModes(EMISSION, AMBIENT, DIFFUSE, SPECULAR,
+                REFLECTIVE, TRANSPARENT, REFLECTIVITY, SHININESS,
+                TRANSPARENCY, INDEX_OF_REFRACTION);
+        for (final ParserMode attribute : new ParserMode[] { REFLECTIVITY,
+            TRANSPARENCY, SHININESS, INDEX_OF_REFRACTION })
+            attribute.addChildModes(FLOAT);
+        for (final ParserMode attribute : new ParserMode[] { EMISSION,
+            AMBIENT, DIFFUSE, SPECULAR, REFLECTIVE, TRANSPARENT })
+            attribute.addChildModes(SHADING_COLOR, TEXTURE);
+
+        // Geometries
+        LIBRARY_GEOMETRIES.addChildModes(GEOMETRY);
+        GEOMETRY.addChildModes(MESH);
+        MESH.addChildModes(MESH_DATA_SOURCE, VERTICES, TRIANGLES, POLYLIST,
+            POLYGONS);
+        MESH_DATA_SOURCE.addChildModes(FLOAT_ARRAY, NAME_ARRAY,
+            SOURCE_TECHNIQUE_COMMON);
+        SOURCE_TECHNIQUE_COMMON.addChildModes(ACCESSOR);
+        ACCESSOR.addChildModes(PARAM);
+        VERTICES.addChildModes(VERTICES_INPUT);
+        POLYGONS.addChildModes(PRIMITIVES_INPUT, POLYGONS_P);
+        POLYLIST.addChildModes(PRIMITIVES_INPUT, POLYLIST_VCOUNT, POLYLIST_P);
+        TRIANGLES.addChildModes(PRIMITIVES_INPUT, TRIANGLES_P);
+
+        // Animations
+        LIBRARY_ANIMATIONS.addChildModes(ANIMATION);
+        ANIMATION.addChildModes(ANIMATION, ANIMATION_DATA_SOURCE, SAMPLER,
+            CHANNEL);
+        ANIMATION_DATA_SOURCE.addChildModes(FLOAT_ARRAY, NAME_ARRAY,
+            SOURCE_TECHNIQUE_COMMON);
+        SAMPLER.addChildModes(SAMPLER_INPUT);
+
+        // Lights
+        LIBRARY_LIGHTS.addChildModes(LIGHT);
+        LIGHT.addChildModes(LIGHT_TECHNIQUE_COMMON);
+        LIGHT_TECHNIQUE_COMMON.addChildModes(LIGHT_DIRECTIONAL, LIGHT_POINT,
+            LIGHT_AMBIENT, LIGHT_SPOT);
+        LIGHT_AMBIENT.addChildModes(LIGHT_COLOR);
+        LIGHT_DIRECTIONAL.addChildModes(LIGHT_COLOR);
+        LIGHT_POINT.addChildModes(LIGHT_COLOR, CONSTANT_ATTENUATION,
+            LINEAR_ATTENUATION, QUADRATIC_ATTENUATION);
+        LIGHT_SPOT.addChildModes(LIGHT_COLOR, FALLOFF_ANGLE, FALLOFF_EXPONENT,
+            CONSTANT_ATTENUATION, LINEAR_ATTENUATION, QUADRATIC_ATTENUATION);
+
+        // Cameras
+        LIBRARY_CAMERAS.addChildModes(CAMERA);
+        CAMERA.addChildModes(OPTICS);
+        OPTICS.addChildModes(OPTICS_TECHNIQUE_COMMON);
+        OPTICS_TECHNIQUE_COMMON.addChildModes(PERSPECTIVE, ORTHOGRAPHIC);
+        PERSPECTIVE.addChildModes(XFOV, YFOV, XMAG, YMAG, ASPECT_RATIO, ZNEAR,
+            ZFAR);
+        ORTHOGRAPHIC.addChildModes(XFOV, YFOV, XMAG, YMAG, ASPECT_RATIO,
+            ZNEAR, ZFAR);
+
+        // Visual scenes
+        LIBRARY_VISUAL_SCENES.addChildModes(VISUAL_SCENE);
+        VISUAL_SCENE.addChildModes(NODE);
+        NODE.addChildModes(LOOKAT, MATRIX, ROTATE, SCALE, SKEW, TRANSLATE,
+            NODE, INSTANCE_GEOMETRY, INSTANCE_LIGHT, INSTANCE_CAMERA);
+        INSTANCE_GEOMETRY.addChildModes(BIND_MATERIAL);
+        BIND_MATERIAL.addChildModes(BIND_MATERIAL_PARAM,
+            BIND_MATERIAL_TECHNIQUE_COMMON);
+        BIND_MATERIAL_TECHNIQUE_COMMON.addChildModes(INSTANCE_MATERIAL);
+
+        // Scene
+        SCENE.addChildModes(INSTANCE_VISUAL_SCENE);
+    }
+
     /** The tag name */
     private String tagName;
 
+    /** The transitions from element tag names to child parser modes. */
+    private final Map<String, ParserMode> childModes =
+        new HashMap<String, ParserMode>();
+
     /**
      * Constructs a new parser mode.
      *
@@ -379,4 +477,35 @@ enum ParserMode {
     {
         return this.tagName;
     }
+
+
+    /**
+     * Adds transitions to the specified child parser modes. The tag names of
+     * the child modes are used as keys.
+     *
+     * @param modes
+     *            The child parser modes.
+     */
+
+    private void addChildModes(final ParserMode... modes)
+    {
+        for (final ParserMode mode : modes)
+            this.childModes.put(mode.tagName, mode);
+    }
+
+
+    /**
+     * Returns the parser mode to use for the child element with the specified
+     * tag name.
+     *
+     * @param tagName
+     *            The tag name of the child element.
+     * @return The child parser mode or null if the child element is not
+     *         supported and must be ignored.
+     */
+
+    public ParserMode getChildMode(final String tagName)
+    {
+        return this.childModes.get(tagName);
+    }
 }
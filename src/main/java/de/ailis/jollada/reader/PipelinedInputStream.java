@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+ * An input stream which reads a source stream ahead in a background thread.
+ * This is used to decompress compressed documents while the parser is busy
+ * with the previously decompressed data. The number of blocks read ahead is
+ * limited so memory usage is bounded.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class PipelinedInputStream extends InputStream
+{
+    /** The size of a block. */
+    private static final int BLOCK_SIZE = 65536;
+
+    /** The maximum number of blocks read ahead. */
+    private static final int MAX_BLOCKS = 16;
+
+    /** The block marking the end of the source stream. */
+    private static final byte[] END = new byte[0];
+
+    /** The blocks read by the background thread. */
+    private final BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<byte[]>(
+        MAX_BLOCKS);
+
+    /** The source stream. */
+    private final InputStream source;
+
+    /** The background thread reading the source stream. */
+    private final Thread thread;
+
+    /** The error of the background thread. Null if none. */
+    private volatile IOException error;
+
+    /** If the stream has been closed. */
+    private volatile boolean closed;
+
+    /** The current block. */
+    private byte[] block;
+
+    /** The read position in the current block. */
+    private int blockPos;
+
+
+    /**
+     * Constructs a new pipelined input stream and starts reading the source
+     * stream in the background.
+     *
+     * @param source
+     *            The source stream. It is not closed by this stream.
+     */
+
+    PipelinedInputStream(final InputStream source)
+    {
+        this.source = source;
+        this.thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                readAhead();
+            }
+        }, "COLLADA read-ahead");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+
+    /**
+     * Reads the source stream into blocks until the end of the stream is
+     * reached, an error occurs or this stream is closed. Runs in the
+     * background thread. Any error is reported to the reader of this stream
+     * after the blocks read so far, so the reader never waits forever.
+     */
+
+    void readAhead()
+    {
+        try
+        {
+            try
+            {
+                int read = 0;
+                while (!this.closed && read >= 0)
+                {
+                    final byte[] block = new byte[BLOCK_SIZE];
+                    int length = 0;
+                    while (length < BLOCK_SIZE
+                        && (read = this.source.read(block, length, BLOCK_SIZE
+                            - length)) >= 0)
+                        length += read;
+                    if (length == BLOCK_SIZE)
+                        this.blocks.put(block);
+                    else if (length > 0)
+                        this.blocks.put(Arrays.copyOf(block, length));
+                }
+            }
+            catch (final InterruptedException e)
+            {
+                // Stream has been closed
+                return;
+            }
+            catch (final IOException e)
+            {
+                this.error = e;
+            }
+            catch (final Throwable e)
+            {
+                this.error = new IOException("Unable to read source stream: "
+                    + e, e);
+            }
+            if (!this.closed) this.blocks.put(END);
+        }
+        catch (final InterruptedException e)
+        {
+            // Stream has been closed
+        }
+    }
+
+
+    /**
+     * Makes sure a block with unread data is available.
+     *
+     * @return True if data is available, false at end of stream.
+     * @throws IOException
+     *             When source stream could not be read.
+     */
+
+    private boolean nextBlock() throws IOException
+    {
+        if (this.block != END)
+        {
+            if (this.block != null && this.blockPos < this.block.length)
+                return true;
+            if (this.closed) throw new IOException("Stream closed");
+            try
+            {
+                this.block = this.blocks.take();
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading");
+            }
+            this.blockPos = 0;
+            if (this.block != END) return true;
+        }
+
+        // The error is reported again on every read after the end
+        if (this.error != null) throw this.error;
+        return false;
+    }
+
+
+    /**
+     * @see java.io.InputStream#read()
+     */
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!nextBlock()) return -1;
+        return this.block[this.blockPos++] & 0xff;
+    }
+
+
+    /**
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+        throws IOException
+    {
+        if (len == 0) return 0;
+        if (!nextBlock()) return -1;
+        final int count = Math.min(len, this.block.length - this.blockPos);
+        System.arraycopy(this.block, this.blockPos, b, off, count);
+        this.blockPos += count;
+        return count;
+    }
+
+
+    /**
+     * @see java.io.InputStream#available()
+     */
+
+    @Override
+    public int available()
+    {
+        return this.block == null ? 0 : this.block.length - this.blockPos;
+    }
+
+
+    /**
+     * Closes this stream. The background thread is stopped but not waited
+     * for because it may be blocked in a read of the source stream which
+     * can't be interrupted (Reading from a stalled socket for example). It
+     * ends by itself as soon as this read returns. The source stream is not
+     * closed.
+     */
+
+    @Override
+    public void close()
+    {
+        if (this.closed) return;
+        this.closed = true;
+        this.thread.interrupt();
+        this.blocks.clear();
+    }
+}
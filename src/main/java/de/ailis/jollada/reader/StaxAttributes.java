@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Attributes;
+
+
+/**
+ * SAX attributes view on the attributes of the current element of a StAX
+ * stream reader. The attributes are not copied so this view is only valid
+ * while the stream reader is positioned on the start element.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class StaxAttributes implements Attributes
+{
+    /** The stream reader. */
+    private final XMLStreamReader reader;
+
+
+    /**
+     * Constructor.
+     *
+     * @param reader
+     *            The stream reader. Must not be null.
+     */
+
+    StaxAttributes(final XMLStreamReader reader)
+    {
+        this.reader = reader;
+    }
+
+
+    /**
+     * @see org.xml.sax.Attributes#getLength()
+     */
+
+    @Override
+    public int getLength()
+    {
+        return this.reader.getAttributeCount();
+    }
+
+
+    /**
+     * @see org.xml.sax.Attributes#getURI(int)
+     */
+
+    @Override
+    public String getURI(final int index)
+    {
+        if (index < 0 || index >= getLength()) return null;
+        final String uri = this.reader.getAttributeNamespace(index);
+        return uri == null ? "" : uri;
+    }
+
+
+    /**
+     * @see org.xml.sax.Attributes#getLocalName(int)
+     */
+
+    @Override
+    public String getLocalName(final int index)
+    {
+        if (index < 0 || index >= getLength()) return null;
+        return this.reader.getAttributeLocalName(index);
+    }
+
+
+    /**
+     * @see org.xml.sax.Attributes#getQName(int)
+     */
+
+    @Override
+    public String getQName(final int index)
+    {
+        if (index < 0 || index >= getLength()) return null;
+        final String prefix = this.reader.getAttributePrefix(index);
+        final String localName = this.reader.getAttributeLocalName(index);
+        if (prefix == null || prefix.length() == 0) return localName;
+        return prefix + ":" + localName;
+    }
+
+
+    /**
+     * @see org.xml.sax.Attributes#getType(int)
+     */
+
+    @Override
+    public String getType(final int index)
+    {
+        if (index < 0 || index >= getLength()) return null;
+        return this.reader.getAttributeType(index);
+    }
+
+
+    /**
+     * @see org.xml.sax.Attributes#getValue(int)
+     */
+
+    @Override
+    public String getValue(final int index)
+    {
+        if (index < 0 || index >= getLength()) return null;
+        return this.reader.getAttributeValue(index);
+    }
+
+
+    /**
+     * @see org.xml.sax.Attributes#getIndex(java.lang.String, java.lang.String)
+     */
+
+    @Override
+    public int getIndex(final String uri, final String localName)
+    {
+        for (int i = 0, max = getLength(); i < max; i++)
+        {
+            if (localName.equals(this.reader.getAttributeLocalName(i))
+                && uri.equals(getURI(i))) return i;
+        }
+        return -1;
+    }
+
+
+    /**
+     * @see org.xml.sax.Attributes#getIndex(java.lang.String)
+     */
+
+    @Override
+    public int getIndex(final String qName)
+    {
+        for (int i = 0, max = getLength(); i < max; i++)
+        {
+            if (qName.equals(getQName(i))) return i;
+        }
+        return -1;
+    }
+
+
+    /**
+     * @see org.xml.sax.Attributes#getType(java.lang.String, java.lang.String)
+     */
+
+    @Override
+    public String getType(final String uri, final String localName)
+    {
+        return getType(getIndex(uri, localName));
+    }
+
+
+    /**
+     * @see org.xml.sax.Attributes#getType(java.lang.String)
+     */
+
+    @Override
+    public String getType(final String qName)
+    {
+        return getType(getIndex(qName));
+    }
+
+
+    /**
+     * @see org.xml.sax.Attributes#getValue(java.lang.String, java.lang.String)
+     */
+
+    @Override
+    public String getValue(final String uri, final String localName)
+    {
+        return getValue(getIndex(uri, localName));
+    }
+
+
+    /**
+     * @see org.xml.sax.Attributes#getValue(java.lang.String)
+     */
+
+    @Override
+    public String getValue(final String qName)
+    {
+        return getValue(getIndex(qName));
+    }
+}
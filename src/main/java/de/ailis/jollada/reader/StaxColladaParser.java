@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.SAXException;
+
+import de.ailis.jollada.model.Document;
+
+
+/**
+ * Drives a {@link ColladaHandler} with a StAX pull parser. In contrast to
+ * the SAX parser the pull parser allows skipping all elements which are
+ * ignored by the handler together with their content, so no handler
+ * callbacks are needed for them.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class StaxColladaParser
+{
+    /** The factory used to create the stream readers. */
+    private final XMLInputFactory factory;
+
+
+    /**
+     * Constructor.
+     */
+
+    StaxColladaParser()
+    {
+        this.factory = XMLInputFactory.newInstance();
+        this.factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE,
+            Boolean.TRUE);
+        this.factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+    }
+
+
+    /**
+     * Parses a COLLADA document from the specified stream.
+     *
+     * @param stream
+     *            The stream to read the document from.
+     * @param handler
+     *            The handler building the document.
+     * @return The parsed document. Never null.
+     * @throws XMLStreamException
+     *             When the document could not be parsed.
+     * @throws SAXException
+     *             When the handler reports an error.
+     */
+
+    Document parse(final InputStream stream, final ColladaHandler handler)
+        throws XMLStreamException, SAXException
+    {
+        final XMLStreamReader reader = this.factory
+            .createXMLStreamReader(stream);
+        try
+        {
+            final StaxAttributes attributes = new StaxAttributes(reader);
+            while (reader.hasNext())
+            {
+                switch (reader.next())
+                {
+                    case XMLStreamConstants.START_ELEMENT:
+                        handler.startElement(getURI(reader),
+                            reader.getLocalName(), getQName(reader),
+                            attributes);
+                        if (handler.isSkipping())
+                        {
+                            skipContent(reader);
+                            handler.endElement(getURI(reader),
+                                reader.getLocalName(), getQName(reader));
+                        }
+                        break;
+
+                    case XMLStreamConstants.END_ELEMENT:
+                        handler.endElement(getURI(reader),
+                            reader.getLocalName(), getQName(reader));
+                        break;
+
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        handler.characters(reader.getTextCharacters(),
+                            reader.getTextStart(), reader.getTextLength());
+                        break;
+
+                    default:
+                        // Ignored
+                }
+            }
+            return handler.getDocument();
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+
+    /**
+     * Skips the content of the current element. When this method returns then
+     * the reader is positioned on the end element of the current element.
+     *
+     * @param reader
+     *            The stream reader positioned on a start element.
+     * @throws XMLStreamException
+     *             When the content could not be parsed.
+     */
+
+    private static void skipContent(final XMLStreamReader reader)
+        throws XMLStreamException
+    {
+        int depth = 0;
+        while (true)
+        {
+            switch (reader.next())
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    if (depth == 0) return;
+                    depth--;
+                    break;
+
+                default:
+                    // Ignored
+            }
+        }
+    }
+
+
+    /**
+     * Returns the namespace URI of the current element.
+     *
+     * @param reader
+     *            The stream reader.
+     * @return The namespace URI. Empty if element has no namespace.
+     */
+
+    private static String getURI(final XMLStreamReader reader)
+    {
+        final String uri = reader.getNamespaceURI();
+        return uri == null ? "" : uri;
+    }
+
+
+    /**
+     * Returns the qualified name of the current element.
+     *
+     * @param reader
+     *            The stream reader.
+     * @return The qualified name.
+     */
+
+    private static String getQName(final XMLStreamReader reader)
+    {
+        final String prefix = reader.getPrefix();
+        if (prefix == null || prefix.length() == 0)
+            return reader.getLocalName();
+        return prefix + ":" + reader.getLocalName();
+    }
+}
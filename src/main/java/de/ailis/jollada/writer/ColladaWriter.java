@@ -0,0 +1,1498 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.writer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+import de.ailis.gramath.Matrix4d;
+import de.ailis.gramath.Vector3d;
+import de.ailis.jollada.model.Accessor;
+import de.ailis.jollada.model.AltitudeMode;
+import de.ailis.jollada.model.Animation;
+import de.ailis.jollada.model.AnimationBehavior;
+import de.ailis.jollada.model.AnimationChannel;
+import de.ailis.jollada.model.AnimationLibrary;
+import de.ailis.jollada.model.AnimationSampler;
+import de.ailis.jollada.model.Array;
+import de.ailis.jollada.model.Asset;
+import de.ailis.jollada.model.AttenuatedLightSource;
+import de.ailis.jollada.model.BRDFShader;
+import de.ailis.jollada.model.BlinnShader;
+import de.ailis.jollada.model.Camera;
+import de.ailis.jollada.model.CameraInstance;
+import de.ailis.jollada.model.CameraLibrary;
+import de.ailis.jollada.model.ColorAttribute;
+import de.ailis.jollada.model.CommonEffectProfile;
+import de.ailis.jollada.model.CommonEffectTechnique;
+import de.ailis.jollada.model.CommonMaterialBindingTechnique;
+import de.ailis.jollada.model.CommonNewParam;
+import de.ailis.jollada.model.CommonSourceTechnique;
+import de.ailis.jollada.model.ConstantShader;
+import de.ailis.jollada.model.Contributor;
+import de.ailis.jollada.model.DataFlowParam;
+import de.ailis.jollada.model.DataFlowParams;
+import de.ailis.jollada.model.DataFlowSource;
+import de.ailis.jollada.model.DiffuseShader;
+import de.ailis.jollada.model.Directional;
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.model.Effect;
+import de.ailis.jollada.model.EffectInstance;
+import de.ailis.jollada.model.EffectLibrary;
+import de.ailis.jollada.model.EffectProfile;
+import de.ailis.jollada.model.Filter;
+import de.ailis.jollada.model.FloatArray;
+import de.ailis.jollada.model.FloatAttribute;
+import de.ailis.jollada.model.FloatParam;
+import de.ailis.jollada.model.FloatValue;
+import de.ailis.jollada.model.GeographicLocation;
+import de.ailis.jollada.model.Geometric;
+import de.ailis.jollada.model.Geometry;
+import de.ailis.jollada.model.GeometryInstance;
+import de.ailis.jollada.model.GeometryLibrary;
+import de.ailis.jollada.model.Image;
+import de.ailis.jollada.model.ImageInstance;
+import de.ailis.jollada.model.ImageLibrary;
+import de.ailis.jollada.model.ImageSource;
+import de.ailis.jollada.model.Instance;
+import de.ailis.jollada.model.IntList;
+import de.ailis.jollada.model.LambertShader;
+import de.ailis.jollada.model.Light;
+import de.ailis.jollada.model.LightInstance;
+import de.ailis.jollada.model.LightLibrary;
+import de.ailis.jollada.model.LightSource;
+import de.ailis.jollada.model.LookAtTransform;
+import de.ailis.jollada.model.Material;
+import de.ailis.jollada.model.MaterialBinding;
+import de.ailis.jollada.model.MaterialInstance;
+import de.ailis.jollada.model.MaterialLibrary;
+import de.ailis.jollada.model.MatrixTransform;
+import de.ailis.jollada.model.Mesh;
+import de.ailis.jollada.model.NameArray;
+import de.ailis.jollada.model.Node;
+import de.ailis.jollada.model.NodeType;
+import de.ailis.jollada.model.Opaque;
+import de.ailis.jollada.model.Orthographic;
+import de.ailis.jollada.model.Param;
+import de.ailis.jollada.model.Perspective;
+import de.ailis.jollada.model.PhongShader;
+import de.ailis.jollada.model.Point;
+import de.ailis.jollada.model.PolyList;
+import de.ailis.jollada.model.Polygons;
+import de.ailis.jollada.model.Precision;
+import de.ailis.jollada.model.Primitives;
+import de.ailis.jollada.model.Projection;
+import de.ailis.jollada.model.RGBAColor;
+import de.ailis.jollada.model.RGBColor;
+import de.ailis.jollada.model.RotateTransform;
+import de.ailis.jollada.model.Sampler2DParam;
+import de.ailis.jollada.model.ScaleTransform;
+import de.ailis.jollada.model.Scene;
+import de.ailis.jollada.model.Shader;
+import de.ailis.jollada.model.SharedInput;
+import de.ailis.jollada.model.SkewTransform;
+import de.ailis.jollada.model.Spot;
+import de.ailis.jollada.model.Texture;
+import de.ailis.jollada.model.Transform;
+import de.ailis.jollada.model.TranslateTransform;
+import de.ailis.jollada.model.Triangles;
+import de.ailis.jollada.model.Unit;
+import de.ailis.jollada.model.UnsharedInput;
+import de.ailis.jollada.model.Vertices;
+import de.ailis.jollada.model.VisualScene;
+import de.ailis.jollada.model.VisualSceneInstance;
+import de.ailis.jollada.model.VisualSceneLibrary;
+import de.ailis.jollada.model.Wrap;
+
+
+/**
+ * Writes a COLLADA file.
+ *
+ * The document is written directly into a reusable output buffer without
+ * building a DOM. Float arrays are written with the number of significant
+ * digits reported by {@link FloatArray#getDigits()}, all other floating
+ * point values are written with the shortest text which reads back to
+ * exactly the same value. A writer reuses its output buffer for all writes,
+ * so writers are not thread-safe.
+ *
+ * When an executor is set then large float arrays and primitive index lists
+ * are formatted in parallel on this executor. The rest of the document is
+ * always written sequentially.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class ColladaWriter
+{
+    /** The COLLADA namespace. */
+    private static final String NAMESPACE =
+        "http://www.collada.org/2008/03/COLLADASchema";
+
+    /** The COLLADA version written to the document element. */
+    private static final String VERSION = "1.5.0";
+
+    /** The default size of the output buffer. */
+    private static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    /** The number of digits which write doubles without loss. */
+    private static final int EXACT_DIGITS = 17;
+
+    /** The number of values formatted per task when formatting in parallel. */
+    private static final int PARALLEL_CHUNK_SIZE = 65536;
+
+    /** The XML output. */
+    private final XmlOutput out;
+
+    /** The format of date values. */
+    private final DateFormat dateFormat;
+
+    /** The executor for formatting large arrays. Null if not used. */
+    private Executor executor;
+
+    /** The parallel formatter. Null if arrays are formatted sequentially. */
+    private ParallelFormatter parallelFormatter;
+
+
+    /**
+     * Constructs a writer with the default output buffer size.
+     */
+
+    public ColladaWriter()
+    {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+
+    /**
+     * Constructs a writer with the specified output buffer size.
+     *
+     * @param bufferSize
+     *            The size of the output buffer in bytes.
+     */
+
+    public ColladaWriter(final int bufferSize)
+    {
+        this.out = new XmlOutput(bufferSize);
+        this.dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+
+    /**
+     * Returns the executor used for formatting large arrays in parallel.
+     *
+     * @return The executor. Null if arrays are formatted sequentially.
+     */
+
+    public Executor getExecutor()
+    {
+        return this.executor;
+    }
+
+
+    /**
+     * Sets the executor used for formatting large arrays in parallel. Float
+     * arrays and primitive index lists with more than 65536 values are split
+     * into chunks of this size which are formatted on the executor and then
+     * written in order. Formatting is CPU-bound so the executor should have
+     * about as many threads as there are CPU cores. Default is null which
+     * formats all arrays sequentially.
+     *
+     * The writer blocks while it waits for formatted chunks. So the executor
+     * must not be a bounded thread pool which also runs this writer.
+     * Otherwise the pool can fill up with waiting writers and no thread is
+     * left to format the chunks.
+     *
+     * @param executor
+     *            The executor to set. Null to format arrays sequentially.
+     */
+
+    public void setExecutor(final Executor executor)
+    {
+        setExecutor(executor, PARALLEL_CHUNK_SIZE);
+    }
+
+
+    /**
+     * Sets the executor used for formatting large arrays in parallel and the
+     * number of values formatted per task.
+     *
+     * @param executor
+     *            The executor to set. Null to format arrays sequentially.
+     * @param chunkSize
+     *            The number of values formatted per task.
+     */
+
+    void setExecutor(final Executor executor, final int chunkSize)
+    {
+        this.executor = executor;
+        this.parallelFormatter = executor == null ? null
+            : new ParallelFormatter(executor, chunkSize, Runtime.getRuntime()
+                .availableProcessors() * 2);
+    }
+
+
+    /**
+     * Writes the specified COLLADA document to the specified file.
+     *
+     * @param document
+     *            The document to write.
+     * @param filename
+     *            The name of the file to write.
+     * @throws IOException
+     *             When document could not be written.
+     */
+
+    public void write(final Document document, final String filename)
+        throws IOException
+    {
+        write(document, new File(filename));
+    }
+
+
+    /**
+     * Writes the specified COLLADA document to the specified file.
+     *
+     * @param document
+     *            The document to write.
+     * @param file
+     *            The file to write.
+     * @throws IOException
+     *             When document could not be written.
+     */
+
+    public void write(final Document document, final File file)
+        throws IOException
+    {
+        final OutputStream stream = new FileOutputStream(file);
+        try
+        {
+            write(document, stream);
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+
+    /**
+     * Writes the specified COLLADA document to the specified stream. The
+     * stream is flushed but not closed.
+     *
+     * @param document
+     *            The document to write.
+     * @param stream
+     *            The stream to write to.
+     * @throws IOException
+     *             When document could not be written.
+     */
+
+    public void write(final Document document, final OutputStream stream)
+        throws IOException
+    {
+        if (document == null)
+            throw new IllegalArgumentException("document must not be null");
+        final XmlOutput out = this.out;
+        out.open(stream);
+        out.start("COLLADA");
+        out.attribute("xmlns", NAMESPACE);
+        out.attribute("version", VERSION);
+        out.attribute("xml:base", document.getBase());
+        writeAsset(document.getAsset());
+        for (final ImageLibrary library : document.getImageLibraries())
+            writeImageLibrary(library);
+        for (final MaterialLibrary library : document.getMaterialLibraries())
+            writeMaterialLibrary(library);
+        for (final EffectLibrary library : document.getEffectLibraries())
+            writeEffectLibrary(library);
+        for (final CameraLibrary library : document.getCameraLibraries())
+            writeCameraLibrary(library);
+        for (final LightLibrary library : document.getLightLibraries())
+            writeLightLibrary(library);
+        for (final AnimationLibrary library : document
+            .getAnimationLibraries())
+            writeAnimationLibrary(library);
+        for (final GeometryLibrary library : document.getGeometryLibraries())
+            writeGeometryLibrary(library);
+        for (final VisualSceneLibrary library : document
+            .getVisualSceneLibraries())
+            writeVisualSceneLibrary(library);
+        writeScene(document.getScene());
+        out.end();
+        out.close();
+    }
+
+
+    /**
+     * Writes an asset element. Nothing is written if asset is null.
+     *
+     * @param asset
+     *            The asset to write. May be null.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeAsset(final Asset asset) throws IOException
+    {
+        if (asset == null) return;
+        final XmlOutput out = this.out;
+        out.start("asset");
+        for (final Contributor contributor : asset.getContributors())
+        {
+            out.start("contributor");
+            out.textElement("author", contributor.getAuthor());
+            out.textElement("author_email", contributor.getAuthorEMail());
+            out.textElement("author_website", contributor.getAuthorWebsite());
+            out.textElement("authoring_tool", contributor.getAuthoringTool());
+            out.textElement("comments", contributor.getComments());
+            out.textElement("copyright", contributor.getCopyright());
+            out.textElement("source_data", contributor.getSourceData());
+            out.end();
+        }
+        final GeographicLocation location = asset.getGeographicLocation();
+        if (location != null)
+        {
+            out.start("coverage");
+            out.start("geographic_location");
+            out.start("longitude");
+            out.value(location.getLongitude(), EXACT_DIGITS);
+            out.end();
+            out.start("latitude");
+            out.value(location.getLatitude(), EXACT_DIGITS);
+            out.end();
+            out.start("altitude");
+            out.attribute("mode", location.getAltitudeMode()
+                == AltitudeMode.ABSOLUTE ? "absolute" : "relativeToGround");
+            out.value(location.getAltitude(), EXACT_DIGITS);
+            out.end();
+            out.end();
+            out.end();
+        }
+        out.textElement("created", formatDate(asset.getCreated()));
+        if (!asset.getKeywords().isEmpty())
+        {
+            out.start("keywords");
+            out.values(asset.getKeywords().toArray(
+                new String[asset.getKeywords().size()]));
+            out.end();
+        }
+        out.textElement("modified", formatDate(asset.getModified()));
+        out.textElement("revision", asset.getRevision());
+        out.textElement("subject", asset.getSubject());
+        out.textElement("title", asset.getTitle());
+        final Unit unit = asset.getUnit();
+        if (unit != null)
+        {
+            out.start("unit");
+            out.attribute("meter", Float.toString(unit.getMeter()));
+            out.attribute("name", unit.getName());
+            out.end();
+        }
+        if (asset.getUpAxis() != null)
+            out.textElement("up_axis", asset.getUpAxis().name());
+        out.end();
+    }
+
+
+    /**
+     * Formats the specified time stamp as an XML schema date time.
+     *
+     * @param time
+     *            The time stamp in milliseconds.
+     * @return The formatted date.
+     */
+
+    private String formatDate(final long time)
+    {
+        return this.dateFormat.format(new Date(time));
+    }
+
+
+    /**
+     * Writes an image library.
+     *
+     * @param library
+     *            The library to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeImageLibrary(final ImageLibrary library)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("library_images");
+        out.attribute("id", library.getId());
+        out.attribute("name", library.getName());
+        writeAsset(library.getAsset());
+        for (final Image image : library.getImages())
+        {
+            out.start("image");
+            out.attribute("id", image.getId());
+            out.attribute("sid", image.getSid());
+            out.attribute("name", image.getName());
+            writeAsset(image.getAsset());
+            final ImageSource source = image.getSource();
+            if (source != null)
+            {
+                out.start("init_from");
+                if (!source.isGenerateMips())
+                    out.attribute("mips_generate", "false");
+                out.textElement("ref", source.getRef());
+                out.end();
+            }
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes a material library.
+     *
+     * @param library
+     *            The library to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeMaterialLibrary(final MaterialLibrary library)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("library_materials");
+        out.attribute("id", library.getId());
+        out.attribute("name", library.getName());
+        writeAsset(library.getAsset());
+        for (final Material material : library.getMaterials())
+        {
+            out.start("material");
+            out.attribute("id", material.getId());
+            out.attribute("name", material.getName());
+            writeAsset(material.getAsset());
+            final EffectInstance instance = material.getEffectInstance();
+            out.start("instance_effect");
+            out.attribute("sid", instance.getSid());
+            out.attribute("name", instance.getName());
+            out.attribute("url", instance.getUrl());
+            out.end();
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes an effect library.
+     *
+     * @param library
+     *            The library to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeEffectLibrary(final EffectLibrary library)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("library_effects");
+        out.attribute("id", library.getId());
+        out.attribute("name", library.getName());
+        writeAsset(library.getAsset());
+        for (final Effect effect : library.getEffects())
+        {
+            out.start("effect");
+            out.attribute("id", effect.getId());
+            out.attribute("name", effect.getName());
+            writeAsset(effect.getAsset());
+            for (final EffectProfile profile : effect.getProfiles())
+                if (profile instanceof CommonEffectProfile)
+                    writeCommonProfile((CommonEffectProfile) profile);
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes a profile_COMMON element.
+     *
+     * @param profile
+     *            The profile to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeCommonProfile(final CommonEffectProfile profile)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("profile_COMMON");
+        out.attribute("id", profile.getId());
+        writeAsset(profile.getAsset());
+        for (final CommonNewParam param : profile.getParams())
+        {
+            out.start("newparam");
+            out.attribute("sid", param.getSid());
+            out.textElement("semantic", param.getSemantic());
+            writeParam(param.getParameter());
+            out.end();
+        }
+        final CommonEffectTechnique technique = profile.getTechnique();
+        out.start("technique");
+        out.attribute("id", technique.getId());
+        out.attribute("sid", technique.getSid());
+        writeAsset(technique.getAsset());
+        writeShader(technique.getShader());
+        out.end();
+        out.end();
+    }
+
+
+    /**
+     * Writes the value element of a new param. Parameter types not
+     * supported by the reader are skipped.
+     *
+     * @param param
+     *            The parameter to write. May be null.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeParam(final Param param) throws IOException
+    {
+        final XmlOutput out = this.out;
+        if (param instanceof FloatParam)
+        {
+            out.start("float");
+            out.value(((FloatParam) param).getValue(), EXACT_DIGITS);
+            out.end();
+        }
+        else if (param instanceof Sampler2DParam)
+        {
+            final Sampler2DParam sampler = (Sampler2DParam) param;
+            out.start("sampler2D");
+            final ImageInstance image = sampler.getImageInstance();
+            if (image != null) writeInstance("instance_image", image);
+            writeEnum("wrap_s", sampler.getWrapS(), Wrap.WRAP);
+            writeEnum("wrap_t", sampler.getWrapT(), Wrap.WRAP);
+            writeEnum("minfilter", sampler.getMinFilter(), Filter.LINEAR);
+            writeEnum("magfilter", sampler.getMagFilter(), Filter.LINEAR);
+            out.end();
+        }
+    }
+
+
+    /**
+     * Writes an element containing an enum value. Nothing is written if the
+     * value is null or the default value.
+     *
+     * @param name
+     *            The element name.
+     * @param value
+     *            The value to write. May be null.
+     * @param defaultValue
+     *            The default value.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeEnum(final String name, final Enum<?> value,
+        final Enum<?> defaultValue) throws IOException
+    {
+        if (value != null && value != defaultValue)
+            this.out.textElement(name, value.name());
+    }
+
+
+    /**
+     * Writes a shader.
+     *
+     * @param shader
+     *            The shader to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeShader(final Shader shader) throws IOException
+    {
+        final XmlOutput out = this.out;
+        if (shader instanceof PhongShader)
+            out.start("phong");
+        else if (shader instanceof BlinnShader)
+            out.start("blinn");
+        else if (shader instanceof LambertShader)
+            out.start("lambert");
+        else if (shader instanceof ConstantShader)
+            out.start("constant");
+        else
+            throw new IllegalArgumentException("Unsupported shader: "
+                + shader);
+        writeColor("emission", shader.getEmission());
+        if (shader instanceof DiffuseShader)
+        {
+            final DiffuseShader diffuse = (DiffuseShader) shader;
+            writeColor("ambient", diffuse.getAmbient());
+            writeColor("diffuse", diffuse.getDiffuse());
+        }
+        if (shader instanceof BRDFShader)
+        {
+            final BRDFShader brdf = (BRDFShader) shader;
+            writeColor("specular", brdf.getSpecular());
+            writeFloat("shininess", brdf.getShininess());
+        }
+        writeColor("reflective", shader.getReflective());
+        writeFloat("reflectivity", shader.getReflectivity());
+        final ColorAttribute transparent = shader.getTransparent();
+        if (transparent != null)
+        {
+            out.start("transparent");
+            if (transparent.getOpaque() != Opaque.A_ONE)
+                out.attribute("opaque", transparent.getOpaque());
+            writeColorValue(transparent);
+            out.end();
+        }
+        writeFloat("transparency", shader.getTransparency());
+        writeFloat("index_of_refraction", shader.getIndexOfRefraction());
+        out.end();
+    }
+
+
+    /**
+     * Writes a color attribute of a shader. Nothing is written if attribute
+     * is null.
+     *
+     * @param name
+     *            The element name.
+     * @param attribute
+     *            The attribute to write. May be null.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeColor(final String name,
+        final ColorAttribute attribute) throws IOException
+    {
+        if (attribute == null) return;
+        this.out.start(name);
+        writeColorValue(attribute);
+        this.out.end();
+    }
+
+
+    /**
+     * Writes the color or texture of a color attribute.
+     *
+     * @param attribute
+     *            The attribute to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeColorValue(final ColorAttribute attribute)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        if (attribute.isColor())
+        {
+            final RGBAColor color = attribute.getColor();
+            out.start("color");
+            out.attribute("sid", color.getSid());
+            out.value(color.getRed(), EXACT_DIGITS);
+            out.value(color.getGreen(), EXACT_DIGITS);
+            out.value(color.getBlue(), EXACT_DIGITS);
+            out.value(color.getAlpha(), EXACT_DIGITS);
+            out.end();
+        }
+        else
+        {
+            final Texture texture = attribute.getTexture();
+            out.start("texture");
+            out.attribute("texture", texture.getTexture());
+            out.attribute("texcoord", texture.getTexcoord());
+            out.end();
+        }
+    }
+
+
+    /**
+     * Writes a float attribute of a shader. Nothing is written if attribute
+     * is null.
+     *
+     * @param name
+     *            The element name.
+     * @param attribute
+     *            The attribute to write. May be null.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeFloat(final String name,
+        final FloatAttribute attribute) throws IOException
+    {
+        if (attribute == null) return;
+        this.out.start(name);
+        writeFloatValue("float", attribute.getFloat());
+        this.out.end();
+    }
+
+
+    /**
+     * Writes a float value. Nothing is written if value is null.
+     *
+     * @param name
+     *            The element name.
+     * @param value
+     *            The value to write. May be null.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeFloatValue(final String name, final FloatValue value)
+        throws IOException
+    {
+        if (value == null) return;
+        final XmlOutput out = this.out;
+        out.start(name);
+        out.attribute("sid", value.getSid());
+        out.value(value.getValue(), EXACT_DIGITS);
+        out.end();
+    }
+
+
+    /**
+     * Writes a camera library.
+     *
+     * @param library
+     *            The library to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeCameraLibrary(final CameraLibrary library)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("library_cameras");
+        out.attribute("id", library.getId());
+        out.attribute("name", library.getName());
+        writeAsset(library.getAsset());
+        for (final Camera camera : library.getCameras())
+        {
+            out.start("camera");
+            out.attribute("id", camera.getId());
+            out.attribute("name", camera.getName());
+            writeAsset(camera.getAsset());
+            out.start("optics");
+            out.start("technique_common");
+            final Projection projection = camera.getOptics()
+                .getCommonTechnique().getProjection();
+            if (projection instanceof Perspective)
+            {
+                final Perspective perspective = (Perspective) projection;
+                out.start("perspective");
+                writeFloatValue("xfov", perspective.getXFov());
+                writeFloatValue("yfov", perspective.getYFov());
+            }
+            else
+            {
+                final Orthographic orthographic = (Orthographic) projection;
+                out.start("orthographic");
+                writeFloatValue("xmag", orthographic.getXMag());
+                writeFloatValue("ymag", orthographic.getYMag());
+            }
+            writeFloatValue("aspect_ratio", projection.getAspectRatio());
+            writeFloatValue("znear", projection.getZNear());
+            writeFloatValue("zfar", projection.getZFar());
+            out.end();
+            out.end();
+            out.end();
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes a light library.
+     *
+     * @param library
+     *            The library to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeLightLibrary(final LightLibrary library)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("library_lights");
+        out.attribute("id", library.getId());
+        out.attribute("name", library.getName());
+        writeAsset(library.getAsset());
+        for (final Light light : library.getLights())
+        {
+            out.start("light");
+            out.attribute("id", light.getId());
+            out.attribute("name", light.getName());
+            writeAsset(light.getAsset());
+            out.start("technique_common");
+            final LightSource source = light.getCommonTechnique()
+                .getLightSource();
+            if (source instanceof Directional)
+                out.start("directional");
+            else if (source instanceof Spot)
+                out.start("spot");
+            else if (source instanceof Point)
+                out.start("point");
+            else
+                out.start("ambient");
+            final RGBColor color = source.getColor();
+            out.start("color");
+            out.attribute("sid", color.getSid());
+            out.value(color.getRed(), EXACT_DIGITS);
+            out.value(color.getGreen(), EXACT_DIGITS);
+            out.value(color.getBlue(), EXACT_DIGITS);
+            out.end();
+            if (source instanceof AttenuatedLightSource)
+            {
+                final AttenuatedLightSource attenuated =
+                    (AttenuatedLightSource) source;
+                writeFloatValue("constant_attenuation", attenuated
+                    .getConstantAttenuation());
+                writeFloatValue("linear_attenuation", attenuated
+                    .getLinearAttenuation());
+                writeFloatValue("quadratic_attenuation", attenuated
+                    .getQuadraticAttenuation());
+            }
+            if (source instanceof Spot)
+            {
+                final Spot spot = (Spot) source;
+                writeFloatValue("falloff_angle", spot.getFalloffAngle());
+                writeFloatValue("falloff_exponent", spot
+                    .getFalloffExponent());
+            }
+            out.end();
+            out.end();
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes an animation library.
+     *
+     * @param library
+     *            The library to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeAnimationLibrary(final AnimationLibrary library)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("library_animations");
+        out.attribute("id", library.getId());
+        out.attribute("name", library.getName());
+        writeAsset(library.getAsset());
+        for (final Animation animation : library.getAnimations())
+            writeAnimation(animation);
+        out.end();
+    }
+
+
+    /**
+     * Writes an animation and its child animations.
+     *
+     * @param animation
+     *            The animation to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeAnimation(final Animation animation) throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("animation");
+        out.attribute("id", animation.getId());
+        out.attribute("name", animation.getName());
+        writeAsset(animation.getAsset());
+        for (final DataFlowSource source : animation.getSources())
+            writeSource(source);
+        for (final AnimationSampler sampler : animation.getSamplers())
+        {
+            out.start("sampler");
+            out.attribute("id", sampler.getId());
+            writeBehavior("pre_behavior", sampler.getPreBehavior());
+            writeBehavior("post_behavior", sampler.getPostBehavior());
+            for (final UnsharedInput input : sampler.getInputs())
+                writeInput(input);
+            out.end();
+        }
+        for (final AnimationChannel channel : animation.getChannels())
+        {
+            out.start("channel");
+            out.attribute("source", channel.getSource());
+            out.attribute("target", channel.getTarget());
+            out.end();
+        }
+        for (final Animation child : animation.getAnimations())
+            writeAnimation(child);
+        out.end();
+    }
+
+
+    /**
+     * Writes an animation behavior attribute. Nothing is written for the
+     * undefined behavior.
+     *
+     * @param name
+     *            The attribute name.
+     * @param behavior
+     *            The behavior to write. May be null.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeBehavior(final String name,
+        final AnimationBehavior behavior) throws IOException
+    {
+        if (behavior != null && behavior != AnimationBehavior.UNDEFINED)
+            this.out.attribute(name, behavior.name());
+    }
+
+
+    /**
+     * Writes a geometry library.
+     *
+     * @param library
+     *            The library to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeGeometryLibrary(final GeometryLibrary library)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("library_geometries");
+        out.attribute("id", library.getId());
+        out.attribute("name", library.getName());
+        writeAsset(library.getAsset());
+        for (final Geometry geometry : library.getGeometries())
+        {
+            out.start("geometry");
+            out.attribute("id", geometry.getId());
+            out.attribute("name", geometry.getName());
+            writeAsset(geometry.getAsset());
+            final Geometric geometric = geometry.getGeometric();
+            if (geometric instanceof Mesh) writeMesh((Mesh) geometric);
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes a mesh.
+     *
+     * @param mesh
+     *            The mesh to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeMesh(final Mesh mesh) throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("mesh");
+        for (final DataFlowSource source : mesh.getSources())
+            writeSource(source);
+        final Vertices vertices = mesh.getVertices();
+        out.start("vertices");
+        out.attribute("id", vertices.getId());
+        out.attribute("name", vertices.getName());
+        for (final UnsharedInput input : vertices.getInputs())
+            writeInput(input);
+        out.end();
+        for (final Primitives primitives : mesh.getPrimitives())
+        {
+            if (primitives instanceof Triangles)
+            {
+                writePrimitivesStart("triangles", primitives);
+                writeIntList("p", ((Triangles) primitives).getData());
+            }
+            else if (primitives instanceof PolyList)
+            {
+                final PolyList polyList = (PolyList) primitives;
+                writePrimitivesStart("polylist", primitives);
+                writeIntList("vcount", polyList.getVcount());
+                writeIntList("p", polyList.getData());
+            }
+            else if (primitives instanceof Polygons)
+            {
+                writePrimitivesStart("polygons", primitives);
+                for (final IntList data : ((Polygons) primitives).getData())
+                    writeIntList("p", data);
+            }
+            else
+                continue;
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Starts a primitives element and writes its attributes and inputs.
+     *
+     * @param name
+     *            The element name.
+     * @param primitives
+     *            The primitives.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writePrimitivesStart(final String name,
+        final Primitives primitives) throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start(name);
+        out.attribute("name", primitives.getName());
+        out.attribute("count", primitives.getCount());
+        out.attribute("material", primitives.getMaterial());
+        for (final SharedInput input : primitives.getInputs())
+        {
+            out.start("input");
+            out.attribute("offset", input.getOffset());
+            out.attribute("semantic", input.getSemantic());
+            out.attribute("source", input.getSource());
+            out.attribute("set", input.getSet());
+            out.end();
+        }
+    }
+
+
+    /**
+     * Writes an element containing an int list. Nothing is written if list
+     * is null.
+     *
+     * @param name
+     *            The element name.
+     * @param list
+     *            The list to write. May be null.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeIntList(final String name, final IntList list)
+        throws IOException
+    {
+        if (list == null) return;
+        final XmlOutput out = this.out;
+        final ParallelFormatter parallel = this.parallelFormatter;
+        final IntBuffer values = list.getIntBuffer();
+        out.start(name);
+        if (parallel != null && parallel.isParallel(values))
+            parallel.values(out, values);
+        else
+            out.values(values);
+        out.end();
+    }
+
+
+    /**
+     * Writes an unshared input.
+     *
+     * @param input
+     *            The input to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeInput(final UnsharedInput input) throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("input");
+        out.attribute("semantic", input.getSemantic());
+        out.attribute("source", input.getSource());
+        out.end();
+    }
+
+
+    /**
+     * Writes a data flow source.
+     *
+     * @param source
+     *            The source to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeSource(final DataFlowSource source) throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("source");
+        out.attribute("id", source.getId());
+        out.attribute("name", source.getName());
+        writeAsset(source.getAsset());
+        final Array array = source.getArray();
+        if (array instanceof FloatArray)
+            writeFloatArray((FloatArray) array);
+        else if (array instanceof NameArray)
+        {
+            out.start("Name_array");
+            out.attribute("id", array.getId());
+            out.attribute("name", array.getName());
+            out.attribute("count", array.getCount());
+            out.values(((NameArray) array).getValues());
+            out.end();
+        }
+        final CommonSourceTechnique technique = source.getCommonTechnique();
+        if (technique != null && technique.getAccessor() != null)
+        {
+            final Accessor accessor = technique.getAccessor();
+            out.start("technique_common");
+            out.start("accessor");
+            out.attribute("count", accessor.getCount());
+            if (accessor.getOffset() != 0)
+                out.attribute("offset", accessor.getOffset());
+            out.attribute("source", accessor.getSource());
+            if (accessor.getStride() != 1)
+                out.attribute("stride", accessor.getStride());
+            writeParams(accessor.getParams());
+            out.end();
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes a float array.
+     *
+     * @param array
+     *            The array to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeFloatArray(final FloatArray array) throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("float_array");
+        out.attribute("id", array.getId());
+        out.attribute("name", array.getName());
+        out.attribute("count", array.getCount());
+        if (array.getDigits() != FloatArray.DEFAULT_DIGITS)
+            out.attribute("digits", array.getDigits());
+        if (array.getMagnitude() != FloatArray.DEFAULT_MAGNITUDE)
+            out.attribute("magnitude", array.getMagnitude());
+        final ParallelFormatter parallel = this.parallelFormatter;
+        final int digits = array.getDigits();
+        if (array.getPrecision() == Precision.SINGLE)
+        {
+            final FloatBuffer values = array.getFloatBuffer();
+            if (parallel != null && parallel.isParallel(values))
+                parallel.values(out, values, digits);
+            else
+                out.values(values, digits);
+        }
+        else
+        {
+            final DoubleBuffer values = array.getDoubleBuffer();
+            if (parallel != null && parallel.isParallel(values))
+                parallel.values(out, values, digits);
+            else
+                out.values(values, digits);
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes data flow params.
+     *
+     * @param params
+     *            The params to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeParams(final DataFlowParams params) throws IOException
+    {
+        final XmlOutput out = this.out;
+        for (final DataFlowParam param : params)
+        {
+            out.start("param");
+            out.attribute("name", param.getName());
+            out.attribute("sid", param.getSid());
+            out.attribute("type", param.getType());
+            out.attribute("semantic", param.getSemantic());
+            out.end();
+        }
+    }
+
+
+    /**
+     * Writes a visual scene library.
+     *
+     * @param library
+     *            The library to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeVisualSceneLibrary(final VisualSceneLibrary library)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("library_visual_scenes");
+        out.attribute("id", library.getId());
+        out.attribute("name", library.getName());
+        writeAsset(library.getAsset());
+        for (final VisualScene scene : library.getVisualScenes())
+        {
+            out.start("visual_scene");
+            out.attribute("id", scene.getId());
+            out.attribute("name", scene.getName());
+            writeAsset(scene.getAsset());
+            for (final Node node : scene.getNodes())
+                writeNode(node);
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes a node and its child nodes.
+     *
+     * @param node
+     *            The node to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeNode(final Node node) throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("node");
+        out.attribute("id", node.getId());
+        out.attribute("name", node.getName());
+        out.attribute("sid", node.getSid());
+        if (node.getType() != NodeType.NODE)
+            out.attribute("type", node.getType());
+        final List<String> layers = node.getLayers();
+        if (!layers.isEmpty())
+        {
+            final StringBuilder builder = new StringBuilder();
+            for (final String layer : layers)
+            {
+                if (builder.length() > 0) builder.append(' ');
+                builder.append(layer);
+            }
+            out.attribute("layer", builder);
+        }
+        writeAsset(node.getAsset());
+        for (final Transform transform : node.getTransforms())
+            writeTransform(transform);
+        for (final CameraInstance instance : node.getCameraInstances())
+            writeInstance("instance_camera", instance);
+        for (final GeometryInstance instance : node.getGeometryInstances())
+            writeGeometryInstance(instance);
+        for (final LightInstance instance : node.getLightInstances())
+            writeInstance("instance_light", instance);
+        for (final Node child : node.getNodes())
+            writeNode(child);
+        out.end();
+    }
+
+
+    /**
+     * Writes a transform.
+     *
+     * @param transform
+     *            The transform to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeTransform(final Transform transform) throws IOException
+    {
+        final XmlOutput out = this.out;
+        if (transform instanceof MatrixTransform)
+        {
+            out.start("matrix");
+            out.attribute("sid", transform.getSid());
+            final Matrix4d matrix = ((MatrixTransform) transform)
+                .getMatrix();
+            for (int row = 0; row < 4; row++)
+                for (int column = 0; column < 4; column++)
+                    out.value(matrix.getElement(row, column), EXACT_DIGITS);
+        }
+        else if (transform instanceof TranslateTransform)
+        {
+            out.start("translate");
+            out.attribute("sid", transform.getSid());
+            writeVector(((TranslateTransform) transform).getTranslation());
+        }
+        else if (transform instanceof RotateTransform)
+        {
+            final RotateTransform rotate = (RotateTransform) transform;
+            out.start("rotate");
+            out.attribute("sid", transform.getSid());
+            writeVector(rotate.getAxis());
+            out.value(rotate.getAngle(), EXACT_DIGITS);
+        }
+        else if (transform instanceof ScaleTransform)
+        {
+            out.start("scale");
+            out.attribute("sid", transform.getSid());
+            writeVector(((ScaleTransform) transform).getScaling());
+        }
+        else if (transform instanceof LookAtTransform)
+        {
+            final LookAtTransform lookAt = (LookAtTransform) transform;
+            out.start("lookat");
+            out.attribute("sid", transform.getSid());
+            writeVector(lookAt.getEye());
+            writeVector(lookAt.getInterest());
+            writeVector(lookAt.getUp());
+        }
+        else if (transform instanceof SkewTransform)
+        {
+            final SkewTransform skew = (SkewTransform) transform;
+            out.start("skew");
+            out.attribute("sid", transform.getSid());
+            out.value(skew.getAngle(), EXACT_DIGITS);
+            writeVector(skew.getRotationAxis());
+            writeVector(skew.getTranslationAxis());
+        }
+        else
+            return;
+        out.end();
+    }
+
+
+    /**
+     * Writes the components of a vector as text content.
+     *
+     * @param vector
+     *            The vector to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeVector(final Vector3d vector) throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.value(vector.getX(), EXACT_DIGITS);
+        out.value(vector.getY(), EXACT_DIGITS);
+        out.value(vector.getZ(), EXACT_DIGITS);
+    }
+
+
+    /**
+     * Writes a geometry instance.
+     *
+     * @param instance
+     *            The instance to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeGeometryInstance(final GeometryInstance instance)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("instance_geometry");
+        out.attribute("sid", instance.getSid());
+        out.attribute("name", instance.getName());
+        out.attribute("url", instance.getUrl());
+        final MaterialBinding binding = instance.getMaterialBinding();
+        if (binding != null)
+        {
+            out.start("bind_material");
+            writeParams(binding.getParams());
+            final CommonMaterialBindingTechnique technique = binding
+                .getCommonTechnique();
+            out.start("technique_common");
+            for (final MaterialInstance material : technique
+                .getMaterialInstances())
+            {
+                out.start("instance_material");
+                out.attribute("sid", material.getSid());
+                out.attribute("name", material.getName());
+                out.attribute("target", material.getTarget());
+                out.attribute("symbol", material.getSymbol());
+                out.end();
+            }
+            out.end();
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes an instance element without content.
+     *
+     * @param name
+     *            The element name.
+     * @param instance
+     *            The instance to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeInstance(final String name, final Instance instance)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start(name);
+        out.attribute("sid", instance.getSid());
+        out.attribute("name", instance.getName());
+        out.attribute("url", instance.getUrl());
+        out.end();
+    }
+
+
+    /**
+     * Writes the scene element. Nothing is written if scene is null or has
+     * no visual scene instance.
+     *
+     * @param scene
+     *            The scene to write. May be null.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeScene(final Scene scene) throws IOException
+    {
+        if (scene == null) return;
+        final VisualSceneInstance instance = scene.getVisualSceneInstance();
+        if (instance == null) return;
+        this.out.start("scene");
+        writeInstance("instance_visual_scene", instance);
+        this.out.end();
+    }
+}
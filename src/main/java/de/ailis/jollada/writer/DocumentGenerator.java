@@ -0,0 +1,1012 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.writer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+
+/**
+ * Generates synthetic COLLADA 1.5 documents of configurable shape and size
+ * for tests and benchmarks. The document is streamed to the output while it
+ * is generated so documents of many gigabytes can be generated without
+ * holding them in memory. The generated values are pseudo random but
+ * depend only on the seed, so a generator with the same settings always
+ * generates the same document.
+ *
+ * <p>
+ * The generated document contains the configured number of effects with
+ * one material each, geometries with position and normal sources and a
+ * mix of triangles, polylist and polygons primitives, a visual scene with
+ * a node tree of the configured depth and fan-out and animations with one
+ * channel each which animate the rotation angles of the nodes. Every node
+ * instantiates one of the geometries and binds one of the materials.
+ * </p>
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class DocumentGenerator
+{
+    /** The number of significant digits of the generated floats. */
+    private static final int DIGITS = 6;
+
+    /** The time stamp written to the asset. */
+    private static final String TIME_STAMP = "2010-01-01T00:00:00Z";
+
+    /** The buffer size of the output. */
+    private static final int BUFFER_SIZE = 65536;
+
+    /** The number of geometries. */
+    private int geometries = 1;
+
+    /** The number of vertices per geometry. */
+    private int vertices = 1000;
+
+    /** The relative number of faces written as triangles. */
+    private int trianglesWeight = 1;
+
+    /** The relative number of faces written as polylist. */
+    private int polyListWeight = 0;
+
+    /** The relative number of faces written as polygons. */
+    private int polygonsWeight = 0;
+
+    /** The depth of the node tree. */
+    private int nodeDepth = 1;
+
+    /** The number of child nodes of each node. */
+    private int nodeFanOut = 1;
+
+    /** The number of materials and effects. */
+    private int materials = 1;
+
+    /** The number of animation channels. */
+    private int animationChannels = 0;
+
+    /** The number of key frames per animation channel. */
+    private int keyFrames = 10;
+
+    /** The seed of the generated values. */
+    private long seed = 0;
+
+    /** The XML output. Only set while generating. */
+    private XmlOutput out;
+
+    /** The random number generator. Only set while generating. */
+    private Random random;
+
+
+    /**
+     * Returns the number of geometries.
+     *
+     * @return The number of geometries.
+     */
+
+    public int getGeometries()
+    {
+        return this.geometries;
+    }
+
+
+    /**
+     * Sets the number of geometries. Default is 1.
+     *
+     * @param geometries
+     *            The number of geometries. Must not be negative.
+     */
+
+    public void setGeometries(final int geometries)
+    {
+        checkNotNegative("geometries", geometries);
+        this.geometries = geometries;
+    }
+
+
+    /**
+     * Returns the number of vertices per geometry.
+     *
+     * @return The number of vertices per geometry.
+     */
+
+    public int getVertices()
+    {
+        return this.vertices;
+    }
+
+
+    /**
+     * Sets the number of vertices per geometry. Each geometry has as many
+     * faces as vertices. Default is 1000.
+     *
+     * @param vertices
+     *            The number of vertices per geometry. Must be at least 3.
+     */
+
+    public void setVertices(final int vertices)
+    {
+        if (vertices < 3)
+            throw new IllegalArgumentException("vertices must be >= 3");
+        this.vertices = vertices;
+    }
+
+
+    /**
+     * Returns the relative number of faces written as triangles.
+     *
+     * @return The triangles weight.
+     */
+
+    public int getTrianglesWeight()
+    {
+        return this.trianglesWeight;
+    }
+
+
+    /**
+     * Returns the relative number of faces written as polylist.
+     *
+     * @return The polylist weight.
+     */
+
+    public int getPolyListWeight()
+    {
+        return this.polyListWeight;
+    }
+
+
+    /**
+     * Returns the relative number of faces written as polygons.
+     *
+     * @return The polygons weight.
+     */
+
+    public int getPolygonsWeight()
+    {
+        return this.polygonsWeight;
+    }
+
+
+    /**
+     * Sets the mix of primitive types. The faces of each geometry are
+     * distributed to one triangles, one polylist and one polygons element
+     * according to the specified weights. Elements which get no faces are
+     * not written. Triangles have three vertices, polylist and polygons
+     * faces have three to six vertices. Default is triangles only.
+     *
+     * @param triangles
+     *            The relative number of faces written as triangles.
+     * @param polyList
+     *            The relative number of faces written as polylist.
+     * @param polygons
+     *            The relative number of faces written as polygons.
+     */
+
+    public void setPrimitiveMix(final int triangles, final int polyList,
+        final int polygons)
+    {
+        checkNotNegative("triangles", triangles);
+        checkNotNegative("polyList", polyList);
+        checkNotNegative("polygons", polygons);
+        if (triangles + polyList + polygons == 0)
+            throw new IllegalArgumentException(
+                "At least one weight must be > 0");
+        this.trianglesWeight = triangles;
+        this.polyListWeight = polyList;
+        this.polygonsWeight = polygons;
+    }
+
+
+    /**
+     * Returns the depth of the node tree.
+     *
+     * @return The depth of the node tree.
+     */
+
+    public int getNodeDepth()
+    {
+        return this.nodeDepth;
+    }
+
+
+    /**
+     * Sets the depth of the node tree. A depth of 1 writes only the root
+     * nodes of the visual scene. Default is 1.
+     *
+     * @param nodeDepth
+     *            The depth of the node tree. Must not be negative.
+     */
+
+    public void setNodeDepth(final int nodeDepth)
+    {
+        checkNotNegative("nodeDepth", nodeDepth);
+        this.nodeDepth = nodeDepth;
+    }
+
+
+    /**
+     * Returns the number of child nodes of each node.
+     *
+     * @return The number of child nodes.
+     */
+
+    public int getNodeFanOut()
+    {
+        return this.nodeFanOut;
+    }
+
+
+    /**
+     * Sets the number of child nodes of each node. This is also the number
+     * of root nodes of the visual scene. Default is 1.
+     *
+     * @param nodeFanOut
+     *            The number of child nodes. Must not be negative.
+     */
+
+    public void setNodeFanOut(final int nodeFanOut)
+    {
+        checkNotNegative("nodeFanOut", nodeFanOut);
+        this.nodeFanOut = nodeFanOut;
+    }
+
+
+    /**
+     * Returns the total number of generated nodes.
+     *
+     * @return The number of nodes.
+     */
+
+    public long getNodeCount()
+    {
+        long count = 0;
+        long level = 1;
+        for (int i = 0; i < this.nodeDepth; i++)
+        {
+            level *= this.nodeFanOut;
+            count += level;
+        }
+        return count;
+    }
+
+
+    /**
+     * Returns the number of materials and effects.
+     *
+     * @return The number of materials.
+     */
+
+    public int getMaterials()
+    {
+        return this.materials;
+    }
+
+
+    /**
+     * Sets the number of materials. One effect is written per material.
+     * Default is 1.
+     *
+     * @param materials
+     *            The number of materials. Must not be negative.
+     */
+
+    public void setMaterials(final int materials)
+    {
+        checkNotNegative("materials", materials);
+        this.materials = materials;
+    }
+
+
+    /**
+     * Returns the number of animation channels.
+     *
+     * @return The number of animation channels.
+     */
+
+    public int getAnimationChannels()
+    {
+        return this.animationChannels;
+    }
+
+
+    /**
+     * Sets the number of animation channels. One animation with an input
+     * and an output source, a sampler and a channel is written per channel.
+     * Default is 0.
+     *
+     * @param animationChannels
+     *            The number of animation channels. Must not be negative.
+     */
+
+    public void setAnimationChannels(final int animationChannels)
+    {
+        checkNotNegative("animationChannels", animationChannels);
+        this.animationChannels = animationChannels;
+    }
+
+
+    /**
+     * Returns the number of key frames per animation channel.
+     *
+     * @return The number of key frames.
+     */
+
+    public int getKeyFrames()
+    {
+        return this.keyFrames;
+    }
+
+
+    /**
+     * Sets the number of key frames per animation channel. Default is 10.
+     *
+     * @param keyFrames
+     *            The number of key frames. Must be larger than 0.
+     */
+
+    public void setKeyFrames(final int keyFrames)
+    {
+        if (keyFrames <= 0)
+            throw new IllegalArgumentException("keyFrames must be > 0");
+        this.keyFrames = keyFrames;
+    }
+
+
+    /**
+     * Returns the seed of the generated values.
+     *
+     * @return The seed.
+     */
+
+    public long getSeed()
+    {
+        return this.seed;
+    }
+
+
+    /**
+     * Sets the seed of the generated values. Default is 0.
+     *
+     * @param seed
+     *            The seed.
+     */
+
+    public void setSeed(final long seed)
+    {
+        this.seed = seed;
+    }
+
+
+    /**
+     * Checks that the specified value is not negative.
+     *
+     * @param name
+     *            The name of the value.
+     * @param value
+     *            The value to check.
+     */
+
+    private static void checkNotNegative(final String name, final int value)
+    {
+        if (value < 0)
+            throw new IllegalArgumentException(name + " must be >= 0");
+    }
+
+
+    /**
+     * Generates a document and writes it to the specified file.
+     *
+     * @param file
+     *            The file to write.
+     * @throws IOException
+     *             When document could not be written.
+     */
+
+    public void generate(final File file) throws IOException
+    {
+        final OutputStream stream = new FileOutputStream(file);
+        try
+        {
+            generate(stream);
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+
+    /**
+     * Generates a document and writes it to the specified stream. The
+     * stream is flushed but not closed.
+     *
+     * @param stream
+     *            The stream to write to.
+     * @throws IOException
+     *             When document could not be written.
+     */
+
+    public void generate(final OutputStream stream) throws IOException
+    {
+        final XmlOutput out = this.out = new XmlOutput(BUFFER_SIZE);
+        this.random = new Random(this.seed);
+        try
+        {
+            out.open(stream);
+            out.start("COLLADA");
+            out.attribute("xmlns",
+                "http://www.collada.org/2008/03/COLLADASchema");
+            out.attribute("version", "1.5.0");
+            out.start("asset");
+            out.textElement("created", TIME_STAMP);
+            out.textElement("modified", TIME_STAMP);
+            out.end();
+            if (this.materials > 0)
+            {
+                writeEffects();
+                writeMaterials();
+            }
+            if (this.animationChannels > 0) writeAnimations();
+            if (this.geometries > 0) writeGeometries();
+            writeVisualScene();
+            out.start("scene");
+            out.start("instance_visual_scene");
+            out.attribute("url", "#scene");
+            out.end();
+            out.end();
+            out.end();
+            out.close();
+        }
+        finally
+        {
+            this.out = null;
+            this.random = null;
+        }
+    }
+
+
+    /**
+     * Writes the effects library.
+     *
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeEffects() throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("library_effects");
+        for (int i = 0; i < this.materials; i++)
+        {
+            out.start("effect");
+            out.attribute("id", "effect-" + i);
+            out.start("profile_COMMON");
+            out.start("technique");
+            out.attribute("sid", "common");
+            out.start("phong");
+            writeColor("emission", 0, 0, 0);
+            writeColor("ambient", 0.1, 0.1, 0.1);
+            writeColor("diffuse", this.random.nextDouble(), this.random
+                .nextDouble(), this.random.nextDouble());
+            writeColor("specular", 1, 1, 1);
+            out.start("shininess");
+            out.start("float");
+            out.value(1 + this.random.nextInt(100));
+            out.end();
+            out.end();
+            out.end();
+            out.end();
+            out.end();
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes a color attribute of a shader.
+     *
+     * @param name
+     *            The element name.
+     * @param red
+     *            The red component.
+     * @param green
+     *            The green component.
+     * @param blue
+     *            The blue component.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeColor(final String name, final double red,
+        final double green, final double blue) throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start(name);
+        out.start("color");
+        out.value(red, DIGITS);
+        out.value(green, DIGITS);
+        out.value(blue, DIGITS);
+        out.value(1);
+        out.end();
+        out.end();
+    }
+
+
+    /**
+     * Writes the materials library.
+     *
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeMaterials() throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("library_materials");
+        for (int i = 0; i < this.materials; i++)
+        {
+            out.start("material");
+            out.attribute("id", "material-" + i);
+            out.start("instance_effect");
+            out.attribute("url", "#effect-" + i);
+            out.end();
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes the animations library.
+     *
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeAnimations() throws IOException
+    {
+        final XmlOutput out = this.out;
+        final long nodes = getNodeCount();
+        out.start("library_animations");
+        for (int i = 0; i < this.animationChannels; i++)
+        {
+            final String id = "animation-" + i;
+            out.start("animation");
+            out.attribute("id", id);
+            writeSourceStart(id + "-input", this.keyFrames);
+            for (int frame = 0; frame < this.keyFrames; frame++)
+                out.value(frame / 30.0, DIGITS);
+            writeSourceEnd(id + "-input", this.keyFrames, 1, "TIME");
+            writeSourceStart(id + "-output", this.keyFrames);
+            for (int frame = 0; frame < this.keyFrames; frame++)
+                out.value(this.random.nextDouble() * 360, DIGITS);
+            writeSourceEnd(id + "-output", this.keyFrames, 1, "ANGLE");
+            out.start("sampler");
+            out.attribute("id", id + "-sampler");
+            writeInput("INPUT", "#" + id + "-input");
+            writeInput("OUTPUT", "#" + id + "-output");
+            out.end();
+            out.start("channel");
+            out.attribute("source", "#" + id + "-sampler");
+            out.attribute("target", (nodes == 0 ? "none" : "node-"
+                + (i % nodes)) + "/rotate.ANGLE");
+            out.end();
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes the start of a source element and the start of its float
+     * array.
+     *
+     * @param id
+     *            The ID of the source.
+     * @param count
+     *            The number of floats.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeSourceStart(final String id, final int count)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("source");
+        out.attribute("id", id);
+        out.start("float_array");
+        out.attribute("id", id + "-array");
+        out.attribute("count", count);
+    }
+
+
+    /**
+     * Writes the end of a float array and the accessor of its source and
+     * ends the source.
+     *
+     * @param id
+     *            The ID of the source.
+     * @param count
+     *            The number of floats.
+     * @param stride
+     *            The number of floats per accessed element.
+     * @param paramNames
+     *            The names of the accessor params. One per stride.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeSourceEnd(final String id, final int count,
+        final int stride, final String... paramNames) throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.end();
+        out.start("technique_common");
+        out.start("accessor");
+        out.attribute("source", "#" + id + "-array");
+        out.attribute("count", count / stride);
+        out.attribute("stride", stride);
+        for (final String paramName : paramNames)
+        {
+            out.start("param");
+            out.attribute("name", paramName);
+            out.attribute("type", "float");
+            out.end();
+        }
+        out.end();
+        out.end();
+        out.end();
+    }
+
+
+    /**
+     * Writes an unshared input.
+     *
+     * @param semantic
+     *            The input semantic.
+     * @param source
+     *            The source URI.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeInput(final String semantic, final String source)
+        throws IOException
+    {
+        this.out.start("input");
+        this.out.attribute("semantic", semantic);
+        this.out.attribute("source", source);
+        this.out.end();
+    }
+
+
+    /**
+     * Writes the geometries library.
+     *
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeGeometries() throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("library_geometries");
+        for (int i = 0; i < this.geometries; i++)
+        {
+            final String id = "geometry-" + i;
+            out.start("geometry");
+            out.attribute("id", id);
+            out.start("mesh");
+            writeVectors(id + "-positions", 10);
+            writeVectors(id + "-normals", 1);
+            out.start("vertices");
+            out.attribute("id", id + "-vertices");
+            writeInput("POSITION", "#" + id + "-positions");
+            out.end();
+            final int weights = this.trianglesWeight + this.polyListWeight
+                + this.polygonsWeight;
+            final int faces = this.vertices;
+            final int triangles = this.polyListWeight
+                + this.polygonsWeight == 0 ? faces : (int) ((long) faces
+                * this.trianglesWeight / weights);
+            final int polyList = this.polyListWeight == 0 ? 0
+                : this.polygonsWeight == 0 ? faces - triangles
+                    : (int) ((long) faces * this.polyListWeight / weights);
+            final int polygons = this.polygonsWeight == 0 ? 0 : faces
+                - triangles - polyList;
+            int face = 0;
+            if (triangles > 0) writeTriangles(id, face, triangles);
+            face += triangles;
+            if (polyList > 0) writePolyList(id, face, polyList);
+            face += polyList;
+            if (polygons > 0) writePolygons(id, face, polygons);
+            out.end();
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes a source with one random 3D vector per vertex.
+     *
+     * @param id
+     *            The ID of the source.
+     * @param scale
+     *            The maximum absolute component value.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeVectors(final String id, final double scale)
+        throws IOException
+    {
+        final XmlOutput out = this.out;
+        final Random random = this.random;
+        final int count = this.vertices * 3;
+        writeSourceStart(id, count);
+        for (int i = 0; i < count; i++)
+            out.value((random.nextDouble() * 2 - 1) * scale, DIGITS);
+        writeSourceEnd(id, count, 3, "X", "Y", "Z");
+    }
+
+
+    /**
+     * Writes the start of a primitives element with its inputs.
+     *
+     * @param name
+     *            The element name.
+     * @param geometryId
+     *            The ID of the geometry.
+     * @param count
+     *            The number of faces.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writePrimitivesStart(final String name,
+        final String geometryId, final int count) throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start(name);
+        out.attribute("count", count);
+        if (this.materials > 0) out.attribute("material", "material");
+        out.start("input");
+        out.attribute("semantic", "VERTEX");
+        out.attribute("source", "#" + geometryId + "-vertices");
+        out.attribute("offset", 0);
+        out.end();
+        out.start("input");
+        out.attribute("semantic", "NORMAL");
+        out.attribute("source", "#" + geometryId + "-normals");
+        out.attribute("offset", 1);
+        out.end();
+    }
+
+
+    /**
+     * Returns the number of vertices of the specified polygonal face.
+     *
+     * @param face
+     *            The face index.
+     * @return The number of vertices (3 to 6).
+     */
+
+    private static int getFaceSize(final int face)
+    {
+        return 3 + face % 4;
+    }
+
+
+    /**
+     * Writes the vertex and normal indices of the specified face.
+     *
+     * @param face
+     *            The face index.
+     * @param size
+     *            The number of vertices of the face.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeFace(final int face, final int size) throws IOException
+    {
+        final XmlOutput out = this.out;
+        final int vertices = this.vertices;
+        for (int i = 0; i < size; i++)
+        {
+            final int vertex = (face + i) % vertices;
+            out.value(vertex);
+            out.value(vertex);
+        }
+    }
+
+
+    /**
+     * Writes a triangles element.
+     *
+     * @param geometryId
+     *            The ID of the geometry.
+     * @param first
+     *            The index of the first face.
+     * @param count
+     *            The number of faces.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeTriangles(final String geometryId, final int first,
+        final int count) throws IOException
+    {
+        final XmlOutput out = this.out;
+        writePrimitivesStart("triangles", geometryId, count);
+        out.start("p");
+        for (int face = first, end = first + count; face < end; face++)
+            writeFace(face, 3);
+        out.end();
+        out.end();
+    }
+
+
+    /**
+     * Writes a polylist element.
+     *
+     * @param geometryId
+     *            The ID of the geometry.
+     * @param first
+     *            The index of the first face.
+     * @param count
+     *            The number of faces.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writePolyList(final String geometryId, final int first,
+        final int count) throws IOException
+    {
+        final XmlOutput out = this.out;
+        writePrimitivesStart("polylist", geometryId, count);
+        out.start("vcount");
+        for (int face = first, end = first + count; face < end; face++)
+            out.value(getFaceSize(face));
+        out.end();
+        out.start("p");
+        for (int face = first, end = first + count; face < end; face++)
+            writeFace(face, getFaceSize(face));
+        out.end();
+        out.end();
+    }
+
+
+    /**
+     * Writes a polygons element.
+     *
+     * @param geometryId
+     *            The ID of the geometry.
+     * @param first
+     *            The index of the first face.
+     * @param count
+     *            The number of faces.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writePolygons(final String geometryId, final int first,
+        final int count) throws IOException
+    {
+        final XmlOutput out = this.out;
+        writePrimitivesStart("polygons", geometryId, count);
+        for (int face = first, end = first + count; face < end; face++)
+        {
+            out.start("p");
+            writeFace(face, getFaceSize(face));
+            out.end();
+        }
+        out.end();
+    }
+
+
+    /**
+     * Writes the visual scenes library. The node tree is written without
+     * recursion so deep trees can be generated.
+     *
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void writeVisualScene() throws IOException
+    {
+        final XmlOutput out = this.out;
+        out.start("library_visual_scenes");
+        out.start("visual_scene");
+        out.attribute("id", "scene");
+        if (this.nodeDepth > 0 && this.nodeFanOut > 0)
+        {
+            // remaining[level] is the number of nodes still to be written
+            // on this level below the current parent.
+            final int[] remaining = new int[this.nodeDepth];
+            remaining[0] = this.nodeFanOut;
+            int level = 0;
+            long node = 0;
+            while (level >= 0)
+            {
+                if (remaining[level] == 0)
+                {
+                    if (level > 0) out.end();
+                    level--;
+                    continue;
+                }
+                remaining[level]--;
+                startNode(node++);
+                if (level + 1 < this.nodeDepth)
+                {
+                    level++;
+                    remaining[level] = this.nodeFanOut;
+                }
+                else
+                    out.end();
+            }
+        }
+        out.end();
+        out.end();
+    }
+
+
+    /**
+     * Starts a node and writes its transforms and instances. Child nodes
+     * are written behind it.
+     *
+     * @param index
+     *            The node index.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void startNode(final long index) throws IOException
+    {
+        final XmlOutput out = this.out;
+        final Random random = this.random;
+        out.start("node");
+        out.attribute("id", "node-" + index);
+        out.attribute("sid", "node");
+        out.start("translate");
+        out.attribute("sid", "translate");
+        out.value((random.nextDouble() * 2 - 1) * 100, DIGITS);
+        out.value((random.nextDouble() * 2 - 1) * 100, DIGITS);
+        out.value((random.nextDouble() * 2 - 1) * 100, DIGITS);
+        out.end();
+        out.start("rotate");
+        out.attribute("sid", "rotate");
+        out.value(0);
+        out.value(1);
+        out.value(0);
+        out.value(random.nextDouble() * 360, DIGITS);
+        out.end();
+        if (this.geometries > 0)
+        {
+            out.start("instance_geometry");
+            out.attribute("url", "#geometry-" + (index % this.geometries));
+            if (this.materials > 0)
+            {
+                out.start("bind_material");
+                out.start("technique_common");
+                out.start("instance_material");
+                out.attribute("symbol", "material");
+                out.attribute("target", "#material-"
+                    + (index % this.materials));
+                out.end();
+                out.end();
+                out.end();
+            }
+            out.end();
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.writer;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+
+/**
+ * Formats numbers as ASCII text directly into a byte array.
+ *
+ * Double values are rounded to a given number of significant decimal digits
+ * and written with the shortest text representing the rounded value. Values
+ * with up to 15 significant digits and a decimal exponent close to the
+ * number of digits (Which covers nearly all values found in COLLADA files)
+ * are converted with a single multiplication without creating any objects.
+ * Values which end up too close to a rounding boundary after this
+ * multiplication and all other values are converted with {@link BigDecimal} or
+ * {@link Double#toString(double)}.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class NumberFormatter
+{
+    /** The maximum number of bytes written for a single number. */
+    static final int MAX_LENGTH = 32;
+
+    /** The maximum number of digits which are formatted without rounding. */
+    private static final int MAX_FAST_DIGITS = 15;
+
+    /** The smallest decimal exponent written without scientific notation. */
+    private static final int MIN_PLAIN_EXPONENT = -5;
+
+    /** The largest decimal exponent written without scientific notation. */
+    private static final int MAX_PLAIN_EXPONENT = 15;
+
+    /** The powers of ten which can be represented exactly as a double. */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+        1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+        1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    /** The powers of ten as longs. */
+    private static final long[] LONG_POWERS_OF_TEN = { 1L, 10L, 100L, 1000L,
+        10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+        10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+        100000000000000L, 1000000000000000L, 10000000000000000L };
+
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+
+    private NumberFormatter()
+    {
+        // Empty
+    }
+
+
+    /**
+     * Writes the specified int value.
+     *
+     * @param value
+     *            The value to write.
+     * @param buffer
+     *            The buffer to write to. Must have at least
+     *            {@link #MAX_LENGTH} bytes left at the offset.
+     * @param offset
+     *            The offset in the buffer.
+     * @return The offset behind the written value.
+     */
+
+    static int formatInt(final int value, final byte[] buffer,
+        final int offset)
+    {
+        if (value == Integer.MIN_VALUE)
+            return formatAscii("-2147483648", buffer, offset);
+        int pos = offset;
+        int rest = value;
+        if (rest < 0)
+        {
+            buffer[pos++] = '-';
+            rest = -rest;
+        }
+        return formatDigits(rest, digitCount(rest), buffer, pos);
+    }
+
+
+    /**
+     * Writes the specified double value rounded to the specified number of
+     * significant digits. NaN is written as "NaN" and infinite values as
+     * "INF" and "-INF" as defined by XML schema.
+     *
+     * @param value
+     *            The value to write.
+     * @param digits
+     *            The number of significant decimal digits. Values of 17 and
+     *            above write the shortest text which parses to exactly the
+     *            same double value.
+     * @param buffer
+     *            The buffer to write to. Must have at least
+     *            {@link #MAX_LENGTH} bytes left at the offset.
+     * @param offset
+     *            The offset in the buffer.
+     * @return The offset behind the written value.
+     */
+
+    static int formatDouble(final double value, final int digits,
+        final byte[] buffer, final int offset)
+    {
+        if (value != value) return formatAscii("NaN", buffer, offset);
+        if (value == Double.POSITIVE_INFINITY)
+            return formatAscii("INF", buffer, offset);
+        if (value == Double.NEGATIVE_INFINITY)
+            return formatAscii("-INF", buffer, offset);
+        if (value == 0)
+        {
+            buffer[offset] = '0';
+            return offset + 1;
+        }
+
+        int pos = offset;
+        double abs = value;
+        if (value < 0)
+        {
+            buffer[pos++] = '-';
+            abs = -value;
+        }
+        if (digits > MAX_FAST_DIGITS || digits < 1)
+            return formatSlow(abs, digits, buffer, pos);
+
+        // Determine the decimal exponent and the mantissa with the requested
+        // number of digits. The logarithm may be off by one near powers of
+        // ten so the exponent is corrected by checking the mantissa.
+        int exponent = (int) Math.floor(Math.log10(abs));
+        long mantissa = scale(abs, digits - 1 - exponent);
+        if (mantissa >= 0 && mantissa >= LONG_POWERS_OF_TEN[digits])
+            mantissa = scale(abs, digits - 1 - ++exponent);
+        else if (mantissa >= 0 && mantissa < LONG_POWERS_OF_TEN[digits - 1])
+            mantissa = scale(abs, digits - 1 - --exponent);
+        if (mantissa < 0) return formatSlow(abs, digits, buffer, pos);
+
+        // Rounding may have produced one more digit (9.9999996 -> 10.00000)
+        if (mantissa >= LONG_POWERS_OF_TEN[digits])
+        {
+            mantissa /= 10;
+            exponent++;
+        }
+        return formatDecimal(mantissa, digits, exponent, buffer, pos);
+    }
+
+
+    /**
+     * Scales the specified value with the specified power of ten and rounds
+     * it to a long. The scaled value may be off by half an ulp so it can't
+     * be rounded reliably when it is that close to the middle between two
+     * integers. This is rare for a few digits but happens regularly for
+     * values scaled to 12 digits and more.
+     *
+     * @param value
+     *            The value to scale.
+     * @param power
+     *            The power of ten.
+     * @return The scaled value or -1 if the power of ten is out of range or
+     *         the scaled value is too close to a rounding boundary.
+     */
+
+    private static long scale(final double value, final int power)
+    {
+        final double scaled;
+        if (power >= 0)
+        {
+            if (power >= POWERS_OF_TEN.length) return -1;
+            scaled = value * POWERS_OF_TEN[power];
+        }
+        else
+        {
+            if (-power >= POWERS_OF_TEN.length) return -1;
+            scaled = value / POWERS_OF_TEN[-power];
+        }
+        if (Math.abs(scaled - Math.floor(scaled) - 0.5) <= Math.ulp(scaled))
+            return -1;
+        return Math.round(scaled);
+    }
+
+
+    /**
+     * Writes a positive decimal number.
+     *
+     * @param mantissa
+     *            The digits of the number.
+     * @param digits
+     *            The number of digits in the mantissa including trailing
+     *            zeros.
+     * @param exponent
+     *            The decimal exponent of the first digit.
+     * @param buffer
+     *            The buffer to write to.
+     * @param offset
+     *            The offset in the buffer.
+     * @return The offset behind the written number.
+     */
+
+    private static int formatDecimal(final long mantissa, final int digits,
+        final int exponent, final byte[] buffer, final int offset)
+    {
+        long value = mantissa;
+        int count = digits;
+        while (count > 1 && value % 10 == 0)
+        {
+            value /= 10;
+            count--;
+        }
+
+        int pos = offset;
+        if (exponent >= MIN_PLAIN_EXPONENT && exponent <= MAX_PLAIN_EXPONENT)
+        {
+            final int intDigits = exponent + 1;
+            if (intDigits <= 0)
+            {
+                buffer[pos++] = '0';
+                buffer[pos++] = '.';
+                for (int i = intDigits; i < 0; i++)
+                    buffer[pos++] = '0';
+                return formatDigits(value, count, buffer, pos);
+            }
+            if (intDigits >= count)
+            {
+                pos = formatDigits(value, count, buffer, pos);
+                for (int i = count; i < intDigits; i++)
+                    buffer[pos++] = '0';
+                return pos;
+            }
+            final long divisor = LONG_POWERS_OF_TEN[count - intDigits];
+            pos = formatDigits(value / divisor, intDigits, buffer, pos);
+            buffer[pos++] = '.';
+            return formatDigits(value % divisor, count - intDigits, buffer,
+                pos);
+        }
+
+        final long divisor = LONG_POWERS_OF_TEN[count - 1];
+        buffer[pos++] = (byte) ('0' + value / divisor);
+        if (count > 1)
+        {
+            buffer[pos++] = '.';
+            pos = formatDigits(value % divisor, count - 1, buffer, pos);
+        }
+        buffer[pos++] = 'E';
+        return formatInt(exponent, buffer, pos);
+    }
+
+
+    /**
+     * Writes the specified number of digits of the specified value. Leading
+     * zeros are written when the value has less digits.
+     *
+     * @param value
+     *            The positive value.
+     * @param count
+     *            The number of digits to write.
+     * @param buffer
+     *            The buffer to write to.
+     * @param offset
+     *            The offset in the buffer.
+     * @return The offset behind the written digits.
+     */
+
+    private static int formatDigits(final long value, final int count,
+        final byte[] buffer, final int offset)
+    {
+        long rest = value;
+        for (int pos = offset + count - 1; pos >= offset; pos--)
+        {
+            buffer[pos] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+        return offset + count;
+    }
+
+
+    /**
+     * Returns the number of decimal digits of the specified positive value.
+     *
+     * @param value
+     *            The positive value.
+     * @return The number of digits.
+     */
+
+    private static int digitCount(final long value)
+    {
+        int count = 1;
+        while (count < LONG_POWERS_OF_TEN.length
+            && value >= LONG_POWERS_OF_TEN[count])
+            count++;
+        return count;
+    }
+
+
+    /**
+     * Writes a positive double value which can't be formatted with the fast
+     * path.
+     *
+     * @param value
+     *            The positive value.
+     * @param digits
+     *            The number of significant decimal digits.
+     * @param buffer
+     *            The buffer to write to.
+     * @param offset
+     *            The offset in the buffer.
+     * @return The offset behind the written value.
+     */
+
+    private static int formatSlow(final double value, final int digits,
+        final byte[] buffer, final int offset)
+    {
+        if (digits > MAX_FAST_DIGITS || digits < 1)
+            return formatAscii(Double.toString(value), buffer, offset);
+        final BigDecimal rounded = new BigDecimal(value).round(
+            new MathContext(digits));
+        return formatDecimal(rounded.unscaledValue().longValue(), rounded
+            .precision(), rounded.precision() - rounded.scale() - 1, buffer,
+            offset);
+    }
+
+
+    /**
+     * Writes the specified ASCII text.
+     *
+     * @param text
+     *            The text to write.
+     * @param buffer
+     *            The buffer to write to.
+     * @param offset
+     *            The offset in the buffer.
+     * @return The offset behind the written text.
+     */
+
+    private static int formatAscii(final String text, final byte[] buffer,
+        final int offset)
+    {
+        final int length = text.length();
+        for (int i = 0; i < length; i++)
+            buffer[offset + i] = (byte) text.charAt(i);
+        return offset + length;
+    }
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.writer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+
+/**
+ * Formats large number arrays in parallel. The array is split into chunks
+ * of a fixed number of values which are formatted into separate byte arrays
+ * on an executor. The formatted chunks are written to the XML output in
+ * array order while later chunks are still formatted. The number of chunks
+ * submitted but not yet written is limited so memory usage doesn't depend
+ * on the array size.
+ *
+ * The writing thread blocks until the next chunk in array order is
+ * formatted. The executor must therefore not be a bounded thread pool which
+ * also runs the writer itself. If all its threads are busy writing then the
+ * chunks are never formatted and the writers wait forever.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class ParallelFormatter
+{
+    /** The executor formatting the chunks. */
+    private final Executor executor;
+
+    /** The number of values per chunk. */
+    private final int chunkSize;
+
+    /** The maximum number of chunks submitted but not yet written. */
+    private final int maxPending;
+
+
+    /**
+     * Constructor.
+     *
+     * @param executor
+     *            The executor formatting the chunks. Must not be null.
+     * @param chunkSize
+     *            The number of values per chunk. Must be larger than 0.
+     * @param maxPending
+     *            The maximum number of chunks submitted but not yet
+     *            written. Must be larger than 0.
+     */
+
+    ParallelFormatter(final Executor executor, final int chunkSize,
+        final int maxPending)
+    {
+        if (executor == null)
+            throw new IllegalArgumentException("executor must not be null");
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize must be > 0");
+        if (maxPending <= 0)
+            throw new IllegalArgumentException("maxPending must be > 0");
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.maxPending = maxPending;
+    }
+
+
+    /**
+     * Checks if the specified buffer is large enough to be formatted in
+     * parallel.
+     *
+     * @param values
+     *            The values to check.
+     * @return True if buffer has more than one chunk, false if not.
+     */
+
+    boolean isParallel(final Buffer values)
+    {
+        return values.remaining() > this.chunkSize;
+    }
+
+
+    /**
+     * Writes the values of the specified buffer as text content.
+     *
+     * @param out
+     *            The XML output.
+     * @param values
+     *            The values to write. Not modified.
+     * @param digits
+     *            The number of significant decimal digits.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void values(final XmlOutput out, final DoubleBuffer values,
+        final int digits) throws IOException
+    {
+        write(out, values, new DoubleRangeFormatter(values, digits));
+    }
+
+
+    /**
+     * Writes the values of the specified buffer as text content.
+     *
+     * @param out
+     *            The XML output.
+     * @param values
+     *            The values to write. Not modified.
+     * @param digits
+     *            The number of significant decimal digits.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void values(final XmlOutput out, final FloatBuffer values,
+        final int digits) throws IOException
+    {
+        write(out, values, new FloatRangeFormatter(values, digits));
+    }
+
+
+    /**
+     * Writes the values of the specified buffer as text content.
+     *
+     * @param out
+     *            The XML output.
+     * @param values
+     *            The values to write. Not modified.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void values(final XmlOutput out, final IntBuffer values)
+        throws IOException
+    {
+        write(out, values, new IntRangeFormatter(values));
+    }
+
+
+    /**
+     * Splits the specified buffer into chunks, formats them on the executor
+     * and writes them in order.
+     *
+     * @param out
+     *            The XML output.
+     * @param values
+     *            The values to write. Not modified.
+     * @param formatter
+     *            The formatter of the values.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void write(final XmlOutput out, final Buffer values,
+        final RangeFormatter formatter) throws IOException
+    {
+        final Queue<FutureTask<Chunk>> pending =
+            new ArrayDeque<FutureTask<Chunk>>(this.maxPending);
+        final int limit = values.limit();
+        int start = values.position();
+        try
+        {
+            while (start < limit || !pending.isEmpty())
+            {
+                while (start < limit && pending.size() < this.maxPending)
+                {
+                    final int end = Math.min(limit, start + this.chunkSize);
+                    final FutureTask<Chunk> task = new FutureTask<Chunk>(
+                        new ChunkTask(formatter, start, end));
+                    pending.add(task);
+                    this.executor.execute(task);
+                    start = end;
+                }
+                final Chunk chunk = getChunk(pending.peek());
+                pending.remove();
+                out.formatted(chunk.bytes, chunk.length);
+            }
+        }
+        finally
+        {
+            for (final FutureTask<Chunk> task : pending)
+                task.cancel(false);
+        }
+    }
+
+
+    /**
+     * Waits for the specified task to finish and returns the formatted
+     * chunk.
+     *
+     * @param task
+     *            The task.
+     * @return The formatted chunk.
+     * @throws IOException
+     *             When waiting was interrupted.
+     */
+
+    private static Chunk getChunk(final FutureTask<Chunk> task)
+        throws IOException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                "Interrupted while formatting values");
+        }
+        catch (final ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(e.toString(), e);
+        }
+    }
+
+
+    /**
+     * Formats a range of values of a buffer.
+     */
+
+    private abstract static class RangeFormatter
+    {
+        /**
+         * Formats the specified range of values separated by spaces.
+         *
+         * @param start
+         *            The index of the first value.
+         * @param end
+         *            The index behind the last value.
+         * @param bytes
+         *            The array to write to. Must have room for
+         *            {@link NumberFormatter#MAX_LENGTH} plus one bytes per
+         *            value.
+         * @return The number of written bytes.
+         */
+
+        abstract int formatRange(int start, int end, byte[] bytes);
+    }
+
+
+    /**
+     * Formats a range of double values.
+     */
+
+    private static final class DoubleRangeFormatter extends RangeFormatter
+    {
+        /** The values. */
+        private final DoubleBuffer values;
+
+        /** The number of significant decimal digits. */
+        private final int digits;
+
+
+        /**
+         * Constructor.
+         *
+         * @param values
+         *            The values.
+         * @param digits
+         *            The number of significant decimal digits.
+         */
+
+        DoubleRangeFormatter(final DoubleBuffer values, final int digits)
+        {
+            this.values = values;
+            this.digits = digits;
+        }
+
+
+        /**
+         * @see RangeFormatter#formatRange(int, int, byte[])
+         */
+
+        @Override
+        int formatRange(final int start, final int end, final byte[] bytes)
+        {
+            int pos = NumberFormatter.formatDouble(this.values.get(start),
+                this.digits, bytes, 0);
+            for (int i = start + 1; i < end; i++)
+            {
+                bytes[pos++] = ' ';
+                pos = NumberFormatter.formatDouble(this.values.get(i),
+                    this.digits, bytes, pos);
+            }
+            return pos;
+        }
+    }
+
+
+    /**
+     * Formats a range of float values.
+     */
+
+    private static final class FloatRangeFormatter extends RangeFormatter
+    {
+        /** The values. */
+        private final FloatBuffer values;
+
+        /** The number of significant decimal digits. */
+        private final int digits;
+
+
+        /**
+         * Constructor.
+         *
+         * @param values
+         *            The values.
+         * @param digits
+         *            The number of significant decimal digits.
+         */
+
+        FloatRangeFormatter(final FloatBuffer values, final int digits)
+        {
+            this.values = values;
+            this.digits = digits;
+        }
+
+
+        /**
+         * @see RangeFormatter#formatRange(int, int, byte[])
+         */
+
+        @Override
+        int formatRange(final int start, final int end, final byte[] bytes)
+        {
+            int pos = NumberFormatter.formatDouble(this.values.get(start),
+                this.digits, bytes, 0);
+            for (int i = start + 1; i < end; i++)
+            {
+                bytes[pos++] = ' ';
+                pos = NumberFormatter.formatDouble(this.values.get(i),
+                    this.digits, bytes, pos);
+            }
+            return pos;
+        }
+    }
+
+
+    /**
+     * Formats a range of int values.
+     */
+
+    private static final class IntRangeFormatter extends RangeFormatter
+    {
+        /** The values. */
+        private final IntBuffer values;
+
+
+        /**
+         * Constructor.
+         *
+         * @param values
+         *            The values.
+         */
+
+        IntRangeFormatter(final IntBuffer values)
+        {
+            this.values = values;
+        }
+
+
+        /**
+         * @see RangeFormatter#formatRange(int, int, byte[])
+         */
+
+        @Override
+        int formatRange(final int start, final int end, final byte[] bytes)
+        {
+            int pos = NumberFormatter.formatInt(this.values.get(start), bytes,
+                0);
+            for (int i = start + 1; i < end; i++)
+            {
+                bytes[pos++] = ' ';
+                pos = NumberFormatter.formatInt(this.values.get(i), bytes,
+                    pos);
+            }
+            return pos;
+        }
+    }
+
+
+    /**
+     * The task formatting a range of values into a chunk.
+     */
+
+    private static final class ChunkTask implements Callable<Chunk>
+    {
+        /** The formatter of the values. */
+        private final RangeFormatter formatter;
+
+        /** The index of the first value. */
+        private final int start;
+
+        /** The index behind the last value. */
+        private final int end;
+
+
+        /**
+         * Constructor.
+         *
+         * @param formatter
+         *            The formatter of the values.
+         * @param start
+         *            The index of the first value.
+         * @param end
+         *            The index behind the last value.
+         */
+
+        ChunkTask(final RangeFormatter formatter, final int start,
+            final int end)
+        {
+            this.formatter = formatter;
+            this.start = start;
+            this.end = end;
+        }
+
+
+        /**
+         * @see java.util.concurrent.Callable#call()
+         */
+
+        @Override
+        public Chunk call()
+        {
+            final byte[] bytes = new byte[(this.end - this.start)
+                * (NumberFormatter.MAX_LENGTH + 1)];
+            return new Chunk(bytes, this.formatter.formatRange(this.start,
+                this.end, bytes));
+        }
+    }
+
+
+    /**
+     * A formatted chunk.
+     */
+
+    private static final class Chunk
+    {
+        /** The formatted values. */
+        final byte[] bytes;
+
+        /** The number of used bytes. */
+        final int length;
+
+
+        /**
+         * Constructor.
+         *
+         * @param bytes
+         *            The formatted values.
+         * @param length
+         *            The number of used bytes.
+         */
+
+        Chunk(final byte[] bytes, final int length)
+        {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,658 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+
+/**
+ * Streaming UTF-8 XML output. Elements are written directly into a reusable
+ * byte buffer which is flushed to the output stream when it is full. Child
+ * elements are indented, text content is written on the line of its element.
+ * Numbers are formatted with the {@link NumberFormatter} so no strings are
+ * created for them.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+final class XmlOutput
+{
+    /** The number of spaces used to indent one level. */
+    private static final int INDENT = 2;
+
+    /** The output buffer. */
+    private final byte[] buffer;
+
+    /** The current position in the output buffer. */
+    private int position;
+
+    /** The stream to write to. Null if not writing. */
+    private OutputStream stream;
+
+    /** The names of the open elements. */
+    private String[] names = new String[32];
+
+    /** The number of open elements. */
+    private int depth;
+
+    /** If the start tag of the current element is not yet closed. */
+    private boolean startTagOpen;
+
+    /** If the current element has child elements. */
+    private boolean hasChildren;
+
+    /** If the current element has text content. */
+    private boolean hasText;
+
+
+    /**
+     * Constructor.
+     *
+     * @param bufferSize
+     *            The size of the output buffer. Must be larger than
+     *            {@link NumberFormatter#MAX_LENGTH}.
+     */
+
+    XmlOutput(final int bufferSize)
+    {
+        if (bufferSize <= NumberFormatter.MAX_LENGTH)
+            throw new IllegalArgumentException("bufferSize too small: "
+                + bufferSize);
+        this.buffer = new byte[bufferSize];
+    }
+
+
+    /**
+     * Starts writing to the specified stream. The XML declaration is written
+     * immediately.
+     *
+     * @param stream
+     *            The stream to write to.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void open(final OutputStream stream) throws IOException
+    {
+        this.stream = stream;
+        this.position = 0;
+        this.depth = 0;
+        this.startTagOpen = false;
+        this.hasChildren = false;
+        this.hasText = false;
+        ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    }
+
+
+    /**
+     * Finishes writing. The buffered output is written to the stream and
+     * the stream is flushed but not closed.
+     *
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void close() throws IOException
+    {
+        if (this.depth > 0)
+            throw new IllegalStateException("Unclosed element: "
+                + this.names[this.depth - 1]);
+        try
+        {
+            ensure(1);
+            this.buffer[this.position++] = '\n';
+            flush();
+            this.stream.flush();
+        }
+        finally
+        {
+            this.stream = null;
+            this.position = 0;
+        }
+    }
+
+
+    /**
+     * Writes the buffered output to the stream.
+     *
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void flush() throws IOException
+    {
+        if (this.position > 0)
+        {
+            this.stream.write(this.buffer, 0, this.position);
+            this.position = 0;
+        }
+    }
+
+
+    /**
+     * Makes sure the specified number of bytes fit into the buffer.
+     *
+     * @param size
+     *            The number of bytes.
+     * @throws IOException
+     *             When buffer could not be flushed.
+     */
+
+    private void ensure(final int size) throws IOException
+    {
+        if (this.position + size > this.buffer.length) flush();
+    }
+
+
+    /**
+     * Writes a line break and the indentation of the current depth.
+     *
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void newLine() throws IOException
+    {
+        ensure(1);
+        this.buffer[this.position++] = '\n';
+        for (int i = this.depth * INDENT; i > 0; i--)
+        {
+            ensure(1);
+            this.buffer[this.position++] = ' ';
+        }
+    }
+
+
+    /**
+     * Closes the start tag of the current element if still open.
+     *
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void closeStartTag() throws IOException
+    {
+        if (this.startTagOpen)
+        {
+            ensure(1);
+            this.buffer[this.position++] = '>';
+            this.startTagOpen = false;
+        }
+    }
+
+
+    /**
+     * Starts a new element. Attributes can be written until content is
+     * written.
+     *
+     * @param name
+     *            The element name.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void start(final String name) throws IOException
+    {
+        if (this.hasText)
+            throw new IllegalStateException("Mixed content not supported");
+        closeStartTag();
+        newLine();
+        ascii("<");
+        ascii(name);
+        if (this.depth == this.names.length)
+        {
+            final String[] names = new String[this.depth * 2];
+            System.arraycopy(this.names, 0, names, 0, this.depth);
+            this.names = names;
+        }
+        this.names[this.depth++] = name;
+        this.startTagOpen = true;
+        this.hasChildren = false;
+    }
+
+
+    /**
+     * Ends the current element.
+     *
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void end() throws IOException
+    {
+        final String name = this.names[--this.depth];
+        this.names[this.depth] = null;
+        if (this.startTagOpen)
+        {
+            ascii("/>");
+            this.startTagOpen = false;
+        }
+        else
+        {
+            if (this.hasChildren) newLine();
+            ascii("</");
+            ascii(name);
+            ascii(">");
+        }
+        this.hasText = false;
+        this.hasChildren = true;
+    }
+
+
+    /**
+     * Writes a string attribute. Nothing is written if value is null.
+     *
+     * @param name
+     *            The attribute name.
+     * @param value
+     *            The attribute value. May be null.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void attribute(final String name, final Object value) throws IOException
+    {
+        if (value == null) return;
+        attributeStart(name);
+        escaped(value.toString(), true);
+        ascii("\"");
+    }
+
+
+    /**
+     * Writes an int attribute.
+     *
+     * @param name
+     *            The attribute name.
+     * @param value
+     *            The attribute value.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void attribute(final String name, final int value) throws IOException
+    {
+        attributeStart(name);
+        ensure(NumberFormatter.MAX_LENGTH + 1);
+        this.position = NumberFormatter.formatInt(value, this.buffer,
+            this.position);
+        this.buffer[this.position++] = '"';
+    }
+
+
+    /**
+     * Writes the name of an attribute and the opening quote.
+     *
+     * @param name
+     *            The attribute name.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void attributeStart(final String name) throws IOException
+    {
+        if (!this.startTagOpen)
+            throw new IllegalStateException("No open start tag");
+        ascii(" ");
+        ascii(name);
+        ascii("=\"");
+    }
+
+
+    /**
+     * Writes an element which contains only the specified text. Nothing is
+     * written if text is null.
+     *
+     * @param name
+     *            The element name.
+     * @param text
+     *            The text. May be null.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void textElement(final String name, final Object text)
+        throws IOException
+    {
+        if (text == null) return;
+        start(name);
+        text(text.toString());
+        end();
+    }
+
+
+    /**
+     * Writes text content.
+     *
+     * @param text
+     *            The text to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void text(final String text) throws IOException
+    {
+        startText();
+        escaped(text, false);
+    }
+
+
+    /**
+     * Writes a double value as text content. Values are separated with
+     * spaces.
+     *
+     * @param value
+     *            The value to write.
+     * @param digits
+     *            The number of significant decimal digits.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void value(final double value, final int digits) throws IOException
+    {
+        separate();
+        ensure(NumberFormatter.MAX_LENGTH);
+        this.position = NumberFormatter.formatDouble(value, digits,
+            this.buffer, this.position);
+    }
+
+
+    /**
+     * Writes an int value as text content. Values are separated with spaces.
+     *
+     * @param value
+     *            The value to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void value(final int value) throws IOException
+    {
+        separate();
+        ensure(NumberFormatter.MAX_LENGTH);
+        this.position = NumberFormatter.formatInt(value, this.buffer,
+            this.position);
+    }
+
+
+    /**
+     * Writes the values of the specified buffer as text content. Values are
+     * separated with spaces.
+     *
+     * @param values
+     *            The values to write. Not modified.
+     * @param digits
+     *            The number of significant decimal digits.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void values(final DoubleBuffer values, final int digits)
+        throws IOException
+    {
+        final byte[] buffer = this.buffer;
+        final int limit = buffer.length - NumberFormatter.MAX_LENGTH - 1;
+        for (int i = values.position(), max = values.limit(); i < max; i++)
+        {
+            separate();
+            if (this.position > limit) flush();
+            this.position = NumberFormatter.formatDouble(values.get(i),
+                digits, buffer, this.position);
+        }
+    }
+
+
+    /**
+     * Writes the values of the specified buffer as text content. Values are
+     * separated with spaces.
+     *
+     * @param values
+     *            The values to write. Not modified.
+     * @param digits
+     *            The number of significant decimal digits.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void values(final FloatBuffer values, final int digits)
+        throws IOException
+    {
+        final byte[] buffer = this.buffer;
+        final int limit = buffer.length - NumberFormatter.MAX_LENGTH - 1;
+        for (int i = values.position(), max = values.limit(); i < max; i++)
+        {
+            separate();
+            if (this.position > limit) flush();
+            this.position = NumberFormatter.formatDouble(values.get(i),
+                digits, buffer, this.position);
+        }
+    }
+
+
+    /**
+     * Writes the values of the specified buffer as text content. Values are
+     * separated with spaces.
+     *
+     * @param values
+     *            The values to write. Not modified.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void values(final IntBuffer values) throws IOException
+    {
+        final byte[] buffer = this.buffer;
+        final int limit = buffer.length - NumberFormatter.MAX_LENGTH - 1;
+        for (int i = values.position(), max = values.limit(); i < max; i++)
+        {
+            separate();
+            if (this.position > limit) flush();
+            this.position = NumberFormatter.formatInt(values.get(i), buffer,
+                this.position);
+        }
+    }
+
+
+    /**
+     * Writes already formatted values as text content. The values are
+     * separated with a space from previously written values.
+     *
+     * @param bytes
+     *            The formatted ASCII values.
+     * @param length
+     *            The number of bytes to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void formatted(final byte[] bytes, final int length) throws IOException
+    {
+        separate();
+        if (this.position + length > this.buffer.length)
+        {
+            flush();
+            if (length > this.buffer.length)
+            {
+                this.stream.write(bytes, 0, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, this.buffer, this.position, length);
+        this.position += length;
+    }
+
+
+    /**
+     * Writes the specified strings as text content. Values are separated
+     * with spaces.
+     *
+     * @param values
+     *            The values to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    void values(final String[] values) throws IOException
+    {
+        for (final String value : values)
+        {
+            separate();
+            if (value != null) escaped(value, false);
+        }
+    }
+
+
+    /**
+     * Prepares writing text content.
+     *
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void startText() throws IOException
+    {
+        if (this.hasChildren && !this.startTagOpen)
+            throw new IllegalStateException("Mixed content not supported");
+        closeStartTag();
+        this.hasText = true;
+    }
+
+
+    /**
+     * Prepares writing a value of a space separated list.
+     *
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void separate() throws IOException
+    {
+        if (this.hasText)
+        {
+            ensure(1);
+            this.buffer[this.position++] = ' ';
+        }
+        else
+            startText();
+    }
+
+
+    /**
+     * Writes the specified ASCII text without escaping.
+     *
+     * @param text
+     *            The text to write.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void ascii(final String text) throws IOException
+    {
+        final int length = text.length();
+        if (length > this.buffer.length)
+        {
+            escaped(text, false);
+            return;
+        }
+        ensure(length);
+        final byte[] buffer = this.buffer;
+        int pos = this.position;
+        for (int i = 0; i < length; i++)
+            buffer[pos++] = (byte) text.charAt(i);
+        this.position = pos;
+    }
+
+
+    /**
+     * Writes the specified text UTF-8 encoded with the XML special
+     * characters escaped.
+     *
+     * @param text
+     *            The text to write.
+     * @param attribute
+     *            True if text is an attribute value, false if not.
+     * @throws IOException
+     *             When output could not be written.
+     */
+
+    private void escaped(final String text, final boolean attribute)
+        throws IOException
+    {
+        final byte[] buffer = this.buffer;
+        final int limit = buffer.length - 6;
+        final int length = text.length();
+        for (int i = 0; i < length; i++)
+        {
+            if (this.position > limit) flush();
+            final char c = text.charAt(i);
+            if (c < 0x80)
+            {
+                switch (c)
+                {
+                    case '<':
+                        ascii("&lt;");
+                        break;
+
+                    case '>':
+                        ascii("&gt;");
+                        break;
+
+                    case '&':
+                        ascii("&amp;");
+                        break;
+
+                    case '"':
+                        if (attribute)
+                            ascii("&quot;");
+                        else
+                            buffer[this.position++] = (byte) c;
+                        break;
+
+                    case '\n':
+                    case '\r':
+                    case '\t':
+                        if (attribute)
+                        {
+                            ascii("&#");
+                            ascii(Integer.toString(c));
+                            ascii(";");
+                        }
+                        else
+                            buffer[this.position++] = (byte) c;
+                        break;
+
+                    default:
+                        buffer[this.position++] = (byte) c;
+                }
+            }
+            else if (c < 0x800)
+            {
+                buffer[this.position++] = (byte) (0xc0 | (c >> 6));
+                buffer[this.position++] = (byte) (0x80 | (c & 0x3f));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length
+                && Character.isLowSurrogate(text.charAt(i + 1)))
+            {
+                final int code = Character.toCodePoint(c, text.charAt(++i));
+                buffer[this.position++] = (byte) (0xf0 | (code >> 18));
+                buffer[this.position++] = (byte) (0x80 | ((code >> 12) & 0x3f));
+                buffer[this.position++] = (byte) (0x80 | ((code >> 6) & 0x3f));
+                buffer[this.position++] = (byte) (0x80 | (code & 0x3f));
+            }
+            else
+            {
+                buffer[this.position++] = (byte) (0xe0 | (c >> 12));
+                buffer[this.position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[this.position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+}
@@ -12,44 +12,165 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import org.junit.BeforeClass;
+import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 
 import de.ailis.gramath.MutableMatrix4d;
 import de.ailis.gramath.MutableVector3d;
+import de.ailis.jollada.arena.AssetArena;
+import de.ailis.jollada.cache.BinaryDocument;
 import de.ailis.jollada.model.*;
+import de.ailis.jollada.reader.ArrayLoading;
 import de.ailis.jollada.reader.ColladaReader;
+import de.ailis.jollada.reader.ParserBackend;
+import de.ailis.jollada.writer.ColladaWriter;
 
 
 /**
- * Tests reading COLLADA files.
+ * Tests reading COLLADA files. The test document is read once for each
+ * configuration returned by {@link #getConfigurations()} and all tests are
+ * run against each of these documents.
  *
  * @author Klaus Reimer (k@ailis.de)
  */
 
+@RunWith(Parameterized.class)
 public class FullTest
 {
+    /** The ways of getting the test document from a configured reader. */
+    static enum Source
+    {
+        /** Reads the document from a stream. */
+        STREAM,
+
+        /** Reads the document from a file. */
+        FILE,
+
+        /** Reads the document again after writing it with ColladaWriter. */
+        WRITER,
+
+        /** Reads the document again after writing it as BinaryDocument. */
+        BINARY,
+
+        /** Reads the document again after writing it as AssetArena. */
+        ARENA
+    }
+
+    /** Placeholder for the executor of parallel readers. */
+    private static final Object EXECUTOR = new Object();
+
+    /** The documents read so far, mapped by configuration name. */
+    private static final Map<String, Document> documents =
+        new HashMap<String, Document>();
+
+    /** The name of the configuration. */
+    private final String name;
+
+    /** The source of the test document. */
+    private final Source source;
+
+    /** The options of the reader. */
+    private final Object[] options;
+
     /** The test document. */
-    private static Document doc;
+    private Document doc;
+
+
+    /**
+     * Constructor.
+     *
+     * @param name
+     *            The name of the configuration.
+     * @param source
+     *            The source of the test document.
+     * @param options
+     *            The options of the reader.
+     */
+
+    public FullTest(final String name, final Source source,
+        final Object[] options)
+    {
+        this.name = name;
+        this.source = source;
+        this.options = options;
+    }
+
+
+    /**
+     * Returns the configurations to run the tests with. Each configuration
+     * consists of a name, the source of the test document and the options
+     * of the reader.
+     *
+     * @return The configurations.
+     */
+
+    @Parameters
+    public static Collection<Object[]> getConfigurations()
+    {
+        return Arrays.asList(new Object[][] {
+            { "default", Source.STREAM, options() },
+            { "stax", Source.STREAM, options(ParserBackend.STAX) },
+            { "mapped", Source.FILE, options(ParserBackend.MAPPED) },
+            { "lazy", Source.FILE, options(ParserBackend.MAPPED,
+                ArrayLoading.RELEASABLE) },
+            { "parallel", Source.FILE, options(ParserBackend.MAPPED,
+                EXECUTOR) },
+            { "single", Source.FILE, options(Precision.SINGLE) },
+            { "direct", Source.FILE, options(Storage.DIRECT) },
+            { "writer", Source.WRITER, options() },
+            { "binary", Source.BINARY, options() },
+            { "arena", Source.ARENA, options() }
+        });
+    }
+
+
+    /**
+     * Returns the specified reader options as an array.
+     *
+     * @param options
+     *            The reader options.
+     * @return The reader options.
+     */
+
+    private static Object[] options(final Object... options)
+    {
+        return options;
+    }
 
 
     /**
-     * Reads a COLLADA document.
+     * Reads a COLLADA document with the specified reader.
      *
      * @param filename
      *            The filename.
+     * @param reader
+     *            The COLLADA reader to use.
      * @return The COLLADA document
      * @throws IOException
      *             When file could not be read
      */
 
-    private static Document readDocument(final String filename)
-        throws IOException
+    private static Document readDocument(final String filename,
+        final ColladaReader reader) throws IOException
     {
         final InputStream stream = FullTest.class.getClassLoader()
                 .getResourceAsStream(filename);
@@ -57,7 +178,7 @@ public class FullTest
             throw new IOException("File not found: " + filename);
         try
         {
-            return new ColladaReader().read(stream);
+            return reader.read(stream);
         }
         finally
         {
@@ -66,17 +187,132 @@ public class FullTest
     }
 
 
+    /**
+     * Returns the file of the specified test resource.
+     *
+     * @param filename
+     *            The filename.
+     * @return The file.
+     * @throws IOException
+     *             When the resource is not a file.
+     */
+
+    public static File getTestFile(final String filename) throws IOException
+    {
+        final URL url = FullTest.class.getClassLoader().getResource(filename);
+        if (url == null) throw new IOException("File not found: " + filename);
+        try
+        {
+            return new File(url.toURI());
+        }
+        catch (final URISyntaxException e)
+        {
+            throw new IOException(e.toString(), e);
+        }
+    }
+
+
+    /**
+     * Reads the test document of the current configuration. The document
+     * is only read once per configuration and then shared by all tests.
+     *
+     * @throws IOException
+     *             When file could not be read
+     */
+
+    @Before
+    public void readTestDocument() throws IOException
+    {
+        synchronized (documents)
+        {
+            this.doc = documents.get(this.name);
+            if (this.doc == null)
+            {
+                this.doc = readTestDocument(this.source, this.options);
+                documents.put(this.name, this.doc);
+            }
+        }
+    }
+
+
     /**
      * Reads the test document.
      *
+     * @param source
+     *            The source of the test document.
+     * @param options
+     *            The options of the reader.
+     * @return The test document.
      * @throws IOException
      *             When file could not be read
      */
 
-    @BeforeClass
-    public static void readTestDocument() throws IOException
+    private static Document readTestDocument(final Source source,
+        final Object[] options) throws IOException
     {
-        doc = readDocument("full.dae");
+        final ColladaReader reader = new ColladaReader();
+        ExecutorService executor = null;
+        for (final Object option : options)
+        {
+            if (option instanceof ParserBackend)
+                reader.setBackend((ParserBackend) option);
+            else if (option instanceof ArrayLoading)
+                reader.setArrayLoading((ArrayLoading) option);
+            else if (option instanceof Precision)
+                reader.setPrecision((Precision) option);
+            else if (option instanceof Storage)
+                reader.setStorage((Storage) option);
+            else if (option == EXECUTOR)
+            {
+                executor = Executors.newFixedThreadPool(4);
+                reader.setExecutor(executor);
+            }
+            else
+                throw new IllegalArgumentException("Unknown option: "
+                    + option);
+        }
+        try
+        {
+            switch (source)
+            {
+                case STREAM:
+                    return readDocument("full.dae", reader);
+
+                case FILE:
+                    return reader.read(getTestFile("full.dae"));
+
+                case WRITER:
+                    final ByteArrayOutputStream xml =
+                        new ByteArrayOutputStream();
+                    new ColladaWriter().write(readDocument("full.dae",
+                        reader), xml);
+                    return new ColladaReader().read(new ByteArrayInputStream(
+                        xml.toByteArray()));
+
+                case BINARY:
+                    final ByteArrayOutputStream bytes =
+                        new ByteArrayOutputStream();
+                    BinaryDocument.write(readDocument("full.dae", reader),
+                        bytes);
+                    return BinaryDocument.read(new ByteArrayInputStream(bytes
+                        .toByteArray()));
+
+                case ARENA:
+                    final File arena = File.createTempFile("jollada",
+                        ".arena");
+                    arena.deleteOnExit();
+                    AssetArena.write(readDocument("full.dae", reader), arena);
+                    return AssetArena.read(arena);
+
+                default:
+                    throw new IllegalArgumentException("Unknown source: "
+                        + source);
+            }
+        }
+        finally
+        {
+            if (executor != null) executor.shutdown();
+        }
     }
 
 
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.arena;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.ailis.jollada.model.DataFlowSource;
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.model.FloatArray;
+import de.ailis.jollada.model.Geometry;
+import de.ailis.jollada.model.GeometryLibrary;
+import de.ailis.jollada.model.IntList;
+import de.ailis.jollada.model.Mesh;
+import de.ailis.jollada.model.Precision;
+import de.ailis.jollada.model.Triangles;
+import de.ailis.jollada.reader.ColladaReader;
+
+
+/**
+ * Tests the AssetArena class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class AssetArenaTest
+{
+    /** The arena file. */
+    private File file;
+
+
+    /**
+     * Creates the arena file.
+     *
+     * @throws IOException
+     *             When file could not be created.
+     */
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.file = File.createTempFile("jollada", ".arena");
+    }
+
+
+    /**
+     * Deletes the arena file.
+     */
+
+    @After
+    public void tearDown()
+    {
+        this.file.delete();
+    }
+
+
+    /**
+     * Reads the full test document.
+     *
+     * @param reader
+     *            The reader to use.
+     * @return The document.
+     * @throws IOException
+     *             When document could not be read.
+     */
+
+    private static Document readFull(final ColladaReader reader)
+        throws IOException
+    {
+        return reader.read(AssetArenaTest.class.getClassLoader()
+            .getResourceAsStream("full.dae"));
+    }
+
+
+    /**
+     * Returns the mesh of the first geometry of the specified document.
+     *
+     * @param document
+     *            The document.
+     * @return The mesh.
+     */
+
+    private static Mesh getMesh(final Document document)
+    {
+        final GeometryLibrary library = document.getGeometryLibraries()
+            .get(0);
+        final Geometry geometry = library.getGeometries().get(0);
+        return (Mesh) geometry.getGeometric();
+    }
+
+
+    /**
+     * Returns the float array of the first source of the specified mesh.
+     *
+     * @param mesh
+     *            The mesh.
+     * @return The float array.
+     */
+
+    private static FloatArray getFloatArray(final Mesh mesh)
+    {
+        final DataFlowSource source = mesh.getSources().get(0);
+        return (FloatArray) source.getArray();
+    }
+
+
+    /**
+     * Tests that arrays and lists read from an arena are backed by the
+     * read-only mapping and are copied when modified.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testCopyOnWrite() throws IOException
+    {
+        final Document original = readFull(new ColladaReader());
+        AssetArena.write(original, this.file);
+        final Document document = AssetArena.read(this.file);
+
+        final FloatArray array = getFloatArray(getMesh(document));
+        assertTrue(array.getDoubleBuffer().isDirect());
+        assertTrue(Arrays.equals(getFloatArray(getMesh(original))
+            .getValues(), array.getValues()));
+        final Triangles triangles = (Triangles) getMesh(document)
+            .getPrimitives().get(0);
+        final IntList list = triangles.getData();
+        assertTrue(list.getIntBuffer().isDirect());
+
+        array.setValue(0, 42);
+        list.setValue(0, 23);
+        assertEquals(42, array.getValue(0), 0.0001);
+        assertEquals(23, list.getValue(0));
+
+        final Document reread = AssetArena.read(this.file);
+        assertEquals(0.1, getFloatArray(getMesh(reread)).getValue(0),
+            0.0001);
+        assertFalse(((Triangles) getMesh(reread).getPrimitives().get(0))
+            .getData().getValue(0) == 23);
+    }
+
+
+    /**
+     * Tests that documents read from an arena stay valid when the arena is
+     * written again.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testRewrite() throws IOException
+    {
+        final Document original = readFull(new ColladaReader());
+        AssetArena.write(original, this.file);
+        final Document document = AssetArena.read(this.file);
+        final double[] values = getFloatArray(getMesh(original)).getValues();
+
+        final ColladaReader reader = new ColladaReader();
+        reader.setPrecision(Precision.SINGLE);
+        AssetArena.write(readFull(reader), this.file);
+        assertTrue(Arrays.equals(values, getFloatArray(getMesh(document))
+            .getValues()));
+        assertEquals(Precision.SINGLE, getFloatArray(getMesh(AssetArena
+            .read(this.file))).getPrecision());
+    }
+
+
+    /**
+     * Tests that the precision of the arrays is kept.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testSinglePrecision() throws IOException
+    {
+        final ColladaReader reader = new ColladaReader();
+        reader.setPrecision(Precision.SINGLE);
+        AssetArena.write(readFull(reader), this.file);
+        final FloatArray array = getFloatArray(getMesh(AssetArena
+            .read(this.file)));
+        assertEquals(Precision.SINGLE, array.getPrecision());
+        assertTrue(array.getFloatBuffer().isDirect());
+        assertEquals(0.1f, array.getFloatValue(0), 0.0001f);
+    }
+
+
+    /**
+     * Tests reading a file which is no arena.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testInvalidFile() throws IOException
+    {
+        final FileOutputStream stream = new FileOutputStream(this.file);
+        try
+        {
+            stream.write(new byte[AssetArena.HEADER_SIZE]);
+        }
+        finally
+        {
+            stream.close();
+        }
+        try
+        {
+            AssetArena.read(this.file);
+            fail("Expected IOException");
+        }
+        catch (final IOException e)
+        {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+
+import org.junit.Test;
+
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.reader.ColladaReader;
+
+
+/**
+ * Tests the BinaryDocument class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class BinaryDocumentTest
+{
+    /** The magic number of binary documents. */
+    private static final int MAGIC = 0x4A434244;
+
+    /** The format version. */
+    private static final int VERSION = 1;
+
+
+    /**
+     * Reads the specified binary document bounded by its length.
+     *
+     * @param bytes
+     *            The binary document.
+     * @return The document.
+     * @throws IOException
+     *             When document could not be read.
+     */
+
+    private static Document read(final byte[] bytes) throws IOException
+    {
+        return BinaryDocument.read(new ByteArrayInputStream(bytes),
+            bytes.length);
+    }
+
+
+    /**
+     * Asserts that the specified binary document is rejected.
+     *
+     * @param bytes
+     *            The binary document.
+     */
+
+    private static void assertInvalid(final byte[] bytes)
+    {
+        try
+        {
+            read(bytes);
+            fail("IOException expected");
+        }
+        catch (final IOException e)
+        {
+            // Expected
+        }
+    }
+
+
+    /**
+     * Tests writing and reading the full test document.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testWriteRead() throws IOException
+    {
+        final InputStream stream = getClass().getClassLoader()
+            .getResourceAsStream("full.dae");
+        final Document document;
+        try
+        {
+            document = new ColladaReader().read(stream);
+        }
+        finally
+        {
+            stream.close();
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryDocument.write(document, out);
+        final Document copy = read(out.toByteArray());
+        assertEquals(document.getGeometryLibraries().get(0).getId(), copy
+            .getGeometryLibraries().get(0).getId());
+    }
+
+
+    /**
+     * Tests that classes outside of the document model are rejected.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testForbiddenClass() throws IOException
+    {
+        final ByteArrayOutputStream tree = new ByteArrayOutputStream();
+        final ObjectOutputStream treeStream = new ObjectOutputStream(tree);
+        treeStream.writeObject(new Date());
+        treeStream.close();
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(tree.size());
+        tree.writeTo(out);
+        out.close();
+        try
+        {
+            read(bytes.toByteArray());
+            fail("InvalidClassException expected");
+        }
+        catch (final InvalidClassException e)
+        {
+            assertEquals("java.util.Date", e.classname);
+        }
+    }
+
+
+    /**
+     * Tests that sizes larger than the document are rejected before
+     * anything is allocated.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testHugeSizes() throws IOException
+    {
+        // String table size
+        assertInvalid(header(Integer.MAX_VALUE));
+
+        // String length
+        assertInvalid(header(1, Integer.MAX_VALUE));
+
+        // Block table size
+        assertInvalid(header(0, Integer.MAX_VALUE));
+
+        // Tree size
+        assertInvalid(header(0, 0, Integer.MAX_VALUE));
+
+        // Block size
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.write(header(0, 1));
+        out.writeByte(0);
+        out.writeInt(Integer.MAX_VALUE);
+        out.close();
+        assertInvalid(bytes.toByteArray());
+    }
+
+
+    /**
+     * Creates the start of a binary document with the specified int values
+     * following the format version.
+     *
+     * @param values
+     *            The int values.
+     * @return The binary document.
+     * @throws IOException
+     *             When document could not be created.
+     */
+
+    private static byte[] header(final int... values) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        for (final int value : values)
+            out.writeInt(value);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
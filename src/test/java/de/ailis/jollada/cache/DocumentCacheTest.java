@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.model.FloatArray;
+import de.ailis.jollada.model.Mesh;
+
+
+/**
+ * Tests the DocumentCache class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class DocumentCacheTest
+{
+    /** The cache directory. */
+    private File directory;
+
+    /** The source file. */
+    private File source;
+
+
+    /**
+     * Creates the cache directory and the source file.
+     *
+     * @throws IOException
+     *             When files could not be created.
+     */
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.directory = File.createTempFile("jollada", ".cache");
+        this.directory.delete();
+        this.source = File.createTempFile("jollada", ".dae");
+        final InputStream in = getClass().getClassLoader()
+            .getResourceAsStream("full.dae");
+        final OutputStream out = new FileOutputStream(this.source);
+        try
+        {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+        }
+        finally
+        {
+            out.close();
+            in.close();
+        }
+    }
+
+
+    /**
+     * Deletes the cache directory and the source file.
+     */
+
+    @After
+    public void tearDown()
+    {
+        final File[] files = this.directory.listFiles();
+        if (files != null) for (final File file : files)
+            file.delete();
+        this.directory.delete();
+        this.source.delete();
+    }
+
+
+    /**
+     * Returns the first value of the first float array of the document.
+     *
+     * @param document
+     *            The document.
+     * @return The first value.
+     */
+
+    private static double getFirstValue(final Document document)
+    {
+        final Mesh mesh = (Mesh) document.getGeometryLibraries().get(0)
+            .getGeometries().get(0).getGeometric();
+        return ((FloatArray) mesh.getSources().get(0).getArray())
+            .getValue(0);
+    }
+
+
+    /**
+     * Tests reading a document twice.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testRead() throws IOException
+    {
+        final DocumentCache cache = new DocumentCache(this.directory);
+        assertFalse(cache.isCached(this.source));
+        final Document document = cache.read(this.source);
+        assertTrue(cache.isCached(this.source));
+        assertEquals(1, this.directory.listFiles().length);
+        final Document cached = cache.read(this.source);
+        assertNotNull(cached);
+        assertEquals(getFirstValue(document), getFirstValue(cached), 0);
+        assertEquals(document.getGeometryLibraries().get(0).getId(), cached
+            .getGeometryLibraries().get(0).getId());
+    }
+
+
+    /**
+     * Tests reading a document when the cache can't be written.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testUnwritableCache() throws IOException
+    {
+        // A regular file blocks the cache directory
+        assertTrue(this.directory.createNewFile());
+        final DocumentCache cache = new DocumentCache(this.directory);
+        final Document document = cache.read(this.source);
+        assertEquals(0.1, getFirstValue(document), 0.0001);
+        assertFalse(cache.isCached(this.source));
+    }
+
+
+    /**
+     * Tests that a modified source file invalidates the cached form.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testModifiedSource() throws IOException
+    {
+        final DocumentCache cache = new DocumentCache(this.directory);
+        cache.read(this.source);
+        this.source.setLastModified(this.source.lastModified() - 10000);
+        assertFalse(cache.isCached(this.source));
+        assertNotNull(cache.read(this.source));
+        assertTrue(cache.isCached(this.source));
+        cache.invalidate(this.source);
+        assertFalse(cache.isCached(this.source));
+    }
+
+
+    /**
+     * Tests that a corrupt cache file is replaced.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testCorruptCacheFile() throws IOException
+    {
+        final DocumentCache cache = new DocumentCache(this.directory);
+        cache.read(this.source);
+        final File cacheFile = this.directory.listFiles()[0];
+        final byte[] key = new byte[256];
+        final RandomAccessFile file = new RandomAccessFile(cacheFile,
+            "rw");
+        try
+        {
+            file.readFully(key);
+            file.setLength(key.length);
+        }
+        finally
+        {
+            file.close();
+        }
+        assertTrue(cache.isCached(this.source));
+        assertEquals(0.1, getFirstValue(cache.read(this.source)), 0.0001);
+        assertTrue(cacheFile.length() > key.length);
+    }
+}
@@ -6,12 +6,16 @@
 package de.ailis.jollada.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.Iterator;
 
 import org.junit.Test;
 
@@ -312,4 +316,190 @@ public class DocumentTest
         element.setId("foo");
         document.unregister(element);
     }
+
+
+    /**
+     * Tests the resolve() method.
+     *
+     * @throws URISyntaxException
+     *             When URI is invalid.
+     */
+
+    @Test
+    public void testResolve() throws URISyntaxException
+    {
+        final Document document = new Document();
+        final URI uri = new URI("#lib");
+        assertNull(document.resolve(uri));
+
+        final VisualSceneLibrary lib = new VisualSceneLibrary();
+        lib.setId("lib");
+        document.getVisualSceneLibraries().add(lib);
+        assertSame(lib, document.resolve(uri));
+        assertSame(lib, document.resolve(new URI("#lib")));
+        assertSame(lib, document.resolve(uri, VisualSceneLibrary.class));
+        assertSame(lib, document.resolve(uri, Element.class));
+        assertNull(document.resolve(uri, GeometryLibrary.class));
+
+        lib.setId("newlib");
+        assertNull(document.resolve(uri));
+        assertSame(lib, document.resolve(new URI("#newlib")));
+        lib.setId("lib");
+        assertSame(lib, document.resolve(uri));
+
+        document.getVisualSceneLibraries().remove(lib);
+        assertNull(document.resolve(uri));
+        assertNull(document.resolve(new URI("#newlib")));
+        document.getVisualSceneLibraries().add(lib);
+        assertSame(lib, document.resolve(uri));
+    }
+
+
+    /**
+     * Tests the resolve() method with URIs not pointing into the document.
+     *
+     * @throws URISyntaxException
+     *             When URI is invalid.
+     */
+
+    @Test
+    public void testResolveExternal() throws URISyntaxException
+    {
+        final Document document = new Document();
+        final VisualSceneLibrary lib = new VisualSceneLibrary();
+        lib.setId("lib");
+        document.getVisualSceneLibraries().add(lib);
+        final URI uri = new URI("http://host/scene.dae#lib");
+
+        assertNull(document.resolve(new URI("lib")));
+        assertNull(document.resolve(new URI("other.dae#lib")));
+        assertNull(document.resolve(uri));
+
+        document.setBase(new URI("http://host/scene.dae"));
+        assertSame(lib, document.resolve(uri));
+        assertNull(document.resolve(new URI("http://host/other.dae#lib")));
+
+        document.setBase(null);
+        assertNull(document.resolve(uri));
+    }
+
+
+    /**
+     * Tests that only successfully resolved URIs are cached and that they
+     * are dropped again when the referenced element is removed.
+     *
+     * @throws URISyntaxException
+     *             When URI is invalid.
+     */
+
+    @Test
+    public void testResolveCache() throws URISyntaxException
+    {
+        final Document document = new Document();
+        for (int i = 0; i < 100; i++)
+        {
+            assertNull(document.resolve(new URI("#missing" + i)));
+            assertNull(document.resolve(new URI("other" + i + ".dae#lib")));
+        }
+        assertEquals(0, document.getResolvedUriCount());
+
+        final VisualSceneLibrary lib = new VisualSceneLibrary();
+        lib.setId("lib");
+        document.getVisualSceneLibraries().add(lib);
+        assertSame(lib, document.resolve(new URI("#lib")));
+        assertSame(lib, document.resolve(new URI("#lib")));
+        assertEquals(1, document.getResolvedUriCount());
+
+        lib.setId("newlib");
+        assertEquals(0, document.getResolvedUriCount());
+        assertSame(lib, document.resolve(new URI("#newlib")));
+        assertEquals(1, document.getResolvedUriCount());
+
+        document.getVisualSceneLibraries().remove(lib);
+        assertEquals(0, document.getResolvedUriCount());
+        assertNull(document.resolve(new URI("#newlib")));
+        assertEquals(0, document.getResolvedUriCount());
+    }
+
+
+    /**
+     * Tests the resolve() method with null URI.
+     */
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testResolveWithNull()
+    {
+        new Document().resolve(null);
+    }
+
+
+    /**
+     * Tests the per-type element index.
+     */
+
+    @Test
+    public void testGetElements()
+    {
+        final Document document = new Document();
+        final Collection<Node> nodes = document.getElements(Node.class);
+        final Collection<Transform> transforms =
+            document.getElements(Transform.class);
+        assertEquals(0, nodes.size());
+        assertEquals(0, transforms.size());
+        assertEquals(1, document.getElementCount(Document.class));
+
+        final VisualSceneLibrary lib = new VisualSceneLibrary();
+        final VisualScene scene = new VisualScene();
+        lib.getVisualScenes().add(scene);
+        final Node node = new Node();
+        final Node child = new Node();
+        node.getNodes().add(child);
+        final RotateTransform rotate = new RotateTransform();
+        final TranslateTransform translate = new TranslateTransform();
+        child.getTransforms().add(rotate);
+        child.getTransforms().add(translate);
+        scene.getNodes().add(node);
+        assertEquals(0, nodes.size());
+
+        document.getVisualSceneLibraries().add(lib);
+        assertEquals(2, nodes.size());
+        assertTrue(nodes.contains(node));
+        assertTrue(nodes.contains(child));
+        assertFalse(nodes.contains(rotate));
+        assertEquals(2, transforms.size());
+        assertTrue(transforms.contains(rotate));
+        assertTrue(transforms.contains(translate));
+        assertEquals(2, document.getElementCount(Node.class));
+        assertEquals(2, document.getElementCount(Transform.class));
+        assertEquals(1, document.getElementCount(RotateTransform.class));
+        assertEquals(0, document.getElementCount(ScaleTransform.class));
+        assertEquals(1, document.getElements(VisualScene.class).size());
+
+        final Iterator<Node> iterator = nodes.iterator();
+        assertSame(child, iterator.next());
+        assertSame(node, iterator.next());
+        assertFalse(iterator.hasNext());
+
+        // ID changes don't affect the index
+        child.setId("child");
+        assertEquals(2, nodes.size());
+
+        // Removing a subtree
+        node.getNodes().remove(child);
+        assertEquals(1, nodes.size());
+        assertFalse(nodes.contains(child));
+        assertEquals(0, transforms.size());
+        assertFalse(transforms.iterator().hasNext());
+    }
+
+
+    /**
+     * Tests that the per-type element views are unmodifiable.
+     */
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetElementsUnmodifiable()
+    {
+        new Document().getElements(Node.class).add(new Node());
+    }
 }
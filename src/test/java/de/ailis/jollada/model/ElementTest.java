@@ -5,11 +5,18 @@
 
 package de.ailis.jollada.model;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import org.junit.Test;
 
 import de.ailis.jollada.events.ElementAdapter;
@@ -323,4 +330,156 @@ public class ElementTest
 
         assertSame(node2b, root.getBySid("foo"));
     }
+
+
+    /**
+     * Serializes and deserializes the specified object.
+     *
+     * @param object
+     *            The object to copy.
+     * @return The copy.
+     * @throws IOException
+     *             When serialization fails.
+     * @throws ClassNotFoundException
+     *             When a class could not be found.
+     */
+
+    private static Object copy(final Object object) throws IOException,
+        ClassNotFoundException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return new ObjectInputStream(new ByteArrayInputStream(bytes
+            .toByteArray())).readObject();
+    }
+
+
+    /**
+     * Tests serializing a document.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testSerialization() throws Exception
+    {
+        final Document document = new Document();
+        final VisualSceneLibrary library = new VisualSceneLibrary();
+        document.getVisualSceneLibraries().add(library);
+        final VisualScene scene = new VisualScene();
+        library.getVisualScenes().add(scene);
+        final Node node1 = new Node();
+        node1.setId("node1");
+        scene.getNodes().add(node1);
+        final Node node2 = new Node();
+        node2.setId("node2");
+        node2.setSid("foo");
+        node1.getNodes().add(node2);
+
+        final Document copy = (Document) copy(document);
+        final VisualScene sceneCopy = copy.getVisualSceneLibraries().get(0)
+            .getVisualScenes().get(0);
+        final Node node1Copy = sceneCopy.getNodes().get(0);
+        final Node node2Copy = node1Copy.getNodes().get(0);
+        assertSame(copy, copy.getDocument());
+        assertSame(copy, node2Copy.getDocument());
+        assertSame(sceneCopy, node1Copy.getParent());
+        assertSame(node1Copy, node2Copy.getParent());
+        assertSame(node1Copy, copy.getById("node1"));
+        assertSame(node2Copy, copy.getById("node2"));
+        assertSame(node2Copy, copy.getBySid("foo"));
+
+        // Moving an element must still remove it from its old element list
+        sceneCopy.getNodes().add(node2Copy);
+        assertEquals(0, node1Copy.getNodes().size());
+        assertEquals(2, sceneCopy.getNodes().size());
+        assertSame(sceneCopy, node2Copy.getParent());
+        assertSame(node2Copy, copy.getById("node2"));
+    }
+
+
+    /**
+     * Tests serializing a detached element and a tree which is too deep for
+     * recursive serialization.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testSerializeDeepTree() throws Exception
+    {
+        final Node root = new Node();
+        Node node = root;
+        for (int i = 0; i < 20000; i++)
+        {
+            final Node child = new Node();
+            node.getNodes().add(child);
+            node = child;
+        }
+        node.setSid("leaf");
+
+        final Node copy = (Node) copy(root);
+        assertNull(copy.getParent());
+        assertNull(copy.getDocument());
+        final Element leaf = copy.getBySid("leaf");
+        int depth = 0;
+        for (Element element = leaf; element != copy; element = element
+            .getParent())
+            depth++;
+        assertEquals(20000, depth);
+    }
+
+
+    /**
+     * Tests the invalidation of the SID index.
+     */
+
+    @Test
+    public void testSidIndex()
+    {
+        final Node root = new Node();
+        root.setSid("root");
+        final Node a = new Node();
+        a.setSid("a");
+        final Node b = new Node();
+        b.setSid("b");
+        final Node deepB = new Node();
+        deepB.setSid("b");
+        root.getNodes().add(a);
+        a.getNodes().add(deepB);
+        assertSame(root, root.getBySid("root"));
+        assertSame(a, root.getBySid("a"));
+        assertSame(deepB, root.getBySid("b"));
+        assertNull(root.getBySid("c"));
+
+        // Nearer element wins
+        root.getNodes().add(b);
+        assertSame(b, root.getBySid("b"));
+        assertSame(deepB, a.getBySid("b"));
+
+        // Changed SID
+        b.setSid("c");
+        assertSame(b, root.getBySid("c"));
+        assertSame(deepB, root.getBySid("b"));
+        deepB.setSid("d");
+        assertSame(deepB, root.getBySid("d"));
+        assertSame(deepB, a.getBySid("d"));
+        assertNull(root.getBySid("b"));
+
+        // Removed element
+        a.getNodes().remove(deepB);
+        assertNull(root.getBySid("d"));
+        assertNull(a.getBySid("d"));
+
+        // Moved element
+        b.getNodes().add(deepB);
+        assertSame(deepB, root.getBySid("d"));
+        a.getNodes().add(deepB);
+        assertSame(deepB, a.getBySid("d"));
+        assertNull(b.getBySid("d"));
+    }
 }
@@ -12,7 +12,9 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -444,4 +446,93 @@ public class ElementsTest
         assertNull(document.getBySid("SID"));
         assertNull(parent.getBySid("SID"));
     }
+
+
+    /**
+     * Tests moving, removing and retaining many elements at once.
+     */
+
+    @Test
+    public void testBulkOperations()
+    {
+        final Document document = new Document();
+        final Node oldParent = new Node();
+        document.addChild(oldParent);
+        final Node parent = new Node();
+        document.addChild(parent);
+        final RotateTransform transform = new RotateTransform();
+        parent.getTransforms().add(transform);
+
+        final int count = 100000;
+        final List<Node> nodes = new ArrayList<Node>(count);
+        for (int i = 0; i < count; i++)
+        {
+            final Node node = new Node();
+            node.setId("node" + i);
+            nodes.add(node);
+        }
+        oldParent.getNodes().addAll(nodes);
+        assertEquals(count, document.getElementCount(Node.class) - 2);
+
+        // Move all nodes
+        parent.getNodes().addAll(oldParent.getNodes());
+        assertEquals(0, oldParent.getNodes().size());
+        assertEquals(nodes, parent.getNodes());
+        assertSame(parent, nodes.get(count - 1).getParent());
+        assertSame(nodes.get(123), document.getById("node123"));
+
+        // Remove every second node
+        final Set<Node> odd = new HashSet<Node>();
+        for (int i = 1; i < count; i += 2)
+            odd.add(nodes.get(i));
+        assertTrue(parent.getNodes().removeAll(odd));
+        assertEquals(count / 2, parent.getNodes().size());
+        assertSame(nodes.get(2), parent.getNodes().get(1));
+        assertNull(nodes.get(1).getParent());
+        assertNull(document.getById("node1"));
+
+        // Retain the first half of the remaining nodes
+        final List<Node> retained = new ArrayList<Node>(
+            parent.getNodes().subList(0, count / 4));
+        assertTrue(parent.getNodes().retainAll(retained));
+        assertEquals(retained, parent.getNodes());
+
+        // Clear
+        parent.getNodes().clear();
+        assertEquals(0, parent.getNodes().size());
+        assertNull(nodes.get(0).getParent());
+        assertNull(document.getById("node0"));
+        assertEquals(2, document.getElementCount(Node.class));
+        assertSame(parent, transform.getParent());
+        assertEquals(1, parent.getTransforms().size());
+    }
+
+
+    /**
+     * Tests adding the same element twice with addAll.
+     */
+
+    @Test
+    public void testAddAllDuplicate()
+    {
+        final Node oldParent = new Node();
+        final Node parent = new Node();
+        final Node node = new Node();
+        oldParent.getNodes().add(node);
+        final List<Node> nodes = new ArrayList<Node>();
+        nodes.add(node);
+        nodes.add(node);
+        try
+        {
+            parent.getNodes().addAll(nodes);
+            throw new AssertionError("No IllegalStateException");
+        }
+        catch (final IllegalStateException e)
+        {
+            // Expected
+        }
+        assertSame(oldParent, node.getParent());
+        assertEquals(1, oldParent.getNodes().size());
+        assertEquals(0, parent.getNodes().size());
+    }
 }
@@ -6,7 +6,19 @@
 package de.ailis.jollada.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.Buffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 import org.junit.Test;
 
@@ -249,4 +261,251 @@ public class FloatArrayTest
         assertEquals(3, array.getValue(2), 0.001f);
         assertEquals(4, array.getValue(3), 0.001f);
     }
+
+
+    /**
+     * Tests lazily loaded values.
+     */
+
+    @Test
+    public void testLazyValues()
+    {
+        final int[] loads = new int[1];
+        final FloatArray array = new FloatArray(3, new DataLoader<double[]>()
+        {
+            @Override
+            public double[] load()
+            {
+                loads[0]++;
+                return new double[] { 1, 2, 3 };
+            }
+        }, true);
+        assertFalse(array.isLoaded());
+        assertEquals(3, array.getCount());
+        assertEquals(0, loads[0]);
+        assertEquals(2, array.getValue(1), 0.001f);
+        assertEquals(1, loads[0]);
+
+        array.setValue(1, 4);
+        assertTrue(array.isLoaded());
+        assertEquals(4, array.getValue(1), 0.001f);
+        assertEquals(1, loads[0]);
+    }
+
+
+    /**
+     * Tests creating a lazy array without a loader.
+     */
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLazyWithoutLoader()
+    {
+        new FloatArray(3, null, false);
+    }
+
+
+    /**
+     * Tests storing values with single precision.
+     */
+
+    @Test
+    public void testSinglePrecision()
+    {
+        final FloatArray array = new FloatArray(3, Precision.SINGLE);
+        assertEquals(Precision.SINGLE, array.getPrecision());
+        array.setValues(new double[] { 0.1, 2, 3 });
+        assertEquals(0.1f, array.getValue(0), 0);
+        assertEquals(0.1f, array.getFloatValue(0), 0);
+        assertTrue(Arrays.equals(new float[] { 0.1f, 2, 3 }, array
+            .getFloatValues()));
+        assertTrue(Arrays.equals(new double[] { 0.1f, 2, 3 }, array
+            .getValues()));
+
+        array.setValues(new float[] { 4, 5 });
+        final double[] doubles = new double[2];
+        array.getValues(1, 2, doubles, 0);
+        assertTrue(Arrays.equals(new double[] { 5, 3 }, doubles));
+
+        array.setCount(4);
+        assertEquals(4, array.getCount());
+        assertEquals(3, array.getValue(2), 0);
+        assertEquals(0, array.getValue(3), 0);
+    }
+
+
+    /**
+     * Tests accessing values with double precision as floats.
+     */
+
+    @Test
+    public void testFloatAccessors()
+    {
+        final FloatArray array = new FloatArray(3);
+        assertEquals(Precision.DOUBLE, array.getPrecision());
+        array.setValues(0, 2, new float[] { 9, 0.1f, 0.2f }, 1);
+        assertEquals(0.1f, array.getValue(0), 0);
+        final float[] floats = new float[4];
+        array.getValues(0, 2, floats, 2);
+        assertTrue(Arrays.equals(new float[] { 0, 0, 0.1f, 0.2f },
+            floats));
+
+        array.setValue(2, 0.3);
+        assertEquals(0.3, array.getValue(2), 0);
+        assertEquals(0.3f, array.getFloatValue(2), 0);
+    }
+
+
+    /**
+     * Tests changing the precision.
+     */
+
+    @Test
+    public void testSetPrecision()
+    {
+        final FloatArray array = new FloatArray(2);
+        array.setValues(new double[] { 0.1, 2 });
+        array.setPrecision(Precision.SINGLE);
+        assertEquals(0.1f, array.getValue(0), 0);
+        array.setPrecision(Precision.DOUBLE);
+        assertEquals(0.1f, array.getValue(0), 0);
+        array.setValue(0, 0.1);
+        assertEquals(0.1, array.getValue(0), 0);
+    }
+
+
+    /**
+     * Tests lazily loaded values with single precision.
+     */
+
+    @Test
+    public void testLazySinglePrecision()
+    {
+        final FloatArray array = new FloatArray(2, new DataLoader<double[]>()
+        {
+            @Override
+            public double[] load()
+            {
+                return new double[] { 0.1, 2 };
+            }
+        }, true, Precision.SINGLE);
+        assertFalse(array.isLoaded());
+        assertEquals(2, array.getCount());
+        assertEquals(0.1f, array.getValue(0), 0);
+        array.setValue(1, 3);
+        assertTrue(array.isLoaded());
+        assertTrue(Arrays.equals(new float[] { 0.1f, 3 }, array
+            .getFloatValues()));
+    }
+
+
+    /**
+     * Tests copying an invalid range.
+     */
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testInvalidRange()
+    {
+        new FloatArray(2, Precision.SINGLE).getValues(1, 2, new double[2], 0);
+    }
+
+
+    /**
+     * Tests the read-only buffer views.
+     */
+
+    @Test
+    public void testBuffers()
+    {
+        final FloatArray array = new FloatArray(3);
+        array.setValues(new double[] { 1, 2, 3 });
+        final DoubleBuffer buffer = array.getDoubleBuffer();
+        assertEquals(3, buffer.remaining());
+        assertEquals(2, buffer.get(1), 0);
+        array.setValue(1, 5);
+        assertEquals(5, buffer.get(1), 0);
+        assertTrue(buffer.isReadOnly());
+
+        array.setPrecision(Precision.SINGLE);
+        final FloatBuffer floatBuffer = array.getFloatBuffer();
+        assertEquals(5, floatBuffer.get(1), 0);
+        assertTrue(floatBuffer.isReadOnly());
+    }
+
+
+    /**
+     * Tests requesting a double buffer view of an array with single
+     * precision.
+     */
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleBufferOfSinglePrecision()
+    {
+        new FloatArray(1, Precision.SINGLE).getDoubleBuffer();
+    }
+
+
+    /**
+     * Tests requesting a float buffer view of an array with double
+     * precision.
+     */
+
+    @Test(expected = IllegalStateException.class)
+    public void testFloatBufferOfDoublePrecision()
+    {
+        new FloatArray(1).getFloatBuffer();
+    }
+
+
+    /**
+     * Tests direct storage.
+     */
+
+    @Test
+    public void testDirectStorage()
+    {
+        for (final Precision precision: Precision.values())
+        {
+            final FloatArray array = new FloatArray(3, precision,
+                Storage.DIRECT);
+            assertEquals(Storage.DIRECT, array.getStorage());
+            array.setValues(new double[] { 1, 2, 3 });
+            final Buffer buffer = precision == Precision.SINGLE ? array
+                .getFloatBuffer() : array.getDoubleBuffer();
+            assertTrue(buffer.isDirect());
+            array.setCount(4);
+            assertTrue(Arrays.equals(new double[] { 1, 2, 3, 0 }, array
+                .getValues()));
+        }
+        assertEquals(ByteOrder.nativeOrder(), new FloatArray(1,
+            Precision.DOUBLE, Storage.DIRECT).getDoubleBuffer().order());
+        assertFalse(new FloatArray(1).getDoubleBuffer().isDirect());
+    }
+
+
+    /**
+     * Tests serializing an array.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testSerialization() throws Exception
+    {
+        final FloatArray array = new FloatArray(2, Precision.SINGLE,
+            Storage.DIRECT);
+        array.setValues(new double[] { 1, 2 });
+        array.setId("test");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(array);
+        out.close();
+        final FloatArray copy = (FloatArray) new ObjectInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals("test", copy.getId());
+        assertEquals(Precision.SINGLE, copy.getPrecision());
+        assertEquals(Storage.DIRECT, copy.getStorage());
+        assertTrue(Arrays.equals(new float[] { 1, 2 }, copy
+            .getFloatValues()));
+    }
 }
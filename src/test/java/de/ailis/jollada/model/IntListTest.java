@@ -6,6 +6,18 @@
 package de.ailis.jollada.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
 
 import org.junit.Test;
 
@@ -32,6 +44,33 @@ public class IntListTest
     }
 
 
+    /**
+     * Tests the constructor with a data array.
+     */
+
+    @Test
+    public void testArrayConstructor()
+    {
+        final int[] values = new int[] { 1, 2, 3 };
+        final IntList array = new IntList(values);
+        assertEquals(3, array.getSize());
+        assertEquals(2, array.getValue(1));
+        values[1] = 4;
+        assertEquals(4, array.getValue(1));
+    }
+
+
+    /**
+     * Tests the constructor with a null data array.
+     */
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testArrayConstructorNull()
+    {
+        new IntList(null).toString();
+    }
+
+
     /**
      * Tests the constructor with a negative count.
      */
@@ -141,4 +180,145 @@ public class IntListTest
         assertEquals(3, array.getValue(2));
         assertEquals(4, array.getValue(3));
     }
+
+
+    /**
+     * Tests lazily loaded values.
+     */
+
+    @Test
+    public void testLazyValues()
+    {
+        final int[] loads = new int[1];
+        final IntList list = new IntList(new DataLoader<int[]>()
+        {
+            @Override
+            public int[] load()
+            {
+                loads[0]++;
+                return new int[] { 1, 2, 3 };
+            }
+        }, false);
+        assertFalse(list.isLoaded());
+        assertEquals(3, list.getSize());
+        assertTrue(list.isLoaded());
+        assertEquals(2, list.getValue(1));
+        assertEquals(1, loads[0]);
+    }
+
+
+    /**
+     * Tests lazily loaded values with a known size.
+     */
+
+    @Test
+    public void testLazySize()
+    {
+        final int[] loads = new int[1];
+        final IntList list = new IntList(3, new DataLoader<int[]>()
+        {
+            @Override
+            public int[] load()
+            {
+                loads[0]++;
+                return new int[] { 1, 2 };
+            }
+        }, true, Storage.HEAP);
+        assertEquals(3, list.getSize());
+        assertFalse(list.isLoaded());
+        assertEquals(0, loads[0]);
+        assertEquals(2, list.getValue(1));
+        assertEquals(2, list.getSize());
+        assertEquals(1, loads[0]);
+    }
+
+
+    /**
+     * Tests the read-only buffer view.
+     */
+
+    @Test
+    public void testIntBuffer()
+    {
+        final int[] values = new int[] { 1, 2, 3 };
+        final IntList list = new IntList(values);
+        final IntBuffer buffer = list.getIntBuffer();
+        assertEquals(3, buffer.remaining());
+        assertEquals(2, buffer.get(1));
+        list.setValue(1, 5);
+        assertEquals(5, buffer.get(1));
+        try
+        {
+            buffer.put(0, 1);
+            fail("ReadOnlyBufferException expected");
+        }
+        catch (final ReadOnlyBufferException e)
+        {
+            // Expected
+        }
+    }
+
+
+    /**
+     * Tests direct storage.
+     */
+
+    @Test
+    public void testDirectStorage()
+    {
+        final IntList list = new IntList(3, Storage.DIRECT);
+        assertEquals(Storage.DIRECT, list.getStorage());
+        list.setValues(new int[] { 1, 2, 3 });
+        assertTrue(list.getIntBuffer().isDirect());
+        assertEquals(ByteOrder.nativeOrder(), list.getIntBuffer().order());
+        list.setSize(4);
+        assertTrue(list.getIntBuffer().isDirect());
+        assertTrue(Arrays.equals(new int[] { 1, 2, 3, 0 }, list.getValues()));
+        assertFalse(new IntList(1).getIntBuffer().isDirect());
+    }
+
+
+    /**
+     * Tests lazily loaded values with direct storage.
+     */
+
+    @Test
+    public void testLazyDirectStorage()
+    {
+        final IntList list = new IntList(new DataLoader<int[]>()
+        {
+            @Override
+            public int[] load()
+            {
+                return new int[] { 1, 2 };
+            }
+        }, true, Storage.DIRECT);
+        assertEquals(2, list.getSize());
+        assertTrue(list.getIntBuffer().isDirect());
+        assertEquals(2, list.getValue(1));
+    }
+
+
+    /**
+     * Tests serializing a list.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testSerialization() throws Exception
+    {
+        final IntList list = new IntList(3, Storage.DIRECT);
+        list.setValues(new int[] { 1, 2, 3 });
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(list);
+        out.close();
+        final IntList copy = (IntList) new ObjectInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(Storage.DIRECT, copy.getStorage());
+        assertTrue(copy.getIntBuffer().isDirect());
+        assertTrue(Arrays.equals(new int[] { 1, 2, 3 }, copy.getValues()));
+    }
 }
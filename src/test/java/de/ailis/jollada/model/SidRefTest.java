@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the SidRef class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class SidRefTest
+{
+    /**
+     * Tests parsing a path with member selector.
+     */
+
+    @Test
+    public void testMember()
+    {
+        final SidRef ref = new SidRef("node/rotateX.ANGLE");
+        assertEquals("node", ref.getId());
+        assertEquals(Arrays.asList("rotateX"), ref.getSids());
+        assertEquals("ANGLE", ref.getMember());
+        assertEquals(0, ref.getIndices().length);
+        assertEquals("node/rotateX.ANGLE", ref.toString());
+    }
+
+
+    /**
+     * Tests parsing a relative path with array indices.
+     */
+
+    @Test
+    public void testIndices()
+    {
+        final SidRef ref = new SidRef("./a/matrix(1)(2)");
+        assertNull(ref.getId());
+        assertEquals(Arrays.asList("a", "matrix"), ref.getSids());
+        assertNull(ref.getMember());
+        assertTrue(Arrays.equals(new int[] { 1, 2 }, ref.getIndices()));
+    }
+
+
+    /**
+     * Tests parsing a path without selector.
+     */
+
+    @Test
+    public void testPlain()
+    {
+        final SidRef ref = new SidRef("node");
+        assertEquals("node", ref.getId());
+        assertEquals(0, ref.getSids().size());
+        assertNull(ref.getMember());
+        assertEquals(new SidRef("node"), ref);
+    }
+
+
+    /**
+     * Tests invalid paths.
+     */
+
+    @Test
+    public void testInvalid()
+    {
+        for (final String path : new String[] { "", "a//b", "a/", "/a",
+            "a/b.", "a/b(x)", "a/b)", "a/b()", "a/b(1)(2)(3)" })
+        {
+            try
+            {
+                new SidRef(path);
+                throw new AssertionError("No exception for " + path);
+            }
+            catch (final IllegalArgumentException e)
+            {
+                // Expected
+            }
+        }
+    }
+
+
+    /**
+     * Tests resolving a SIDREF.
+     */
+
+    @Test
+    public void testResolve()
+    {
+        final Document document = new Document();
+        final VisualSceneLibrary lib = new VisualSceneLibrary();
+        document.getVisualSceneLibraries().add(lib);
+        final VisualScene scene = new VisualScene();
+        lib.getVisualScenes().add(scene);
+        final Node node = new Node();
+        node.setId("node");
+        node.setSid("node");
+        scene.getNodes().add(node);
+        final Node child = new Node();
+        child.setSid("child");
+        node.getNodes().add(child);
+        final RotateTransform rotate = new RotateTransform();
+        rotate.setSid("rotateX");
+        child.getTransforms().add(rotate);
+
+        assertSame(rotate, new SidRef("node/child/rotateX.ANGLE")
+            .resolve(scene));
+        assertSame(rotate, new SidRef("node/rotateX").resolve(scene));
+        assertSame(node, new SidRef("node").resolve(scene));
+        assertSame(rotate, new SidRef("./rotateX(0)").resolve(child));
+        assertNull(new SidRef("node/node").resolve(scene));
+        assertNull(new SidRef("other/rotateX").resolve(scene));
+        assertNull(new SidRef("node/rotateX").resolve(new Node()));
+    }
+}
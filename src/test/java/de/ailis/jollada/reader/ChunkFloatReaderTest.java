@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the ChunkFloatReader class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class ChunkFloatReaderTest
+{
+    /**
+     * Reads all values from the specified chunks.
+     *
+     * @param chunks
+     *            The chunks to read.
+     * @return The read values.
+     */
+
+    private static List<Double> read(final String... chunks)
+    {
+        final List<Double> values = new ArrayList<Double>();
+        final ChunkFloatReader reader = new ChunkFloatReader()
+        {
+            @Override
+            protected void valueFound(final double value)
+            {
+                values.add(value);
+            }
+        };
+        for (final String chunk : chunks)
+            reader.addChunk(chunk);
+        reader.finish();
+        return values;
+    }
+
+
+    /**
+     * Tests reading simple values.
+     */
+
+    @Test
+    public void testSimpleValues()
+    {
+        final List<Double> values = read(" 1 -2.5\t+3.25\n0.125\r\n  ");
+        assertEquals(4, values.size());
+        assertEquals(1.0, values.get(0), 0);
+        assertEquals(-2.5, values.get(1), 0);
+        assertEquals(3.25, values.get(2), 0);
+        assertEquals(0.125, values.get(3), 0);
+    }
+
+
+    /**
+     * Tests reading values which are split over multiple chunks.
+     */
+
+    @Test
+    public void testSplitValues()
+    {
+        final List<Double> values = read("1.2", "34 5", "6.", "7e", "-1 8");
+        assertEquals(3, values.size());
+        assertEquals(1.234, values.get(0), 0);
+        assertEquals(5.67, values.get(1), 0);
+        assertEquals(8.0, values.get(2), 0);
+    }
+
+
+    /**
+     * Tests that values keep full double precision.
+     */
+
+    @Test
+    public void testPrecision()
+    {
+        final List<Double> values = read("0.1 0.3 123456.789012345 1e-7 "
+            + "2.2250738585072014E-308 1.7976931348623157e308 "
+            + "3.141592653589793238462643");
+        assertEquals(0.1, values.get(0), 0);
+        assertEquals(0.3, values.get(1), 0);
+        assertEquals(123456.789012345, values.get(2), 0);
+        assertEquals(1e-7, values.get(3), 0);
+        assertEquals(Double.MIN_NORMAL, values.get(4), 0);
+        assertEquals(Double.MAX_VALUE, values.get(5), 0);
+        assertEquals(Math.PI, values.get(6), 0);
+    }
+
+
+    /**
+     * Tests reading values with exponents.
+     */
+
+    @Test
+    public void testExponents()
+    {
+        final List<Double> values = read("1e3 1.5E+2 -2.5e-3 0.000e5 1e400");
+        assertEquals(1000.0, values.get(0), 0);
+        assertEquals(150.0, values.get(1), 0);
+        assertEquals(-0.0025, values.get(2), 0);
+        assertEquals(0.0, values.get(3), 0);
+        assertEquals(Double.POSITIVE_INFINITY, values.get(4), 0);
+    }
+
+
+    /**
+     * Tests reading the special XML schema values.
+     */
+
+    @Test
+    public void testSpecialValues()
+    {
+        final List<Double> values = read("INF -INF NaN -0");
+        assertEquals(Double.POSITIVE_INFINITY, values.get(0), 0);
+        assertEquals(Double.NEGATIVE_INFINITY, values.get(1), 0);
+        assertTrue(Double.isNaN(values.get(2)));
+        assertEquals(Double.doubleToLongBits(-0.0),
+            Double.doubleToLongBits(values.get(3)));
+    }
+
+
+    /**
+     * Tests reading a value which is longer than the initial buffer.
+     */
+
+    @Test
+    public void testLongValue()
+    {
+        final StringBuilder builder = new StringBuilder("1.");
+        for (int i = 0; i < 100; i++)
+            builder.append('0');
+        builder.append('1');
+        final List<Double> values = read(builder.toString(), " 2");
+        assertEquals(2, values.size());
+        assertEquals(1.0, values.get(0), 0);
+        assertEquals(2.0, values.get(1), 0);
+    }
+
+
+    /**
+     * Tests reading an invalid value.
+     */
+
+    @Test(expected = NumberFormatException.class)
+    public void testInvalidValue()
+    {
+        read("1 2 x3");
+    }
+}
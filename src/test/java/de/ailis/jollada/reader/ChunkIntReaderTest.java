@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the ChunkIntReader class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class ChunkIntReaderTest
+{
+    /**
+     * Reads all values from the specified chunks.
+     *
+     * @param chunks
+     *            The chunks to read.
+     * @return The read values.
+     */
+
+    private static List<Integer> read(final String... chunks)
+    {
+        final List<Integer> values = new ArrayList<Integer>();
+        final ChunkIntReader reader = new ChunkIntReader()
+        {
+            @Override
+            protected void valueFound(final int value)
+            {
+                values.add(value);
+            }
+        };
+        for (final String chunk : chunks)
+            reader.addChunk(chunk);
+        reader.finish();
+        return values;
+    }
+
+
+    /**
+     * Tests reading simple values.
+     */
+
+    @Test
+    public void testSimpleValues()
+    {
+        final List<Integer> values = read(" 0 1\t-2\n+3\r\n 004  ");
+        assertEquals(5, values.size());
+        assertEquals(0, values.get(0).intValue());
+        assertEquals(1, values.get(1).intValue());
+        assertEquals(-2, values.get(2).intValue());
+        assertEquals(3, values.get(3).intValue());
+        assertEquals(4, values.get(4).intValue());
+    }
+
+
+    /**
+     * Tests reading values which are split over multiple chunks.
+     */
+
+    @Test
+    public void testSplitValues()
+    {
+        final List<Integer> values = read("12", "34 5", "6 -", "7");
+        assertEquals(3, values.size());
+        assertEquals(1234, values.get(0).intValue());
+        assertEquals(56, values.get(1).intValue());
+        assertEquals(-7, values.get(2).intValue());
+    }
+
+
+    /**
+     * Tests reading the smallest and largest int values.
+     */
+
+    @Test
+    public void testLimits()
+    {
+        final List<Integer> values = read("2147483647 -2147483648");
+        assertEquals(Integer.MAX_VALUE, values.get(0).intValue());
+        assertEquals(Integer.MIN_VALUE, values.get(1).intValue());
+    }
+
+
+    /**
+     * Tests reading a value which is too large.
+     */
+
+    @Test(expected = NumberFormatException.class)
+    public void testOverflow()
+    {
+        read("2147483648");
+    }
+
+
+    /**
+     * Tests reading an invalid value.
+     */
+
+    @Test(expected = NumberFormatException.class)
+    public void testInvalidValue()
+    {
+        read("1 2-3");
+    }
+
+
+    /**
+     * Tests reading a sign without digits.
+     */
+
+    @Test(expected = NumberFormatException.class)
+    public void testSignOnly()
+    {
+        read("1 - 2");
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import de.ailis.jollada.exceptions.ParserException;
+import de.ailis.jollada.model.Document;
+
+
+/**
+ * Tests the ColladaBatchReader class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class ColladaBatchReaderTest
+{
+    /**
+     * A listener which records the results.
+     */
+
+    private static final class RecordingListener implements BatchListener
+    {
+        /** The read documents. */
+        final Map<String, Document> documents =
+            new ConcurrentHashMap<String, Document>();
+
+        /** The errors. */
+        final Map<String, ParserException> errors =
+            new ConcurrentHashMap<String, ParserException>();
+
+
+        /**
+         * @see BatchListener#documentRead(String, Document)
+         */
+
+        @Override
+        public void documentRead(final String source, final Document document)
+        {
+            this.documents.put(source, document);
+        }
+
+
+        /**
+         * @see BatchListener#documentFailed(String, ParserException)
+         */
+
+        @Override
+        public void documentFailed(final String source,
+            final ParserException e)
+        {
+            this.errors.put(source, e);
+        }
+    }
+
+
+    /**
+     * An executor which collects the tasks until they are run explicitly.
+     */
+
+    private static final class ManualExecutor implements Executor
+    {
+        /** The collected tasks. */
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+
+        /**
+         * @see Executor#execute(Runnable)
+         */
+
+        @Override
+        public synchronized void execute(final Runnable task)
+        {
+            this.tasks.add(task);
+        }
+
+
+        /**
+         * Runs the oldest collected task.
+         */
+
+        void runNext()
+        {
+            final Runnable task;
+            synchronized (this)
+            {
+                task = this.tasks.remove(0);
+            }
+            task.run();
+        }
+    }
+
+
+    /**
+     * Returns the content of the full test document.
+     *
+     * @return The document content.
+     * @throws Exception
+     *             When document could not be read.
+     */
+
+    private static byte[] getTestDocument() throws Exception
+    {
+        final InputStream stream = ColladaBatchReaderTest.class
+            .getClassLoader().getResourceAsStream("full.dae");
+        try
+        {
+            final byte[] data = new byte[stream.available()];
+            int read = 0;
+            while (read < data.length)
+                read += stream.read(data, read, data.length - read);
+            return data;
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+
+    /**
+     * Tests reading files and streams with a thread pool.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testRead() throws Exception
+    {
+        final byte[] data = getTestDocument();
+        final List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 10; i++)
+            files.add(MappedFileTest.createTempFile(data));
+        final File broken = MappedFileTest.createTempFile("<COLLADA>"
+            .getBytes("UTF-8"));
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try
+        {
+            final RecordingListener listener = new RecordingListener();
+            final ColladaBatchReader reader = new ColladaBatchReader(executor,
+                4, listener);
+            reader.getOptions().setLoadOptions(
+                new LoadOptions(ColladaLibrary.GEOMETRIES));
+            reader.submitAll(files);
+            reader.submit(broken);
+            reader.submit("stream", new ByteArrayInputStream(data));
+            reader.await();
+
+            assertEquals(11, listener.documents.size());
+            assertEquals(1, listener.errors.size());
+            assertTrue(listener.errors.containsKey(broken.getPath()));
+            for (final Document document: listener.documents.values())
+            {
+                assertEquals("geometry-lib-1", document.getGeometryLibraries()
+                    .get(0).getId());
+                assertEquals(0, document.getImageLibraries().size());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * Tests that submitting blocks while the maximum number of documents is
+     * pending.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test(timeout = 10000)
+    public void testBackpressure() throws Exception
+    {
+        final byte[] data = getTestDocument();
+        final ManualExecutor executor = new ManualExecutor();
+        final RecordingListener listener = new RecordingListener();
+        final ColladaBatchReader reader = new ColladaBatchReader(executor, 2,
+            listener);
+        reader.submit("1", new ByteArrayInputStream(data));
+        reader.submit("2", new ByteArrayInputStream(data));
+        final Thread producer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    reader.submit("3", new ByteArrayInputStream(data));
+                }
+                catch (final InterruptedException e)
+                {
+                    // Ignored
+                }
+            }
+        };
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        assertEquals(2, executor.tasks.size());
+
+        executor.runNext();
+        producer.join();
+        assertEquals(2, executor.tasks.size());
+        executor.runNext();
+        executor.runNext();
+        reader.await();
+        assertEquals(3, listener.documents.size());
+    }
+
+
+    /**
+     * Tests that a rejected document frees its slot.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test(timeout = 10000)
+    public void testRejected() throws Exception
+    {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        final ColladaBatchReader reader = new ColladaBatchReader(executor, 1,
+            new RecordingListener());
+        for (int i = 0; i < 2; i++)
+        {
+            try
+            {
+                reader.submit(new File("test.dae"));
+            }
+            catch (final RejectedExecutionException e)
+            {
+                // Expected
+            }
+        }
+        reader.await();
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import de.ailis.jollada.FullTest;
+import de.ailis.jollada.exceptions.ParserException;
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.model.IntList;
+import de.ailis.jollada.model.Mesh;
+import de.ailis.jollada.model.Triangles;
+
+
+/**
+ * Tests the ColladaReader class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class ColladaReaderTest
+{
+    /**
+     * Reads the full test document with the specified reader.
+     *
+     * @param reader
+     *            The reader to use.
+     * @return The document.
+     * @throws Exception
+     *             When document could not be read.
+     */
+
+    private static Document readTestDocument(final ColladaReader reader)
+        throws Exception
+    {
+        final InputStream stream = ColladaReaderTest.class.getClassLoader()
+            .getResourceAsStream("full.dae");
+        try
+        {
+            return reader.read(stream);
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+
+    /**
+     * Tests reading multiple documents with the same reader.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testReuse() throws Exception
+    {
+        for (final ParserBackend backend: ParserBackend.values())
+        {
+            final ColladaReader reader = new ColladaReader();
+            reader.setBackend(backend);
+            final Document first = readTestDocument(reader);
+            final Document second = readTestDocument(reader);
+            assertNotSame(first, second);
+            assertEquals(first.getGeometryLibraries().size(), second
+                .getGeometryLibraries().size());
+            assertNotSame(first.getGeometryLibraries().get(0), second
+                .getGeometryLibraries().get(0));
+            assertEquals("geometry-lib-1", second.getGeometryLibraries()
+                .get(0).getId());
+        }
+    }
+
+
+    /**
+     * Tests reusing a reader after a parse error.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testReuseAfterError() throws Exception
+    {
+        final ColladaReader reader = new ColladaReader();
+        try
+        {
+            reader.read(new ByteArrayInputStream(("<COLLADA><library_geometries>"
+                + "<geometry id=\"broken\"><mesh>").getBytes("UTF-8")));
+            fail("ParserException expected");
+        }
+        catch (final ParserException e)
+        {
+            // Expected
+        }
+        final Document document = readTestDocument(reader);
+        final Document expected = readTestDocument(new ColladaReader());
+        assertEquals(expected.getGeometryLibraries().size(), document
+            .getGeometryLibraries().size());
+        assertEquals(expected.getGeometryLibraries().get(0).getGeometries()
+            .size(), document.getGeometryLibraries().get(0).getGeometries()
+            .size());
+    }
+
+
+    /**
+     * Tests that a huge count attribute doesn't allocate the whole index list
+     * in advance.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testHugeCount() throws Exception
+    {
+        final File file = File.createTempFile("jollada", ".dae");
+        try
+        {
+            final OutputStream stream = new FileOutputStream(file);
+            try
+            {
+                stream.write(("<COLLADA><library_geometries>"
+                    + "<geometry><mesh><vertices id=\"v\"><input semantic="
+                    + "\"POSITION\" source=\"#s\"/></vertices>"
+                    + "<triangles count=\"500000000\">"
+                    + "<input semantic=\"VERTEX\" source=\"#v\" "
+                    + "offset=\"0\"/><p>0 1 2</p></triangles></mesh>"
+                    + "</geometry></library_geometries></COLLADA>")
+                    .getBytes("UTF-8"));
+            }
+            finally
+            {
+                stream.close();
+            }
+            for (final ParserBackend backend: ParserBackend.values())
+            {
+                for (final ArrayLoading loading: ArrayLoading.values())
+                {
+                    final ColladaReader reader = new ColladaReader();
+                    reader.setBackend(backend);
+                    reader.setArrayLoading(loading);
+                    final Document document = reader.read(file);
+                    final Mesh mesh = (Mesh) document.getGeometryLibraries()
+                        .get(0).getGeometries().get(0).getGeometric();
+                    final IntList data = ((Triangles) mesh.getPrimitives()
+                        .get(0)).getData();
+                    final boolean loaded = data.isLoaded();
+                    assertEquals(backend + "/" + loading, 3, data.getSize());
+                    assertEquals(loaded, data.isLoaded());
+                }
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+
+    /**
+     * Tests reading a document while the reader is reading another one.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testNestedRead() throws Exception
+    {
+        final ColladaReader reader = new ColladaReader();
+        final Document[] nested = new Document[1];
+        reader.readGeometries(getClass().getClassLoader().getResourceAsStream(
+            "full.dae"), new NestedReadSink(nested)
+        {
+            @Override
+            Document readNested() throws Exception
+            {
+                return readTestDocument(reader);
+            }
+        });
+        assertEquals("geometry-lib-1", nested[0].getGeometryLibraries()
+            .get(0).getId());
+        assertEquals(1, readTestDocument(reader).getGeometryLibraries()
+            .size());
+    }
+
+
+    /**
+     * Tests reading a file while the reader is reading another file with the
+     * mapped backend.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testNestedMappedRead() throws Exception
+    {
+        final File file = FullTest.getTestFile("full.dae");
+        final ColladaReader reader = new ColladaReader();
+        reader.setBackend(ParserBackend.MAPPED);
+        final Document[] nested = new Document[1];
+        reader.readGeometries(file, new NestedReadSink(nested)
+        {
+            @Override
+            Document readNested()
+            {
+                return reader.read(file);
+            }
+        });
+        assertEquals("geometry-lib-1", nested[0].getGeometryLibraries()
+            .get(0).getId());
+        assertEquals(1, reader.read(file).getGeometryLibraries().size());
+    }
+
+
+    /**
+     * Geometry sink which reads a nested document when the first geometry
+     * begins.
+     */
+
+    private abstract static class NestedReadSink implements GeometrySink
+    {
+        /** Receives the nested document. */
+        private final Document[] nested;
+
+
+        /**
+         * Constructor.
+         *
+         * @param nested
+         *            Receives the nested document.
+         */
+
+        NestedReadSink(final Document[] nested)
+        {
+            this.nested = nested;
+        }
+
+
+        /**
+         * Reads the nested document.
+         *
+         * @return The nested document.
+         * @throws Exception
+         *             When document could not be read.
+         */
+
+        abstract Document readNested() throws Exception;
+
+
+        @Override
+        public void beginGeometry(final String id, final String name)
+        {
+            if (this.nested[0] != null) return;
+            try
+            {
+                this.nested[0] = readNested();
+            }
+            catch (final Exception e)
+            {
+                throw new RuntimeException(e.toString(), e);
+            }
+        }
+
+        @Override
+        public void source(final String id, final double[] values,
+            final int stride)
+        {
+            // Ignored
+        }
+
+        @Override
+        public void vertices(final String id, final String[] semantics,
+            final String[] sources)
+        {
+            // Ignored
+        }
+
+        @Override
+        public void primitives(final String material, final int count,
+            final String[] semantics, final String[] sources,
+            final int[] offsets, final int[] sets, final int[] vcount,
+            final int[] indices)
+        {
+            // Ignored
+        }
+
+        @Override
+        public void endGeometry()
+        {
+            // Ignored
+        }
+    }
+
+
+    /**
+     * Tests the thread readers.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testThreadReader() throws Exception
+    {
+        final ColladaReader reader = ColladaReader.getThreadReader();
+        assertSame(reader, ColladaReader.getThreadReader());
+        final ColladaReader[] other = new ColladaReader[1];
+        final Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                other[0] = ColladaReader.getThreadReader();
+            }
+        };
+        thread.start();
+        thread.join();
+        assertTrue(other[0] != null && other[0] != reader);
+    }
+
+
+    /**
+     * Tests resetting the options.
+     */
+
+    @Test
+    public void testReset()
+    {
+        final ColladaReader reader = new ColladaReader();
+        reader.setBackend(ParserBackend.MAPPED);
+        reader.setArrayLoading(ArrayLoading.LAZY);
+        reader.setLoadOptions(new LoadOptions(ColladaLibrary.IMAGES));
+        reader.setBackgroundDecompression(true);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        reader.setExecutor(executor);
+        reader.reset();
+        executor.shutdown();
+        assertEquals(ParserBackend.SAX, reader.getBackend());
+        assertEquals(ArrayLoading.EAGER, reader.getArrayLoading());
+        assertTrue(reader.getLoadOptions().isLoading(ColladaLibrary.ANIMATIONS));
+        assertTrue(!reader.isBackgroundDecompression());
+        assertNull(reader.getExecutor());
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import de.ailis.jollada.exceptions.ParserException;
+import de.ailis.jollada.model.Document;
+
+
+/**
+ * Tests the CompressedInput class and reading compressed documents.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class CompressedInputTest
+{
+    /**
+     * Returns the content of the full test document.
+     *
+     * @return The document content.
+     * @throws IOException
+     *             When document could not be read.
+     */
+
+    private static byte[] getTestDocument() throws IOException
+    {
+        final InputStream stream = CompressedInputTest.class.getClassLoader()
+            .getResourceAsStream("full.dae");
+        try
+        {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) >= 0)
+                bytes.write(buffer, 0, read);
+            return bytes.toByteArray();
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+
+    /**
+     * Compresses the specified data with gzip.
+     *
+     * @param data
+     *            The data to compress.
+     * @return The compressed data.
+     * @throws IOException
+     *             When data could not be compressed.
+     */
+
+    private static byte[] gzip(final byte[] data) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final GZIPOutputStream stream = new GZIPOutputStream(bytes);
+        stream.write(data);
+        stream.close();
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * Creates a zip archive with the specified entries.
+     *
+     * @param entries
+     *            Pairs of entry names and entry contents.
+     * @return The archive data.
+     * @throws IOException
+     *             When archive could not be created.
+     */
+
+    private static byte[] zip(final Object... entries) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ZipOutputStream stream = new ZipOutputStream(bytes);
+        for (int i = 0; i < entries.length; i += 2)
+        {
+            stream.putNextEntry(new ZipEntry((String) entries[i]));
+            final Object content = entries[i + 1];
+            stream.write(content instanceof String ? ((String) content)
+                .getBytes("UTF-8") : (byte[]) content);
+            stream.closeEntry();
+        }
+        stream.close();
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * Checks that the specified document is the full test document.
+     *
+     * @param document
+     *            The document to check.
+     */
+
+    private static void assertTestDocument(final Document document)
+    {
+        assertEquals("geometry-lib-1", document.getGeometryLibraries().get(0)
+            .getId());
+    }
+
+
+    /**
+     * Tests reading the root document name from a manifest.
+     */
+
+    @Test
+    public void testGetRootName()
+    {
+        assertEquals("models/my model.dae", CompressedInput.getRootName(
+            "<dae_root>\n ./models/my%20model.dae </dae_root>"));
+        assertEquals("scene.dae", CompressedInput
+            .getRootName("<?xml version=\"1.0\"?><dae_root>scene.dae"
+                + "</dae_root>"));
+        assertNull(CompressedInput.getRootName("<manifest/>"));
+    }
+
+
+    /**
+     * Tests reading gzip compressed documents with all backends.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testReadGzip() throws Exception
+    {
+        final byte[] compressed = gzip(getTestDocument());
+        final File file = MappedFileTest.createTempFile(compressed);
+        for (final ParserBackend backend: ParserBackend.values())
+        {
+            for (final boolean background: new boolean[] { false, true })
+            {
+                final ColladaReader reader = new ColladaReader();
+                reader.setBackend(backend);
+                reader.setBackgroundDecompression(background);
+                assertTestDocument(reader.read(file));
+                assertTestDocument(reader.read(new ByteArrayInputStream(
+                    compressed)));
+            }
+        }
+    }
+
+
+    /**
+     * Tests reading a COLLADA archive with a manifest.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testReadArchive() throws Exception
+    {
+        final File file = MappedFileTest.createTempFile(zip("other.dae",
+            "<invalid", "manifest.xml",
+            "<dae_root>./models/scene.dae</dae_root>", "models/scene.dae",
+            getTestDocument()));
+        final ColladaReader reader = new ColladaReader();
+        reader.setBackgroundDecompression(true);
+        assertTestDocument(reader.read(file));
+    }
+
+
+    /**
+     * Tests reading a COLLADA archive without a manifest.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testReadArchiveWithoutManifest() throws Exception
+    {
+        final File file = MappedFileTest.createTempFile(zip("readme.txt",
+            "Test", "scene.dae", getTestDocument()));
+        assertTestDocument(new ColladaReader().read(file));
+    }
+
+
+    /**
+     * Tests reading a COLLADA archive with a missing root document.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test(expected = ParserException.class)
+    public void testReadArchiveWithMissingRoot() throws Exception
+    {
+        final File file = MappedFileTest.createTempFile(zip("manifest.xml",
+            "<dae_root>missing.dae</dae_root>", "scene.dae",
+            getTestDocument()));
+        new ColladaReader().read(file);
+    }
+}
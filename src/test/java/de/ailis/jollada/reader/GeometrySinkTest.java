@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.ailis.jollada.FullTest;
+
+
+/**
+ * Tests streaming geometries to a {@link GeometrySink}.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class GeometrySinkTest
+{
+    /**
+     * A sink which records all calls as strings.
+     */
+
+    private static final class RecordingSink implements GeometrySink
+    {
+        /** The recorded calls. */
+        final List<String> calls = new ArrayList<String>();
+
+
+        /**
+         * @see GeometrySink#beginGeometry(String, String)
+         */
+
+        @Override
+        public void beginGeometry(final String id, final String name)
+        {
+            this.calls.add("begin " + id + " " + name);
+        }
+
+
+        /**
+         * @see GeometrySink#source(String, double[], int)
+         */
+
+        @Override
+        public void source(final String id, final double[] values,
+            final int stride)
+        {
+            this.calls.add("source " + id + " " + Arrays.toString(values)
+                + " " + stride);
+        }
+
+
+        /**
+         * @see GeometrySink#vertices(String, String[], String[])
+         */
+
+        @Override
+        public void vertices(final String id, final String[] semantics,
+            final String[] sources)
+        {
+            this.calls.add("vertices " + id + " "
+                + Arrays.toString(semantics) + " " + Arrays.toString(sources));
+        }
+
+
+        /**
+         * @see GeometrySink#primitives(String, int, String[], String[],
+         *      int[], int[], int[], int[])
+         */
+
+        @Override
+        public void primitives(final String material, final int count,
+            final String[] semantics, final String[] sources,
+            final int[] offsets, final int[] sets, final int[] vcount,
+            final int[] indices)
+        {
+            this.calls.add("primitives " + material + " " + count + " "
+                + Arrays.toString(semantics) + " " + Arrays.toString(sources)
+                + " " + Arrays.toString(offsets) + " " + Arrays.toString(sets)
+                + " " + Arrays.toString(vcount) + " "
+                + Arrays.toString(indices));
+        }
+
+
+        /**
+         * @see GeometrySink#endGeometry()
+         */
+
+        @Override
+        public void endGeometry()
+        {
+            this.calls.add("end");
+        }
+    }
+
+
+    /**
+     * Tests streaming the geometries of the full test document with all
+     * backends.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testReadGeometries() throws Exception
+    {
+        final File file = FullTest.getTestFile("full.dae");
+        final String inputs = "[TEXCOORDS, STUFF] "
+            + "[#geometry-1-source, #geometry-1-floats] [1, 2] [3, 1]";
+        final List<String> expected = Arrays.asList(
+            "begin geometry-1 Geometry 1",
+            "source geometry-1-source-1 [0.1, 0.2, 0.3, 0.4, 0.5, 0.6] 1",
+            "vertices geometry-1-vertices [POSITION] [#geometry-1-source]",
+            "primitives material-1 3 " + inputs + " null [0, 1, 2, 3, 4, 5]",
+            "primitives material-2 3 " + inputs
+                + " [2, 3, 4] [0, 1, 0, 1, 2, 0, 1, 2, 3]",
+            "primitives material-3 3 " + inputs
+                + " [0, 1, 1] [0, 1, 0, 1, 2, 0, 1, 2, 3]",
+            "end");
+        for (final ParserBackend backend: ParserBackend.values())
+        {
+            final ColladaReader reader = new ColladaReader();
+            reader.setBackend(backend);
+            final RecordingSink sink = new RecordingSink();
+            reader.readGeometries(file, sink);
+            assertEquals(backend.toString(), expected, sink.calls);
+        }
+    }
+
+
+    /**
+     * Tests streaming geometries without a sink.
+     */
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullSink()
+    {
+        new ColladaReader().readGeometries(new File("unused.dae"), null);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.ailis.jollada.model.IntList;
+
+
+/**
+ * Tests the IntListBuilder class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class IntListBuilderTest
+{
+    /**
+     * Tests building an int list with the expected size.
+     */
+
+    @Test
+    public void testPresized()
+    {
+        final IntListBuilder builder = new IntListBuilder(3);
+        builder.add(1);
+        builder.add(2);
+        builder.add(3);
+        assertEquals(3, builder.getSize());
+        assertEquals(2, builder.getValue(1));
+        final IntList list = builder.build();
+        assertEquals(3, list.getSize());
+        assertEquals(1, list.getValue(0));
+        assertEquals(2, list.getValue(1));
+        assertEquals(3, list.getValue(2));
+    }
+
+
+    /**
+     * Tests building an int list which exceeds the initial capacity.
+     */
+
+    @Test
+    public void testGrowing()
+    {
+        final IntListBuilder builder = new IntListBuilder(0);
+        for (int i = 0; i < 1000; i++)
+            builder.add(i);
+        final IntList list = builder.build();
+        assertEquals(1000, list.getSize());
+        for (int i = 0; i < 1000; i++)
+            assertEquals(i, list.getValue(i));
+    }
+
+
+    /**
+     * Tests building an int list with less values than expected.
+     */
+
+    @Test
+    public void testTruncated()
+    {
+        final IntListBuilder builder = new IntListBuilder(10);
+        builder.add(5);
+        builder.add(6);
+        final IntList list = builder.build();
+        assertEquals(2, list.getSize());
+        assertEquals(5, list.getValue(0));
+        assertEquals(6, list.getValue(1));
+    }
+
+
+    /**
+     * Tests accessing a value outside of the collected values.
+     */
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testInvalidIndex()
+    {
+        final IntListBuilder builder = new IntListBuilder(10);
+        builder.add(5);
+        builder.getValue(1);
+    }
+}
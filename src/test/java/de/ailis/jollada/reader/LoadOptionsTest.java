@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import de.ailis.jollada.FullTest;
+import de.ailis.jollada.model.Document;
+
+
+/**
+ * Tests the LoadOptions class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class LoadOptionsTest
+{
+    /**
+     * Tests the default options.
+     */
+
+    @Test
+    public void testDefaults()
+    {
+        final LoadOptions options = new LoadOptions();
+        for (final ColladaLibrary library: ColladaLibrary.values())
+            assertTrue(options.isLoading(library));
+    }
+
+
+    /**
+     * Tests selecting libraries.
+     */
+
+    @Test
+    public void testSelect()
+    {
+        final LoadOptions options = new LoadOptions(ColladaLibrary.MATERIALS);
+        assertEquals(1, options.getLibraries().size());
+        assertTrue(options.isLoading(ColladaLibrary.MATERIALS));
+        assertFalse(options.isLoading(ColladaLibrary.GEOMETRIES));
+
+        options.setLoading(ColladaLibrary.GEOMETRIES, true);
+        options.setLoading(ColladaLibrary.MATERIALS, false);
+        assertTrue(options.isLoading(ColladaLibrary.GEOMETRIES));
+        assertFalse(options.isLoading(ColladaLibrary.MATERIALS));
+    }
+
+
+    /**
+     * Tests reading a document with skipped libraries with all backends.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testRead() throws Exception
+    {
+        final File file = FullTest.getTestFile("full.dae");
+        for (final ParserBackend backend: ParserBackend.values())
+        {
+            final ColladaReader reader = new ColladaReader();
+            reader.setBackend(backend);
+            reader.setLoadOptions(new LoadOptions(ColladaLibrary.MATERIALS,
+                ColladaLibrary.VISUAL_SCENES));
+            final Document document = reader.read(file);
+            assertFalse(document.getMaterialLibraries().isEmpty());
+            assertFalse(document.getVisualSceneLibraries().isEmpty());
+            assertTrue(document.getImageLibraries().isEmpty());
+            assertTrue(document.getEffectLibraries().isEmpty());
+            assertTrue(document.getGeometryLibraries().isEmpty());
+            assertTrue(document.getCameraLibraries().isEmpty());
+            assertTrue(document.getLightLibraries().isEmpty());
+            assertTrue(document.getAnimationLibraries().isEmpty());
+            assertNotNull(document.getScene().getVisualSceneInstance());
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.model.FloatArray;
+import de.ailis.jollada.model.IntList;
+import de.ailis.jollada.model.MaterialLibrary;
+import de.ailis.jollada.model.Mesh;
+import de.ailis.jollada.model.Triangles;
+
+
+/**
+ * Tests the MappedColladaParser class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class MappedColladaParserTest
+{
+    /** A document with a mesh. The text of the mesh is inserted at %s. */
+    private static final String MESH_DOCUMENT = "<?xml version=\"1.0\" "
+        + "encoding=\"UTF-8\"?>\n"
+        + "<!DOCTYPE COLLADA [ <!ENTITY x \"]>\"> ]>\n"
+        + "<c:COLLADA xmlns:c=\"http://www.collada.org/2008/03/COLLADASchema\""
+        + " version=\"1.5.0\">\n"
+        + "<!-- A comment with <tags> -->\n"
+        + "<c:library_geometries><c:geometry id=\"g\" name=\"G&#252;&lt;\">"
+        + "<c:extra><c:technique profile='x'><![CDATA[</c:extra>]]>"
+        + "<c:a b=\">\"/><?pi </c:extra> ?></c:technique></c:extra>"
+        + "<c:mesh><c:source id=\"s\">"
+        + "<c:float_array id=\"f\" count=\"4\">%s</c:float_array>"
+        + "</c:source><c:vertices id=\"v\"><c:input semantic=\"POSITION\" "
+        + "source=\"#s\"/></c:vertices><c:triangles count=\"1\">"
+        + "<c:input semantic=\"VERTEX\" source=\"#v\" offset=\"0\"/>"
+        + "<c:p>%s</c:p></c:triangles></c:mesh></c:geometry>"
+        + "</c:library_geometries></c:COLLADA>\n";
+
+
+    /**
+     * Parses the specified document with tiny segments so values cross
+     * segment boundaries.
+     *
+     * @param xml
+     *            The document.
+     * @param arrayLoading
+     *            How arrays are loaded.
+     * @return The parsed document.
+     * @throws IOException
+     *             When document could not be written.
+     * @throws SAXException
+     *             When document could not be parsed.
+     */
+
+    private static Document parse(final String xml,
+        final ArrayLoading arrayLoading) throws IOException, SAXException
+    {
+        final MappedFile file = new MappedFile(MappedFileTest
+            .createTempFile(xml.getBytes("UTF-8")), 4);
+        assertTrue(MappedColladaParser.isSupported(file));
+        final ColladaHandler handler = new ColladaHandler();
+        handler.setArrayLoading(arrayLoading);
+        return new MappedColladaParser().parse(file, handler);
+    }
+
+
+    /**
+     * Parses the specified document with libraries split into fragments of
+     * single elements which are parsed in parallel.
+     *
+     * @param xml
+     *            The document.
+     * @return The parsed document.
+     * @throws IOException
+     *             When document could not be written.
+     * @throws SAXException
+     *             When document could not be parsed.
+     */
+
+    private static Document parseParallel(final String xml)
+        throws IOException, SAXException
+    {
+        final MappedFile file = new MappedFile(MappedFileTest
+            .createTempFile(xml.getBytes("UTF-8")), 4);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            return new MappedColladaParser(executor, 1).parse(file,
+                new ColladaHandler());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * Returns the mesh of the specified document.
+     *
+     * @param document
+     *            The document.
+     * @return The mesh.
+     */
+
+    private static Mesh getMesh(final Document document)
+    {
+        return (Mesh) document.getGeometryLibraries().get(0).getGeometries()
+            .get(0).getGeometric();
+    }
+
+
+    /**
+     * Tests parsing a document with arrays crossing segment boundaries.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testArrays() throws Exception
+    {
+        final Document document = parse(String.format(MESH_DOCUMENT,
+            " 1.25 -2.5e1\r\n 3 0.125 ", "0  1\t2"), ArrayLoading.EAGER);
+        assertEquals("Gü<", document.getGeometryLibraries().get(0)
+            .getGeometries().get(0).getName());
+        final Mesh mesh = getMesh(document);
+        final FloatArray array = (FloatArray) mesh.getSources().get(0)
+            .getArray();
+        assertEquals(4, array.getCount());
+        assertEquals(1.25, array.getValue(0), 0);
+        assertEquals(-25, array.getValue(1), 0);
+        assertEquals(3, array.getValue(2), 0);
+        assertEquals(0.125, array.getValue(3), 0);
+        final IntList data = ((Triangles) mesh.getPrimitives().get(0))
+            .getData();
+        assertEquals(3, data.getSize());
+        assertEquals(0, data.getValue(0));
+        assertEquals(1, data.getValue(1));
+        assertEquals(2, data.getValue(2));
+    }
+
+
+    /**
+     * Tests parsing a document with lazily loaded arrays.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testLazyArrays() throws Exception
+    {
+        final Document document = parse(String.format(MESH_DOCUMENT,
+            " 1.25 -2.5e1\r\n 3 0.125 ", "0  1\t2"), ArrayLoading.RELEASABLE);
+        final Mesh mesh = getMesh(document);
+        final FloatArray array = (FloatArray) mesh.getSources().get(0)
+            .getArray();
+        assertFalse(array.isLoaded());
+        assertEquals(4, array.getCount());
+        assertEquals(1.25, array.getValue(0), 0);
+        assertEquals(-25, array.getValue(1), 0);
+        assertEquals(3, array.getValue(2), 0);
+        assertEquals(0.125, array.getValue(3), 0);
+        final IntList data = ((Triangles) mesh.getPrimitives().get(0))
+            .getData();
+        assertFalse(data.isLoaded());
+        assertEquals(3, data.getSize());
+        assertEquals(0, data.getValue(0));
+        assertEquals(1, data.getValue(1));
+        assertEquals(2, data.getValue(2));
+    }
+
+
+    /**
+     * Tests parsing arrays with CDATA sections and character references.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testArraysWithMarkup() throws Exception
+    {
+        final Document document = parse(String.format(MESH_DOCUMENT,
+            "1<![CDATA[.5 2]]>&#32;3<!-- 4 -->5 6", "2 1 0"),
+            ArrayLoading.LAZY);
+        final FloatArray array = (FloatArray) getMesh(document).getSources()
+            .get(0).getArray();
+        assertTrue(array.isLoaded());
+        assertEquals(1.5, array.getValue(0), 0);
+        assertEquals(2, array.getValue(1), 0);
+        assertEquals(35, array.getValue(2), 0);
+        assertEquals(6, array.getValue(3), 0);
+    }
+
+
+    /**
+     * Tests the detection of supported encodings.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testIsSupported() throws Exception
+    {
+        assertTrue(isSupported("<?xml version='1.0'?><a/>", "UTF-8"));
+        assertTrue(isSupported("\uFEFF<?xml version='1.0' "
+            + "encoding='utf-8'?><a/>", "UTF-8"));
+        assertTrue(isSupported("<a/>", "UTF-8"));
+        assertFalse(isSupported("<?xml version='1.0' "
+            + "encoding='ISO-8859-1'?><a/>", "ISO-8859-1"));
+        assertFalse(isSupported("<?xml version='1.0' "
+            + "encoding='UTF-16'?><a/>", "UTF-16"));
+    }
+
+
+    /**
+     * Checks if the specified document is supported by the parser.
+     *
+     * @param xml
+     *            The document.
+     * @param encoding
+     *            The encoding to use for writing the document.
+     * @return True if supported, false if not.
+     * @throws IOException
+     *             When document could not be written.
+     */
+
+    private static boolean isSupported(final String xml, final String encoding)
+        throws IOException
+    {
+        return MappedColladaParser.isSupported(new MappedFile(MappedFileTest
+            .createTempFile(xml.getBytes(encoding))));
+    }
+
+
+    /**
+     * Tests parsing libraries in parallel.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testParallelLibraries() throws Exception
+    {
+        final String material = "<material id=\"%s\"><instance_effect "
+            + "url=\"#e\"/></material>";
+        final Document document = parseParallel("<COLLADA>"
+            + "<library_materials id=\"ml1\">"
+            + String.format(material, "m1") + "<!-- comment -->"
+            + String.format(material, "m2") + "</library_materials>"
+            + "<library_visual_scenes><visual_scene id=\"v1\"/>\n"
+            + "<visual_scene id=\"v2\"/></library_visual_scenes>"
+            + "<library_materials id=\"ml2\">"
+            + String.format(material, "m3") + "</library_materials>"
+            + "<library_materials id=\"ml3\"/>"
+            + "<library_materials id=\"ml4\"> </library_materials>"
+            + "<scene><instance_visual_scene url=\"#v2\"/></scene>"
+            + "</COLLADA>");
+        assertEquals(4, document.getMaterialLibraries().size());
+        final MaterialLibrary library = document.getMaterialLibraries().get(0);
+        assertEquals("ml1", library.getId());
+        assertEquals(2, library.getMaterials().size());
+        assertEquals("m1", library.getMaterials().get(0).getId());
+        assertEquals("m2", library.getMaterials().get(1).getId());
+        assertSame(library.getMaterials().get(1), document.getById("m2"));
+        assertEquals("ml2", document.getMaterialLibraries().get(1).getId());
+        assertSame(document.getMaterialLibraries().get(1).getMaterials()
+            .get(0), document.getById("m3"));
+        assertEquals(0, document.getMaterialLibraries().get(2).getMaterials()
+            .size());
+        assertEquals("ml4", document.getMaterialLibraries().get(3).getId());
+        assertEquals(2, document.getVisualSceneLibraries().get(0)
+            .getVisualScenes().size());
+        assertSame(document, document.getById("v2").getDocument());
+        assertEquals("#v2", document.getScene().getVisualSceneInstance()
+            .getUrl().toString());
+    }
+
+
+    /**
+     * Tests parsing libraries with an executor which never runs the
+     * submitted fragments, like a shared pool with all threads blocked.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test
+    public void testBlockedExecutor() throws Exception
+    {
+        final StringBuilder xml = new StringBuilder("<COLLADA>"
+            + "<library_materials>");
+        for (int i = 0; i < 100; i++)
+            xml.append("<material id=\"m" + i
+                + "\"><instance_effect url=\"#e\"/></material>");
+        xml.append("</library_materials></COLLADA>");
+        final MappedFile file = new MappedFile(MappedFileTest
+            .createTempFile(xml.toString().getBytes("UTF-8")), 4);
+        final Document document = new MappedColladaParser(new Executor()
+        {
+            @Override
+            public void execute(final Runnable command)
+            {
+                // Never runs the command
+            }
+        }, 1).parse(file, new ColladaHandler());
+        assertEquals(1, document.getMaterialLibraries().size());
+        assertEquals(100, document.getMaterialLibraries().get(0)
+            .getMaterials().size());
+        assertEquals("m99", document.getMaterialLibraries().get(0)
+            .getMaterials().get(99).getId());
+    }
+
+
+    /**
+     * Tests reporting errors in parallel parsed libraries.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test(expected = SAXException.class)
+    public void testParallelError() throws Exception
+    {
+        parseParallel("<COLLADA><library_images><image name=\"&bogus;\"/>"
+            + "</library_images></COLLADA>");
+    }
+
+
+    /**
+     * Tests parsing a document with mismatched tags.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test(expected = SAXException.class)
+    public void testMismatchedTags() throws Exception
+    {
+        parse("<COLLADA><library_images></library_effects></COLLADA>",
+            ArrayLoading.EAGER);
+    }
+
+
+    /**
+     * Tests parsing a truncated document.
+     *
+     * @throws Exception
+     *             When test fails.
+     */
+
+    @Test(expected = SAXException.class)
+    public void testTruncatedDocument() throws Exception
+    {
+        parse("<COLLADA><library_images>", ArrayLoading.EAGER);
+    }
+}
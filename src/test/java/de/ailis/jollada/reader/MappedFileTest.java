@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the MappedFile class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class MappedFileTest
+{
+    /**
+     * Creates a temporary file with the specified content.
+     *
+     * @param content
+     *            The file content.
+     * @return The temporary file.
+     * @throws IOException
+     *             When file could not be written.
+     */
+
+    static File createTempFile(final byte[] content) throws IOException
+    {
+        final File file = File.createTempFile("jollada", ".dae");
+        file.deleteOnExit();
+        final OutputStream stream = new FileOutputStream(file);
+        try
+        {
+            stream.write(content);
+        }
+        finally
+        {
+            stream.close();
+        }
+        return file;
+    }
+
+
+    /**
+     * Tests accessing a file which is mapped in multiple segments.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testSegments() throws IOException
+    {
+        final byte[] content = new byte[37];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) i;
+        final MappedFile file = new MappedFile(createTempFile(content), 3);
+        assertEquals(37, file.getSize());
+        for (int i = 0; i < content.length; i++)
+            assertEquals(i, file.get(i));
+
+        final byte[] bytes = new byte[40];
+        assertEquals(20, file.get(5, bytes, 2, 20));
+        for (int i = 0; i < 20; i++)
+            assertEquals(5 + i, bytes[2 + i]);
+        assertEquals(7, file.get(30, bytes, 0, 40));
+        assertEquals(36, bytes[6]);
+        assertEquals(0, file.get(37, bytes, 0, 40));
+    }
+
+
+    /**
+     * Tests mapping an empty file.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testEmptyFile() throws IOException
+    {
+        final MappedFile file = new MappedFile(createTempFile(new byte[0]));
+        assertEquals(0, file.getSize());
+    }
+}
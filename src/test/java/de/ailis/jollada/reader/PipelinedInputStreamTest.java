@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.reader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the PipelinedInputStream class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class PipelinedInputStreamTest
+{
+    /**
+     * Tests reading data which spans multiple blocks.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test
+    public void testRead() throws IOException
+    {
+        final byte[] data = new byte[200000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (i * 31);
+        final InputStream stream = new PipelinedInputStream(
+            new ByteArrayInputStream(data));
+        try
+        {
+            final ByteArrayOutputStream read = new ByteArrayOutputStream();
+            read.write(stream.read());
+            final byte[] buffer = new byte[1000];
+            int count;
+            while ((count = stream.read(buffer, 0, buffer.length)) >= 0)
+                read.write(buffer, 0, count);
+            assertArrayEquals(data, read.toByteArray());
+            assertEquals(-1, stream.read());
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+
+    /**
+     * Tests reporting an error of the source stream.
+     *
+     * @throws IOException
+     *             When test succeeds.
+     */
+
+    @Test(expected = IOException.class)
+    public void testError() throws IOException
+    {
+        final InputStream stream = new PipelinedInputStream(new InputStream()
+        {
+            @Override
+            public int read() throws IOException
+            {
+                throw new IOException("Test");
+            }
+        });
+        try
+        {
+            stream.read();
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+
+    /**
+     * Tests reporting a runtime exception of the source stream.
+     *
+     * @throws IOException
+     *             When test succeeds.
+     */
+
+    @Test(timeout = 10000)
+    public void testRuntimeError() throws IOException
+    {
+        final InputStream stream = new PipelinedInputStream(new InputStream()
+        {
+            @Override
+            public int read()
+            {
+                throw new IllegalStateException("Test");
+            }
+        });
+        try
+        {
+            for (int i = 0; i < 2; i++)
+            {
+                try
+                {
+                    stream.read();
+                    fail("IOException expected");
+                }
+                catch (final IOException e)
+                {
+                    // Expected, also on the second read
+                }
+            }
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+
+    /**
+     * Tests closing the stream before the source stream has been read
+     * completely.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test(timeout = 10000)
+    public void testEarlyClose() throws IOException
+    {
+        final InputStream stream = new PipelinedInputStream(
+            new ByteArrayInputStream(new byte[10000000]));
+        assertEquals(0, stream.read());
+        stream.close();
+    }
+
+
+    /**
+     * Tests closing the stream while the background thread is blocked in a
+     * read of the source stream which ignores interrupts.
+     *
+     * @throws IOException
+     *             When test fails.
+     */
+
+    @Test(timeout = 10000)
+    public void testCloseWhileBlocked() throws IOException
+    {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final InputStream stream = new PipelinedInputStream(new InputStream()
+        {
+            @Override
+            public int read()
+            {
+                reading.countDown();
+                while (true)
+                {
+                    try
+                    {
+                        release.await();
+                        return -1;
+                    }
+                    catch (final InterruptedException e)
+                    {
+                        // Ignored like a blocking socket read
+                    }
+                }
+            }
+        });
+        try
+        {
+            reading.await();
+        }
+        catch (final InterruptedException e)
+        {
+            throw new IOException(e.toString(), e);
+        }
+        final long start = System.currentTimeMillis();
+        stream.close();
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        release.countDown();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.reader.ColladaReader;
+
+
+/**
+ * Tests the ColladaWriter class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class ColladaWriterTest
+{
+    /**
+     * Writes the specified document.
+     *
+     * @param writer
+     *            The writer to use.
+     * @param document
+     *            The document to write.
+     * @return The written bytes.
+     * @throws IOException
+     *             When document could not be written.
+     */
+
+    private static byte[] write(final ColladaWriter writer,
+        final Document document) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writer.write(document, bytes);
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * Tests writing the same document twice with the same writer.
+     *
+     * @throws IOException
+     *             When document could not be written.
+     */
+
+    @Test
+    public void testReuse() throws IOException
+    {
+        final Document document = new ColladaReader().read(getClass()
+            .getClassLoader().getResourceAsStream("full.dae"));
+        final ColladaWriter writer = new ColladaWriter(64);
+        final byte[] first = write(writer, document);
+        assertTrue(Arrays.equals(first, write(writer, document)));
+        assertTrue(Arrays.equals(first, write(new ColladaWriter(),
+            document)));
+    }
+
+
+    /**
+     * Tests that arrays formatted in parallel are written exactly like
+     * arrays formatted sequentially.
+     *
+     * @throws IOException
+     *             When document could not be written.
+     */
+
+    @Test
+    public void testParallelFormatting() throws IOException
+    {
+        final Document document = new ColladaReader().read(getClass()
+            .getClassLoader().getResourceAsStream("full.dae"));
+        final byte[] expected = write(new ColladaWriter(), document);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            final ColladaWriter writer = new ColladaWriter(64);
+            writer.setExecutor(executor, 2);
+            assertEquals(executor, writer.getExecutor());
+            assertTrue(Arrays.equals(expected, write(writer, document)));
+            writer.setExecutor(executor, 5);
+            assertTrue(Arrays.equals(expected, write(writer, document)));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.ailis.jollada.model.Animation;
+import de.ailis.jollada.model.Document;
+import de.ailis.jollada.model.Mesh;
+import de.ailis.jollada.model.Node;
+import de.ailis.jollada.model.Nodes;
+import de.ailis.jollada.model.PolyList;
+import de.ailis.jollada.model.Polygons;
+import de.ailis.jollada.model.PrimitiveElements;
+import de.ailis.jollada.model.Triangles;
+import de.ailis.jollada.reader.ColladaReader;
+
+
+/**
+ * Tests the DocumentGenerator class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class DocumentGeneratorTest
+{
+    /**
+     * Generates a document.
+     *
+     * @param generator
+     *            The generator to use.
+     * @return The generated bytes.
+     * @throws IOException
+     *             When document could not be generated.
+     */
+
+    private static byte[] generate(final DocumentGenerator generator)
+        throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        generator.generate(bytes);
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * Generates a document and reads it.
+     *
+     * @param generator
+     *            The generator to use.
+     * @return The read document.
+     * @throws IOException
+     *             When document could not be generated.
+     */
+
+    private static Document read(final DocumentGenerator generator)
+        throws IOException
+    {
+        return new ColladaReader().read(new ByteArrayInputStream(
+            generate(generator)));
+    }
+
+
+    /**
+     * Counts the specified nodes and their descendants.
+     *
+     * @param nodes
+     *            The nodes to count.
+     * @return The number of nodes.
+     */
+
+    private static int countNodes(final Nodes nodes)
+    {
+        int count = nodes.size();
+        for (final Node node : nodes)
+            count += countNodes(node.getNodes());
+        return count;
+    }
+
+
+    /**
+     * Tests the shape of a generated document.
+     *
+     * @throws IOException
+     *             When document could not be generated.
+     */
+
+    @Test
+    public void testShape() throws IOException
+    {
+        final DocumentGenerator generator = new DocumentGenerator();
+        generator.setGeometries(3);
+        generator.setVertices(101);
+        generator.setPrimitiveMix(2, 1, 1);
+        generator.setNodeDepth(3);
+        generator.setNodeFanOut(4);
+        generator.setMaterials(5);
+        generator.setAnimationChannels(6);
+        generator.setKeyFrames(7);
+        final Document document = read(generator);
+
+        assertEquals(5, document.getEffectLibraries().get(0).getEffects()
+            .size());
+        assertEquals(5, document.getMaterialLibraries().get(0)
+            .getMaterials().size());
+        assertEquals(3, document.getGeometryLibraries().get(0)
+            .getGeometries().size());
+        final Mesh mesh = (Mesh) document.getGeometryLibraries().get(0)
+            .getGeometries().get(2).getGeometric();
+        assertEquals(303, mesh.getSources().get(0).getArray().getCount());
+        final PrimitiveElements primitives = mesh.getPrimitives();
+        assertEquals(3, primitives.size());
+        final Triangles triangles = (Triangles) primitives.get(0);
+        final PolyList polyList = (PolyList) primitives.get(1);
+        final Polygons polygons = (Polygons) primitives.get(2);
+        assertEquals(50, triangles.getCount());
+        assertEquals(25, polyList.getCount());
+        assertEquals(26, polygons.getCount());
+        assertEquals(50 * 3 * 2, triangles.getData().getSize());
+        assertEquals(25, polyList.getVcount().getSize());
+        assertEquals(26, polygons.getData().size());
+
+        final Nodes roots = document.getVisualSceneLibraries().get(0)
+            .getVisualScenes().get(0).getNodes();
+        assertEquals(4, roots.size());
+        assertEquals(4 + 16 + 64, countNodes(roots));
+        assertEquals(4 + 16 + 64, generator.getNodeCount());
+        assertEquals(4, roots.get(0).getNodes().get(0).getNodes().size());
+        assertTrue(roots.get(0).getNodes().get(0).getNodes().get(0)
+            .getNodes().isEmpty());
+
+        assertEquals(6, document.getAnimationLibraries().get(0)
+            .getAnimations().size());
+        final Animation animation = document.getAnimationLibraries().get(0)
+            .getAnimations().get(5);
+        assertEquals(7, animation.getSources().get(0).getArray().getCount());
+        assertEquals("node-5/rotate.ANGLE", animation.getChannels().get(0)
+            .getTarget());
+        assertEquals("#animation-5-sampler", animation.getChannels().get(0)
+            .getSource().toString());
+    }
+
+
+    /**
+     * Tests that the generated document only depends on the seed.
+     *
+     * @throws IOException
+     *             When document could not be generated.
+     */
+
+    @Test
+    public void testSeed() throws IOException
+    {
+        final DocumentGenerator generator = new DocumentGenerator();
+        generator.setAnimationChannels(2);
+        final byte[] first = generate(generator);
+        assertTrue(Arrays.equals(first, generate(generator)));
+        generator.setSeed(1);
+        assertFalse(Arrays.equals(first, generate(generator)));
+    }
+
+
+    /**
+     * Tests generating a deep node tree.
+     *
+     * @throws IOException
+     *             When document could not be generated.
+     */
+
+    @Test
+    public void testDeepNodeTree() throws IOException
+    {
+        final DocumentGenerator generator = new DocumentGenerator();
+        generator.setNodeDepth(1000);
+        generator.setGeometries(0);
+        generator.setMaterials(0);
+        final Document document = read(generator);
+        Nodes nodes = document.getVisualSceneLibraries().get(0)
+            .getVisualScenes().get(0).getNodes();
+        int depth = 0;
+        while (!nodes.isEmpty())
+        {
+            assertEquals(1, nodes.size());
+            nodes = nodes.get(0).getNodes();
+            depth++;
+        }
+        assertEquals(1000, depth);
+    }
+
+
+    /**
+     * Tests setting an empty primitive mix.
+     */
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyPrimitiveMix()
+    {
+        new DocumentGenerator().setPrimitiveMix(0, 0, 0);
+    }
+}
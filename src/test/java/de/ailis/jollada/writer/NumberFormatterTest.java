@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2010 Klaus Reimer <k@ailis.de>
+ * See LICENSE.txt for licensing information.
+ */
+
+package de.ailis.jollada.writer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the NumberFormatter class.
+ *
+ * @author Klaus Reimer (k@ailis.de)
+ */
+
+public class NumberFormatterTest
+{
+    /**
+     * Formats the specified double value.
+     *
+     * @param value
+     *            The value to format.
+     * @param digits
+     *            The number of significant digits.
+     * @return The formatted value.
+     */
+
+    private static String format(final double value, final int digits)
+    {
+        final byte[] buffer = new byte[NumberFormatter.MAX_LENGTH];
+        final int length = NumberFormatter.formatDouble(value, digits, buffer,
+            0);
+        return new String(buffer, 0, length);
+    }
+
+
+    /**
+     * Formats the specified int value.
+     *
+     * @param value
+     *            The value to format.
+     * @return The formatted value.
+     */
+
+    private static String format(final int value)
+    {
+        final byte[] buffer = new byte[NumberFormatter.MAX_LENGTH];
+        return new String(buffer, 0, NumberFormatter.formatInt(value, buffer,
+            0));
+    }
+
+
+    /**
+     * Tests formatting int values.
+     */
+
+    @Test
+    public void testFormatInt()
+    {
+        assertEquals("0", format(0));
+        assertEquals("7", format(7));
+        assertEquals("-42", format(-42));
+        assertEquals("1000000", format(1000000));
+        assertEquals("2147483647", format(Integer.MAX_VALUE));
+        assertEquals("-2147483648", format(Integer.MIN_VALUE));
+    }
+
+
+    /**
+     * Tests formatting simple double values.
+     */
+
+    @Test
+    public void testFormatSimple()
+    {
+        assertEquals("0", format(0, 6));
+        assertEquals("1", format(1, 6));
+        assertEquals("-1.5", format(-1.5, 6));
+        assertEquals("0.1", format(0.1, 6));
+        assertEquals("123456", format(123456, 6));
+        assertEquals("1200", format(1200, 6));
+        assertEquals("0.00125", format(0.00125, 6));
+    }
+
+
+    /**
+     * Tests rounding to the number of significant digits.
+     */
+
+    @Test
+    public void testRounding()
+    {
+        assertEquals("3.14159", format(Math.PI, 6));
+        assertEquals("3.1", format(Math.PI, 2));
+        assertEquals("1234570", format(1234567, 6));
+        assertEquals("10", format(9.9999996, 6));
+        assertEquals("0.333333", format(1.0 / 3, 6));
+        assertEquals("-0.666667", format(-2.0 / 3, 6));
+    }
+
+
+    /**
+     * Tests formatting values in scientific notation.
+     */
+
+    @Test
+    public void testScientific()
+    {
+        assertEquals("1.5E-7", format(1.5e-7, 6));
+        assertEquals("1E16", format(1e16, 6));
+        assertEquals("1.23457E20", format(1.234567e20, 6));
+        assertEquals("1.5E30", format(1.5e30, 6));
+        assertEquals("4.94066E-324", format(Double.MIN_VALUE, 6));
+        assertEquals("1.79769E308", format(Double.MAX_VALUE, 6));
+    }
+
+
+    /**
+     * Tests formatting special values.
+     */
+
+    @Test
+    public void testSpecialValues()
+    {
+        assertEquals("NaN", format(Double.NaN, 6));
+        assertEquals("INF", format(Double.POSITIVE_INFINITY, 6));
+        assertEquals("-INF", format(Double.NEGATIVE_INFINITY, 6));
+    }
+
+
+    /**
+     * Tests that formatted random values read back to the rounded value and
+     * that values formatted with 17 digits read back exactly.
+     */
+
+    @Test
+    public void testRoundTrip()
+    {
+        final Random random = new Random(42);
+        for (int i = 0; i < 100000; i++)
+        {
+            final double value = (random.nextDouble() - 0.5)
+                * Math.pow(10, random.nextInt(40) - 20);
+            assertEquals(value, Double.parseDouble(format(value, 17)), 0);
+            final double rounded = Double.parseDouble(format(value, 6));
+            assertEquals(value, rounded, Math.abs(value) * 5e-6);
+        }
+    }
+
+
+    /**
+     * Tests that values rounded to 12 to 15 digits are rounded exactly like
+     * BigDecimal rounds them, even when the scaled value is close to a .5
+     * boundary.
+     */
+
+    @Test
+    public void testHighPrecisionRounding()
+    {
+        assertEquals("469079.0895829", format(469079.0895828995, 15));
+        assertEquals("0.100000000000001", format(0.1000000000000005, 15));
+        final Random random = new Random(42);
+        for (int i = 0; i < 100000; i++)
+        {
+            final int digits = 12 + random.nextInt(4);
+            final double value = (1 + random.nextDouble() * 9)
+                * Math.pow(10, random.nextInt(12) - 3);
+            final String expected = new BigDecimal(value).round(
+                new MathContext(digits)).stripTrailingZeros().toPlainString();
+            assertEquals(expected, format(value, digits));
+        }
+    }
+}